@@ -0,0 +1,164 @@
+/**
+ * Copyright (C) 2010 Cardiff University, Wales <smartp@cf.ac.uk>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.ac.cardiff.model.benchmark;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import uk.ac.cardiff.model.event.ShibbolethIdpAuthenticationEvent;
+import uk.ac.cardiff.model.event.auxiliary.AttributeSet;
+import uk.ac.cardiff.model.event.jpa.AttributeSetConverter;
+import uk.ac.cardiff.utility.HashCodeUtil;
+
+/**
+ * <p>
+ * Membership, equality and hashing of released attributes held as a
+ * {@code String[]}, as they were, and as an {@link AttributeSet}, plus the
+ * {@link AttributeSetConverter} column round trip. The neighbour benchmarks
+ * compare each event's attributes with the next event's, which are sometimes
+ * equal and sometimes not.
+ * </p>
+ * 
+ * @author philsmart
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AttributeSetBenchmark {
+
+	/** An attribute released in roughly half of the events. */
+	private static final String PROBE = "eduPersonAffiliation";
+
+	/** Number of distinct events cycled through. */
+	@Param({ "4096" })
+	private int size;
+
+	private String[][] arrays;
+
+	/** Equal but not identical copies of {@link #arrays}. */
+	private String[][] arrayCopies;
+
+	private AttributeSet[] sets;
+
+	/**
+	 * Sets of the same names as {@link #sets}, which are the shared instances,
+	 * as every event holding those names would have.
+	 */
+	private AttributeSet[] setCopies;
+
+	private String[] columns;
+
+	private final AttributeSetConverter converter = new AttributeSetConverter();
+
+	private int index;
+
+	@Setup
+	public void setup() {
+		final ShibbolethIdpAuthenticationEvent[] events = EventDataSets.shibbolethEvents(size);
+		arrays = new String[size][];
+		arrayCopies = new String[size][];
+		sets = new AttributeSet[size];
+		setCopies = new AttributeSet[size];
+		columns = new String[size];
+		for (int i = 0; i < size; i++) {
+			sets[i] = events[i].getAttributeSet();
+			arrays[i] = sets[i].toArray();
+			arrayCopies[i] = arrays[i].clone();
+			setCopies[i] = AttributeSet.of(arrays[i]);
+			columns[i] = converter.convertToDatabaseColumn(sets[i]);
+		}
+	}
+
+	private int next() {
+		index = index + 1 == size ? 0 : index + 1;
+		return index;
+	}
+
+	@Benchmark
+	public boolean containsArray() {
+		for (final String attribute : arrays[next()]) {
+			if (PROBE.equals(attribute)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	@Benchmark
+	public boolean containsSet() {
+		return sets[next()].contains(PROBE);
+	}
+
+	@Benchmark
+	public boolean equalsArray() {
+		final int i = next();
+		return Arrays.equals(arrays[i], arrayCopies[i]);
+	}
+
+	@Benchmark
+	public boolean equalsSet() {
+		final int i = next();
+		return sets[i].equals(setCopies[i]);
+	}
+
+	@Benchmark
+	public boolean equalsArrayNeighbour() {
+		final int i = next();
+		return Arrays.equals(arrays[i], arrayCopies[i + 1 == size ? 0 : i + 1]);
+	}
+
+	@Benchmark
+	public boolean equalsSetNeighbour() {
+		final int i = next();
+		return sets[i].equals(setCopies[i + 1 == size ? 0 : i + 1]);
+	}
+
+	@Benchmark
+	public int hashArray() {
+		return HashCodeUtil.hash(HashCodeUtil.SEED, arrays[next()]);
+	}
+
+	@Benchmark
+	public int hashSet() {
+		return HashCodeUtil.hash(HashCodeUtil.SEED, sets[next()]);
+	}
+
+	@Benchmark
+	public String convertToDatabaseColumn() {
+		return converter.convertToDatabaseColumn(sets[next()]);
+	}
+
+	@Benchmark
+	public AttributeSet convertToEntityAttribute() {
+		return converter.convertToEntityAttribute(columns[next()]);
+	}
+
+}
@@ -0,0 +1,119 @@
+/**
+ * Copyright (C) 2010 Cardiff University, Wales <smartp@cf.ac.uk>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.ac.cardiff.model.benchmark;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import uk.ac.cardiff.model.event.AuthenticationEvent;
+import uk.ac.cardiff.model.event.aggregate.DistinctCountSeries;
+import uk.ac.cardiff.model.event.aggregate.GroupKey;
+import uk.ac.cardiff.model.event.batch.EventBatch;
+import uk.ac.cardiff.model.event.batch.StringColumn;
+
+/**
+ * <p>
+ * Unique principals per resource per hour: with a {@link HashSet} of principal
+ * names per resource and hour, as the report does now, and with a
+ * {@link DistinctCountSeries} of {@code precision} over the events and over an
+ * {@link EventBatch} of them.
+ * </p>
+ * 
+ * @author philsmart
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DistinctCountBenchmark {
+
+	private static final long HOUR = 3600000L;
+
+	@Param({ "200000" })
+	private int size;
+
+	@Param({ "12" })
+	private int precision;
+
+	private List<AuthenticationEvent> events;
+
+	private EventBatch batch;
+
+	@Setup
+	public void setup() {
+		events = Arrays.<AuthenticationEvent> asList(EventDataSets.shibbolethEvents(size));
+		batch = EventBatch.of(events);
+	}
+
+	@Benchmark
+	public int hashSets() {
+		final Map<String, Map<Long, Set<String>>> principals = new HashMap<String, Map<Long, Set<String>>>();
+		for (final AuthenticationEvent event : events) {
+			Map<Long, Set<String>> buckets = principals.get(event.getResourceId());
+			if (buckets == null) {
+				buckets = new HashMap<Long, Set<String>>();
+				principals.put(event.getResourceId(), buckets);
+			}
+			final Long bucket = Math.floorDiv(event.getEventTimeMillis(), HOUR) * HOUR;
+			Set<String> names = buckets.get(bucket);
+			if (names == null) {
+				names = new HashSet<String>();
+				buckets.put(bucket, names);
+			}
+			names.add(event.getPrincipalName());
+		}
+		return principals.size();
+	}
+
+	@Benchmark
+	public long sketchEvents() {
+		final DistinctCountSeries<String> series = newSeries();
+		series.addAll(events);
+		return series.getSizeInBytes();
+	}
+
+	@Benchmark
+	public long sketchBatch() {
+		final DistinctCountSeries<String> series = newSeries();
+		series.add(batch);
+		return series.getSizeInBytes();
+	}
+
+	private DistinctCountSeries<String> newSeries() {
+		return new DistinctCountSeries<String>(GroupKey.column(StringColumn.RESOURCE_ID), StringColumn.PRINCIPAL_NAME,
+				HOUR, precision);
+	}
+
+}
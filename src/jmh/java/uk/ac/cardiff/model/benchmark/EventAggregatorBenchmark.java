@@ -0,0 +1,122 @@
+/**
+ * Copyright (C) 2010 Cardiff University, Wales <smartp@cf.ac.uk>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.ac.cardiff.model.benchmark;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import uk.ac.cardiff.model.event.AuthenticationEvent;
+import uk.ac.cardiff.model.event.aggregate.EventAggregator;
+import uk.ac.cardiff.model.event.aggregate.EventValue;
+import uk.ac.cardiff.model.event.aggregate.GroupKey;
+import uk.ac.cardiff.model.event.aggregate.Measure;
+import uk.ac.cardiff.model.event.batch.EventBatch;
+import uk.ac.cardiff.model.event.batch.StringColumn;
+
+/**
+ * <p>
+ * Counts events, and sums their released attributes, by a string column: with a
+ * single threaded {@link HashMap} over the list of events, as dashboards do
+ * now, and with an {@link EventAggregator} over the list and over an
+ * {@link EventBatch}, on a pool of {@code threads} workers. Set
+ * {@code threads} to the cores of the machine to measure scaling.
+ * </p>
+ * 
+ * @author philsmart
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EventAggregatorBenchmark {
+
+	@Param({ "1000000" })
+	private int size;
+
+	@Param({ "RESOURCE_ID", "PRINCIPAL_NAME" })
+	private StringColumn column;
+
+	@Param({ "1", "4" })
+	private int threads;
+
+	private List<AuthenticationEvent> events;
+
+	private EventBatch batch;
+
+	private ForkJoinPool pool;
+
+	private EventAggregator<String> aggregator;
+
+	@Setup
+	public void setup() {
+		events = new ArrayList<AuthenticationEvent>(Arrays.asList(EventDataSets.shibbolethEvents(size)));
+		batch = EventBatch.of(events);
+		pool = new ForkJoinPool(threads);
+		aggregator = new EventAggregator<String>(GroupKey.column(column), pool, Measure.count(),
+				Measure.sum(EventValue.ATTRIBUTE_COUNT));
+	}
+
+	@TearDown
+	public void tearDown() {
+		pool.shutdown();
+	}
+
+	@Benchmark
+	public int hashMap() {
+		final Map<String, long[]> groups = new HashMap<String, long[]>();
+		for (final AuthenticationEvent event : events) {
+			long[] results = groups.get(column.get(event));
+			if (results == null) {
+				results = new long[2];
+				groups.put(column.get(event), results);
+			}
+			results[0]++;
+			results[1] += EventValue.ATTRIBUTE_COUNT.of(event);
+		}
+		return groups.size();
+	}
+
+	@Benchmark
+	public int aggregateEvents() {
+		return aggregator.aggregate(events).size();
+	}
+
+	@Benchmark
+	public int aggregateBatch() {
+		return aggregator.aggregate(batch).size();
+	}
+
+}
@@ -0,0 +1,95 @@
+/**
+ * Copyright (C) 2010 Cardiff University, Wales <smartp@cf.ac.uk>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.ac.cardiff.model.benchmark;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import uk.ac.cardiff.model.event.AuthenticationEvent;
+import uk.ac.cardiff.model.event.batch.EventBatch;
+import uk.ac.cardiff.model.event.batch.StringColumn;
+
+/**
+ * <p>
+ * Compares a scan over a list of event objects with the same scan over an
+ * {@link EventBatch}: counting events per resourceId within a time range.
+ * </p>
+ * 
+ * @author philsmart
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EventBatchBenchmark {
+
+	@Param({ "100000" })
+	private int size;
+
+	private List<AuthenticationEvent> events;
+
+	private EventBatch batch;
+
+	/** Only events before this time are counted, about half of the day. */
+	private long before;
+
+	@Setup
+	public void setup() {
+		events = Arrays.<AuthenticationEvent> asList(EventDataSets.shibbolethEvents(size));
+		batch = EventBatch.of(events);
+		before = events.get(0).getEventTimeMillis();
+	}
+
+	@Benchmark
+	public Map<String, Integer> countByResourceObjects() {
+		final Map<String, Integer> counts = new HashMap<String, Integer>();
+		for (final AuthenticationEvent event : events) {
+			if (event.getEventTimeMillis() < before) {
+				counts.merge(event.getResourceId(), 1, Integer::sum);
+			}
+		}
+		return counts;
+	}
+
+	@Benchmark
+	public int[] countByResourceBatch() {
+		final int[] counts = new int[batch.getDictionary().size()];
+		for (int row = 0, rows = batch.size(); row < rows; row++) {
+			if (batch.getEventTimeMillis(row) < before) {
+				counts[batch.getCode(StringColumn.RESOURCE_ID, row)]++;
+			}
+		}
+		return counts;
+	}
+
+}
@@ -0,0 +1,128 @@
+/**
+ * Copyright (C) 2010 Cardiff University, Wales <smartp@cf.ac.uk>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.ac.cardiff.model.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import uk.ac.cardiff.model.event.EzproxyAuthenticationEvent;
+import uk.ac.cardiff.model.event.ShibbolethIdpAuthenticationEvent;
+
+/**
+ * <p>
+ * Throughput of the {@code hashCode}, {@code equals}, {@code copy} and
+ * {@code toString} methods of the concrete {@link uk.ac.cardiff.model.event.Event}
+ * classes. Each invocation moves to the next event in the data set so the
+ * results are not skewed by a single, perfectly cached, instance.
+ * </p>
+ * 
+ * @author philsmart
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EventBenchmark {
+
+	/** Number of distinct events cycled through. */
+	@Param({ "4096" })
+	private int size;
+
+	private ShibbolethIdpAuthenticationEvent[] shibbolethEvents;
+
+	/** Field by field copies of {@link #shibbolethEvents}, for equals. */
+	private ShibbolethIdpAuthenticationEvent[] shibbolethCopies;
+
+	private EzproxyAuthenticationEvent[] ezproxyEvents;
+
+	private int index;
+
+	@Setup
+	public void setup() {
+		shibbolethEvents = EventDataSets.shibbolethEvents(size);
+		shibbolethCopies = EventDataSets.shibbolethEvents(size);
+		ezproxyEvents = EventDataSets.ezproxyEvents(size);
+	}
+
+	private int next() {
+		index = index + 1 == size ? 0 : index + 1;
+		return index;
+	}
+
+	/**
+	 * Hash code computed from scratch, the setter clears the cached value, so
+	 * the result stays comparable with the uncached baseline.
+	 */
+	@Benchmark
+	public int shibbolethHashCode() {
+		final ShibbolethIdpAuthenticationEvent event = shibbolethEvents[next()];
+		event.setEventId(event.getEventId());
+		return event.hashCode();
+	}
+
+	/**
+	 * Hash code read back from the cache, as on every call after the first.
+	 */
+	@Benchmark
+	public int shibbolethCachedHashCode() {
+		return shibbolethEvents[next()].hashCode();
+	}
+
+	/**
+	 * Fingerprint computed from scratch, the setter clears the cached value.
+	 */
+	@Benchmark
+	public long shibbolethFingerprint() {
+		final ShibbolethIdpAuthenticationEvent event = shibbolethEvents[next()];
+		event.setEventId(event.getEventId());
+		return event.getEventFingerprint();
+	}
+
+	@Benchmark
+	public boolean shibbolethEquals() {
+		final int i = next();
+		return shibbolethEvents[i].equals(shibbolethCopies[i]);
+	}
+
+	@Benchmark
+	public ShibbolethIdpAuthenticationEvent shibbolethCopy() {
+		return shibbolethEvents[next()].copy();
+	}
+
+	@Benchmark
+	public String shibbolethToString() {
+		return shibbolethEvents[next()].toString();
+	}
+
+	@Benchmark
+	public EzproxyAuthenticationEvent ezproxyCopy() {
+		return ezproxyEvents[next()].copy();
+	}
+
+}
@@ -0,0 +1,168 @@
+/**
+ * Copyright (C) 2010 Cardiff University, Wales <smartp@cf.ac.uk>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.ac.cardiff.model.benchmark;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import uk.ac.cardiff.model.event.Event;
+import uk.ac.cardiff.model.event.EzproxyAuthenticationEvent;
+import uk.ac.cardiff.model.event.ShibbolethIdpAuthenticationEvent;
+import uk.ac.cardiff.model.event.jdbc.EventBulkLoader;
+import uk.ac.cardiff.model.event.jdbc.EventTableMapping;
+
+/**
+ * <p>
+ * Loads a night of Shibboleth IdP and Ezproxy events into an in-memory H2
+ * database: with an {@link EventBulkLoader}, and one single row insert per
+ * event as a JPA persist and flush per row would issue, committed every
+ * thousand rows. The tables are emptied before each load.
+ * </p>
+ * 
+ * @author philsmart
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EventBulkLoaderBenchmark {
+
+	@Param({ "20000" })
+	private int size;
+
+	private List<Event> events;
+
+	private Connection connection;
+
+	@Setup
+	public void setup() throws SQLException {
+		final ShibbolethIdpAuthenticationEvent[] shibboleth = EventDataSets.shibbolethEvents(size);
+		final EzproxyAuthenticationEvent[] ezproxy = EventDataSets.ezproxyEvents(size / 4);
+		events = new ArrayList<Event>(shibboleth.length + ezproxy.length);
+		int eventId = 0;
+		for (int i = 0; i < shibboleth.length; i++) {
+			shibboleth[i].setEventId(eventId++);
+			events.add(shibboleth[i]);
+			if (i % 4 == 0) {
+				ezproxy[i / 4].setEventId(eventId++);
+				events.add(ezproxy[i / 4]);
+			}
+		}
+		connection = DriverManager.getConnection("jdbc:h2:mem:events;DB_CLOSE_DELAY=-1");
+		try (Statement statement = connection.createStatement()) {
+			statement.execute(createTable(EventTableMapping.of(ShibbolethIdpAuthenticationEvent.class)));
+			statement.execute(createTable(EventTableMapping.of(EzproxyAuthenticationEvent.class)));
+		}
+	}
+
+	/**
+	 * @return the table as Hibernate creates it, but with strings long enough
+	 *         for the attributes column
+	 */
+	private static String createTable(final EventTableMapping mapping) {
+		final StringBuilder sql = new StringBuilder("CREATE TABLE ").append(mapping.getTable()).append(" (");
+		for (final String column : mapping.getColumns()) {
+			sql.append(column).append(' ').append(columnType(column)).append(", ");
+		}
+		return sql.append("PRIMARY KEY (eventId))").toString();
+	}
+
+	private static String columnType(final String column) {
+		switch (column) {
+		case "eventId":
+		case "resourceIdCategory":
+			return "INTEGER NOT NULL";
+		case "eventFingerprint":
+			return "BIGINT NOT NULL";
+		case "eventTime":
+			return "TIMESTAMP";
+		default:
+			return "VARCHAR(4000)";
+		}
+	}
+
+	@Setup(Level.Invocation)
+	public void truncate() throws SQLException {
+		try (Statement statement = connection.createStatement()) {
+			statement.execute("TRUNCATE TABLE ShibIdpAuthEvent");
+			statement.execute("TRUNCATE TABLE EzproxyAuthEvent");
+		}
+	}
+
+	@TearDown
+	public void tearDown() throws SQLException {
+		try (Statement statement = connection.createStatement()) {
+			statement.execute("DROP ALL OBJECTS");
+		}
+		connection.close();
+	}
+
+	@Benchmark
+	public long bulkLoader() throws SQLException {
+		try (EventBulkLoader loader = new EventBulkLoader(connection)) {
+			loader.addAll(events);
+			loader.flush();
+			return loader.getRowCount();
+		}
+	}
+
+	@Benchmark
+	public long rowByRow() throws SQLException {
+		connection.setAutoCommit(false);
+		final EventTableMapping shibboleth = EventTableMapping.of(ShibbolethIdpAuthenticationEvent.class);
+		final EventTableMapping ezproxy = EventTableMapping.of(EzproxyAuthenticationEvent.class);
+		long rows = 0;
+		try (PreparedStatement shibbolethInsert = connection.prepareStatement(shibboleth.insertSql(1));
+				PreparedStatement ezproxyInsert = connection.prepareStatement(ezproxy.insertSql(1))) {
+			for (final Event event : events) {
+				final boolean isShibboleth = event instanceof ShibbolethIdpAuthenticationEvent;
+				final PreparedStatement insert = isShibboleth ? shibbolethInsert : ezproxyInsert;
+				(isShibboleth ? shibboleth : ezproxy).bind(insert, 1, event);
+				rows += insert.executeUpdate();
+				if (rows % 1000 == 0) {
+					connection.commit();
+				}
+			}
+			connection.commit();
+		} finally {
+			connection.setAutoCommit(true);
+		}
+		return rows;
+	}
+
+}
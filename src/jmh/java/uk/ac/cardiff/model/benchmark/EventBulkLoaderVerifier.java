@@ -0,0 +1,223 @@
+/**
+ * Copyright (C) 2010 Cardiff University, Wales <smartp@cf.ac.uk>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.ac.cardiff.model.benchmark;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.cfg.Configuration;
+
+import uk.ac.cardiff.model.event.AuthenticationEvent;
+import uk.ac.cardiff.model.event.Event;
+import uk.ac.cardiff.model.event.EzproxyAuthenticationEvent;
+import uk.ac.cardiff.model.event.ShibbolethIdpAuthenticationEvent;
+import uk.ac.cardiff.model.event.auxiliary.EventMetadata;
+import uk.ac.cardiff.model.event.auxiliary.PrincipalInformation;
+import uk.ac.cardiff.model.event.jdbc.EventBulkLoader;
+
+/**
+ * <p>
+ * Checks that rows written by an {@link EventBulkLoader} read back as the
+ * events written, in an in-memory H2 database whose tables Hibernate created
+ * from the entity mappings:
+ * </p>
+ * <ul>
+ * <li>every event loads by id through Hibernate equal to the one written,
+ * including its embedded {@link PrincipalInformation} and
+ * {@link EventMetadata}, and with the same fingerprint, stored and computed;</li>
+ * <li>an event without them loads without them;</li>
+ * <li>a failed write rolls back the rows since the last commit, and closing the
+ * failed loader commits nothing.</li>
+ * </ul>
+ * 
+ * <p>
+ * Not a benchmark. Hibernate needs {@code java.lang} opened, as for
+ * {@link EventInheritanceBenchmark}, so run it in its own JVM with
+ * {@code mvn -Pbenchmark test-compile exec:exec -Dexec.classpathScope=test
+ * -Dexec.executable=java -Dexec.args="-XX:+IgnoreUnrecognizedVMOptions
+ * --add-opens=java.base/java.lang=ALL-UNNAMED -classpath %classpath
+ * uk.ac.cardiff.model.benchmark.EventBulkLoaderVerifier"}. Throws
+ * {@link IllegalStateException} on the first mismatch.
+ * </p>
+ * 
+ * @author philsmart
+ */
+public final class EventBulkLoaderVerifier {
+
+	private static final String URL = "jdbc:h2:mem:bulk;DB_CLOSE_DELAY=-1";
+
+	private EventBulkLoaderVerifier() {
+	}
+
+	public static void main(final String[] args) throws SQLException {
+		final Configuration configuration = new Configuration();
+		configuration.setProperty("hibernate.connection.driver_class", "org.h2.Driver");
+		configuration.setProperty("hibernate.connection.url", URL);
+		configuration.setProperty("hibernate.dialect", "org.hibernate.dialect.H2Dialect");
+		configuration.setProperty("hibernate.hbm2ddl.auto", "create");
+		configuration.addAnnotatedClass(Event.class);
+		configuration.addAnnotatedClass(AuthenticationEvent.class);
+		configuration.addAnnotatedClass(ShibbolethIdpAuthenticationEvent.class);
+		configuration.addAnnotatedClass(EzproxyAuthenticationEvent.class);
+		final SessionFactory sessionFactory = configuration.buildSessionFactory();
+		try (Connection connection = DriverManager.getConnection(URL)) {
+			try (Statement statement = connection.createStatement()) {
+				// the generated events release more attributes than the default length holds
+				statement.execute("ALTER TABLE ShibIdpAuthEvent ALTER COLUMN attributes VARCHAR(4000)");
+			}
+			final List<Event> events = events();
+			// small batches and commits, so every path of the loader is taken
+			try (EventBulkLoader loader = new EventBulkLoader(connection, 100, 700)) {
+				loader.addAll(events);
+			}
+			try (Session session = sessionFactory.openSession()) {
+				for (final Event event : events) {
+					verify(event, (Event) session.get(event.getClass(), event.getEventId()));
+					final long stored = storedFingerprint(connection, event);
+					check(stored == event.getEventFingerprint(), "event %d stored fingerprint %d, computed %d",
+							event.getEventId(), stored, event.getEventFingerprint());
+				}
+			}
+			verifyRollback(connection, events);
+			System.out.println("Loaded " + events.size() + " events, all read back equal with equal fingerprints,"
+					+ " and a failed load rolled back");
+		} finally {
+			sessionFactory.close();
+		}
+	}
+
+	/**
+	 * @return generated events with unique ids, and one of each type without its
+	 *         embedded objects or attributes
+	 */
+	private static List<Event> events() {
+		final List<Event> events = new ArrayList<Event>();
+		events.addAll(Arrays.asList(EventDataSets.shibbolethEvents(2000)));
+		events.addAll(Arrays.asList(EventDataSets.ezproxyEvents(500)));
+		final ShibbolethIdpAuthenticationEvent shibboleth = new ShibbolethIdpAuthenticationEvent();
+		shibboleth.setEventTimeMillis(events.get(0).getEventTimeMillis());
+		shibboleth.setPrincipalName("bare");
+		events.add(shibboleth);
+		final EzproxyAuthenticationEvent ezproxy = new EzproxyAuthenticationEvent();
+		ezproxy.setEventTimeMillis(events.get(0).getEventTimeMillis());
+		ezproxy.setRequesterIp("127.0.0.1");
+		events.add(ezproxy);
+		for (int i = 0; i < events.size(); i++) {
+			events.get(i).setEventId(i);
+		}
+		return events;
+	}
+
+	private static void verify(final Event written, final Event loaded) {
+		final int id = written.getEventId();
+		check(loaded != null, "event %d not found", id);
+		check(written.equals(loaded), "event %d loaded as %s, written as %s", id, loaded, written);
+		check(written.getEventFingerprint() == loaded.getEventFingerprint(), "event %d fingerprint %d, loaded %d", id,
+				written.getEventFingerprint(), loaded.getEventFingerprint());
+		check(written.getResourceIdCategory() == loaded.getResourceIdCategory(), "event %d resource id category", id);
+		final EventMetadata metadata = written.getEventMetadata();
+		if (metadata == null) {
+			check(loaded.getEventMetadata() == null, "event %d loaded metadata it was written without", id);
+		} else {
+			check(loaded.getEventMetadata() != null, "event %d loaded without metadata", id);
+			check(Objects.equals(metadata.getRaptorEntityId(), loaded.getEventMetadata().getRaptorEntityId())
+					&& Objects.equals(metadata.getServiceName(), loaded.getEventMetadata().getServiceName())
+					&& Objects.equals(metadata.getOrganisationName(), loaded.getEventMetadata().getOrganisationName()),
+					"event %d metadata %s, loaded %s", id, metadata, loaded.getEventMetadata());
+		}
+		final PrincipalInformation principal = ((AuthenticationEvent) written).getPrincipalInformation();
+		final PrincipalInformation loadedPrincipal = ((AuthenticationEvent) loaded).getPrincipalInformation();
+		if (principal == null) {
+			check(loadedPrincipal == null, "event %d loaded principal information it was written without", id);
+		} else {
+			check(loadedPrincipal != null, "event %d loaded without principal information", id);
+			check(Objects.equals(principal.getSchool(), loadedPrincipal.getSchool())
+					&& Objects.equals(principal.getAffiliation(), loadedPrincipal.getAffiliation()),
+					"event %d principal information %s, loaded %s", id, principal, loadedPrincipal);
+		}
+	}
+
+	private static long storedFingerprint(final Connection connection, final Event event) throws SQLException {
+		final String table = event instanceof ShibbolethIdpAuthenticationEvent ? "ShibIdpAuthEvent"
+				: "EzproxyAuthEvent";
+		try (Statement statement = connection.createStatement();
+				ResultSet rows = statement
+						.executeQuery("SELECT eventFingerprint FROM " + table + " WHERE eventId = " + event.getEventId())) {
+			check(rows.next(), "event %d has no row", event.getEventId());
+			return rows.getLong(1);
+		}
+	}
+
+	/**
+	 * Writes a batch of new rows, then a batch with one whose id is taken, and
+	 * checks that none of them remain.
+	 */
+	private static void verifyRollback(final Connection connection, final List<Event> events) throws SQLException {
+		final long before = rowCount(connection);
+		final ShibbolethIdpAuthenticationEvent[] fresh = EventDataSets.shibbolethEvents(150);
+		for (int i = 0; i < fresh.length; i++) {
+			fresh[i].setEventId(events.size() + i);
+		}
+		final ShibbolethIdpAuthenticationEvent duplicate = EventDataSets.shibbolethEvents(1)[0];
+		duplicate.setEventId(0);
+		final EventBulkLoader loader = new EventBulkLoader(connection, 100, 700);
+		boolean failed = false;
+		try {
+			loader.addAll(Arrays.asList(fresh));
+			loader.add(duplicate);
+			loader.flush();
+		} catch (final SQLException e) {
+			failed = true;
+		}
+		check(failed, "a duplicate id was written");
+		boolean refused = false;
+		try {
+			loader.add(fresh[0]);
+		} catch (final SQLException e) {
+			refused = true;
+		}
+		check(refused, "a failed loader accepted another event");
+		loader.close();
+		check(connection.getAutoCommit(), "auto commit not restored");
+		final long after = rowCount(connection);
+		check(after == before, "%d rows before the failed load, %d after", before, after);
+	}
+
+	private static long rowCount(final Connection connection) throws SQLException {
+		try (Statement statement = connection.createStatement();
+				ResultSet rows = statement.executeQuery(
+						"SELECT (SELECT COUNT(*) FROM ShibIdpAuthEvent) + (SELECT COUNT(*) FROM EzproxyAuthEvent)")) {
+			rows.next();
+			return rows.getLong(1);
+		}
+	}
+
+	private static void check(final boolean condition, final String format, final Object... args) {
+		if (!condition) {
+			throw new IllegalStateException(String.format(format, args));
+		}
+	}
+
+}
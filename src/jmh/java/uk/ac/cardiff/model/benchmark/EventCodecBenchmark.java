@@ -0,0 +1,130 @@
+/**
+ * Copyright (C) 2010 Cardiff University, Wales <smartp@cf.ac.uk>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.ac.cardiff.model.benchmark;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.joda.JodaModule;
+
+import uk.ac.cardiff.model.event.Event;
+import uk.ac.cardiff.model.event.ShibbolethIdpAuthenticationEvent;
+import uk.ac.cardiff.model.event.codec.EventCodec;
+
+/**
+ * <p>
+ * Compares the binary {@link EventCodec} with Jackson JSON, encoding and
+ * decoding a time ordered batch of Shibboleth IdP events. The encoded size of
+ * each is reported as the {@code bytes} secondary result of its encode
+ * benchmark.
+ * </p>
+ * 
+ * @author philsmart
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EventCodecBenchmark {
+
+	@Param({ "1000" })
+	private int size;
+
+	private List<ShibbolethIdpAuthenticationEvent> events;
+
+	private final EventCodec codec = new EventCodec();
+
+	private final ObjectMapper mapper = new ObjectMapper().registerModule(new JodaModule());
+
+	private ByteBuffer buffer;
+
+	private ByteBuffer encoded;
+
+	private byte[] json;
+
+	@Setup
+	public void setup() throws IOException {
+		final ShibbolethIdpAuthenticationEvent[] generated = EventDataSets.shibbolethEvents(size);
+		Arrays.sort(generated, Comparator.comparingLong(Event::getEventTimeMillis));
+		events = Arrays.asList(generated);
+		encoded = codec.encode(events);
+		buffer = ByteBuffer.allocate(encoded.capacity());
+		json = mapper.writeValueAsBytes(events);
+	}
+
+	/**
+	 * The size of the last batch encoded.
+	 */
+	@State(Scope.Thread)
+	@AuxCounters(AuxCounters.Type.EVENTS)
+	public static class EncodedSize {
+
+		public long bytes;
+
+		@Setup(Level.Iteration)
+		public void reset() {
+			bytes = 0;
+		}
+
+	}
+
+	@Benchmark
+	public ByteBuffer encodeBinary(final EncodedSize encodedSize) {
+		buffer.clear();
+		codec.encode(events, buffer);
+		encodedSize.bytes = buffer.position();
+		return buffer;
+	}
+
+	@Benchmark
+	public List<Event> decodeBinary() {
+		return codec.decode(encoded.duplicate());
+	}
+
+	@Benchmark
+	public byte[] encodeJson(final EncodedSize encodedSize) throws IOException {
+		final byte[] bytes = mapper.writeValueAsBytes(events);
+		encodedSize.bytes = bytes.length;
+		return bytes;
+	}
+
+	@Benchmark
+	public ShibbolethIdpAuthenticationEvent[] decodeJson() throws IOException {
+		return mapper.readValue(json, ShibbolethIdpAuthenticationEvent[].class);
+	}
+
+}
@@ -0,0 +1,244 @@
+/**
+ * Copyright (C) 2010 Cardiff University, Wales <smartp@cf.ac.uk>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.ac.cardiff.model.benchmark;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.joda.time.DateTime;
+
+import uk.ac.cardiff.model.event.AuthenticationEvent;
+import uk.ac.cardiff.model.event.EzproxyAuthenticationEvent;
+import uk.ac.cardiff.model.event.ShibbolethIdpAuthenticationEvent;
+import uk.ac.cardiff.model.event.auxiliary.EventMetadata;
+import uk.ac.cardiff.model.event.auxiliary.PrincipalInformation;
+
+/**
+ * <p>
+ * Generates realistic, repeatable data sets for the benchmarks. Values are drawn
+ * from small pools of service providers, bindings and attribute names, mirroring
+ * the low cardinality seen in real Shibboleth IdP and ezproxy logs, while
+ * principal names and event times are spread widely.
+ * </p>
+ * 
+ * @author philsmart
+ */
+public final class EventDataSets {
+
+	/** Fixed seed, so every run benchmarks the same data. */
+	private static final long SEED = 0x5eed_cafeL;
+
+	/** Start of the generated time range, 2017-01-01T00:00:00Z. */
+	private static final long START_MILLIS = 1483228800000L;
+
+	/** One day in milliseconds. */
+	private static final long DAY_MILLIS = 24L * 60 * 60 * 1000;
+
+	private static final String[] SERVICE_HOSTS = { "idp1.cardiff.ac.uk", "idp2.cardiff.ac.uk", "idp3.cardiff.ac.uk" };
+
+	private static final String[] BINDINGS = { "urn:oasis:names:tc:SAML:2.0:bindings:HTTP-POST",
+			"urn:oasis:names:tc:SAML:2.0:bindings:HTTP-Redirect", "urn:oasis:names:tc:SAML:2.0:bindings:SOAP",
+			"urn:mace:shibboleth:1.0:profiles:AuthnRequest" };
+
+	private static final String[] AUTHENTICATION_TYPES = { "urn:oasis:names:tc:SAML:2.0:ac:classes:PasswordProtectedTransport",
+			"urn:oasis:names:tc:SAML:2.0:ac:classes:unspecified" };
+
+	private static final String[] EVENT_TYPES = { "Shibboleth-SSO", "SAML2:SSO", "SAML2:AttributeQuery" };
+
+	private static final String[] SCHOOLS = { "COMSC", "MATHS", "PHYSX", "ENGIN", "MEDIC", "LAWPL", "CARBS", "ENCAP" };
+
+	private static final String[] AFFILIATIONS = { "staff", "student", "member", "affiliate" };
+
+	private static final String[] ATTRIBUTE_NAMES = { "eduPersonPrincipalName", "eduPersonScopedAffiliation",
+			"eduPersonTargetedID", "eduPersonEntitlement", "eduPersonAffiliation", "eduPersonNickname",
+			"eduPersonOrgDN", "eduPersonOrgUnitDN", "eduPersonPrimaryAffiliation", "eduPersonPrimaryOrgUnitDN",
+			"eduPersonAssurance", "eduPersonUniqueId", "eduPersonOrcid", "mail", "displayName", "givenName", "sn",
+			"cn", "uid", "o", "ou", "telephoneNumber", "title", "schacHomeOrganization",
+			"schacHomeOrganizationType", "schacPersonalUniqueCode", "preferredLanguage", "employeeNumber",
+			"departmentNumber", "postalAddress", "transientId", "persistentId" };
+
+	private EventDataSets() {
+	}
+
+	/**
+	 * Builds the list of service provider entityIDs.
+	 * 
+	 * @param random
+	 *            the random source
+	 * @param count
+	 *            the number of distinct service providers
+	 * @return the service provider entityIDs
+	 */
+	private static String[] resourceIds(final Random random, final int count) {
+		final String[] resourceIds = new String[count];
+		for (int i = 0; i < count; i++) {
+			resourceIds[i] = "https://sp" + i + ".service-" + random.nextInt(1000) + ".ac.uk/shibboleth";
+		}
+		return resourceIds;
+	}
+
+	/**
+	 * Picks {@code count} distinct attribute names.
+	 * 
+	 * @param random
+	 *            the random source
+	 * @param count
+	 *            number of attributes, at most the size of the attribute name pool
+	 * @return the released attributes
+	 */
+	public static String[] attributes(final Random random, final int count) {
+		final String[] pool = ATTRIBUTE_NAMES.clone();
+		final String[] attributes = new String[count];
+		for (int i = 0; i < count; i++) {
+			final int pick = i + random.nextInt(pool.length - i);
+			final String swap = pool[i];
+			pool[i] = pool[pick];
+			pool[pick] = swap;
+			attributes[i] = pool[i];
+		}
+		return attributes;
+	}
+
+	/**
+	 * Creates {@code size} Shibboleth IdP events with between 5 and 30 released
+	 * attributes each.
+	 * 
+	 * @param size
+	 *            the number of events to create
+	 * @return the events
+	 */
+	public static ShibbolethIdpAuthenticationEvent[] shibbolethEvents(final int size) {
+		final Random random = new Random(SEED);
+		final String[] resourceIds = resourceIds(random, 200);
+		final ShibbolethIdpAuthenticationEvent[] events = new ShibbolethIdpAuthenticationEvent[size];
+		for (int i = 0; i < size; i++) {
+			final ShibbolethIdpAuthenticationEvent event = new ShibbolethIdpAuthenticationEvent();
+			populate(random, event, resourceIds);
+			event.setRequestBinding(pick(random, BINDINGS));
+			event.setResponseBinding(pick(random, BINDINGS));
+			event.setAttributes(attributes(random, 5 + random.nextInt(26)));
+			event.setEventId(event.hashCode());
+			events[i] = event;
+		}
+		return events;
+	}
+
+	/**
+	 * Creates {@code size} Shibboleth IdP events whose resourceIds and principal
+	 * names follow Zipf distributions, as real usage does: a few service
+	 * providers and principals account for most events, over a long tail.
+	 * 
+	 * @param size
+	 *            the number of events to create
+	 * @param resources
+	 *            the number of distinct service providers
+	 * @param principals
+	 *            the number of distinct principals
+	 * @param exponent
+	 *            the Zipf exponent, e.g. 1.0
+	 * @return the events
+	 */
+	public static ShibbolethIdpAuthenticationEvent[] zipfianShibbolethEvents(final int size, final int resources,
+			final int principals, final double exponent) {
+		final ShibbolethIdpAuthenticationEvent[] events = shibbolethEvents(size);
+		final Random random = new Random(SEED);
+		final String[] resourceIds = resourceIds(random, resources);
+		final double[] resourceRanks = zipfDistribution(resources, exponent);
+		final double[] principalRanks = zipfDistribution(principals, exponent);
+		for (final ShibbolethIdpAuthenticationEvent event : events) {
+			event.setResourceId(resourceIds[zipf(random, resourceRanks)]);
+			event.setResourceHost(event.getResourceId().substring(8, event.getResourceId().indexOf('/', 8)));
+			event.setPrincipalName("c" + (1000000 + zipf(random, principalRanks)));
+			event.setEventId(event.hashCode());
+		}
+		return events;
+	}
+
+	/**
+	 * @return the cumulative probability of each rank of a Zipf distribution
+	 */
+	private static double[] zipfDistribution(final int count, final double exponent) {
+		final double[] cumulative = new double[count];
+		double sum = 0;
+		for (int rank = 0; rank < count; rank++) {
+			sum += 1 / Math.pow(rank + 1, exponent);
+			cumulative[rank] = sum;
+		}
+		for (int rank = 0; rank < count; rank++) {
+			cumulative[rank] /= sum;
+		}
+		return cumulative;
+	}
+
+	/**
+	 * @return a rank drawn from the distribution, 0 the most frequent
+	 */
+	private static int zipf(final Random random, final double[] cumulative) {
+		final int position = Arrays.binarySearch(cumulative, random.nextDouble());
+		return Math.min(position >= 0 ? position : -position - 1, cumulative.length - 1);
+	}
+
+	/**
+	 * Creates {@code size} ezproxy events.
+	 * 
+	 * @param size
+	 *            the number of events to create
+	 * @return the events
+	 */
+	public static EzproxyAuthenticationEvent[] ezproxyEvents(final int size) {
+		final Random random = new Random(SEED);
+		final String[] resourceIds = resourceIds(random, 200);
+		final EzproxyAuthenticationEvent[] events = new EzproxyAuthenticationEvent[size];
+		for (int i = 0; i < size; i++) {
+			final EzproxyAuthenticationEvent event = new EzproxyAuthenticationEvent();
+			populate(random, event, resourceIds);
+			event.setRequesterIp("131.251." + random.nextInt(256) + "." + random.nextInt(256));
+			event.setEventId(event.hashCode());
+			events[i] = event;
+		}
+		return events;
+	}
+
+	private static void populate(final Random random, final AuthenticationEvent event,
+			final String[] resourceIds) {
+		event.setEventTime(new DateTime(START_MILLIS + (long) (random.nextDouble() * DAY_MILLIS)));
+		final String serviceHost = pick(random, SERVICE_HOSTS);
+		event.setServiceHost(serviceHost);
+		event.setServiceId("https://" + serviceHost + "/idp/shibboleth");
+		event.setEventType(pick(random, EVENT_TYPES));
+		event.setResourceId(pick(random, resourceIds));
+		event.setResourceHost(event.getResourceId().substring(8, event.getResourceId().indexOf('/', 8)));
+		event.setResourceIdCategory(1 + random.nextInt(2));
+		event.setAuthenticationType(pick(random, AUTHENTICATION_TYPES));
+		event.setPrincipalName("c" + (1000000 + random.nextInt(40000)));
+
+		final PrincipalInformation principalInformation = new PrincipalInformation();
+		principalInformation.setSchool(pick(random, SCHOOLS));
+		principalInformation.setAffiliation(pick(random, AFFILIATIONS));
+		event.setPrincipalInformation(principalInformation);
+
+		final EventMetadata eventMetadata = new EventMetadata();
+		eventMetadata.setOrganisationName("Cardiff University");
+		eventMetadata.setServiceName(serviceHost);
+		eventMetadata.setRaptorEntityId("https://raptor.cardiff.ac.uk/ica");
+		event.setEventMetadata(eventMetadata);
+	}
+
+	private static String pick(final Random random, final String[] values) {
+		return values[random.nextInt(values.length)];
+	}
+
+}
@@ -0,0 +1,108 @@
+/**
+ * Copyright (C) 2010 Cardiff University, Wales <smartp@cf.ac.uk>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.ac.cardiff.model.benchmark;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import uk.ac.cardiff.model.event.Event;
+import uk.ac.cardiff.model.event.ShibbolethIdpAuthenticationEvent;
+import uk.ac.cardiff.model.event.dedup.EventDeduplicator;
+
+/**
+ * <p>
+ * Deduplicates a stream of Shibboleth IdP events read in overlapping chunks, as
+ * a collector re-reading a log does, with a {@link HashSet} of every event, an
+ * exact only {@link EventDeduplicator} and one that also keeps Bloom filters.
+ * The window holds around {@code 1/40} of the events.
+ * </p>
+ * 
+ * @author philsmart
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EventDeduplicatorBenchmark {
+
+	@Param({ "100000" })
+	private int size;
+
+	private List<ShibbolethIdpAuthenticationEvent> stream;
+
+	private long windowMillis;
+
+	@Setup
+	public void setup() {
+		final ShibbolethIdpAuthenticationEvent[] events = EventDataSets.shibbolethEvents(size);
+		Arrays.sort(events, Comparator.comparingLong(Event::getEventTimeMillis));
+		windowMillis = (events[size - 1].getEventTimeMillis() - events[0].getEventTimeMillis()) / 40;
+		final int chunk = size / 20;
+		stream = new ArrayList<ShibbolethIdpAuthenticationEvent>();
+		for (int i = 0; i < size; i += chunk) {
+			for (int j = Math.max(0, i - chunk / 5); j < Math.min(size, i + chunk); j++) {
+				stream.add(events[j]);
+			}
+		}
+		// fingerprints are cached, as they would be after the first read
+		for (final ShibbolethIdpAuthenticationEvent event : events) {
+			event.getEventFingerprint();
+		}
+	}
+
+	@Benchmark
+	public int hashSet() {
+		final Set<ShibbolethIdpAuthenticationEvent> seen = new HashSet<ShibbolethIdpAuthenticationEvent>();
+		int accepted = 0;
+		for (final ShibbolethIdpAuthenticationEvent event : stream) {
+			if (seen.add(event)) {
+				accepted++;
+			}
+		}
+		return accepted;
+	}
+
+	@Benchmark
+	public int exactWindow() {
+		return new EventDeduplicator<ShibbolethIdpAuthenticationEvent>(windowMillis, 16).filter(stream).size();
+	}
+
+	@Benchmark
+	public int windowWithFilters() {
+		return new EventDeduplicator<ShibbolethIdpAuthenticationEvent>(windowMillis, 16, Integer.MAX_VALUE, 4,
+				size / 20, 0.01).filter(stream).size();
+	}
+
+}
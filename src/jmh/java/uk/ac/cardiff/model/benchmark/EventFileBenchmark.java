@@ -0,0 +1,166 @@
+/**
+ * Copyright (C) 2010 Cardiff University, Wales <smartp@cf.ac.uk>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.ac.cardiff.model.benchmark;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import uk.ac.cardiff.model.event.Event;
+import uk.ac.cardiff.model.event.ShibbolethIdpAuthenticationEvent;
+import uk.ac.cardiff.model.event.batch.EventBatch;
+import uk.ac.cardiff.model.event.batch.EventFileColumn;
+import uk.ac.cardiff.model.event.batch.EventFileReader;
+import uk.ac.cardiff.model.event.batch.EventFileWriter;
+import uk.ac.cardiff.model.event.batch.StringColumn;
+import uk.ac.cardiff.model.event.codec.EventCodec;
+
+/**
+ * <p>
+ * Compares counting one month of a year of events by service id, reading a
+ * file of the row oriented {@link EventCodec} encoding, which decodes every
+ * event, with reading an {@link EventFileReader} columnar file, which skips
+ * the row groups outside the month and reads only the service id column. A
+ * columnar scan of the whole year is included for reference.
+ * </p>
+ * 
+ * @author philsmart
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EventFileBenchmark {
+
+	private static final long YEAR_MILLIS = 365L * 24 * 60 * 60 * 1000;
+
+	private static final Set<EventFileColumn> SERVICE_ID = EnumSet.of(EventFileColumn.SERVICE_ID);
+
+	@Param({ "1000000" })
+	private int size;
+
+	private Path rowFile;
+
+	private Path columnFile;
+
+	private EventFileReader reader;
+
+	private long from;
+
+	private long to;
+
+	@Setup
+	public void setup() throws IOException {
+		final ShibbolethIdpAuthenticationEvent[] events = EventDataSets.shibbolethEvents(size);
+		final long start = events[0].getEventTimeMillis();
+		for (int i = 0; i < size; i++) {
+			events[i].setEventTimeMillis(start + i * (YEAR_MILLIS / size));
+		}
+		from = start + YEAR_MILLIS / 2;
+		to = from + YEAR_MILLIS / 12;
+		final List<ShibbolethIdpAuthenticationEvent> list = Arrays.asList(events);
+		rowFile = Files.createTempFile("events", ".bin");
+		final ByteBuffer encoded = new EventCodec().encode(list);
+		try (FileChannel channel = FileChannel.open(rowFile, StandardOpenOption.WRITE)) {
+			while (encoded.hasRemaining()) {
+				channel.write(encoded);
+			}
+		}
+		columnFile = Files.createTempFile("events", ".rpte");
+		try (EventFileWriter writer = new EventFileWriter(columnFile)) {
+			writer.addAll(list);
+		}
+		reader = EventFileReader.open(columnFile);
+	}
+
+	@TearDown
+	public void tearDown() throws IOException {
+		reader.close();
+		Files.delete(rowFile);
+		Files.delete(columnFile);
+	}
+
+	@Benchmark
+	public Map<String, Integer> rowMonth() throws IOException {
+		final List<Event> events;
+		try (FileChannel channel = FileChannel.open(rowFile, StandardOpenOption.READ)) {
+			events = new EventCodec().decode(channel.map(MapMode.READ_ONLY, 0, channel.size()));
+		}
+		final Map<String, Integer> counts = new HashMap<String, Integer>();
+		for (final Event event : events) {
+			if (event.getEventTimeMillis() >= from && event.getEventTimeMillis() < to) {
+				counts.merge(event.getServiceId(), 1, Integer::sum);
+			}
+		}
+		return counts;
+	}
+
+	@Benchmark
+	public Map<String, Integer> columnMonth() throws IOException {
+		final Map<String, Integer> counts = new HashMap<String, Integer>();
+		reader.scan(from, to, SERVICE_ID, batch -> count(batch, counts));
+		return counts;
+	}
+
+	@Benchmark
+	public Map<String, Integer> columnYear() throws IOException {
+		final Map<String, Integer> counts = new HashMap<String, Integer>();
+		reader.scan(Long.MIN_VALUE, Long.MAX_VALUE, SERVICE_ID, batch -> count(batch, counts));
+		return counts;
+	}
+
+	private static void count(final EventBatch batch, final Map<String, Integer> counts) {
+		final int[] codeCounts = new int[batch.getDictionary().size()];
+		for (int row = 0; row < batch.size(); row++) {
+			final int code = batch.getCode(StringColumn.SERVICE_ID, row);
+			if (code >= 0) {
+				codeCounts[code]++;
+			}
+		}
+		for (int code = 0; code < codeCounts.length; code++) {
+			if (codeCounts[code] > 0) {
+				counts.merge(batch.getDictionary().decode(code), codeCounts[code], Integer::sum);
+			}
+		}
+	}
+
+}
@@ -0,0 +1,137 @@
+/**
+ * Copyright (C) 2010 Cardiff University, Wales <smartp@cf.ac.uk>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.ac.cardiff.model.benchmark;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import uk.ac.cardiff.model.event.ShibbolethIdpAuthenticationEvent;
+import uk.ac.cardiff.model.event.index.EventIndex;
+import uk.ac.cardiff.model.event.index.EventIndexKey;
+
+/**
+ * <p>
+ * "Events for service X between t1 and t2" over 30 days of Shibboleth IdP
+ * events, by a linear scan of a list and through an {@link EventIndex}. The
+ * service is the relying party, i.e. the {@code resourceId}, one of 200. Each
+ * invocation queries the next of a fixed set of services over a random span of
+ * one to thirty days.
+ * </p>
+ * 
+ * @author philsmart
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EventIndexBenchmark {
+
+	private static final long DAY = 24 * 60 * 60 * 1000L;
+
+	private static final long START = 1480000000000L;
+
+	private static final int QUERIES = 256;
+
+	@Param({ "500000" })
+	private int size;
+
+	private List<ShibbolethIdpAuthenticationEvent> events;
+
+	private EventIndex<ShibbolethIdpAuthenticationEvent> index;
+
+	private String[] services;
+
+	private long[] froms;
+
+	private long[] tos;
+
+	private int query;
+
+	@Setup
+	public void setup() {
+		final ShibbolethIdpAuthenticationEvent[] generated = EventDataSets.shibbolethEvents(size);
+		final Random random = new Random(42);
+		for (final ShibbolethIdpAuthenticationEvent event : generated) {
+			event.setEventTimeMillis(START + (long) (random.nextDouble() * 30 * DAY));
+		}
+		events = Arrays.asList(generated);
+		index = new EventIndex<ShibbolethIdpAuthenticationEvent>();
+		index.addAll(events);
+		services = new String[QUERIES];
+		froms = new long[QUERIES];
+		tos = new long[QUERIES];
+		for (int i = 0; i < QUERIES; i++) {
+			services[i] = generated[random.nextInt(size)].getResourceId();
+			final long span = (1 + random.nextInt(30)) * DAY;
+			froms[i] = START + (long) (random.nextDouble() * (30 * DAY - span));
+			tos[i] = froms[i] + span;
+		}
+	}
+
+	private int next() {
+		query = query + 1 == QUERIES ? 0 : query + 1;
+		return query;
+	}
+
+	@Benchmark
+	public void linearScan(final Blackhole blackhole) {
+		final int q = next();
+		final String service = services[q];
+		final long from = froms[q];
+		final long to = tos[q];
+		for (final ShibbolethIdpAuthenticationEvent event : events) {
+			final long time = event.getEventTimeMillis();
+			if (time >= from && time < to && service.equals(event.getResourceId())) {
+				blackhole.consume(event);
+			}
+		}
+	}
+
+	@Benchmark
+	public void indexRange(final Blackhole blackhole) {
+		final int q = next();
+		final Iterator<ShibbolethIdpAuthenticationEvent> range = index.range(EventIndexKey.RESOURCE_ID, services[q],
+				froms[q], tos[q]);
+		while (range.hasNext()) {
+			blackhole.consume(range.next());
+		}
+	}
+
+	@Benchmark
+	public long indexCount() {
+		final int q = next();
+		return index.count(EventIndexKey.RESOURCE_ID, services[q], froms[q], tos[q]);
+	}
+
+}
@@ -0,0 +1,171 @@
+/**
+ * Copyright (C) 2010 Cardiff University, Wales <smartp@cf.ac.uk>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.ac.cardiff.model.benchmark;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.StatelessSession;
+import org.hibernate.cfg.Configuration;
+import org.joda.time.DateTime;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import uk.ac.cardiff.model.event.AuthenticationEvent;
+import uk.ac.cardiff.model.event.Event;
+import uk.ac.cardiff.model.event.EzproxyAuthenticationEvent;
+import uk.ac.cardiff.model.event.ShibbolethIdpAuthenticationEvent;
+
+/**
+ * <p>
+ * Polymorphic time range queries over a month of Shibboleth IdP and Ezproxy
+ * events in an in-memory H2 database, mapped by the {@code TABLE_PER_CLASS}
+ * annotations, which query a UNION of the subclass tables without indexes, and
+ * by {@code META-INF/event-single-table-orm.xml}, which queries one indexed
+ * table. Each query is of a different hour, day or week in turn.
+ * </p>
+ * 
+ * @author philsmart
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+// Hibernate 5.0 defines its proxies by reflection on ClassLoader
+@Fork(value = 1, jvmArgsAppend = { "-XX:+IgnoreUnrecognizedVMOptions",
+		"--add-opens=java.base/java.lang=ALL-UNNAMED" })
+public class EventInheritanceBenchmark {
+
+	private static final long HOUR_MILLIS = 60 * 60 * 1000;
+
+	private static final long DAY_MILLIS = 24 * HOUR_MILLIS;
+
+	private static final int DAYS = 30;
+
+	@Param({ "tablePerClass", "singleTable" })
+	private String layout;
+
+	@Param({ "100000" })
+	private int size;
+
+	private ShibbolethIdpAuthenticationEvent[] events;
+
+	private long start;
+
+	private SessionFactory sessionFactory;
+
+	private int query;
+
+	@Setup
+	public void setup() {
+		final Configuration configuration = new Configuration();
+		configuration.setProperty("hibernate.connection.driver_class", "org.h2.Driver");
+		configuration.setProperty("hibernate.connection.url", "jdbc:h2:mem:" + layout + ";DB_CLOSE_DELAY=-1");
+		configuration.setProperty("hibernate.dialect", "org.hibernate.dialect.H2Dialect");
+		configuration.setProperty("hibernate.hbm2ddl.auto", "create");
+		configuration.setProperty("hibernate.jdbc.batch_size", "100");
+		configuration.addAnnotatedClass(Event.class);
+		configuration.addAnnotatedClass(AuthenticationEvent.class);
+		configuration.addAnnotatedClass(ShibbolethIdpAuthenticationEvent.class);
+		configuration.addAnnotatedClass(EzproxyAuthenticationEvent.class);
+		if (layout.equals("singleTable")) {
+			configuration.addResource("META-INF/event-single-table-orm.xml");
+		}
+		sessionFactory = configuration.buildSessionFactory();
+
+		events = EventDataSets.shibbolethEvents(size);
+		final EzproxyAuthenticationEvent[] ezproxy = EventDataSets.ezproxyEvents(size / 4);
+		start = events[0].getEventTimeMillis();
+		final long spacing = DAYS * DAY_MILLIS / (size + ezproxy.length);
+		int eventId = 0;
+		try (StatelessSession session = sessionFactory.openStatelessSession()) {
+			session.beginTransaction();
+			// the released attributes are longer than the default column
+			session.createSQLQuery("ALTER TABLE "
+					+ (layout.equals("singleTable") ? "Event" : "ShibIdpAuthEvent")
+					+ " ALTER COLUMN attributes VARCHAR(4000)").executeUpdate();
+			for (int i = 0; i < events.length; i++) {
+				events[i].setEventId(eventId);
+				events[i].setEventTimeMillis(start + spacing * eventId++);
+				session.insert(events[i]);
+				if (i % 4 == 0) {
+					ezproxy[i / 4].setEventId(eventId);
+					ezproxy[i / 4].setEventTimeMillis(start + spacing * eventId++);
+					session.insert(ezproxy[i / 4]);
+				}
+			}
+			session.getTransaction().commit();
+		}
+	}
+
+	@TearDown
+	public void tearDown() {
+		try (Session session = sessionFactory.openSession()) {
+			session.createSQLQuery("DROP ALL OBJECTS").executeUpdate();
+		}
+		sessionFactory.close();
+	}
+
+	@Benchmark
+	public Object countHour() {
+		final long from = start + (query++ % (DAYS * 24)) * HOUR_MILLIS;
+		try (Session session = sessionFactory.openSession()) {
+			return session.createQuery("select count(e) from Event e where e.eventTime >= :from and e.eventTime < :to")
+					.setParameter("from", new DateTime(from)).setParameter("to", new DateTime(from + HOUR_MILLIS))
+					.uniqueResult();
+		}
+	}
+
+	@Benchmark
+	public Object countServiceDay() {
+		final Event event = events[query++ % events.length];
+		final long from = start + (query % DAYS) * DAY_MILLIS;
+		try (Session session = sessionFactory.openSession()) {
+			return session
+					.createQuery("select count(e) from Event e where e.serviceId = :serviceId"
+							+ " and e.eventTime >= :from and e.eventTime < :to")
+					.setParameter("serviceId", event.getServiceId()).setParameter("from", new DateTime(from))
+					.setParameter("to", new DateTime(from + DAY_MILLIS)).uniqueResult();
+		}
+	}
+
+	@Benchmark
+	public List<?> principalWeek() {
+		final AuthenticationEvent event = events[query++ % events.length];
+		final long from = event.getEventTimeMillis() - 7 * DAY_MILLIS;
+		try (Session session = sessionFactory.openSession()) {
+			return session
+					.createQuery("from AuthenticationEvent e where e.principalName = :principalName"
+							+ " and e.eventTime >= :from and e.eventTime < :to")
+					.setParameter("principalName", event.getPrincipalName()).setParameter("from", new DateTime(from))
+					.setParameter("to", new DateTime(event.getEventTimeMillis() + 1)).list();
+		}
+	}
+
+}
@@ -0,0 +1,138 @@
+/**
+ * Copyright (C) 2010 Cardiff University, Wales <smartp@cf.ac.uk>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.ac.cardiff.model.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.joda.JodaModule;
+
+import uk.ac.cardiff.model.event.ShibbolethIdpAuthenticationEvent;
+import uk.ac.cardiff.model.event.json.EventArrayReader;
+import uk.ac.cardiff.model.event.json.EventArrayWriter;
+import uk.ac.cardiff.model.event.json.EventJsonModule;
+
+/**
+ * <p>
+ * Compares reflective bean JSON binding of Shibboleth IdP events with the
+ * streaming {@link EventJsonModule}, both through an {@link ObjectMapper} and
+ * through the {@link EventArrayWriter} and {@link EventArrayReader} directly.
+ * </p>
+ * 
+ * @author philsmart
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EventJsonBenchmark {
+
+	@Param({ "1000" })
+	private int size;
+
+	private List<ShibbolethIdpAuthenticationEvent> events;
+
+	private final ObjectMapper beanMapper = new ObjectMapper().registerModule(new JodaModule());
+
+	private final ObjectMapper moduleMapper = new ObjectMapper().registerModule(new EventJsonModule());
+
+	private byte[] json;
+
+	@Setup
+	public void setup() throws IOException {
+		events = Arrays.asList(EventDataSets.shibbolethEvents(size));
+		json = beanMapper.writeValueAsBytes(events);
+	}
+
+	@Benchmark
+	public byte[] writeBean() throws IOException {
+		return beanMapper.writeValueAsBytes(events);
+	}
+
+	@Benchmark
+	public byte[] writeModule() throws IOException {
+		return moduleMapper.writeValueAsBytes(events);
+	}
+
+	@Benchmark
+	public long writeStreaming(final Blackhole blackhole) throws IOException {
+		final EventArrayWriter writer = new EventArrayWriter(new BlackholeOutputStream(blackhole));
+		writer.writeAll(events);
+		writer.close();
+		return writer.getCount();
+	}
+
+	@Benchmark
+	public ShibbolethIdpAuthenticationEvent[] readBean() throws IOException {
+		return beanMapper.readValue(json, ShibbolethIdpAuthenticationEvent[].class);
+	}
+
+	@Benchmark
+	public ShibbolethIdpAuthenticationEvent[] readModule() throws IOException {
+		return moduleMapper.readValue(json, ShibbolethIdpAuthenticationEvent[].class);
+	}
+
+	@Benchmark
+	public void readStreaming(final Blackhole blackhole) throws IOException {
+		try (EventArrayReader<ShibbolethIdpAuthenticationEvent> reader = new EventArrayReader<ShibbolethIdpAuthenticationEvent>(
+				new ByteArrayInputStream(json), ShibbolethIdpAuthenticationEvent.class)) {
+			while (reader.hasNext()) {
+				blackhole.consume(reader.next());
+			}
+		}
+	}
+
+	/** Discards output, so streaming writes are measured without buffer growth. */
+	private static final class BlackholeOutputStream extends OutputStream {
+
+		private final Blackhole blackhole;
+
+		BlackholeOutputStream(final Blackhole blackhole) {
+			this.blackhole = blackhole;
+		}
+
+		@Override
+		public void write(final int b) {
+			blackhole.consume(b);
+		}
+
+		@Override
+		public void write(final byte[] b, final int off, final int len) {
+			blackhole.consume(len);
+		}
+	}
+
+}
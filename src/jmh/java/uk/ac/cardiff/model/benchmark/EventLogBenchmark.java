@@ -0,0 +1,108 @@
+/**
+ * Copyright (C) 2010 Cardiff University, Wales <smartp@cf.ac.uk>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.ac.cardiff.model.benchmark;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import uk.ac.cardiff.model.event.ShibbolethIdpAuthenticationEvent;
+import uk.ac.cardiff.model.event.log.EventLog;
+
+/**
+ * <p>
+ * Durable appends to an {@link EventLog} in a temporary directory: one event
+ * per record from a single thread, so an fsync per event, from eight threads,
+ * which share fsyncs by group commit, and a hundred events per record.
+ * </p>
+ * 
+ * @author philsmart
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EventLogBenchmark {
+
+	private static final int BATCH_SIZE = 100;
+
+	@Param({ "10000" })
+	private int size;
+
+	private ShibbolethIdpAuthenticationEvent[] events;
+
+	private Path directory;
+
+	private EventLog log;
+
+	@Setup
+	public void setup() throws IOException {
+		events = EventDataSets.shibbolethEvents(size);
+		directory = Files.createTempDirectory("events");
+		log = new EventLog(directory, 16 * 1024 * 1024, EventLog.DEFAULT_SEGMENT_MILLIS);
+	}
+
+	@TearDown
+	public void tearDown() throws IOException {
+		log.close();
+		try (DirectoryStream<Path> segments = Files.newDirectoryStream(directory)) {
+			for (final Path segment : segments) {
+				Files.delete(segment);
+			}
+		}
+		Files.delete(directory);
+	}
+
+	@Benchmark
+	public long appendOne() throws IOException {
+		return log.append(events[ThreadLocalRandom.current().nextInt(size)]);
+	}
+
+	@Benchmark
+	@Threads(8)
+	public long appendOneConcurrent() throws IOException {
+		return log.append(events[ThreadLocalRandom.current().nextInt(size)]);
+	}
+
+	@Benchmark
+	public long appendBatch() throws IOException {
+		final int from = ThreadLocalRandom.current().nextInt(size - BATCH_SIZE);
+		final List<ShibbolethIdpAuthenticationEvent> batch = Arrays.asList(events).subList(from, from + BATCH_SIZE);
+		return log.append(batch);
+	}
+
+}
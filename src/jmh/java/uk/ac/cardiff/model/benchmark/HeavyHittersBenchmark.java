@@ -0,0 +1,105 @@
+/**
+ * Copyright (C) 2010 Cardiff University, Wales <smartp@cf.ac.uk>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.ac.cardiff.model.benchmark;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import uk.ac.cardiff.model.event.ShibbolethIdpAuthenticationEvent;
+import uk.ac.cardiff.model.event.aggregate.GroupKey;
+import uk.ac.cardiff.model.event.aggregate.HeavyHitters;
+import uk.ac.cardiff.model.event.batch.StringColumn;
+
+/**
+ * <p>
+ * Four ingest threads count the principal names of a Zipfian stream of
+ * Shibboleth IdP events: exactly, in a {@link ConcurrentHashMap} of
+ * {@link LongAdder}s, and approximately, in a {@link HeavyHitters} of
+ * {@code capacity}. The exact map grows with the long tail, the heavy hitters
+ * do not. {@link HeavyHittersVerifier} checks the approximate counts against
+ * the exact ones.
+ * </p>
+ * 
+ * @author philsmart
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(4)
+@Fork(1)
+public class HeavyHittersBenchmark {
+
+	@Param({ "1000000" })
+	private int size;
+
+	@Param({ "1000" })
+	private int capacity;
+
+	private ShibbolethIdpAuthenticationEvent[] events;
+
+	private ConcurrentHashMap<String, LongAdder> exact;
+
+	private HeavyHitters<String> heavyHitters;
+
+	@Setup
+	public void setup() {
+		events = EventDataSets.zipfianShibbolethEvents(size, 10000, 200000, 1.0);
+		exact = new ConcurrentHashMap<String, LongAdder>();
+		heavyHitters = new HeavyHitters<String>(GroupKey.column(StringColumn.PRINCIPAL_NAME), capacity);
+	}
+
+	/**
+	 * The position of each thread in the stream.
+	 */
+	@State(Scope.Thread)
+	public static class Cursor {
+
+		private int index;
+
+		int next(final int size) {
+			index = index + 1 == size ? 0 : index + 1;
+			return index;
+		}
+
+	}
+
+	@Benchmark
+	public void exact(final Cursor cursor) {
+		exact.computeIfAbsent(events[cursor.next(size)].getPrincipalName(), name -> new LongAdder()).increment();
+	}
+
+	@Benchmark
+	public void heavyHitters(final Cursor cursor) {
+		heavyHitters.offer(events[cursor.next(size)]);
+	}
+
+}
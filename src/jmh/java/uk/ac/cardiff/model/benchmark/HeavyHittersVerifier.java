@@ -0,0 +1,126 @@
+/**
+ * Copyright (C) 2010 Cardiff University, Wales <smartp@cf.ac.uk>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.ac.cardiff.model.benchmark;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import uk.ac.cardiff.model.event.ShibbolethIdpAuthenticationEvent;
+import uk.ac.cardiff.model.event.aggregate.GroupKey;
+import uk.ac.cardiff.model.event.aggregate.HeavyHitter;
+import uk.ac.cardiff.model.event.aggregate.HeavyHitters;
+import uk.ac.cardiff.model.event.batch.StringColumn;
+
+/**
+ * <p>
+ * Checks the guarantees of {@link HeavyHitters} against exact counts, over the
+ * Zipfian stream of {@link HeavyHittersBenchmark}, offered by one thread into
+ * one stripe and by four threads into eight:
+ * </p>
+ * <ul>
+ * <li>each count of the top list is at least the true count, and exceeds it by
+ * no more than the error bound or its own error;</li>
+ * <li>every key with a true count above the error bound is in the top list;</li>
+ * <li>no estimate falls below the true count.</li>
+ * </ul>
+ * 
+ * <p>
+ * Not a benchmark, run with
+ * {@code mvn -Pbenchmark test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=uk.ac.cardiff.model.benchmark.HeavyHittersVerifier}. Throws
+ * {@link IllegalStateException} on the first guarantee broken.
+ * </p>
+ * 
+ * @author philsmart
+ */
+public final class HeavyHittersVerifier {
+
+	private static final int SIZE = 1000000;
+
+	private static final int CAPACITY = 1000;
+
+	private HeavyHittersVerifier() {
+	}
+
+	public static void main(final String[] args) throws InterruptedException {
+		final ShibbolethIdpAuthenticationEvent[] events = EventDataSets.zipfianShibbolethEvents(SIZE, 10000, 200000,
+				1.0);
+		final Map<String, Long> exact = new HashMap<String, Long>();
+		for (final ShibbolethIdpAuthenticationEvent event : events) {
+			exact.merge(event.getPrincipalName(), 1L, Long::sum);
+		}
+		verify(events, exact, 1, 1);
+		verify(events, exact, 8, 4);
+	}
+
+	private static void verify(final ShibbolethIdpAuthenticationEvent[] events, final Map<String, Long> exact,
+			final int stripes, final int threads) throws InterruptedException {
+		final HeavyHitters<String> heavyHitters = new HeavyHitters<String>(
+				GroupKey.column(StringColumn.PRINCIPAL_NAME), CAPACITY, stripes);
+		final Thread[] offering = new Thread[threads];
+		for (int t = 0; t < threads; t++) {
+			final int first = t;
+			offering[t] = new Thread(() -> {
+				for (int i = first; i < events.length; i += threads) {
+					heavyHitters.offer(events[i]);
+				}
+			});
+			offering[t].start();
+		}
+		for (final Thread thread : offering) {
+			thread.join();
+		}
+
+		final long bound = heavyHitters.getErrorBound();
+		check(heavyHitters.getTotal() == events.length, "total %d, expected %d", heavyHitters.getTotal(),
+				events.length);
+		final List<HeavyHitter<String>> top = heavyHitters.top(CAPACITY * stripes);
+		final Set<String> monitored = new HashSet<String>();
+		for (final HeavyHitter<String> hitter : top) {
+			final long count = exact.getOrDefault(hitter.getKey(), 0L);
+			check(hitter.getCount() >= count, "%s counted %d, below its true count %d", hitter.getKey(),
+					hitter.getCount(), count);
+			check(hitter.getCount() - count <= bound, "%s counted %d, over %d above its true count %d",
+					hitter.getKey(), hitter.getCount(), bound, count);
+			check(hitter.getCount() - count <= hitter.getError(), "%s counted %d, over its error %d above %d",
+					hitter.getKey(), hitter.getCount(), hitter.getError(), count);
+			monitored.add(hitter.getKey());
+		}
+		long frequent = 0;
+		for (final Map.Entry<String, Long> entry : exact.entrySet()) {
+			if (entry.getValue() > bound) {
+				frequent++;
+				check(monitored.contains(entry.getKey()), "%s has %d events, over the bound %d, but is not monitored",
+						entry.getKey(), entry.getValue(), bound);
+			}
+			final long estimate = heavyHitters.estimate(entry.getKey());
+			check(estimate >= entry.getValue(), "%s estimated %d, below its true count %d", entry.getKey(), estimate,
+					entry.getValue());
+		}
+		System.out.println(heavyHitters + ": error bound " + bound + ", " + frequent + " of " + exact.size()
+				+ " keys over it, all monitored, every count and estimate within bounds");
+	}
+
+	private static void check(final boolean condition, final String format, final Object... args) {
+		if (!condition) {
+			throw new IllegalStateException(String.format(format, args));
+		}
+	}
+
+}
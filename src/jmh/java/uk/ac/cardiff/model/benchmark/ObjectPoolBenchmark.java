@@ -0,0 +1,131 @@
+/**
+ * Copyright (C) 2010 Cardiff University, Wales <smartp@cf.ac.uk>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.ac.cardiff.model.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import uk.ac.cardiff.model.event.ShibbolethIdpAuthenticationEvent;
+import uk.ac.cardiff.model.event.auxiliary.EventMetadata;
+import uk.ac.cardiff.model.event.auxiliary.PrincipalInformation;
+import uk.ac.cardiff.utility.ObjectPool;
+
+/**
+ * <p>
+ * Fills a Shibboleth IdP event, with its {@link PrincipalInformation} and
+ * {@link EventMetadata}, from the fields of a parsed log line, fingerprints it
+ * and discards it, as a parse then deduplicate pipeline does; first with new
+ * instances for every line, then with instances borrowed from
+ * {@link ObjectPool}s. An event drops its auxiliaries on reset, as they may be
+ * shared, so the pooled pipeline owns them and releases them itself. Run with
+ * {@code -prof gc} to compare allocation rates.
+ * </p>
+ * 
+ * @author philsmart
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ObjectPoolBenchmark {
+
+	/** Number of distinct log lines cycled through. */
+	@Param({ "4096" })
+	private int size;
+
+	/** The parsed lines, read field by field. */
+	private ShibbolethIdpAuthenticationEvent[] lines;
+
+	private ObjectPool<ShibbolethIdpAuthenticationEvent> pool;
+
+	private ObjectPool<PrincipalInformation> principalPool;
+
+	private ObjectPool<EventMetadata> metadataPool;
+
+	private int index;
+
+	@Setup
+	public void setup() {
+		lines = EventDataSets.shibbolethEvents(size);
+		pool = new ObjectPool<ShibbolethIdpAuthenticationEvent>(ShibbolethIdpAuthenticationEvent::new, 16);
+		principalPool = new ObjectPool<PrincipalInformation>(PrincipalInformation::new, 16);
+		metadataPool = new ObjectPool<EventMetadata>(EventMetadata::new, 16);
+	}
+
+	private ShibbolethIdpAuthenticationEvent next() {
+		index = index + 1 == size ? 0 : index + 1;
+		return lines[index];
+	}
+
+	@Benchmark
+	public long allocate() {
+		final ShibbolethIdpAuthenticationEvent event = new ShibbolethIdpAuthenticationEvent();
+		event.setPrincipalInformation(new PrincipalInformation());
+		event.setEventMetadata(new EventMetadata());
+		fill(next(), event);
+		return event.getEventFingerprint();
+	}
+
+	@Benchmark
+	public long pooled() {
+		final ShibbolethIdpAuthenticationEvent event = pool.borrow();
+		final PrincipalInformation principalInformation = principalPool.borrow();
+		final EventMetadata eventMetadata = metadataPool.borrow();
+		event.setPrincipalInformation(principalInformation);
+		event.setEventMetadata(eventMetadata);
+		fill(next(), event);
+		final long fingerprint = event.getEventFingerprint();
+		pool.release(event);
+		principalPool.release(principalInformation);
+		metadataPool.release(eventMetadata);
+		return fingerprint;
+	}
+
+	private static void fill(final ShibbolethIdpAuthenticationEvent line, final ShibbolethIdpAuthenticationEvent event) {
+		event.setEventTimeMillis(line.getEventTimeMillis());
+		event.setEventId(line.getEventId());
+		event.setServiceId(line.getServiceId());
+		event.setEventType(line.getEventType());
+		event.setServiceHost(line.getServiceHost());
+		event.setResourceHost(line.getResourceHost());
+		event.setResourceId(line.getResourceId());
+		event.setResourceIdCategory(line.getResourceIdCategory());
+		event.setAuthenticationType(line.getAuthenticationType());
+		event.setPrincipalName(line.getPrincipalName());
+		event.setRequestBinding(line.getRequestBinding());
+		event.setResponseBinding(line.getResponseBinding());
+		event.setAttributeSet(line.getAttributeSet());
+		event.getPrincipalInformation().setSchool(line.getPrincipalInformation().getSchool());
+		event.getPrincipalInformation().setAffiliation(line.getPrincipalInformation().getAffiliation());
+		event.getEventMetadata().setRaptorEntityId(line.getEventMetadata().getRaptorEntityId());
+		event.getEventMetadata().setServiceName(line.getEventMetadata().getServiceName());
+		event.getEventMetadata().setOrganisationName(line.getEventMetadata().getOrganisationName());
+	}
+
+}
@@ -0,0 +1,102 @@
+/**
+ * Copyright (C) 2010 Cardiff University, Wales <smartp@cf.ac.uk>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.ac.cardiff.model.benchmark;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import uk.ac.cardiff.model.event.AuthenticationEvent;
+import uk.ac.cardiff.model.event.aggregate.RollupCube;
+import uk.ac.cardiff.model.event.aggregate.RollupDimension;
+import uk.ac.cardiff.model.event.batch.StringColumn;
+
+/**
+ * <p>
+ * Answers a dashboard query, the events of each school at each service, by
+ * grouping the raw events with a {@link HashMap}, as dashboards do now, and by
+ * querying a {@link RollupCube} of the same events. Also measures the cost of
+ * maintaining the cube, adding every event to an empty one.
+ * </p>
+ * 
+ * @author philsmart
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RollupCubeBenchmark {
+
+	@Param({ "1000000" })
+	private int size;
+
+	private List<AuthenticationEvent> events;
+
+	private RollupCube cube;
+
+	@Setup
+	public void setup() {
+		events = new ArrayList<AuthenticationEvent>(Arrays.asList(EventDataSets.shibbolethEvents(size)));
+		cube = new RollupCube();
+		cube.addAll(events);
+	}
+
+	@Benchmark
+	public int hashMap() {
+		final Map<List<String>, long[]> groups = new HashMap<List<String>, long[]>();
+		for (final AuthenticationEvent event : events) {
+			final List<String> key = Arrays.asList(StringColumn.SERVICE_ID.get(event),
+					StringColumn.SCHOOL.get(event));
+			long[] count = groups.get(key);
+			if (count == null) {
+				count = new long[1];
+				groups.put(key, count);
+			}
+			count[0]++;
+		}
+		return groups.size();
+	}
+
+	@Benchmark
+	public int query() {
+		return cube.query(RollupDimension.SERVICE_ID, RollupDimension.SCHOOL).size();
+	}
+
+	@Benchmark
+	public int addAll() {
+		final RollupCube empty = new RollupCube();
+		empty.addAll(events);
+		return empty.size();
+	}
+
+}
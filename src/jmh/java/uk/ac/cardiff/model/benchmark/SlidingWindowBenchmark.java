@@ -0,0 +1,133 @@
+/**
+ * Copyright (C) 2010 Cardiff University, Wales <smartp@cf.ac.uk>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.ac.cardiff.model.benchmark;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import uk.ac.cardiff.model.event.Event;
+import uk.ac.cardiff.model.event.ShibbolethIdpAuthenticationEvent;
+import uk.ac.cardiff.model.event.aggregate.GroupKey;
+import uk.ac.cardiff.model.event.aggregate.SlidingWindowAggregator;
+import uk.ac.cardiff.model.event.batch.StringColumn;
+
+/**
+ * <p>
+ * Counts a live feed of Shibboleth IdP events by service over the last 5, 15
+ * and 60 minutes with a {@link SlidingWindowAggregator}: a writer adding events
+ * on its own, and with a reader taking snapshots alongside it, which should not
+ * slow the writer. The {@code rescan} benchmark is the alternative of counting
+ * the last hour of stored events by service for each read.
+ * </p>
+ * 
+ * @author philsmart
+ */
+@State(Scope.Group)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SlidingWindowBenchmark {
+
+	private static final long MINUTE_MILLIS = 60 * 1000;
+
+	private static final long DAY_MILLIS = 24 * 60 * MINUTE_MILLIS;
+
+	@Param({ "100000" })
+	private int size;
+
+	/** The events, in event time order over one day. */
+	private ShibbolethIdpAuthenticationEvent[] events;
+
+	private SlidingWindowAggregator<String> aggregator;
+
+	private int index;
+
+	@Setup
+	public void setup() {
+		events = EventDataSets.shibbolethEvents(size);
+		Arrays.sort(events, Comparator.comparingLong(Event::getEventTimeMillis));
+		aggregator = new SlidingWindowAggregator<String>(GroupKey.column(StringColumn.SERVICE_ID), MINUTE_MILLIS,
+				MINUTE_MILLIS, 5 * MINUTE_MILLIS, 15 * MINUTE_MILLIS, 60 * MINUTE_MILLIS);
+	}
+
+	/**
+	 * Adds the next event, moving the whole feed on a day each time it wraps so
+	 * event time keeps increasing.
+	 */
+	private void addNext() {
+		aggregator.add(events[index]);
+		if (++index == size) {
+			index = 0;
+			for (final ShibbolethIdpAuthenticationEvent event : events) {
+				event.setEventTimeMillis(event.getEventTimeMillis() + DAY_MILLIS);
+			}
+		}
+	}
+
+	@Benchmark
+	@Group("writer")
+	public void writeAlone() {
+		addNext();
+	}
+
+	@Benchmark
+	@Group("writerAndReader")
+	public void write() {
+		addNext();
+	}
+
+	@Benchmark
+	@Group("writerAndReader")
+	public long read() {
+		return aggregator.snapshot().getTotal(15 * MINUTE_MILLIS);
+	}
+
+	@Benchmark
+	@Group("rescan")
+	public int rescan() {
+		final long end = events[size - 1].getEventTimeMillis();
+		final Map<String, long[]> counts = new HashMap<String, long[]>();
+		for (int i = size - 1; i >= 0 && events[i].getEventTimeMillis() > end - 60 * MINUTE_MILLIS; i--) {
+			final String serviceId = events[i].getServiceId();
+			long[] count = counts.get(serviceId);
+			if (count == null) {
+				count = new long[1];
+				counts.put(serviceId, count);
+			}
+			count[0]++;
+		}
+		return counts.size();
+	}
+
+}
@@ -0,0 +1,154 @@
+/**
+ * Copyright (C) 2010 Cardiff University, Wales <smartp@cf.ac.uk>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.ac.cardiff.model.benchmark;
+
+import java.lang.reflect.Array;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import uk.ac.cardiff.model.event.ShibbolethIdpAuthenticationEvent;
+import uk.ac.cardiff.model.event.auxiliary.PrincipalInformation;
+import uk.ac.cardiff.model.event.jpa.StringArrayToStringConverter;
+import uk.ac.cardiff.utility.HashCodeUtil;
+import uk.ac.cardiff.utility.LruCache;
+import uk.ac.cardiff.utility.StringPool;
+import uk.ac.cardiff.utility.StringUtils;
+
+/**
+ * <p>
+ * Throughput of the shared utility methods and JPA converters used by the event
+ * model, over the released attribute arrays of generated
+ * {@link ShibbolethIdpAuthenticationEvent}s (5 to 30 entries each).
+ * </p>
+ * 
+ * @author philsmart
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class UtilityBenchmark {
+
+	/** Number of distinct events cycled through. */
+	@Param({ "4096" })
+	private int size;
+
+	/**
+	 * Number of distinct attribute columns loaded, a column value repeats across
+	 * many rows.
+	 */
+	private static final int DISTINCT_COLUMNS = 1024;
+
+	private String[][] attributes;
+
+	private String[] attributeColumns;
+
+	private PrincipalInformation[] principalInformation;
+
+	private final StringArrayToStringConverter converter = new StringArrayToStringConverter();
+
+	private int index;
+
+	@Setup
+	public void setup() {
+		final ShibbolethIdpAuthenticationEvent[] events = EventDataSets.shibbolethEvents(size);
+		attributes = new String[size][];
+		attributeColumns = new String[size];
+		principalInformation = new PrincipalInformation[size];
+		for (int i = 0; i < size; i++) {
+			attributes[i] = events[i].getAttributes();
+			attributeColumns[i] = converter.convertToDatabaseColumn(attributes[i % DISTINCT_COLUMNS]);
+			principalInformation[i] = events[i].getPrincipalInformation();
+		}
+	}
+
+	private int next() {
+		index = index + 1 == size ? 0 : index + 1;
+		return index;
+	}
+
+	@Benchmark
+	public int hashStringArray() {
+		return HashCodeUtil.hash(HashCodeUtil.SEED, (Object) attributes[next()]);
+	}
+
+	@Benchmark
+	public int hashStringArrayTyped() {
+		return HashCodeUtil.hash(HashCodeUtil.SEED, attributes[next()]);
+	}
+
+	/**
+	 * Baseline for {@link #hashStringArray()}, the reflective array walk
+	 * {@link HashCodeUtil} used before the typed overloads.
+	 */
+	@Benchmark
+	public int hashStringArrayReflective() {
+		return reflectiveHash(HashCodeUtil.SEED, attributes[next()]);
+	}
+
+	private static int reflectiveHash(final int aSeed, final Object aObject) {
+		int result = aSeed;
+		if (aObject == null) {
+			result = HashCodeUtil.hash(result, 0);
+		} else if (!aObject.getClass().isArray()) {
+			result = HashCodeUtil.hash(result, aObject.hashCode());
+		} else {
+			final int length = Array.getLength(aObject);
+			for (int idx = 0; idx < length; ++idx) {
+				result = reflectiveHash(result, Array.get(aObject, idx));
+			}
+		}
+		return result;
+	}
+
+	@Benchmark
+	public String buildToString() {
+		return StringUtils.buildToString(principalInformation[next()]);
+	}
+
+	@Benchmark
+	public String convertToDatabaseColumn() {
+		return converter.convertToDatabaseColumn(attributes[next()]);
+	}
+
+	@Benchmark
+	public String[] convertToEntityAttribute() {
+		return converter.convertToEntityAttribute(attributeColumns[next()]);
+	}
+
+	/**
+	 * Baseline for {@link #convertToEntityAttribute()}, the uncached split the
+	 * converter used before it kept an {@link LruCache}.
+	 */
+	@Benchmark
+	public String[] convertToEntityAttributeUncached() {
+		return StringPool.SHARED.canonicaliseAll(attributeColumns[next()].split("\\|"));
+	}
+
+}
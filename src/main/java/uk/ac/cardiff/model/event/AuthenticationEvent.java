@@ -16,12 +16,15 @@
 
 package uk.ac.cardiff.model.event;
 
+import javax.persistence.Convert;
 import javax.persistence.Embedded;
 import javax.persistence.Entity;
 import javax.persistence.Inheritance;
 import javax.persistence.InheritanceType;
 
 import uk.ac.cardiff.model.event.auxiliary.PrincipalInformation;
+import uk.ac.cardiff.model.event.jpa.CanonicalStringConverter;
+import uk.ac.cardiff.utility.StringPool;
 
 /**
  * <p>
@@ -41,19 +44,20 @@ import uk.ac.cardiff.model.event.auxiliary.PrincipalInformation;
 public abstract class AuthenticationEvent extends Event {
 
 	/** The authentication type. */
-	private String authenticationType;
+	@Convert(converter = CanonicalStringConverter.class)
+	String authenticationType;
 
 	/**
 	 * The name of the identity that participated in this event. For example
 	 * username.
 	 */
-	private String principalName;
+	String principalName;
 
 	/**
 	 * This is fixed to a principal expansion. Not used in Hash or Equality methods
 	 */
 	@Embedded
-	private PrincipalInformation principalInformation;
+	PrincipalInformation principalInformation;
 
 	/**
 	 * Instantiates a new authentication event.
@@ -78,6 +82,19 @@ public abstract class AuthenticationEvent extends Event {
 
 	}
 
+	/**
+	 * Clears the fields of this class and the {@link Event}. The
+	 * {@link PrincipalInformation} is dropped rather than cleared, as it may be
+	 * shared with other events.
+	 */
+	@Override
+	public void reset() {
+		super.reset();
+		authenticationType = null;
+		principalName = null;
+		principalInformation = null;
+	}
+
 	/**
 	 * Sets the principal name.
 	 *
@@ -86,6 +103,7 @@ public abstract class AuthenticationEvent extends Event {
 	 */
 	public void setPrincipalName(final String principal) {
 		this.principalName = principal;
+		invalidateHashCode();
 	}
 
 	/**
@@ -104,7 +122,8 @@ public abstract class AuthenticationEvent extends Event {
 	 *            the new authentication type
 	 */
 	public void setAuthenticationType(final String authenticationType) {
-		this.authenticationType = authenticationType;
+		this.authenticationType = StringPool.SHARED.canonicalise(authenticationType);
+		invalidateHashCode();
 	}
 
 	/**
@@ -124,6 +143,7 @@ public abstract class AuthenticationEvent extends Event {
 	 */
 	public void setPrincipalInformation(final PrincipalInformation principalInformation) {
 		this.principalInformation = principalInformation;
+		invalidateHashCode();
 	}
 
 	/**
@@ -18,11 +18,17 @@
  */
 package uk.ac.cardiff.model.event;
 
+import java.time.Instant;
+
+import javax.persistence.Access;
+import javax.persistence.AccessType;
+import javax.persistence.Convert;
 import javax.persistence.Embedded;
 import javax.persistence.Entity;
 import javax.persistence.Id;
 import javax.persistence.Inheritance;
 import javax.persistence.InheritanceType;
+import javax.persistence.Transient;
 
 import org.hibernate.annotations.Type;
 import org.joda.time.DateTime;
@@ -30,6 +36,10 @@ import org.joda.time.DateTime;
 import com.fasterxml.jackson.annotation.JsonIgnore;
 
 import uk.ac.cardiff.model.event.auxiliary.EventMetadata;
+import uk.ac.cardiff.model.event.jpa.CanonicalStringConverter;
+import uk.ac.cardiff.utility.FingerprintUtil;
+import uk.ac.cardiff.utility.Resettable;
+import uk.ac.cardiff.utility.StringPool;
 
 /**
  * <p>
@@ -47,57 +57,99 @@ import uk.ac.cardiff.model.event.auxiliary.EventMetadata;
  * containment through object equality (e.g. set containment) - using hashcodes.
  * </p>
  * 
+ * <p>
+ * Fields are package private so the classes generated for
+ * {@link GenerateEventSupport} subclasses can read and copy them directly.
+ * </p>
+ * 
+ * <p>
+ * Events are {@link Resettable}, so parsers can reuse instances from a
+ * {@link uk.ac.cardiff.utility.ObjectPool} rather than allocate one per record.
+ * Each subclass that adds fields must override {@link #reset()}, clearing them
+ * and calling {@code super.reset()}.
+ * </p>
+ * 
  * @author philsmart
  * 
  */
 @Entity
 @Inheritance(strategy = InheritanceType.TABLE_PER_CLASS)
-public abstract class Event {
+public abstract class Event implements Resettable {
 
-	/** The date and time the event was generated. */
-	@Type(type = "org.jadira.usertype.dateandtime.joda.PersistentDateTime")
-	private DateTime eventTime;
+	/**
+	 * Value of {@code eventTimeMillis} when no event time has been set.
+	 */
+	public static final long NO_EVENT_TIME = Long.MIN_VALUE;
+
+	/**
+	 * The date and time the event was generated, in milliseconds since EPOCH. Held
+	 * as a primitive so an event carries no {@link DateTime} (and its chronology
+	 * and zone) while resident in memory. Persisted as the {@code eventTime}
+	 * property through {@link #getEventTime()}.
+	 */
+	@Transient
+	long eventTimeMillis = NO_EVENT_TIME;
 
 	/**
 	 * Event id, as generated and added by the hashcode of this method. Not to be
-	 * used in computation of the hash or equals methods.
+	 * used in computation of the hash or equals methods. Stays the identifier, as
+	 * the {@code eventFingerprint} is a computed property and Hibernate 5.0 can
+	 * not map it as the id of this field access hierarchy, so it is only
+	 * indexed.
 	 */
 	@Id
-	private int eventId;
+	int eventId;
 
 	/**
 	 * The service id. This is the indentifier of the service that serves the event.
 	 * e.g. the authentication event, or the SAML EntityID.
 	 */
-	private String serviceId;
+	@Convert(converter = CanonicalStringConverter.class)
+	String serviceId;
 
 	/** The event type. */
-	private String eventType;
+	@Convert(converter = CanonicalStringConverter.class)
+	String eventType;
 
 	/** The hostname of the service that provided this event. */
-	private String serviceHost;
+	@Convert(converter = CanonicalStringConverter.class)
+	String serviceHost;
 
 	/** The hostname of the resource you are using. */
-	private String resourceHost;
+	String resourceHost;
 
 	/**
 	 * The resource id. This is the identifier of the remote resource the event
 	 * relates to.
 	 */
-	private String resourceId;
+	String resourceId;
 
 	/**
 	 * User defined category for this event for this resourceId, e.g. internal
 	 * resource or external resource. 1 - Internal 2 - External
 	 */
-	private int resourceIdCategory;
+	int resourceIdCategory;
 
 	/**
 	 * Metadata about the service this event was generated from. Not used in Hash or
 	 * Equality methods.
 	 */
 	@Embedded
-	private EventMetadata eventMetadata;
+	EventMetadata eventMetadata;
+
+	/**
+	 * Cached result of {@link #computeHashCode()}, zero when it needs to be
+	 * (re)computed. Cleared by every setter. Not persisted.
+	 */
+	@Transient
+	private transient int cachedHashCode;
+
+	/**
+	 * Cached result of {@link #computeFingerprint()}, zero when it needs to be
+	 * (re)computed. Cleared with the cached hash.
+	 */
+	@Transient
+	private transient long cachedFingerprint;
 
 	/**
 	 * Instantiates a new event.
@@ -113,45 +165,107 @@ public abstract class Event {
 	 *            the event
 	 */
 	public Event(final Event event) {
-		// this has a defensive getter, so direct assignment is possible
-		this.eventTime = event.getEventTime();
+		this.eventTimeMillis = event.getEventTimeMillis();
 		this.eventId = event.getEventId();
 		this.serviceId = event.getServiceId();
 		this.eventType = event.getEventType();
 		this.serviceHost = event.getServiceHost();
-		this.resourceHost = event.getServiceHost();
+		this.resourceHost = event.getResourceHost();
 		this.resourceId = event.getResourceId();
 		this.resourceIdCategory = event.getResourceIdCategory();
+		if (event.getEventMetadata() != null) {
+			this.eventMetadata = new EventMetadata(event.getEventMetadata());
+		}
 	}
 
 	/**
-	 * Sets the event time.
+	 * Clears every field to its initial value and the cached hash and
+	 * fingerprint. The {@link EventMetadata} is dropped rather than cleared, as
+	 * it may be shared with other events.
+	 */
+	@Override
+	public void reset() {
+		eventTimeMillis = NO_EVENT_TIME;
+		eventId = 0;
+		serviceId = null;
+		eventType = null;
+		serviceHost = null;
+		resourceHost = null;
+		resourceId = null;
+		resourceIdCategory = 0;
+		eventMetadata = null;
+		invalidateHashCode();
+	}
+
+	/**
+	 * Sets the event time. Only the instant is retained, the chronology and zone of
+	 * {@code eventTime} are not.
 	 * 
 	 * @param eventTime
-	 *            the new event time
+	 *            the new event time, or null to clear it
 	 */
 	public void setEventTime(final DateTime eventTime) {
-		this.eventTime = eventTime;
+		this.eventTimeMillis = eventTime == null ? NO_EVENT_TIME : eventTime.getMillis();
+		invalidateHashCode();
 	}
 
 	/**
-	 * Returns the eventTime using a defensive copy.
+	 * Returns the eventTime as a new {@link DateTime} in the default zone,
+	 * materialised from the stored milliseconds on each call. Prefer
+	 * {@link #getEventTimeMillis()} on hot paths.
 	 * 
-	 * @return the event time as {@link DateTime}
+	 * @return the event time as {@link DateTime}, or null if it has not been set
 	 */
+	@Access(AccessType.PROPERTY)
+	@Type(type = "org.jadira.usertype.dateandtime.joda.PersistentDateTime")
 	public DateTime getEventTime() {
-		return new DateTime(eventTime);
+		return eventTimeMillis == NO_EVENT_TIME ? null : new DateTime(eventTimeMillis);
+	}
+
+	/**
+	 * Sets the event time in milliseconds since EPOCH.
+	 * 
+	 * @param eventTimeMillis
+	 *            the new event time millis
+	 */
+	@JsonIgnore
+	public void setEventTimeMillis(final long eventTimeMillis) {
+		this.eventTimeMillis = eventTimeMillis;
+		invalidateHashCode();
 	}
 
 	/**
 	 * Gets the event time in milliseconds since EPOCH. Used for consistent hashing
-	 * of the {@code eventTime} field.
+	 * of the {@code eventTime} field. Does not allocate.
 	 * 
-	 * @return the event time millis as a {@link Long}
+	 * @return the event time millis, or {@link #NO_EVENT_TIME} if it has not been
+	 *         set
 	 */
 	@JsonIgnore
 	public long getEventTimeMillis() {
-		return eventTime.getMillis();
+		return eventTimeMillis;
+	}
+
+	/**
+	 * Sets the event time from a {@link java.time.Instant}.
+	 * 
+	 * @param eventTime
+	 *            the new event time, or null to clear it
+	 */
+	@JsonIgnore
+	public void setEventTimeInstant(final Instant eventTime) {
+		this.eventTimeMillis = eventTime == null ? NO_EVENT_TIME : eventTime.toEpochMilli();
+		invalidateHashCode();
+	}
+
+	/**
+	 * Gets the event time as a {@link java.time.Instant}.
+	 * 
+	 * @return the event time, or null if it has not been set
+	 */
+	@JsonIgnore
+	public Instant getEventTimeInstant() {
+		return eventTimeMillis == NO_EVENT_TIME ? null : Instant.ofEpochMilli(eventTimeMillis);
 	}
 
 	/**
@@ -161,7 +275,8 @@ public abstract class Event {
 	 *            the new event type
 	 */
 	public void setEventType(final String eventType) {
-		this.eventType = eventType;
+		this.eventType = StringPool.SHARED.canonicalise(eventType);
+		invalidateHashCode();
 	}
 
 	/**
@@ -180,7 +295,8 @@ public abstract class Event {
 	 *            the new service host
 	 */
 	public void setServiceHost(final String serviceHost) {
-		this.serviceHost = serviceHost;
+		this.serviceHost = StringPool.SHARED.canonicalise(serviceHost);
+		invalidateHashCode();
 	}
 
 	/**
@@ -200,6 +316,7 @@ public abstract class Event {
 	 */
 	public void setResourceHost(final String resourceHost) {
 		this.resourceHost = resourceHost;
+		invalidateHashCode();
 	}
 
 	/**
@@ -219,6 +336,7 @@ public abstract class Event {
 	 */
 	public void setResourceId(final String resourceId) {
 		this.resourceId = resourceId;
+		invalidateHashCode();
 	}
 
 	/**
@@ -238,6 +356,7 @@ public abstract class Event {
 	 */
 	public void setResourceIdCategory(final int resourceIdCategory) {
 		this.resourceIdCategory = resourceIdCategory;
+		invalidateHashCode();
 	}
 
 	/**
@@ -257,6 +376,7 @@ public abstract class Event {
 	 */
 	public void setEventId(final int eventId) {
 		this.eventId = eventId;
+		invalidateHashCode();
 	}
 
 	/**
@@ -275,7 +395,8 @@ public abstract class Event {
 	 *            the new service id
 	 */
 	public void setServiceId(final String serviceId) {
-		this.serviceId = serviceId;
+		this.serviceId = StringPool.SHARED.canonicalise(serviceId);
+		invalidateHashCode();
 	}
 
 	/**
@@ -295,6 +416,99 @@ public abstract class Event {
 	 */
 	public void setEventMetadata(final EventMetadata eventMetadata) {
 		this.eventMetadata = eventMetadata;
+		invalidateHashCode();
+	}
+
+	/**
+	 * Returns the hash of this event, computed once by {@link #computeHashCode()}
+	 * and cached until a setter is called. Mutating the contents of a field in
+	 * place, e.g. an element of an array, is not detected; such changes must be
+	 * followed by a call to the relevant setter.
+	 * 
+	 * @return the hash of this event
+	 */
+	@Override
+	public int hashCode() {
+		int hash = cachedHashCode;
+		if (hash == 0) {
+			hash = computeHashCode();
+			cachedHashCode = hash;
+		}
+		return hash;
+	}
+
+	/**
+	 * Returns a stable 64-bit fingerprint of this event, computed once by
+	 * {@link #computeFingerprint()} and cached until a setter is called. Unlike
+	 * {@link #hashCode()} it is strong enough to identify an event among hundreds
+	 * of millions without falling back to {@code equals}, and is persisted as the
+	 * {@code eventFingerprint} column, which each event table indexes, for keyed
+	 * lookups and deduplication.
+	 * 
+	 * @return the fingerprint of this event
+	 */
+	@Access(AccessType.PROPERTY)
+	@JsonIgnore
+	public long getEventFingerprint() {
+		long fingerprint = cachedFingerprint;
+		if (fingerprint == 0) {
+			fingerprint = computeFingerprint();
+			cachedFingerprint = fingerprint;
+		}
+		return fingerprint;
+	}
+
+	/**
+	 * For JPA, which needs a setter for the {@code eventFingerprint} property.
+	 * The stored value is ignored, a loaded event computes its fingerprint from
+	 * its fields, which gives the stored value unless
+	 * {@link #computeFingerprint()} has changed since it was stored.
+	 * 
+	 * @param eventFingerprint
+	 *            the stored fingerprint, ignored
+	 */
+	@JsonIgnore
+	protected void setEventFingerprint(final long eventFingerprint) {
+	}
+
+	/**
+	 * Computes the fingerprint of this event with
+	 * {@link uk.ac.cardiff.utility.FingerprintUtil}, from the same fields used for
+	 * equality, less the {@code eventId}. This default covers the fields of this
+	 * class only, subclasses override it to add their own.
+	 * 
+	 * @return the fingerprint of this event
+	 */
+	protected long computeFingerprint() {
+		long fingerprint = FingerprintUtil.SEED;
+		fingerprint = FingerprintUtil.fingerprint(fingerprint, eventTimeMillis);
+		fingerprint = FingerprintUtil.fingerprint(fingerprint, serviceId);
+		fingerprint = FingerprintUtil.fingerprint(fingerprint, eventType);
+		fingerprint = FingerprintUtil.fingerprint(fingerprint, serviceHost);
+		fingerprint = FingerprintUtil.fingerprint(fingerprint, resourceHost);
+		fingerprint = FingerprintUtil.fingerprint(fingerprint, resourceId);
+		fingerprint = FingerprintUtil.fingerprint(fingerprint, resourceIdCategory);
+		return FingerprintUtil.finish(fingerprint);
+	}
+
+	/**
+	 * Computes the hash of this event. Subclasses override this, rather than
+	 * {@link #hashCode()}, so the result is cached.
+	 * 
+	 * @return the hash of this event
+	 */
+	protected int computeHashCode() {
+		return super.hashCode();
+	}
+
+	/**
+	 * Clears the cached hash and fingerprint, so that they are recomputed on the
+	 * next call to {@link #hashCode()} or {@link #getEventFingerprint()}. Must be
+	 * called by every setter of a subclass.
+	 */
+	protected final void invalidateHashCode() {
+		cachedHashCode = 0;
+		cachedFingerprint = 0;
 	}
 
 	/**
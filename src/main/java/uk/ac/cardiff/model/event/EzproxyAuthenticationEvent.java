@@ -18,10 +18,9 @@ package uk.ac.cardiff.model.event;
 
 import javax.persistence.DiscriminatorColumn;
 import javax.persistence.Entity;
+import javax.persistence.Index;
 import javax.persistence.Table;
 
-import uk.ac.cardiff.utility.EqualsUtil;
-import uk.ac.cardiff.utility.HashCodeUtil;
 import uk.ac.cardiff.utility.StringUtils;
 
 /**
@@ -33,12 +32,15 @@ import uk.ac.cardiff.utility.StringUtils;
  * @author philsmart
  */
 @Entity
-@Table(name = "EzproxyAuthEvent")
+@Table(name = "EzproxyAuthEvent",
+		indexes = @Index(name = "EzproxyAuthEvent_eventFingerprint", columnList = "eventFingerprint"))
+@GenerateEventSupport({ "eventTimeMillis", "eventId", "authenticationType", "serviceHost", "requesterIp",
+		"resourceHost", "principalName", "eventType", "serviceId", "resourceId" })
 @DiscriminatorColumn(length = 100)
 public class EzproxyAuthenticationEvent extends AuthenticationEvent {
 
 	/** The requester ip. */
-	private String requesterIp;
+	String requesterIp;
 
 	/**
 	 * Instantiates a new ezproxy authentication event.
@@ -54,8 +56,8 @@ public class EzproxyAuthenticationEvent extends AuthenticationEvent {
 	 *            the event
 	 */
 	protected EzproxyAuthenticationEvent(final EzproxyAuthenticationEvent event) {
-		super(event);
-		this.requesterIp = event.getRequesterIp();
+		super();
+		EzproxyAuthenticationEventSupport.copy(event, this);
 	}
 
 	/**
@@ -67,6 +69,15 @@ public class EzproxyAuthenticationEvent extends AuthenticationEvent {
 		return new EzproxyAuthenticationEvent(this);
 	}
 
+	/**
+	 * Clears the fields of this class and its super classes.
+	 */
+	@Override
+	public void reset() {
+		super.reset();
+		requesterIp = null;
+	}
+
 	/**
 	 * Sets the requester ip.
 	 * 
@@ -75,6 +86,7 @@ public class EzproxyAuthenticationEvent extends AuthenticationEvent {
 	 */
 	public void setRequesterIp(final String requesterIp) {
 		this.requesterIp = requesterIp;
+		invalidateHashCode();
 	}
 
 	/**
@@ -103,22 +115,18 @@ public class EzproxyAuthenticationEvent extends AuthenticationEvent {
 	 *         as an integer
 	 */
 	@Override
-	public int hashCode() {
-		int hash = HashCodeUtil.SEED;
-
-		hash = HashCodeUtil.hash(hash, getEventTimeMillis());
-		hash = HashCodeUtil.hash(hash, getEventId());
-		hash = HashCodeUtil.hash(hash, getAuthenticationType());
-		hash = HashCodeUtil.hash(hash, getServiceHost());
-		hash = HashCodeUtil.hash(hash, getRequesterIp());
-		hash = HashCodeUtil.hash(hash, getResourceHost());
-		hash = HashCodeUtil.hash(hash, getPrincipalName());
-		hash = HashCodeUtil.hash(hash, getEventType());
-		hash = HashCodeUtil.hash(hash, getServiceId());
-		hash = HashCodeUtil.hash(hash, getResourceId());
-
-		return hash;
+	protected int computeHashCode() {
+		return EzproxyAuthenticationEventSupport.hash(this);
+	}
 
+	/**
+	 * Fingerprint the same fields as the hash, less the {@code eventId}.
+	 * 
+	 * @return the 64-bit fingerprint of this event
+	 */
+	@Override
+	protected long computeFingerprint() {
+		return EzproxyAuthenticationEventSupport.fingerprint(this);
 	}
 
 	/**
@@ -154,19 +162,7 @@ public class EzproxyAuthenticationEvent extends AuthenticationEvent {
 		if (obj == null || obj.getClass() != this.getClass()) {
 			return false;
 		}
-		final EzproxyAuthenticationEvent that = (EzproxyAuthenticationEvent) obj;
-		final boolean areEqual = EqualsUtil.areEqual(this.getEventTimeMillis(), that.getEventTimeMillis())
-				&& EqualsUtil.areEqual(this.getEventId(), that.getEventId())
-				&& EqualsUtil.areEqual(this.getAuthenticationType(), that.getAuthenticationType())
-				&& EqualsUtil.areEqual(this.getServiceHost(), that.getServiceHost())
-				&& EqualsUtil.areEqual(this.getRequesterIp(), that.getRequesterIp())
-				&& EqualsUtil.areEqual(this.getResourceHost(), that.getResourceHost())
-				&& EqualsUtil.areEqual(this.getServiceId(), that.getServiceId())
-				&& EqualsUtil.areEqual(this.getEventType(), that.getEventType())
-				&& EqualsUtil.areEqual(this.getResourceId(), that.getResourceId())
-				&& EqualsUtil.areEqual(this.getPrincipalName(), that.getPrincipalName());
-
-		return areEqual;
+		return EzproxyAuthenticationEventSupport.areEqual(this, (EzproxyAuthenticationEvent) obj);
 	}
 
 }
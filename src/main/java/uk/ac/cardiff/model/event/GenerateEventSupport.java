@@ -0,0 +1,78 @@
+/**
+ * Copyright (C) 2010 Cardiff University, Wales <smartp@cf.ac.uk>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.ac.cardiff.model.event;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * <p>
+ * Marks a concrete {@link Event} class for which
+ * {@code uk.ac.cardiff.model.processor.EventSupportProcessor} generates a
+ * {@code <ClassName>Support} class at compile time. The generated class sits in
+ * the same package and has four static methods:
+ * </p>
+ * 
+ * <ul>
+ * <li>{@code hash(event)} - hashes the fields named by {@link #value()}, in the
+ * order given, with exactly the arithmetic of
+ * {@link uk.ac.cardiff.utility.HashCodeUtil}.</li>
+ * <li>{@code fingerprint(event)} - a 64-bit fingerprint of the same fields, less
+ * those named by {@link #idFields()}, with
+ * {@link uk.ac.cardiff.utility.FingerprintUtil}.</li>
+ * <li>{@code areEqual(a, b)} - compares the same fields, primitives first, then
+ * objects, then arrays, so the cheapest and most selective checks (e.g.
+ * {@code eventTimeMillis}) fail fast.</li>
+ * <li>{@code copy(source, target)} - copies every non-static, non-transient field
+ * of the class hierarchy. Arrays are cloned and fields whose type has a public
+ * copy constructor, other than JDK types such as {@link String}, are copied
+ * through it.</li>
+ * </ul>
+ * 
+ * <p>
+ * Fields that are not private and declared in the same package are read and
+ * written directly, otherwise the {@code get}/{@code is} and {@code set}
+ * accessors are used.
+ * </p>
+ * 
+ * @author philsmart
+ */
+@Documented
+@Retention(RetentionPolicy.SOURCE)
+@Target(ElementType.TYPE)
+public @interface GenerateEventSupport {
+
+	/**
+	 * The fields that form the business key of the event, in hash order. Changing
+	 * this order changes the hash, and so the {@code eventId} of stored events.
+	 * 
+	 * @return the names of the fields used for hashing and equality
+	 */
+	String[] value();
+
+	/**
+	 * Key fields that hold an identifier derived from the event, and so are left
+	 * out of the fingerprint, which would otherwise change once the identifier is
+	 * assigned.
+	 * 
+	 * @return the names of the identifier fields
+	 */
+	String[] idFields() default { "eventId" };
+
+}
@@ -16,14 +16,18 @@
 
 package uk.ac.cardiff.model.event;
 
-import java.util.Arrays;
-
+import javax.persistence.Convert;
 import javax.persistence.DiscriminatorColumn;
 import javax.persistence.Entity;
+import javax.persistence.Index;
 import javax.persistence.Table;
 
-import uk.ac.cardiff.utility.EqualsUtil;
-import uk.ac.cardiff.utility.HashCodeUtil;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
+import uk.ac.cardiff.model.event.auxiliary.AttributeSet;
+import uk.ac.cardiff.model.event.jpa.AttributeSetConverter;
+import uk.ac.cardiff.model.event.jpa.CanonicalStringConverter;
+import uk.ac.cardiff.utility.StringPool;
 import uk.ac.cardiff.utility.StringUtils;
 
 /**
@@ -37,18 +41,24 @@ import uk.ac.cardiff.utility.StringUtils;
  */
 
 @Entity
-@Table(name = "ShibIdpAuthEvent")
+@Table(name = "ShibIdpAuthEvent",
+		indexes = @Index(name = "ShibIdpAuthEvent_eventFingerprint", columnList = "eventFingerprint"))
+@GenerateEventSupport({ "eventTimeMillis", "authenticationType", "eventId", "serviceHost", "responseBinding",
+		"resourceHost", "attributes", "requestBinding", "principalName", "eventType", "serviceId", "resourceId" })
 @DiscriminatorColumn(length = 100)
 public class ShibbolethIdpAuthenticationEvent extends AuthenticationEvent {
 
 	/** The response binding. */
-	private String responseBinding;
+	@Convert(converter = CanonicalStringConverter.class)
+	String responseBinding;
 
 	/** The request binding. */
-	private String requestBinding;
+	@Convert(converter = CanonicalStringConverter.class)
+	String requestBinding;
 
 	/** The released attributes. */
-	private String[] attributes;
+	@Convert(converter = AttributeSetConverter.class)
+	AttributeSet attributes;
 
 	/**
 	 * Instantiates a new shibboleth idp authentication event.
@@ -73,15 +83,9 @@ public class ShibbolethIdpAuthenticationEvent extends AuthenticationEvent {
 	 *            the {@link ShibbolethIdpAuthenticationEvent} to copy
 	 */
 	protected ShibbolethIdpAuthenticationEvent(final ShibbolethIdpAuthenticationEvent event) {
-		super(event);
-
-		this.responseBinding = event.getResponseBinding();
-
-		this.requestBinding = event.getRequestBinding();
-
-		// shallow copy is OK here, as a new array is created with immutable
-		// objects (String).
-		this.attributes = event.getAttributes().clone();
+		super();
+		// the attribute set is immutable, so is shared
+		ShibbolethIdpAuthenticationEventSupport.copy(event, this);
 	}
 
 	/**
@@ -93,6 +97,17 @@ public class ShibbolethIdpAuthenticationEvent extends AuthenticationEvent {
 		return new ShibbolethIdpAuthenticationEvent(this);
 	}
 
+	/**
+	 * Clears the fields of this class and its super classes.
+	 */
+	@Override
+	public void reset() {
+		super.reset();
+		responseBinding = null;
+		requestBinding = null;
+		attributes = null;
+	}
+
 	/**
 	 * Sets the response binding.
 	 * 
@@ -100,7 +115,8 @@ public class ShibbolethIdpAuthenticationEvent extends AuthenticationEvent {
 	 *            the new response binding
 	 */
 	public void setResponseBinding(final String responseBinding) {
-		this.responseBinding = responseBinding;
+		this.responseBinding = StringPool.SHARED.canonicalise(responseBinding);
+		invalidateHashCode();
 	}
 
 	/**
@@ -119,7 +135,8 @@ public class ShibbolethIdpAuthenticationEvent extends AuthenticationEvent {
 	 *            the new request binding
 	 */
 	public void setRequestBinding(final String requestBinding) {
-		this.requestBinding = requestBinding;
+		this.requestBinding = StringPool.SHARED.canonicalise(requestBinding);
+		invalidateHashCode();
 	}
 
 	/**
@@ -132,21 +149,45 @@ public class ShibbolethIdpAuthenticationEvent extends AuthenticationEvent {
 	}
 
 	/**
-	 * Sets the released attributes.
+	 * Sets the released attributes. Their order, nulls and duplicates are kept.
 	 * 
 	 * @param releasedAttributes
 	 *            the releasedAttributes to set
 	 */
 	public void setAttributes(final String[] releasedAttributes) {
-		this.attributes = releasedAttributes;
+		this.attributes = releasedAttributes == null ? null : AttributeSet.of(releasedAttributes);
+		invalidateHashCode();
 	}
 
 	/**
-	 * Gets the released attributes.
+	 * Gets the released attributes, as a new array in the order they were set.
+	 * Prefer {@link #getAttributeSet()}, which does not allocate.
 	 * 
 	 * @return the releasedAttributes
 	 */
 	public String[] getAttributes() {
+		return attributes == null ? null : attributes.toArray();
+	}
+
+	/**
+	 * Sets the released attributes.
+	 * 
+	 * @param attributes
+	 *            the released attributes to set
+	 */
+	@JsonIgnore
+	public void setAttributeSet(final AttributeSet attributes) {
+		this.attributes = attributes;
+		invalidateHashCode();
+	}
+
+	/**
+	 * Gets the released attributes.
+	 * 
+	 * @return the released attributes, or null if not set
+	 */
+	@JsonIgnore
+	public AttributeSet getAttributeSet() {
 		return attributes;
 	}
 
@@ -172,21 +213,7 @@ public class ShibbolethIdpAuthenticationEvent extends AuthenticationEvent {
 		if (obj == null || obj.getClass() != this.getClass()) {
 			return false;
 		}
-		final ShibbolethIdpAuthenticationEvent that = (ShibbolethIdpAuthenticationEvent) obj;
-		final boolean areEqual = EqualsUtil.areEqual(this.getEventTimeMillis(), that.getEventTimeMillis())
-				&& EqualsUtil.areEqual(this.getEventId(), that.getEventId())
-				&& EqualsUtil.areEqual(this.getAuthenticationType(), that.getAuthenticationType())
-				&& EqualsUtil.areEqual(this.getServiceHost(), that.getServiceHost())
-				&& EqualsUtil.areEqual(this.getResponseBinding(), that.getResponseBinding())
-				&& EqualsUtil.areEqual(this.getResourceHost(), that.getResourceHost())
-				&& EqualsUtil.areEqual(this.getRequestBinding(), that.getRequestBinding())
-				&& EqualsUtil.areEqual(this.getPrincipalName(), that.getPrincipalName())
-				&& EqualsUtil.areEqual(this.getServiceId(), that.getServiceId())
-				&& EqualsUtil.areEqual(this.getEventType(), that.getEventType())
-				&& EqualsUtil.areEqual(this.getResourceId(), that.getResourceId())
-				&& Arrays.equals(this.getAttributes(), that.getAttributes());
-
-		return areEqual;
+		return ShibbolethIdpAuthenticationEventSupport.areEqual(this, (ShibbolethIdpAuthenticationEvent) obj);
 	}
 
 	/**
@@ -216,23 +243,18 @@ public class ShibbolethIdpAuthenticationEvent extends AuthenticationEvent {
 	 *         as an integer
 	 */
 	@Override
-	public int hashCode() {
-		int hash = HashCodeUtil.SEED;
-
-		hash = HashCodeUtil.hash(hash, getEventTimeMillis());
-		hash = HashCodeUtil.hash(hash, getAuthenticationType());
-		hash = HashCodeUtil.hash(hash, getEventId());
-		hash = HashCodeUtil.hash(hash, getServiceHost());
-		hash = HashCodeUtil.hash(hash, getResponseBinding());
-		hash = HashCodeUtil.hash(hash, getResourceHost());
-		hash = HashCodeUtil.hash(hash, getAttributes());
-		hash = HashCodeUtil.hash(hash, getRequestBinding());
-		hash = HashCodeUtil.hash(hash, getPrincipalName());
-		hash = HashCodeUtil.hash(hash, getEventType());
-		hash = HashCodeUtil.hash(hash, getServiceId());
-		hash = HashCodeUtil.hash(hash, getResourceId());
-		return hash;
+	protected int computeHashCode() {
+		return ShibbolethIdpAuthenticationEventSupport.hash(this);
+	}
 
+	/**
+	 * Fingerprint the same fields as the hash, less the {@code eventId}.
+	 * 
+	 * @return the 64-bit fingerprint of this event
+	 */
+	@Override
+	protected long computeFingerprint() {
+		return ShibbolethIdpAuthenticationEventSupport.fingerprint(this);
 	}
 
 }
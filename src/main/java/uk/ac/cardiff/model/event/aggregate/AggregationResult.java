@@ -0,0 +1,130 @@
+/**
+ * Copyright (C) 2010 Cardiff University, Wales <smartp@cf.ac.uk>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.ac.cardiff.model.event.aggregate;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The result of an {@link EventAggregator}: the value of each {@link Measure}
+ * for each group, by key. Immutable.
+ * 
+ * @author philsmart
+ * @param <K>
+ *            the type of key
+ */
+public final class AggregationResult<K> {
+
+	private final List<Measure> measures;
+
+	/** The results of each group, one value per measure. */
+	private final Map<K, long[]> groups;
+
+	AggregationResult(final List<Measure> measures, final Map<K, long[]> groups) {
+		this.measures = measures;
+		this.groups = groups;
+	}
+
+	/**
+	 * @return the measures, in the order given to the aggregator
+	 */
+	public List<Measure> getMeasures() {
+		return measures;
+	}
+
+	/**
+	 * @return the number of groups
+	 */
+	public int size() {
+		return groups.size();
+	}
+
+	/**
+	 * @return the key of every group, which may include null
+	 */
+	public Set<K> keys() {
+		return Collections.unmodifiableSet(groups.keySet());
+	}
+
+	/**
+	 * @param key
+	 *            the key of a group
+	 * @return true if there were events with the key
+	 */
+	public boolean contains(final K key) {
+		return groups.containsKey(key);
+	}
+
+	/**
+	 * Gets one result of a group.
+	 * 
+	 * @param key
+	 *            the key of the group
+	 * @param measure
+	 *            the index of the measure
+	 * @return the result, or the value of an empty group, e.g. zero for a count,
+	 *         if there were no events with the key
+	 */
+	public long get(final K key, final int measure) {
+		final long[] results = groups.get(key);
+		return results == null ? measures.get(measure).getKind().identity : results[measure];
+	}
+
+	/**
+	 * Gets one result of every group.
+	 * 
+	 * @param measure
+	 *            the index of the measure
+	 * @return a new map of the result of each group, by key
+	 */
+	public Map<K, Long> asMap(final int measure) {
+		final Map<K, Long> results = new HashMap<K, Long>(groups.size() * 4 / 3 + 1);
+		for (final Map.Entry<K, long[]> entry : groups.entrySet()) {
+			results.put(entry.getKey(), entry.getValue()[measure]);
+		}
+		return results;
+	}
+
+	/**
+	 * Ranks the groups by one result, greatest first, e.g. the most used
+	 * resources by count.
+	 * 
+	 * @param measure
+	 *            the index of the measure
+	 * @param limit
+	 *            the number of groups to return
+	 * @return the keys of the top {@code limit} groups, in order
+	 */
+	public List<K> top(final int measure, final int limit) {
+		final List<Map.Entry<K, long[]>> entries = new ArrayList<Map.Entry<K, long[]>>(groups.entrySet());
+		entries.sort((left, right) -> Long.compare(right.getValue()[measure], left.getValue()[measure]));
+		final List<K> keys = new ArrayList<K>(Math.min(limit, entries.size()));
+		for (int i = 0; i < entries.size() && i < limit; i++) {
+			keys.add(entries.get(i).getKey());
+		}
+		return keys;
+	}
+
+	@Override
+	public String toString() {
+		return "AggregationResult [measures=" + measures + ", groups=" + groups.size() + "]";
+	}
+
+}
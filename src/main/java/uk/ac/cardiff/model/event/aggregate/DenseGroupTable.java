@@ -0,0 +1,137 @@
+/**
+ * Copyright (C) 2010 Cardiff University, Wales <smartp@cf.ac.uk>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.ac.cardiff.model.event.aggregate;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.LongFunction;
+
+/**
+ * The groups of one partial aggregation, keyed by a small dense code in
+ * {@code [-1, limit)}, e.g. a dictionary code. The results of each code are
+ * held at a fixed offset in one {@code long[]}, {@code stride} values per
+ * code, so finding a group is an index rather than a hash lookup. Not thread
+ * safe, each task fills its own.
+ * 
+ * @author philsmart
+ */
+final class DenseGroupTable {
+
+	private final Measure.Kind[] kinds;
+
+	private final int stride;
+
+	/** The results of each code, offset by one so -1 is held first. */
+	private final long[] values;
+
+	/** True for each code seen. */
+	private final boolean[] present;
+
+	private int size;
+
+	DenseGroupTable(final Measure.Kind[] kinds, final int limit) {
+		this.kinds = kinds;
+		this.stride = kinds.length;
+		values = new long[(limit + 1) * stride];
+		present = new boolean[limit + 1];
+		for (int i = 0; i < stride; i++) {
+			if (kinds[i].identity != 0) {
+				for (int offset = i; offset < values.length; offset += stride) {
+					values[offset] = kinds[i].identity;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Finds the group of {@code code}, creating it if it has not been seen.
+	 * 
+	 * @param code
+	 *            the code of the group, from -1
+	 * @return the offset of the group's results
+	 */
+	int group(final int code) {
+		final int index = code + 1;
+		if (!present[index]) {
+			present[index] = true;
+			size++;
+		}
+		return index * stride;
+	}
+
+	/**
+	 * Adds a value to one result of a group.
+	 * 
+	 * @param offset
+	 *            the offset returned by {@link #group(int)}
+	 * @param measure
+	 *            the index of the measure
+	 * @param value
+	 *            the value of the event
+	 */
+	void accumulate(final int offset, final int measure, final long value) {
+		values[offset + measure] = kinds[measure].accumulate(values[offset + measure], value);
+	}
+
+	/**
+	 * Merges the groups of {@code other}, of the same limit, into this table.
+	 * 
+	 * @param other
+	 *            the table to merge, unchanged
+	 * @return this table
+	 */
+	DenseGroupTable merge(final DenseGroupTable other) {
+		for (int index = 0; index < present.length; index++) {
+			if (other.present[index]) {
+				if (!present[index]) {
+					present[index] = true;
+					size++;
+				}
+				final int offset = index * stride;
+				for (int i = 0; i < stride; i++) {
+					values[offset + i] = kinds[i].merge(values[offset + i], other.values[offset + i]);
+				}
+			}
+		}
+		return this;
+	}
+
+	/**
+	 * @return the number of groups
+	 */
+	int size() {
+		return size;
+	}
+
+	/**
+	 * Copies the groups into a map, decoding each code to its key.
+	 * 
+	 * @param decoder
+	 *            decodes the code of a group
+	 * @return the results of each group, by key
+	 */
+	<K> Map<K, long[]> toMap(final LongFunction<? extends K> decoder) {
+		final Map<K, long[]> groups = new HashMap<K, long[]>(size * 4 / 3 + 1);
+		for (int index = 0; index < present.length; index++) {
+			if (present[index]) {
+				groups.put(decoder.apply(index - 1), Arrays.copyOfRange(values, index * stride, (index + 1) * stride));
+			}
+		}
+		return groups;
+	}
+
+}
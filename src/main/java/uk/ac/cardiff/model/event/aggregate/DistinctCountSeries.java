@@ -0,0 +1,396 @@
+/**
+ * Copyright (C) 2010 Cardiff University, Wales <smartp@cf.ac.uk>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.ac.cardiff.model.event.aggregate;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+
+import uk.ac.cardiff.model.event.AuthenticationEvent;
+import uk.ac.cardiff.model.event.Event;
+import uk.ac.cardiff.model.event.batch.EventBatch;
+import uk.ac.cardiff.model.event.batch.StringColumn;
+import uk.ac.cardiff.utility.HyperLogLog;
+
+/**
+ * <p>
+ * Estimates the number of distinct values of a column, e.g. unique
+ * {@link StringColumn#PRINCIPAL_NAME principal names}, per series, e.g. per
+ * {@link StringColumn#RESOURCE_ID resource}, per time bucket, e.g. per day. A
+ * {@link HyperLogLog} sketch is kept for every series and bucket in place of
+ * the set of values, so memory per series and bucket is a few kilobytes at
+ * most, and far less for one with few values.
+ * </p>
+ * 
+ * <p>
+ * Because sketches merge, the estimate over any range of buckets, e.g. a month
+ * of days, is that of the merged sketches of the buckets, and series built on
+ * different nodes can be combined with {@link #merge(DistinctCountSeries)}, or
+ * sketch by sketch with {@link #merge(Object, long, HyperLogLog)}.
+ * </p>
+ * 
+ * <p>
+ * Values are hashed from their characters as they are read, without copying;
+ * over an {@link EventBatch} each dictionary code is hashed at most once.
+ * Events with a null value, or no event time, are not counted.
+ * </p>
+ * 
+ * <p>
+ * Thread safe. All methods are synchronized.
+ * </p>
+ * 
+ * @author philsmart
+ * @param <K>
+ *            the type of series key
+ */
+public final class DistinctCountSeries<K> {
+
+	private final GroupKey<K> series;
+
+	private final StringColumn counted;
+
+	private final long bucketMillis;
+
+	private final int precision;
+
+	/**
+	 * The sketch of each bucket, by bucket start, of each series. Buckets are
+	 * hashed rather than sorted, as they are looked up for every event and only
+	 * ranged over for queries.
+	 */
+	private final Map<K, Map<Long, HyperLogLog>> sketches = new HashMap<K, Map<Long, HyperLogLog>>();
+
+	/**
+	 * Creates an empty set of series.
+	 * 
+	 * @param series
+	 *            what to key each series by
+	 * @param counted
+	 *            the column whose distinct values are counted
+	 * @param bucketMillis
+	 *            the width of each time bucket, e.g. a day
+	 * @param precision
+	 *            the precision of each sketch, see {@link HyperLogLog}
+	 */
+	public DistinctCountSeries(final GroupKey<K> series, final StringColumn counted, final long bucketMillis,
+			final int precision) {
+		if (bucketMillis <= 0) {
+			throw new IllegalArgumentException("bucketMillis must be positive");
+		}
+		if (precision < HyperLogLog.MIN_PRECISION || precision > HyperLogLog.MAX_PRECISION) {
+			throw new IllegalArgumentException("precision must be between " + HyperLogLog.MIN_PRECISION + " and "
+					+ HyperLogLog.MAX_PRECISION + ", was " + precision);
+		}
+		this.series = Objects.requireNonNull(series, "series");
+		this.counted = Objects.requireNonNull(counted, "counted");
+		this.bucketMillis = bucketMillis;
+		this.precision = precision;
+	}
+
+	/**
+	 * Adds the value of an event to the sketch of its series and bucket.
+	 * 
+	 * @param event
+	 *            the event
+	 */
+	public synchronized void add(final AuthenticationEvent event) {
+		final String value = counted.get(event);
+		if (value == null || event.getEventTimeMillis() == Event.NO_EVENT_TIME) {
+			return;
+		}
+		sketch(series.of(event), bucket(event.getEventTimeMillis())).add(HyperLogLog.hash(value));
+	}
+
+	/**
+	 * Adds every event.
+	 * 
+	 * @param events
+	 *            the events
+	 */
+	public synchronized void addAll(final Iterable<? extends AuthenticationEvent> events) {
+		for (final AuthenticationEvent event : events) {
+			add(event);
+		}
+	}
+
+	/**
+	 * Adds every row of a batch. Each distinct value is hashed once, by its
+	 * dictionary code. If the series key is not read from columns, rows are
+	 * materialised to compute it.
+	 * 
+	 * @param batch
+	 *            the batch, which must not be written to meanwhile
+	 */
+	public synchronized void add(final EventBatch batch) {
+		final long[] hashes = new long[batch.getDictionary().size()];
+		final boolean[] hashed = new boolean[hashes.length];
+		final boolean columnar = series.isColumnar();
+		// sketches of consecutive rows of the same series and bucket are reused
+		HyperLogLog sketch = null;
+		Object lastKey = null;
+		long lastBucket = Event.NO_EVENT_TIME;
+		for (int row = 0; row < batch.size(); row++) {
+			final int code = batch.getCode(counted, row);
+			final long eventTime = batch.getEventTimeMillis(row);
+			if (code < 0 || eventTime == Event.NO_EVENT_TIME) {
+				continue;
+			}
+			if (!hashed[code]) {
+				hashes[code] = HyperLogLog.hash(batch.getDictionary().decode(code));
+				hashed[code] = true;
+			}
+			final K key = columnar ? series.decode(batch, series.code(batch, row)) : series.of(batch.get(row));
+			final long bucket = bucket(eventTime);
+			if (sketch == null || bucket != lastBucket || !Objects.equals(key, lastKey)) {
+				sketch = sketch(key, bucket);
+				lastKey = key;
+				lastBucket = bucket;
+			}
+			sketch.add(hashes[code]);
+		}
+	}
+
+	/**
+	 * Estimates the distinct values of a series in every bucket.
+	 * 
+	 * @param key
+	 *            the series
+	 * @return the estimate, zero if the series has no values
+	 */
+	public synchronized long estimate(final K key) {
+		return estimate(key, Long.MIN_VALUE, Long.MAX_VALUE);
+	}
+
+	/**
+	 * Estimates the distinct values of a series in the buckets that start in
+	 * {@code [from, to)}, e.g. the unique users of a resource in a month.
+	 * 
+	 * @param key
+	 *            the series
+	 * @param from
+	 *            the earliest bucket start, inclusive, in milliseconds since EPOCH
+	 * @param to
+	 *            the latest bucket start, exclusive
+	 * @return the estimate, zero if the series has no values in the range
+	 */
+	public synchronized long estimate(final K key, final long from, final long to) {
+		final HyperLogLog merged = getSketch(key, from, to);
+		return merged == null ? 0 : merged.estimate();
+	}
+
+	/**
+	 * Estimates the distinct values of each bucket of a series.
+	 * 
+	 * @param key
+	 *            the series
+	 * @return a new map of the estimate of each bucket, by bucket start, in order
+	 */
+	public synchronized NavigableMap<Long, Long> estimates(final K key) {
+		final NavigableMap<Long, Long> estimates = new TreeMap<Long, Long>();
+		final Map<Long, HyperLogLog> buckets = sketches.get(key);
+		if (buckets != null) {
+			for (final Map.Entry<Long, HyperLogLog> entry : buckets.entrySet()) {
+				estimates.put(entry.getKey(), entry.getValue().estimate());
+			}
+		}
+		return estimates;
+	}
+
+	/**
+	 * Gets the merged sketch of the buckets of a series that start in
+	 * {@code [from, to)}.
+	 * 
+	 * @param key
+	 *            the series
+	 * @param from
+	 *            the earliest bucket start, inclusive
+	 * @param to
+	 *            the latest bucket start, exclusive
+	 * @return a new sketch, or null if the series has no buckets in the range
+	 */
+	public synchronized HyperLogLog getSketch(final K key, final long from, final long to) {
+		final Map<Long, HyperLogLog> buckets = sketches.get(key);
+		if (buckets == null || from >= to) {
+			return null;
+		}
+		HyperLogLog merged = null;
+		for (final Map.Entry<Long, HyperLogLog> bucket : buckets.entrySet()) {
+			final long start = bucket.getKey();
+			if (start >= from && start < to) {
+				if (merged == null) {
+					merged = new HyperLogLog(bucket.getValue());
+				} else {
+					merged.merge(bucket.getValue());
+				}
+			}
+		}
+		return merged;
+	}
+
+	/**
+	 * Merges a sketch, e.g. one received from another node, into the sketch of
+	 * a series and bucket.
+	 * 
+	 * @param key
+	 *            the series
+	 * @param bucketStart
+	 *            the start of the bucket, a multiple of the bucket width
+	 * @param sketch
+	 *            the sketch, of the same precision, unchanged
+	 */
+	public synchronized void merge(final K key, final long bucketStart, final HyperLogLog sketch) {
+		if (Math.floorMod(bucketStart, bucketMillis) != 0) {
+			throw new IllegalArgumentException(bucketStart + " is not the start of a bucket of " + bucketMillis + "ms");
+		}
+		sketch(key, bucketStart).merge(sketch);
+	}
+
+	/**
+	 * Merges every sketch of {@code other}, e.g. the series of another node,
+	 * into this one.
+	 * 
+	 * @param other
+	 *            series with the same bucket width and precision, unchanged
+	 */
+	public void merge(final DistinctCountSeries<K> other) {
+		if (other.bucketMillis != bucketMillis || other.precision != precision) {
+			throw new IllegalArgumentException("Can not merge series of different bucket width or precision");
+		}
+		if (other == this) {
+			return;
+		}
+		final Map<K, Map<Long, HyperLogLog>> copy = new HashMap<K, Map<Long, HyperLogLog>>();
+		synchronized (other) {
+			for (final Map.Entry<K, Map<Long, HyperLogLog>> entry : other.sketches.entrySet()) {
+				final Map<Long, HyperLogLog> buckets = new HashMap<Long, HyperLogLog>();
+				for (final Map.Entry<Long, HyperLogLog> bucket : entry.getValue().entrySet()) {
+					buckets.put(bucket.getKey(), new HyperLogLog(bucket.getValue()));
+				}
+				copy.put(entry.getKey(), buckets);
+			}
+		}
+		synchronized (this) {
+			for (final Map.Entry<K, Map<Long, HyperLogLog>> entry : copy.entrySet()) {
+				for (final Map.Entry<Long, HyperLogLog> bucket : entry.getValue().entrySet()) {
+					sketch(entry.getKey(), bucket.getKey()).merge(bucket.getValue());
+				}
+			}
+		}
+	}
+
+	/**
+	 * Removes every bucket that starts before {@code millis}, and any series
+	 * left empty.
+	 * 
+	 * @param millis
+	 *            the earliest bucket start kept
+	 */
+	public synchronized void evictBefore(final long millis) {
+		final Iterator<Map<Long, HyperLogLog>> iterator = sketches.values().iterator();
+		while (iterator.hasNext()) {
+			final Map<Long, HyperLogLog> buckets = iterator.next();
+			buckets.keySet().removeIf(start -> start < millis);
+			if (buckets.isEmpty()) {
+				iterator.remove();
+			}
+		}
+	}
+
+	/**
+	 * @return a copy of the key of every series
+	 */
+	public synchronized Set<K> keys() {
+		return Collections.unmodifiableSet(new HashSet<K>(sketches.keySet()));
+	}
+
+	/**
+	 * @param key
+	 *            the series
+	 * @return the bucket starts of the series, in order
+	 */
+	public synchronized long[] getBuckets(final K key) {
+		final Map<Long, HyperLogLog> buckets = sketches.get(key);
+		if (buckets == null) {
+			return new long[0];
+		}
+		final long[] starts = new long[buckets.size()];
+		int i = 0;
+		for (final Long start : buckets.keySet()) {
+			starts[i++] = start;
+		}
+		Arrays.sort(starts);
+		return starts;
+	}
+
+	/**
+	 * @return the approximate number of bytes held by every sketch
+	 */
+	public synchronized long getSizeInBytes() {
+		long size = 0;
+		for (final Map<Long, HyperLogLog> buckets : sketches.values()) {
+			for (final HyperLogLog sketch : buckets.values()) {
+				size += sketch.getSizeInBytes();
+			}
+		}
+		return size;
+	}
+
+	/**
+	 * @return the width of each time bucket
+	 */
+	public long getBucketMillis() {
+		return bucketMillis;
+	}
+
+	/**
+	 * @return the precision of each sketch
+	 */
+	public int getPrecision() {
+		return precision;
+	}
+
+	private long bucket(final long eventTimeMillis) {
+		return Math.floorDiv(eventTimeMillis, bucketMillis) * bucketMillis;
+	}
+
+	private HyperLogLog sketch(final K key, final long bucketStart) {
+		Map<Long, HyperLogLog> buckets = sketches.get(key);
+		if (buckets == null) {
+			buckets = new HashMap<Long, HyperLogLog>();
+			sketches.put(key, buckets);
+		}
+		HyperLogLog sketch = buckets.get(bucketStart);
+		if (sketch == null) {
+			sketch = new HyperLogLog(precision);
+			buckets.put(bucketStart, sketch);
+		}
+		return sketch;
+	}
+
+	@Override
+	public synchronized String toString() {
+		return "DistinctCountSeries [series=" + series + ", counted=" + counted + ", bucketMillis=" + bucketMillis
+				+ ", precision=" + precision + ", series count=" + sketches.size() + "]";
+	}
+
+}
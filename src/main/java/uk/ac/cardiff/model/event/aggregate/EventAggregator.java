@@ -0,0 +1,336 @@
+/**
+ * Copyright (C) 2010 Cardiff University, Wales <smartp@cf.ac.uk>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.ac.cardiff.model.event.aggregate;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.RandomAccess;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.IntFunction;
+
+import uk.ac.cardiff.model.event.AuthenticationEvent;
+import uk.ac.cardiff.model.event.batch.EventBatch;
+
+/**
+ * <p>
+ * Groups events by a {@link GroupKey} and computes a set of {@link Measure}s
+ * over each group, e.g. the count of events by resource, school or hour, in
+ * parallel on a {@link ForkJoinPool}.
+ * </p>
+ * 
+ * <p>
+ * The events, or rows of an {@link EventBatch}, are split into ranges of at
+ * least {@value #MIN_LEAF_SIZE}, about four per worker thread. Each range is
+ * aggregated into its own table of {@code long} results, so workers share
+ * nothing while scanning, and the tables are merged pairwise as the tasks join.
+ * Column keys over a batch are grouped by dictionary code in an array indexed
+ * by code. Other keys read as primitive codes, i.e. time bucket keys, are held
+ * in an open addressed table. Either way, each code is only decoded once per
+ * group. All other keys are held in a {@link java.util.HashMap}.
+ * Work scales with the number of workers until the merges, which cost in
+ * proportion to the number of groups, dominate; so a key with very many
+ * distinct values, e.g. the principal name, scales less well than the resource
+ * or school.
+ * </p>
+ * 
+ * <p>
+ * Thread safe. The events must not be modified during an aggregation.
+ * </p>
+ * 
+ * @author philsmart
+ * @param <K>
+ *            the type of key
+ */
+public final class EventAggregator<K> {
+
+	/** The fewest events aggregated by one task. */
+	static final int MIN_LEAF_SIZE = 4096;
+
+	/**
+	 * The fewest events split across the pool, smaller inputs are scanned in the
+	 * calling thread, as forking and merging would cost more than they save.
+	 */
+	static final int MIN_PARALLEL_SIZE = 4 * MIN_LEAF_SIZE;
+
+	/**
+	 * The most codes, per row it aggregates, for which a task keeps an array
+	 * indexed by code rather than a hash table of the codes it sees. Bounds the
+	 * memory of the arrays to a small multiple of the rows.
+	 */
+	static final int MAX_DENSE_CODES_PER_ROW = 4;
+
+	private final GroupKey<K> key;
+
+	private final List<Measure> measures;
+
+	private final Measure.Kind[] kinds;
+
+	/** The value of each measure, null for a count. */
+	private final EventValue[] values;
+
+	private final ForkJoinPool pool;
+
+	/**
+	 * Creates an aggregator that runs on the common pool.
+	 * 
+	 * @param key
+	 *            what to group by
+	 * @param measures
+	 *            what to compute for each group, at least one
+	 */
+	public EventAggregator(final GroupKey<K> key, final Measure... measures) {
+		this(key, ForkJoinPool.commonPool(), measures);
+	}
+
+	/**
+	 * Creates an aggregator.
+	 * 
+	 * @param key
+	 *            what to group by
+	 * @param pool
+	 *            the pool to run on
+	 * @param measures
+	 *            what to compute for each group, at least one
+	 */
+	public EventAggregator(final GroupKey<K> key, final ForkJoinPool pool, final Measure... measures) {
+		if (measures.length == 0) {
+			throw new IllegalArgumentException("At least one measure is required");
+		}
+		this.key = Objects.requireNonNull(key, "key");
+		this.pool = Objects.requireNonNull(pool, "pool");
+		this.measures = Collections.unmodifiableList(new ArrayList<Measure>(Arrays.asList(measures)));
+		kinds = new Measure.Kind[measures.length];
+		values = new EventValue[measures.length];
+		for (int i = 0; i < measures.length; i++) {
+			kinds[i] = measures[i].getKind();
+			values[i] = measures[i].getValue();
+		}
+	}
+
+	/**
+	 * Aggregates a collection of events. Lists with random access are split in
+	 * place, other collections are first copied to a list.
+	 * 
+	 * @param events
+	 *            the events
+	 * @return the result of each group
+	 */
+	public AggregationResult<K> aggregate(final Collection<? extends AuthenticationEvent> events) {
+		final List<? extends AuthenticationEvent> list = events instanceof List && events instanceof RandomAccess
+				? (List<? extends AuthenticationEvent>) events
+				: new ArrayList<AuthenticationEvent>(events);
+		return aggregateEvents(list.size(), list::get);
+	}
+
+	/**
+	 * Aggregates the rows of a batch. If the key and every value are read from
+	 * columns, rows are aggregated from the columns without being materialised.
+	 * 
+	 * @param batch
+	 *            the batch, which must not be written to during the aggregation
+	 * @return the result of each group
+	 */
+	public AggregationResult<K> aggregate(final EventBatch batch) {
+		if (!key.isColumnar() || !valuesColumnar()) {
+			return aggregateEvents(batch.size(), batch::get);
+		}
+		final int limit = key.codeLimit(batch);
+		if (limit >= 0 && (long) limit <= (long) leafSize(batch.size()) * MAX_DENSE_CODES_PER_ROW) {
+			final DenseGroupTable groups = run(batch.size(), new Work<DenseGroupTable>() {
+
+				@Override
+				public DenseGroupTable leaf(final int from, final int to) {
+					final DenseGroupTable table = new DenseGroupTable(kinds, limit);
+					for (int row = from; row < to; row++) {
+						final int offset = table.group((int) key.code(batch, row));
+						for (int i = 0; i < values.length; i++) {
+							table.accumulate(offset, i, values[i] == null ? 0 : values[i].of(batch, row));
+						}
+					}
+					return table;
+				}
+
+				@Override
+				public DenseGroupTable merge(final DenseGroupTable left, final DenseGroupTable right) {
+					return left.merge(right);
+				}
+
+			});
+			return new AggregationResult<K>(measures, groups.toMap(code -> key.decode(batch, code)));
+		}
+		final LongGroupTable groups = run(batch.size(), new Work<LongGroupTable>() {
+
+			@Override
+			public LongGroupTable leaf(final int from, final int to) {
+				final LongGroupTable table = new LongGroupTable(kinds);
+				for (int row = from; row < to; row++) {
+					final int offset = table.group(key.code(batch, row));
+					for (int i = 0; i < values.length; i++) {
+						table.accumulate(offset, i, values[i] == null ? 0 : values[i].of(batch, row));
+					}
+				}
+				return table;
+			}
+
+			@Override
+			public LongGroupTable merge(final LongGroupTable left, final LongGroupTable right) {
+				return left.size() >= right.size() ? left.merge(right) : right.merge(left);
+			}
+
+		});
+		return new AggregationResult<K>(measures, groups.toMap(code -> key.decode(batch, code)));
+	}
+
+	private AggregationResult<K> aggregateEvents(final int size,
+			final IntFunction<? extends AuthenticationEvent> events) {
+		if (key.isNumeric()) {
+			final LongGroupTable groups = run(size, new Work<LongGroupTable>() {
+
+				@Override
+				public LongGroupTable leaf(final int from, final int to) {
+					final LongGroupTable table = new LongGroupTable(kinds);
+					for (int index = from; index < to; index++) {
+						final AuthenticationEvent event = events.apply(index);
+						final int offset = table.group(key.code(event));
+						for (int i = 0; i < values.length; i++) {
+							table.accumulate(offset, i, values[i] == null ? 0 : values[i].of(event));
+						}
+					}
+					return table;
+				}
+
+				@Override
+				public LongGroupTable merge(final LongGroupTable left, final LongGroupTable right) {
+					return left.size() >= right.size() ? left.merge(right) : right.merge(left);
+				}
+
+			});
+			return new AggregationResult<K>(measures, groups.toMap(code -> key.decode(null, code)));
+		}
+		final ObjectGroupTable groups = run(size, new Work<ObjectGroupTable>() {
+
+			@Override
+			public ObjectGroupTable leaf(final int from, final int to) {
+				final ObjectGroupTable table = new ObjectGroupTable(kinds);
+				for (int index = from; index < to; index++) {
+					final AuthenticationEvent event = events.apply(index);
+					final long[] results = table.group(key.of(event));
+					for (int i = 0; i < values.length; i++) {
+						table.accumulate(results, i, values[i] == null ? 0 : values[i].of(event));
+					}
+				}
+				return table;
+			}
+
+			@Override
+			public ObjectGroupTable merge(final ObjectGroupTable left, final ObjectGroupTable right) {
+				return left.size() >= right.size() ? left.merge(right) : right.merge(left);
+			}
+
+		});
+		return new AggregationResult<K>(measures, groups.<K> toMap());
+	}
+
+	private boolean valuesColumnar() {
+		for (final EventValue value : values) {
+			if (value != null && !value.isColumnar()) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Runs {@code work} over {@code [0, size)}, in the calling thread, with no
+	 * merges, if it is too small to split or the pool has a single worker.
+	 */
+	private <P> P run(final int size, final Work<P> work) {
+		final int leafSize = leafSize(size);
+		if (size <= leafSize) {
+			return work.leaf(0, size);
+		}
+		return pool.invoke(new RangeTask<P>(work, 0, size, leafSize));
+	}
+
+	/**
+	 * @return the most events aggregated by one task, about a quarter of the
+	 *         share of each worker, or all of them if they are not split
+	 */
+	private int leafSize(final int size) {
+		if (size < MIN_PARALLEL_SIZE || pool.getParallelism() == 1) {
+			return size;
+		}
+		return Math.max(MIN_LEAF_SIZE, size / (pool.getParallelism() * 4) + 1);
+	}
+
+	@Override
+	public String toString() {
+		return "EventAggregator [key=" + key + ", measures=" + measures + "]";
+	}
+
+	/**
+	 * Aggregates one range into a partial result, and merges two partial results.
+	 */
+	private interface Work<P> {
+
+		P leaf(int from, int to);
+
+		P merge(P left, P right);
+
+	}
+
+	/**
+	 * Splits a range in half until it is no larger than the leaf size.
+	 */
+	private static final class RangeTask<P> extends RecursiveTask<P> {
+
+		private static final long serialVersionUID = 1L;
+
+		private final transient Work<P> work;
+
+		private final int from;
+
+		private final int to;
+
+		private final int leafSize;
+
+		RangeTask(final Work<P> work, final int from, final int to, final int leafSize) {
+			this.work = work;
+			this.from = from;
+			this.to = to;
+			this.leafSize = leafSize;
+		}
+
+		@Override
+		protected P compute() {
+			if (to - from <= leafSize) {
+				return work.leaf(from, to);
+			}
+			final int middle = (from + to) >>> 1;
+			final RangeTask<P> left = new RangeTask<P>(work, from, middle, leafSize);
+			left.fork();
+			final P right = new RangeTask<P>(work, middle, to, leafSize).compute();
+			return work.merge(left.join(), right);
+		}
+
+	}
+
+}
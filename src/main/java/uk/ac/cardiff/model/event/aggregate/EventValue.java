@@ -0,0 +1,165 @@
+/**
+ * Copyright (C) 2010 Cardiff University, Wales <smartp@cf.ac.uk>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.ac.cardiff.model.event.aggregate;
+
+import java.util.Objects;
+import java.util.function.ToLongFunction;
+
+import uk.ac.cardiff.model.event.AuthenticationEvent;
+import uk.ac.cardiff.model.event.ShibbolethIdpAuthenticationEvent;
+import uk.ac.cardiff.model.event.auxiliary.AttributeSet;
+import uk.ac.cardiff.model.event.batch.EventBatch;
+
+/**
+ * <p>
+ * A numeric value of an event that a {@link Measure} sums, or takes the minimum
+ * or maximum of. The constants are read straight from the columns of an
+ * {@link EventBatch}; values built with {@link #of(String, ToLongFunction)} are
+ * computed from events, so rows of a batch are materialised to compute them.
+ * </p>
+ * 
+ * @author philsmart
+ */
+public abstract class EventValue {
+
+	/** The event time, in milliseconds since EPOCH. */
+	public static final EventValue EVENT_TIME = new EventValue("eventTime") {
+
+		@Override
+		public long of(final AuthenticationEvent event) {
+			return event.getEventTimeMillis();
+		}
+
+		@Override
+		boolean isColumnar() {
+			return true;
+		}
+
+		@Override
+		long of(final EventBatch batch, final int row) {
+			return batch.getEventTimeMillis(row);
+		}
+
+	};
+
+	/** The resource id category. */
+	public static final EventValue RESOURCE_ID_CATEGORY = new EventValue("resourceIdCategory") {
+
+		@Override
+		public long of(final AuthenticationEvent event) {
+			return event.getResourceIdCategory();
+		}
+
+		@Override
+		boolean isColumnar() {
+			return true;
+		}
+
+		@Override
+		long of(final EventBatch batch, final int row) {
+			return batch.getResourceIdCategory(row);
+		}
+
+	};
+
+	/** The number of released attributes, zero for events without any. */
+	public static final EventValue ATTRIBUTE_COUNT = new EventValue("attributeCount") {
+
+		@Override
+		public long of(final AuthenticationEvent event) {
+			if (event instanceof ShibbolethIdpAuthenticationEvent) {
+				final AttributeSet attributes = ((ShibbolethIdpAuthenticationEvent) event).getAttributeSet();
+				return attributes == null ? 0 : attributes.size();
+			}
+			return 0;
+		}
+
+		@Override
+		boolean isColumnar() {
+			return true;
+		}
+
+		@Override
+		long of(final EventBatch batch, final int row) {
+			return batch.getAttributeCount(row);
+		}
+
+	};
+
+	/** A name for the value, used in {@link #toString()}. */
+	private final String name;
+
+	EventValue(final String name) {
+		this.name = name;
+	}
+
+	/**
+	 * A value computed by any function of the event.
+	 * 
+	 * @param name
+	 *            a name for the value
+	 * @param function
+	 *            computes the value of an event
+	 * @return the value
+	 */
+	public static EventValue of(final String name, final ToLongFunction<? super AuthenticationEvent> function) {
+		Objects.requireNonNull(function, "function");
+		return new EventValue(name) {
+
+			@Override
+			public long of(final AuthenticationEvent event) {
+				return function.applyAsLong(event);
+			}
+
+		};
+	}
+
+	/**
+	 * Computes the value of an event.
+	 * 
+	 * @param event
+	 *            the event
+	 * @return the value
+	 */
+	public abstract long of(AuthenticationEvent event);
+
+	/**
+	 * @return true if the value of a batch row can be read by
+	 *         {@link #of(EventBatch, int)}
+	 */
+	boolean isColumnar() {
+		return false;
+	}
+
+	/**
+	 * Reads the value of a batch row.
+	 * 
+	 * @param batch
+	 *            the batch
+	 * @param row
+	 *            the row
+	 * @return the value
+	 */
+	long of(final EventBatch batch, final int row) {
+		throw new UnsupportedOperationException(name + " is not columnar");
+	}
+
+	@Override
+	public String toString() {
+		return name;
+	}
+
+}
@@ -0,0 +1,269 @@
+/**
+ * Copyright (C) 2010 Cardiff University, Wales <smartp@cf.ac.uk>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.ac.cardiff.model.event.aggregate;
+
+import java.util.Objects;
+import java.util.function.Function;
+
+import uk.ac.cardiff.model.event.AuthenticationEvent;
+import uk.ac.cardiff.model.event.Event;
+import uk.ac.cardiff.model.event.batch.EventBatch;
+import uk.ac.cardiff.model.event.batch.StringColumn;
+
+/**
+ * <p>
+ * What an {@link EventAggregator} groups events by. Column and time bucket keys
+ * are read from an {@link EventBatch} as primitive codes, e.g. dictionary
+ * codes, and only decoded once per group. Time bucket keys are also read from
+ * events without boxing. Keys built with
+ * {@link #of(String, Function)} are computed from events, so rows of a batch
+ * are materialised to compute them.
+ * </p>
+ * 
+ * @author philsmart
+ * @param <K>
+ *            the type of key
+ */
+public abstract class GroupKey<K> {
+
+	/** A name for the key, used in {@link #toString()}. */
+	private final String name;
+
+	GroupKey(final String name) {
+		this.name = name;
+	}
+
+	/**
+	 * Groups by the value of a string column, e.g.
+	 * {@link StringColumn#RESOURCE_ID} or {@link StringColumn#SCHOOL}. Events
+	 * without a value are grouped under null.
+	 * 
+	 * @param column
+	 *            the column
+	 * @return the key
+	 */
+	public static GroupKey<String> column(final StringColumn column) {
+		return new ColumnKey(column);
+	}
+
+	/**
+	 * Groups by time bucket. The key of each group is the start of its bucket,
+	 * in milliseconds since EPOCH; events without an event time are grouped under
+	 * null.
+	 * 
+	 * @param bucketMillis
+	 *            the width of each bucket, e.g. an hour
+	 * @return the key
+	 */
+	public static GroupKey<Long> timeBucket(final long bucketMillis) {
+		if (bucketMillis <= 0) {
+			throw new IllegalArgumentException("bucketMillis must be positive");
+		}
+		return new TimeBucketKey(bucketMillis);
+	}
+
+	/**
+	 * Groups by any function of the event. Keys must implement equals and
+	 * hashCode.
+	 * 
+	 * @param name
+	 *            a name for the key
+	 * @param function
+	 *            computes the key of an event
+	 * @return the key
+	 */
+	public static <K> GroupKey<K> of(final String name, final Function<? super AuthenticationEvent, ? extends K> function) {
+		Objects.requireNonNull(function, "function");
+		return new GroupKey<K>(name) {
+
+			@Override
+			public K of(final AuthenticationEvent event) {
+				return function.apply(event);
+			}
+
+		};
+	}
+
+	/**
+	 * Computes the key of an event.
+	 * 
+	 * @param event
+	 *            the event
+	 * @return the key, may be null
+	 */
+	public abstract K of(AuthenticationEvent event);
+
+	/**
+	 * @return true if the key of a batch row can be read by
+	 *         {@link #code(EventBatch, int)}
+	 */
+	boolean isColumnar() {
+		return false;
+	}
+
+	/**
+	 * Reads the key of a batch row as a code, equal for rows with equal keys.
+	 * 
+	 * @param batch
+	 *            the batch
+	 * @param row
+	 *            the row
+	 * @return the code of the key
+	 */
+	long code(final EventBatch batch, final int row) {
+		throw new UnsupportedOperationException(name + " is not columnar");
+	}
+
+	/**
+	 * Gets the bound of the codes of a batch, if they are dense enough to index
+	 * an array.
+	 * 
+	 * @param batch
+	 *            the batch
+	 * @return the codes of the batch are in {@code [-1, limit)}, or -1 if they
+	 *         are not dense
+	 */
+	int codeLimit(final EventBatch batch) {
+		return -1;
+	}
+
+	/**
+	 * @return true if the key of an event can be read as a code by
+	 *         {@link #code(AuthenticationEvent)}, and decoded without a batch
+	 */
+	boolean isNumeric() {
+		return false;
+	}
+
+	/**
+	 * Reads the key of an event as a code, equal for events with equal keys.
+	 * 
+	 * @param event
+	 *            the event
+	 * @return the code of the key
+	 */
+	long code(final AuthenticationEvent event) {
+		throw new UnsupportedOperationException(name + " is not numeric");
+	}
+
+	/**
+	 * Converts a code read by {@link #code(EventBatch, int)} back to its key.
+	 * 
+	 * @param batch
+	 *            the batch the code was read from
+	 * @param code
+	 *            the code
+	 * @return the key
+	 */
+	K decode(final EventBatch batch, final long code) {
+		throw new UnsupportedOperationException(name + " is not columnar");
+	}
+
+	@Override
+	public String toString() {
+		return name;
+	}
+
+	/**
+	 * A string column, coded by its dictionary code.
+	 */
+	private static final class ColumnKey extends GroupKey<String> {
+
+		private final StringColumn column;
+
+		ColumnKey(final StringColumn column) {
+			super(column.name());
+			this.column = column;
+		}
+
+		@Override
+		public String of(final AuthenticationEvent event) {
+			return column.get(event);
+		}
+
+		@Override
+		boolean isColumnar() {
+			return true;
+		}
+
+		@Override
+		long code(final EventBatch batch, final int row) {
+			return batch.getCode(column, row);
+		}
+
+		@Override
+		int codeLimit(final EventBatch batch) {
+			return batch.getDictionary().size();
+		}
+
+		@Override
+		String decode(final EventBatch batch, final long code) {
+			return batch.getDictionary().decode((int) code);
+		}
+
+	}
+
+	/**
+	 * The start of a time bucket, coded as itself, with
+	 * {@link Event#NO_EVENT_TIME} for no event time.
+	 */
+	private static final class TimeBucketKey extends GroupKey<Long> {
+
+		private final long bucketMillis;
+
+		TimeBucketKey(final long bucketMillis) {
+			super("timeBucket(" + bucketMillis + ")");
+			this.bucketMillis = bucketMillis;
+		}
+
+		private long bucket(final long eventTimeMillis) {
+			return eventTimeMillis == Event.NO_EVENT_TIME ? Event.NO_EVENT_TIME
+					: Math.floorDiv(eventTimeMillis, bucketMillis) * bucketMillis;
+		}
+
+		@Override
+		public Long of(final AuthenticationEvent event) {
+			return decode(null, code(event));
+		}
+
+		@Override
+		boolean isColumnar() {
+			return true;
+		}
+
+		@Override
+		boolean isNumeric() {
+			return true;
+		}
+
+		@Override
+		long code(final AuthenticationEvent event) {
+			return bucket(event.getEventTimeMillis());
+		}
+
+		@Override
+		long code(final EventBatch batch, final int row) {
+			return bucket(batch.getEventTimeMillis(row));
+		}
+
+		@Override
+		Long decode(final EventBatch batch, final long code) {
+			return code == Event.NO_EVENT_TIME ? null : Long.valueOf(code);
+		}
+
+	}
+
+}
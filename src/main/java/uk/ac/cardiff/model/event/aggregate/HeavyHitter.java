@@ -0,0 +1,74 @@
+/**
+ * Copyright (C) 2010 Cardiff University, Wales <smartp@cf.ac.uk>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.ac.cardiff.model.event.aggregate;
+
+/**
+ * One entry of a {@link HeavyHitters} top list: a key and bounds of its count.
+ * Immutable.
+ * 
+ * @author philsmart
+ * @param <K>
+ *            the type of key
+ */
+public final class HeavyHitter<K> {
+
+	private final K key;
+
+	private final long count;
+
+	private final long error;
+
+	HeavyHitter(final K key, final long count, final long error) {
+		this.key = key;
+		this.count = count;
+		this.error = error;
+	}
+
+	/**
+	 * @return the key
+	 */
+	public K getKey() {
+		return key;
+	}
+
+	/**
+	 * @return the estimated count, never less than the true count
+	 */
+	public long getCount() {
+		return count;
+	}
+
+	/**
+	 * @return the most the estimated count can exceed the true count
+	 */
+	public long getError() {
+		return error;
+	}
+
+	/**
+	 * @return the count the key is certain to have had, never more than the true
+	 *         count
+	 */
+	public long getGuaranteedCount() {
+		return count - error;
+	}
+
+	@Override
+	public String toString() {
+		return "HeavyHitter [key=" + key + ", count=" + count + ", error=" + error + "]";
+	}
+
+}
@@ -0,0 +1,337 @@
+/**
+ * Copyright (C) 2010 Cardiff University, Wales <smartp@cf.ac.uk>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.ac.cardiff.model.event.aggregate;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+import uk.ac.cardiff.model.event.AuthenticationEvent;
+import uk.ac.cardiff.utility.CountMinSketch;
+import uk.ac.cardiff.utility.FingerprintUtil;
+import uk.ac.cardiff.utility.SpaceSaving;
+
+/**
+ * <p>
+ * Tracks the most frequent keys of a stream of events, e.g. the most used
+ * {@link uk.ac.cardiff.model.event.batch.StringColumn#RESOURCE_ID resources}
+ * or most active
+ * {@link uk.ac.cardiff.model.event.batch.StringColumn#PRINCIPAL_NAME
+ * principals}, in bounded memory, without counting the long tail exactly.
+ * </p>
+ * 
+ * <p>
+ * Updates are spread over a fixed number of stripes by thread id, so several
+ * ingest threads rarely contend. Each stripe holds a {@link SpaceSaving}
+ * summary of {@code capacity} keys, for the top list, and a
+ * {@link CountMinSketch}, for the count of any key. Queries combine the stripes.
+ * After {@code N} events in the window:
+ * </p>
+ * <ul>
+ * <li>the count of each key in {@link #top(int)} exceeds its true count by at
+ * most {@link #getErrorBound()}, {@code N / capacity}, and by no more than its
+ * own {@link HeavyHitter#getError() error};</li>
+ * <li>every key with a true count above {@code N / capacity} is monitored, and
+ * so returned by {@code top(n)} when {@code n} is at least {@code capacity}
+ * times the number of stripes;</li>
+ * <li>{@link #estimate(Object)} never falls below the true count of a key, and
+ * the share of each stripe exceeds its bound, {@code 1 / capacity} of the
+ * events of the stripe, with probability at most 1%.</li>
+ * </ul>
+ * 
+ * <p>
+ * Counts cover the current window, which {@link #reset(int)} closes, returning
+ * its final top list, and replaces with an empty one, e.g. each hour. No update
+ * is lost to a reset: one that races it is counted in the new window.
+ * </p>
+ * 
+ * <p>
+ * Thread safe.
+ * </p>
+ * 
+ * @author philsmart
+ * @param <K>
+ *            the type of key
+ */
+public final class HeavyHitters<K> {
+
+	/** The probability that a count estimate exceeds its bound. */
+	private static final double DELTA = 0.01;
+
+	private final GroupKey<K> key;
+
+	private final int capacity;
+
+	private final int stripeCount;
+
+	private volatile Window<K> window;
+
+	/**
+	 * Creates a tracker with as many stripes as twice the number of processors.
+	 * 
+	 * @param key
+	 *            what to count
+	 * @param capacity
+	 *            the number of keys monitored by each stripe, which sets the
+	 *            error bound
+	 */
+	public HeavyHitters(final GroupKey<K> key, final int capacity) {
+		this(key, capacity, Runtime.getRuntime().availableProcessors() * 2);
+	}
+
+	/**
+	 * Creates a tracker.
+	 * 
+	 * @param key
+	 *            what to count
+	 * @param capacity
+	 *            the number of keys monitored by each stripe, which sets the
+	 *            error bound
+	 * @param stripes
+	 *            the number of stripes, at least one, rounded up to a power of
+	 *            two
+	 */
+	public HeavyHitters(final GroupKey<K> key, final int capacity, final int stripes) {
+		if (capacity <= 0) {
+			throw new IllegalArgumentException("capacity must be positive");
+		}
+		if (stripes <= 0) {
+			throw new IllegalArgumentException("stripes must be positive");
+		}
+		this.key = Objects.requireNonNull(key, "key");
+		this.capacity = capacity;
+		int count = 1;
+		while (count < stripes) {
+			count <<= 1;
+		}
+		this.stripeCount = count;
+		this.window = new Window<K>(count, capacity);
+	}
+
+	/**
+	 * Counts the key of an event. Events with a null key are ignored.
+	 * 
+	 * @param event
+	 *            the event
+	 */
+	public void offer(final AuthenticationEvent event) {
+		final K value = key.of(event);
+		if (value == null) {
+			return;
+		}
+		final long hash = FingerprintUtil.finish(FingerprintUtil.fingerprint(FingerprintUtil.SEED, value));
+		final long id = Thread.currentThread().getId();
+		final int index = (int) (id ^ id >>> 32) & (stripeCount - 1);
+		while (true) {
+			final Stripe<K> stripe = window.stripes[index];
+			synchronized (stripe) {
+				if (!stripe.closed) {
+					stripe.summary.offer(value);
+					stripe.sketch.add(hash, 1);
+					return;
+				}
+			}
+			// the window was reset meanwhile, count in the new one
+		}
+	}
+
+	/**
+	 * Counts the key of every event.
+	 * 
+	 * @param events
+	 *            the events
+	 */
+	public void offerAll(final Iterable<? extends AuthenticationEvent> events) {
+		for (final AuthenticationEvent event : events) {
+			offer(event);
+		}
+	}
+
+	/**
+	 * Gets the most frequent keys of the current window.
+	 * 
+	 * @param n
+	 *            the number of keys wanted
+	 * @return up to {@code n} keys, most frequent first
+	 */
+	public List<HeavyHitter<K>> top(final int n) {
+		return window.top(n);
+	}
+
+	/**
+	 * Estimates the count of any key in the current window, from the Count-Min
+	 * sketches.
+	 * 
+	 * @param value
+	 *            the key
+	 * @return the estimate, never less than the true count
+	 */
+	public long estimate(final K value) {
+		final long hash = FingerprintUtil.finish(FingerprintUtil.fingerprint(FingerprintUtil.SEED, value));
+		long estimate = 0;
+		for (final Stripe<K> stripe : window.stripes) {
+			synchronized (stripe) {
+				estimate += stripe.sketch.estimate(hash);
+			}
+		}
+		return estimate;
+	}
+
+	/**
+	 * Closes the current window and starts a new, empty, one.
+	 * 
+	 * @param n
+	 *            the number of keys wanted from the closed window, zero for none
+	 * @return up to {@code n} keys of the closed window, most frequent first
+	 */
+	public List<HeavyHitter<K>> reset(final int n) {
+		final Window<K> closed;
+		synchronized (this) {
+			closed = window;
+			window = new Window<K>(stripeCount, capacity);
+		}
+		for (final Stripe<K> stripe : closed.stripes) {
+			synchronized (stripe) {
+				stripe.closed = true;
+			}
+		}
+		return n == 0 ? Collections.<HeavyHitter<K>> emptyList() : closed.top(n);
+	}
+
+	/**
+	 * @return the number of events counted in the current window
+	 */
+	public long getTotal() {
+		long total = 0;
+		for (final Stripe<K> stripe : window.stripes) {
+			synchronized (stripe) {
+				total += stripe.summary.getTotal();
+			}
+		}
+		return total;
+	}
+
+	/**
+	 * @return the most a count of {@link #top(int)} can exceed the true count,
+	 *         {@code N / capacity} of the current window
+	 */
+	public long getErrorBound() {
+		return getTotal() / capacity;
+	}
+
+	/**
+	 * @return the number of keys monitored by each stripe
+	 */
+	public int getCapacity() {
+		return capacity;
+	}
+
+	@Override
+	public String toString() {
+		return "HeavyHitters [key=" + key + ", capacity=" + capacity + ", stripes=" + stripeCount + ", total="
+				+ getTotal() + "]";
+	}
+
+	/**
+	 * The stripes of one window.
+	 */
+	private static final class Window<K> {
+
+		final Stripe<K>[] stripes;
+
+		@SuppressWarnings("unchecked")
+		Window(final int stripeCount, final int capacity) {
+			stripes = (Stripe<K>[]) new Stripe<?>[stripeCount];
+			for (int i = 0; i < stripeCount; i++) {
+				stripes[i] = new Stripe<K>(capacity);
+			}
+		}
+
+		/**
+		 * Combines the summaries of every stripe. A key missing from a full
+		 * summary may have been counted up to its least count there, which is
+		 * added to both its count and its error.
+		 */
+		List<HeavyHitter<K>> top(final int n) {
+			final Map<K, long[]> combined = new HashMap<K, long[]>();
+			final long[] minCounts = new long[stripes.length];
+			final List<List<K>> keys = new ArrayList<List<K>>(stripes.length);
+			final List<long[]> counts = new ArrayList<long[]>(stripes.length);
+			for (int i = 0; i < stripes.length; i++) {
+				synchronized (stripes[i]) {
+					final SpaceSaving<K> summary = stripes[i].summary;
+					final List<K> stripeKeys = summary.top();
+					final long[] stripeCounts = new long[stripeKeys.size() * 2];
+					for (int j = 0; j < stripeKeys.size(); j++) {
+						stripeCounts[j * 2] = summary.getCount(stripeKeys.get(j));
+						stripeCounts[j * 2 + 1] = summary.getError(stripeKeys.get(j));
+					}
+					minCounts[i] = summary.getMinCount();
+					keys.add(stripeKeys);
+					counts.add(stripeCounts);
+				}
+			}
+			long minSum = 0;
+			for (final long minCount : minCounts) {
+				minSum += minCount;
+			}
+			for (int i = 0; i < stripes.length; i++) {
+				final List<K> stripeKeys = keys.get(i);
+				final long[] stripeCounts = counts.get(i);
+				for (int j = 0; j < stripeKeys.size(); j++) {
+					long[] entry = combined.get(stripeKeys.get(j));
+					if (entry == null) {
+						// as if missing from every stripe, corrected below
+						entry = new long[] { minSum, minSum };
+						combined.put(stripeKeys.get(j), entry);
+					}
+					entry[0] += stripeCounts[j * 2] - minCounts[i];
+					entry[1] += stripeCounts[j * 2 + 1] - minCounts[i];
+				}
+			}
+			final List<HeavyHitter<K>> top = new ArrayList<HeavyHitter<K>>(combined.size());
+			for (final Map.Entry<K, long[]> entry : combined.entrySet()) {
+				top.add(new HeavyHitter<K>(entry.getKey(), entry.getValue()[0], entry.getValue()[1]));
+			}
+			top.sort((left, right) -> Long.compare(right.getCount(), left.getCount()));
+			return top.size() > n ? new ArrayList<HeavyHitter<K>>(top.subList(0, n)) : top;
+		}
+
+	}
+
+	/**
+	 * The summary and sketch of one stripe of a window, guarded by its own lock.
+	 */
+	private static final class Stripe<K> {
+
+		final SpaceSaving<K> summary;
+
+		final CountMinSketch sketch;
+
+		/** Set once the window is reset, after which updates go to the next. */
+		boolean closed;
+
+		Stripe(final int capacity) {
+			summary = new SpaceSaving<K>(capacity);
+			sketch = CountMinSketch.withError(1.0 / capacity, DELTA);
+		}
+
+	}
+
+}
@@ -0,0 +1,164 @@
+/**
+ * Copyright (C) 2010 Cardiff University, Wales <smartp@cf.ac.uk>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.ac.cardiff.model.event.aggregate;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.LongFunction;
+
+/**
+ * The groups of one partial aggregation, keyed by a {@code long} code. Groups
+ * are numbered in order of creation and their results held in one
+ * {@code long[]}, {@code stride} values per group, found through an open
+ * addressed table of group numbers. Not thread safe, each task fills its own.
+ * 
+ * @author philsmart
+ */
+final class LongGroupTable {
+
+	private static final int EMPTY = -1;
+
+	private final Measure.Kind[] kinds;
+
+	private final int stride;
+
+	/** The code of each group, by group number. */
+	private long[] keys;
+
+	/** The results of each group, {@code stride} values per group. */
+	private long[] values;
+
+	/** Group numbers, by hash of their code, or {@link #EMPTY}. */
+	private int[] slots;
+
+	private int size;
+
+	LongGroupTable(final Measure.Kind[] kinds) {
+		this.kinds = kinds;
+		this.stride = kinds.length;
+		keys = new long[16];
+		values = new long[16 * stride];
+		slots = new int[32];
+		Arrays.fill(slots, EMPTY);
+	}
+
+	/**
+	 * Finds the group of {@code key}, creating it if it does not exist.
+	 * 
+	 * @param key
+	 *            the code of the group
+	 * @return the offset of the group's results in {@link #values()}
+	 */
+	int group(final long key) {
+		final int mask = slots.length - 1;
+		int slot = mix(key) & mask;
+		int group;
+		while ((group = slots[slot]) != EMPTY) {
+			if (keys[group] == key) {
+				return group * stride;
+			}
+			slot = (slot + 1) & mask;
+		}
+		group = size++;
+		if (group == keys.length) {
+			keys = Arrays.copyOf(keys, group * 2);
+			values = Arrays.copyOf(values, group * 2 * stride);
+		}
+		keys[group] = key;
+		for (int i = 0; i < stride; i++) {
+			values[group * stride + i] = kinds[i].identity;
+		}
+		slots[slot] = group;
+		if (size * 2 > slots.length) {
+			rehash();
+		}
+		return group * stride;
+	}
+
+	/**
+	 * Adds a value to one result of a group.
+	 * 
+	 * @param offset
+	 *            the offset returned by {@link #group(long)}
+	 * @param measure
+	 *            the index of the measure
+	 * @param value
+	 *            the value of the event
+	 */
+	void accumulate(final int offset, final int measure, final long value) {
+		values[offset + measure] = kinds[measure].accumulate(values[offset + measure], value);
+	}
+
+	/**
+	 * Merges the groups of {@code other} into this table.
+	 * 
+	 * @param other
+	 *            the table to merge, unchanged
+	 * @return this table
+	 */
+	LongGroupTable merge(final LongGroupTable other) {
+		for (int group = 0; group < other.size; group++) {
+			final int offset = group(other.keys[group]);
+			final int otherOffset = group * stride;
+			for (int i = 0; i < stride; i++) {
+				values[offset + i] = kinds[i].merge(values[offset + i], other.values[otherOffset + i]);
+			}
+		}
+		return this;
+	}
+
+	/**
+	 * @return the number of groups
+	 */
+	int size() {
+		return size;
+	}
+
+	/**
+	 * Copies the groups into a map, decoding each code to its key.
+	 * 
+	 * @param decoder
+	 *            decodes the code of a group
+	 * @return the results of each group, by key
+	 */
+	<K> Map<K, long[]> toMap(final LongFunction<? extends K> decoder) {
+		final Map<K, long[]> groups = new HashMap<K, long[]>(size * 4 / 3 + 1);
+		for (int group = 0; group < size; group++) {
+			groups.put(decoder.apply(keys[group]), Arrays.copyOfRange(values, group * stride, (group + 1) * stride));
+		}
+		return groups;
+	}
+
+	private void rehash() {
+		slots = new int[slots.length * 2];
+		Arrays.fill(slots, EMPTY);
+		final int mask = slots.length - 1;
+		for (int group = 0; group < size; group++) {
+			int slot = mix(keys[group]) & mask;
+			while (slots[slot] != EMPTY) {
+				slot = (slot + 1) & mask;
+			}
+			slots[slot] = group;
+		}
+	}
+
+	private static int mix(final long key) {
+		final long hash = key * 0x9E3779B97F4A7C15L;
+		return (int) (hash ^ hash >>> 32);
+	}
+
+}
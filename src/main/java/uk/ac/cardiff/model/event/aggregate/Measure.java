@@ -0,0 +1,164 @@
+/**
+ * Copyright (C) 2010 Cardiff University, Wales <smartp@cf.ac.uk>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.ac.cardiff.model.event.aggregate;
+
+import java.util.Locale;
+import java.util.Objects;
+
+/**
+ * An aggregate function computed over each group of an {@link EventAggregator}:
+ * a count of events, or the sum, minimum or maximum of an {@link EventValue}.
+ * Each is held as a single {@code long} per group, so partial results are
+ * merged without allocating.
+ * 
+ * @author philsmart
+ */
+public final class Measure {
+
+	/**
+	 * The kinds of aggregate function.
+	 */
+	public enum Kind {
+
+		/** The number of events. */
+		COUNT(0),
+
+		/** The sum of the values, overflowing silently. */
+		SUM(0),
+
+		/** The least value. */
+		MIN(Long.MAX_VALUE),
+
+		/** The greatest value. */
+		MAX(Long.MIN_VALUE);
+
+		/** The value of a group with no events. */
+		final long identity;
+
+		Kind(final long identity) {
+			this.identity = identity;
+		}
+
+		/**
+		 * Adds one event's value to a result of this kind of function.
+		 * 
+		 * @param result
+		 *            the result so far
+		 * @param value
+		 *            the value of the event, ignored for a count
+		 * @return the new result
+		 */
+		long accumulate(final long result, final long value) {
+			switch (this) {
+			case COUNT:
+				return result + 1;
+			case MIN:
+				return Math.min(result, value);
+			case MAX:
+				return Math.max(result, value);
+			default:
+				return result + value;
+			}
+		}
+
+		/**
+		 * Combines two results of this kind of function.
+		 * 
+		 * @param left
+		 *            a result
+		 * @param right
+		 *            another result
+		 * @return the combined result
+		 */
+		long merge(final long left, final long right) {
+			switch (this) {
+			case MIN:
+				return Math.min(left, right);
+			case MAX:
+				return Math.max(left, right);
+			default:
+				return left + right;
+			}
+		}
+
+	}
+
+	private static final Measure COUNT = new Measure(Kind.COUNT, null);
+
+	private final Kind kind;
+
+	/** The value aggregated, null for {@link Kind#COUNT}. */
+	private final EventValue value;
+
+	private Measure(final Kind kind, final EventValue value) {
+		this.kind = kind;
+		this.value = value;
+	}
+
+	/**
+	 * @return a measure of the number of events in each group
+	 */
+	public static Measure count() {
+		return COUNT;
+	}
+
+	/**
+	 * @param value
+	 *            the value
+	 * @return a measure of the sum of {@code value} in each group
+	 */
+	public static Measure sum(final EventValue value) {
+		return new Measure(Kind.SUM, Objects.requireNonNull(value, "value"));
+	}
+
+	/**
+	 * @param value
+	 *            the value
+	 * @return a measure of the least {@code value} in each group
+	 */
+	public static Measure min(final EventValue value) {
+		return new Measure(Kind.MIN, Objects.requireNonNull(value, "value"));
+	}
+
+	/**
+	 * @param value
+	 *            the value
+	 * @return a measure of the greatest {@code value} in each group
+	 */
+	public static Measure max(final EventValue value) {
+		return new Measure(Kind.MAX, Objects.requireNonNull(value, "value"));
+	}
+
+	/**
+	 * @return the kind of aggregate function
+	 */
+	public Kind getKind() {
+		return kind;
+	}
+
+	/**
+	 * @return the value aggregated, null for a count
+	 */
+	public EventValue getValue() {
+		return value;
+	}
+
+	@Override
+	public String toString() {
+		return value == null ? "count" : kind.name().toLowerCase(Locale.ENGLISH) + "(" + value + ")";
+	}
+
+}
@@ -0,0 +1,110 @@
+/**
+ * Copyright (C) 2010 Cardiff University, Wales <smartp@cf.ac.uk>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.ac.cardiff.model.event.aggregate;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The groups of one partial aggregation, keyed by any object. The results of
+ * each group are held in a {@code long[]}, one value per measure. Not thread
+ * safe, each task fills its own.
+ * 
+ * @author philsmart
+ */
+final class ObjectGroupTable {
+
+	private final Measure.Kind[] kinds;
+
+	private final Map<Object, long[]> groups = new HashMap<Object, long[]>();
+
+	ObjectGroupTable(final Measure.Kind[] kinds) {
+		this.kinds = kinds;
+	}
+
+	/**
+	 * Finds the group of {@code key}, creating it if it does not exist.
+	 * 
+	 * @param key
+	 *            the key of the group, may be null
+	 * @return the results of the group
+	 */
+	long[] group(final Object key) {
+		final long[] results = groups.get(key);
+		return results != null ? results : newGroup(key);
+	}
+
+	/**
+	 * Kept out of {@link #group(Object)}, so it is small enough to be inlined
+	 * into the scan of every row.
+	 */
+	private long[] newGroup(final Object key) {
+		final long[] results = new long[kinds.length];
+		for (int i = 0; i < kinds.length; i++) {
+			results[i] = kinds[i].identity;
+		}
+		groups.put(key, results);
+		return results;
+	}
+
+	/**
+	 * Adds a value to one result of a group.
+	 * 
+	 * @param results
+	 *            the results returned by {@link #group(Object)}
+	 * @param measure
+	 *            the index of the measure
+	 * @param value
+	 *            the value of the event
+	 */
+	void accumulate(final long[] results, final int measure, final long value) {
+		results[measure] = kinds[measure].accumulate(results[measure], value);
+	}
+
+	/**
+	 * Merges the groups of {@code other} into this table.
+	 * 
+	 * @param other
+	 *            the table to merge, unchanged
+	 * @return this table
+	 */
+	ObjectGroupTable merge(final ObjectGroupTable other) {
+		for (final Map.Entry<Object, long[]> entry : other.groups.entrySet()) {
+			final long[] results = group(entry.getKey());
+			final long[] otherResults = entry.getValue();
+			for (int i = 0; i < kinds.length; i++) {
+				results[i] = kinds[i].merge(results[i], otherResults[i]);
+			}
+		}
+		return this;
+	}
+
+	/**
+	 * @return the number of groups
+	 */
+	int size() {
+		return groups.size();
+	}
+
+	/**
+	 * @return the results of each group, by key, owned by this table
+	 */
+	@SuppressWarnings("unchecked")
+	<K> Map<K, long[]> toMap() {
+		return (Map<K, long[]>) groups;
+	}
+
+}
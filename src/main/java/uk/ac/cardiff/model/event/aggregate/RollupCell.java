@@ -0,0 +1,266 @@
+/**
+ * Copyright (C) 2010 Cardiff University, Wales <smartp@cf.ac.uk>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.ac.cardiff.model.event.aggregate;
+
+import java.util.Objects;
+
+import javax.persistence.Convert;
+import javax.persistence.Entity;
+import javax.persistence.GeneratedValue;
+import javax.persistence.Id;
+import javax.persistence.Index;
+import javax.persistence.Table;
+import javax.persistence.UniqueConstraint;
+
+import org.hibernate.annotations.Type;
+import org.joda.time.DateTime;
+
+import uk.ac.cardiff.model.event.jpa.CanonicalStringConverter;
+import uk.ac.cardiff.utility.FingerprintUtil;
+import uk.ac.cardiff.utility.StringUtils;
+
+/**
+ * <p>
+ * One cell of a {@link RollupCube}: the number of events in an hour with one
+ * value of each of the other {@link RollupDimension}s. Cells are persisted in
+ * their own table, so reports can group and sum them without reading the event
+ * tables.
+ * </p>
+ * 
+ * <p>
+ * A stored cell is unique on its dimension values, and has a generated id. To
+ * find the stored cell with the same values, look it up by its indexed
+ * {@link #cellFingerprint(long, String, String, int, String, String, String)
+ * fingerprint} and check {@link #hasSameDimensions(RollupCell)}, as two
+ * different cells share a fingerprint with probability about
+ * {@code n * n / 2^65} for {@code n} cells stored. A collision then costs a
+ * second row read, never a lost count.
+ * </p>
+ * 
+ * @author philsmart
+ */
+@Entity
+@Table(name = "RollupCell",
+		uniqueConstraints = @UniqueConstraint(name = "RollupCell_dimensions", columnNames = { "hourStart",
+				"serviceId", "resourceId", "resourceIdCategory", "school", "affiliation", "organisationName" }),
+		indexes = @Index(name = "RollupCell_cellFingerprint", columnList = "cellFingerprint"))
+public class RollupCell {
+
+	/** Surrogate id, generated when the cell is first persisted. */
+	@Id
+	@GeneratedValue
+	private long cellId;
+
+	/** {@link #cellFingerprint(long, String, String, int, String, String, String)}. */
+	private long cellFingerprint;
+
+	/** The start of the hour. */
+	@Type(type = "org.jadira.usertype.dateandtime.joda.PersistentDateTime")
+	private DateTime hourStart;
+
+	@Convert(converter = CanonicalStringConverter.class)
+	private String serviceId;
+
+	private String resourceId;
+
+	private int resourceIdCategory;
+
+	@Convert(converter = CanonicalStringConverter.class)
+	private String school;
+
+	@Convert(converter = CanonicalStringConverter.class)
+	private String affiliation;
+
+	@Convert(converter = CanonicalStringConverter.class)
+	private String organisationName;
+
+	/** The number of events in the cell. */
+	private long eventCount;
+
+	/**
+	 * Default constructor, for JPA.
+	 */
+	public RollupCell() {
+	}
+
+	/**
+	 * Creates a cell.
+	 * 
+	 * @param hourMillis
+	 *            the start of the hour, in milliseconds since EPOCH
+	 * @param serviceId
+	 *            the service id
+	 * @param resourceId
+	 *            the resource id
+	 * @param resourceIdCategory
+	 *            the resource id category
+	 * @param school
+	 *            the school of the principal
+	 * @param affiliation
+	 *            the affiliation of the principal
+	 * @param organisationName
+	 *            the organisation name of the event metadata
+	 * @param eventCount
+	 *            the number of events
+	 */
+	public RollupCell(final long hourMillis, final String serviceId, final String resourceId,
+			final int resourceIdCategory, final String school, final String affiliation,
+			final String organisationName, final long eventCount) {
+		this.cellFingerprint = cellFingerprint(hourMillis, serviceId, resourceId, resourceIdCategory, school, affiliation,
+				organisationName);
+		this.hourStart = new DateTime(hourMillis);
+		this.serviceId = serviceId;
+		this.resourceId = resourceId;
+		this.resourceIdCategory = resourceIdCategory;
+		this.school = school;
+		this.affiliation = affiliation;
+		this.organisationName = organisationName;
+		this.eventCount = eventCount;
+	}
+
+	/**
+	 * Computes the fingerprint of the cell with the given dimension values.
+	 * 
+	 * @param hourMillis
+	 *            the start of the hour
+	 * @param serviceId
+	 *            the service id
+	 * @param resourceId
+	 *            the resource id
+	 * @param resourceIdCategory
+	 *            the resource id category
+	 * @param school
+	 *            the school
+	 * @param affiliation
+	 *            the affiliation
+	 * @param organisationName
+	 *            the organisation name
+	 * @return a 64-bit fingerprint of the values
+	 */
+	public static long cellFingerprint(final long hourMillis, final String serviceId, final String resourceId,
+			final int resourceIdCategory, final String school, final String affiliation,
+			final String organisationName) {
+		long fingerprint = FingerprintUtil.SEED;
+		fingerprint = FingerprintUtil.fingerprint(fingerprint, hourMillis);
+		fingerprint = FingerprintUtil.fingerprint(fingerprint, serviceId);
+		fingerprint = FingerprintUtil.fingerprint(fingerprint, resourceId);
+		fingerprint = FingerprintUtil.fingerprint(fingerprint, resourceIdCategory);
+		fingerprint = FingerprintUtil.fingerprint(fingerprint, school);
+		fingerprint = FingerprintUtil.fingerprint(fingerprint, affiliation);
+		fingerprint = FingerprintUtil.fingerprint(fingerprint, organisationName);
+		return FingerprintUtil.finish(fingerprint);
+	}
+
+	/**
+	 * Compares the dimension values of two cells, to tell a cell found by
+	 * fingerprint from a different one whose values have the same fingerprint.
+	 * 
+	 * @param other
+	 *            another cell
+	 * @return true if both cells have the same hour and values of every other
+	 *         dimension, whatever their counts
+	 */
+	public boolean hasSameDimensions(final RollupCell other) {
+		return hourStart.getMillis() == other.hourStart.getMillis() && resourceIdCategory == other.resourceIdCategory
+				&& Objects.equals(serviceId, other.serviceId) && Objects.equals(resourceId, other.resourceId)
+				&& Objects.equals(school, other.school) && Objects.equals(affiliation, other.affiliation)
+				&& Objects.equals(organisationName, other.organisationName);
+	}
+
+	/**
+	 * @return the cell id, zero until the cell is persisted
+	 */
+	public long getCellId() {
+		return cellId;
+	}
+
+	/**
+	 * @return the fingerprint of the dimension values
+	 */
+	public long getCellFingerprint() {
+		return cellFingerprint;
+	}
+
+	/**
+	 * @return the start of the hour
+	 */
+	public DateTime getHourStart() {
+		return hourStart;
+	}
+
+	/**
+	 * @return the service id
+	 */
+	public String getServiceId() {
+		return serviceId;
+	}
+
+	/**
+	 * @return the resource id
+	 */
+	public String getResourceId() {
+		return resourceId;
+	}
+
+	/**
+	 * @return the resource id category
+	 */
+	public int getResourceIdCategory() {
+		return resourceIdCategory;
+	}
+
+	/**
+	 * @return the school
+	 */
+	public String getSchool() {
+		return school;
+	}
+
+	/**
+	 * @return the affiliation
+	 */
+	public String getAffiliation() {
+		return affiliation;
+	}
+
+	/**
+	 * @return the organisation name
+	 */
+	public String getOrganisationName() {
+		return organisationName;
+	}
+
+	/**
+	 * @return the number of events
+	 */
+	public long getEventCount() {
+		return eventCount;
+	}
+
+	/**
+	 * @param eventCount
+	 *            the number of events, e.g. the count of the same cell in a cube
+	 */
+	public void setEventCount(final long eventCount) {
+		this.eventCount = eventCount;
+	}
+
+	@Override
+	public String toString() {
+		return StringUtils.buildToString(this);
+	}
+
+}
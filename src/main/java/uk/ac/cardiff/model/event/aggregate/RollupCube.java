@@ -0,0 +1,495 @@
+/**
+ * Copyright (C) 2010 Cardiff University, Wales <smartp@cf.ac.uk>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.ac.cardiff.model.event.aggregate;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import uk.ac.cardiff.model.event.AuthenticationEvent;
+import uk.ac.cardiff.model.event.Event;
+import uk.ac.cardiff.model.event.batch.EventBatch;
+import uk.ac.cardiff.utility.StringDictionary;
+
+/**
+ * <p>
+ * An incrementally maintained count of events by every
+ * {@link RollupDimension}: hour, service, resource, resource category, school,
+ * affiliation and organisation. Dashboards query it, grouping by any subset of
+ * the dimensions, instead of aggregating the raw events again.
+ * </p>
+ * 
+ * <p>
+ * Each distinct combination of values is a cell, held as one {@code int} code
+ * per dimension and a {@code long} count. String dimensions are dictionary
+ * encoded, the hour is held as hours since EPOCH and the category as is. Adding
+ * an event costs one dictionary lookup per string dimension and one probe of
+ * an open addressed table of cells, however many events there are. A query
+ * reads the cells, far fewer than the events they count, and packs the codes
+ * it groups by into a {@code long} key where they fit.
+ * </p>
+ * 
+ * <p>
+ * Cells are persisted as {@link RollupCell} entities, see {@link #toCells()},
+ * one row per set of values. Writing a cube sets the count of each stored cell
+ * with the same values to the count in the cube, and persists the rest. Either
+ * write only hours the cube has seen every event of, or first
+ * {@link #add(RollupCell) add} the stored cells of the hours it is still
+ * counting.
+ * </p>
+ * 
+ * <p>
+ * Events with no event time are not counted. Thread safe. All methods are
+ * synchronized.
+ * </p>
+ * 
+ * @author philsmart
+ */
+public final class RollupCube {
+
+	/** The width of an {@link RollupDimension#HOUR}. */
+	public static final long HOUR_MILLIS = 60L * 60 * 1000;
+
+	private static final RollupDimension[] DIMENSIONS = RollupDimension.values();
+
+	/** The number of codes per cell. */
+	private static final int WIDTH = DIMENSIONS.length;
+
+	private static final int HOUR = RollupDimension.HOUR.ordinal();
+
+	private static final int CATEGORY = RollupDimension.RESOURCE_ID_CATEGORY.ordinal();
+
+	private static final int EMPTY = -1;
+
+	/** A batch dictionary code not yet translated to a cube code. */
+	private static final int UNTRANSLATED = Integer.MIN_VALUE;
+
+	private static final List<Measure> MEASURES = Collections.singletonList(Measure.count());
+
+	/** The {@link Measure.Kind} cell counts are combined with. */
+	private static final Measure.Kind[] KINDS = { Measure.Kind.SUM };
+
+	/** The dictionary of each string dimension, by ordinal, null for the others. */
+	private final StringDictionary[] dictionaries = new StringDictionary[WIDTH];
+
+	/** The codes of each cell, {@link #WIDTH} per cell, by cell number. */
+	private int[] codes;
+
+	/** The count of each cell, by cell number. */
+	private long[] counts;
+
+	/** Cell numbers, by hash of their codes, or {@link #EMPTY}. */
+	private int[] slots;
+
+	private int size;
+
+	private long total;
+
+	/**
+	 * The least and greatest code of each dimension of any cell, the range a
+	 * query packs. Not narrowed by {@link #evictBefore(long)}.
+	 */
+	private final int[] minCodes = new int[WIDTH];
+
+	private final int[] maxCodes = new int[WIDTH];
+
+	/** The codes of the cell being added. */
+	private final int[] key = new int[WIDTH];
+
+	/**
+	 * Creates an empty cube.
+	 */
+	public RollupCube() {
+		for (final RollupDimension dimension : DIMENSIONS) {
+			if (dimension.getColumn() != null) {
+				dictionaries[dimension.ordinal()] = new StringDictionary();
+			}
+		}
+		codes = new int[64 * WIDTH];
+		counts = new long[64];
+		slots = new int[128];
+		Arrays.fill(slots, EMPTY);
+		Arrays.fill(minCodes, Integer.MAX_VALUE);
+		Arrays.fill(maxCodes, Integer.MIN_VALUE);
+	}
+
+	/**
+	 * Counts an event in its cell.
+	 * 
+	 * @param event
+	 *            the event
+	 */
+	public synchronized void add(final AuthenticationEvent event) {
+		final long eventTime = event.getEventTimeMillis();
+		if (eventTime == Event.NO_EVENT_TIME) {
+			return;
+		}
+		for (int dimension = 0; dimension < WIDTH; dimension++) {
+			if (dictionaries[dimension] != null) {
+				key[dimension] = dictionaries[dimension].encode(DIMENSIONS[dimension].getColumn().get(event));
+			}
+		}
+		key[HOUR] = hour(eventTime);
+		key[CATEGORY] = event.getResourceIdCategory();
+		final int cell = cell(key);
+		counts[cell]++;
+		total++;
+	}
+
+	/**
+	 * Counts every event.
+	 * 
+	 * @param events
+	 *            the events
+	 */
+	public synchronized void addAll(final Iterable<? extends AuthenticationEvent> events) {
+		for (final AuthenticationEvent event : events) {
+			add(event);
+		}
+	}
+
+	/**
+	 * Counts every row of a batch, without materialising events. Each batch
+	 * dictionary code is translated to the cube's code once per dimension.
+	 * 
+	 * @param batch
+	 *            the batch, which must not be written to meanwhile
+	 */
+	public synchronized void add(final EventBatch batch) {
+		final int[][] translations = new int[WIDTH][];
+		for (int dimension = 0; dimension < WIDTH; dimension++) {
+			if (dictionaries[dimension] != null) {
+				translations[dimension] = new int[batch.getDictionary().size()];
+				Arrays.fill(translations[dimension], UNTRANSLATED);
+			}
+		}
+		for (int row = 0; row < batch.size(); row++) {
+			final long eventTime = batch.getEventTimeMillis(row);
+			if (eventTime == Event.NO_EVENT_TIME) {
+				continue;
+			}
+			for (int dimension = 0; dimension < WIDTH; dimension++) {
+				if (dictionaries[dimension] == null) {
+					continue;
+				}
+				final int code = batch.getCode(DIMENSIONS[dimension].getColumn(), row);
+				if (code == StringDictionary.NULL_CODE) {
+					key[dimension] = StringDictionary.NULL_CODE;
+					continue;
+				}
+				int translated = translations[dimension][code];
+				if (translated == UNTRANSLATED) {
+					translated = dictionaries[dimension].encode(batch.getDictionary().decode(code));
+					translations[dimension][code] = translated;
+				}
+				key[dimension] = translated;
+			}
+			key[HOUR] = hour(eventTime);
+			key[CATEGORY] = batch.getResourceIdCategory(row);
+			final int cell = cell(key);
+			counts[cell]++;
+			total++;
+		}
+	}
+
+	/**
+	 * Adds the count of a stored cell, e.g. to carry on counting an hour that was
+	 * persisted part way through.
+	 * 
+	 * @param cell
+	 *            the cell
+	 */
+	public synchronized void add(final RollupCell cell) {
+		final String[] values = new String[WIDTH];
+		values[RollupDimension.SERVICE_ID.ordinal()] = cell.getServiceId();
+		values[RollupDimension.RESOURCE_ID.ordinal()] = cell.getResourceId();
+		values[RollupDimension.SCHOOL.ordinal()] = cell.getSchool();
+		values[RollupDimension.AFFILIATION.ordinal()] = cell.getAffiliation();
+		values[RollupDimension.ORGANISATION_NAME.ordinal()] = cell.getOrganisationName();
+		for (int dimension = 0; dimension < WIDTH; dimension++) {
+			if (dictionaries[dimension] != null) {
+				key[dimension] = dictionaries[dimension].encode(values[dimension]);
+			}
+		}
+		key[HOUR] = hour(cell.getHourStart().getMillis());
+		key[CATEGORY] = cell.getResourceIdCategory();
+		final int number = cell(key);
+		counts[number] += cell.getEventCount();
+		total += cell.getEventCount();
+	}
+
+	/**
+	 * Adds the counts of another cube, e.g. one filled on another node. Merging a
+	 * cube into itself leaves it unchanged.
+	 * 
+	 * @param other
+	 *            the cube to merge, unchanged
+	 */
+	public void merge(final RollupCube other) {
+		if (other == this) {
+			return;
+		}
+		final List<RollupCell> cells = other.toCells();
+		synchronized (this) {
+			for (final RollupCell cell : cells) {
+				add(cell);
+			}
+		}
+	}
+
+	/**
+	 * Counts the events of every hour by some of the dimensions.
+	 * 
+	 * @param groupBy
+	 *            the dimensions to group by, none for the total
+	 * @return the {@link Measure#count()} of each group, keyed by the values of
+	 *         {@code groupBy} in order
+	 */
+	public synchronized AggregationResult<RollupKey> query(final RollupDimension... groupBy) {
+		return query(Long.MIN_VALUE, Long.MAX_VALUE, groupBy);
+	}
+
+	/**
+	 * Counts the events of the hours that start in {@code [from, to)} by some of
+	 * the dimensions, e.g. the events of each school at each service last week.
+	 * 
+	 * @param from
+	 *            the earliest hour start, inclusive, in milliseconds since EPOCH
+	 * @param to
+	 *            the latest hour start, exclusive
+	 * @param groupBy
+	 *            the dimensions to group by, none for the total
+	 * @return the {@link Measure#count()} of each group, keyed by the values of
+	 *         {@code groupBy} in order
+	 */
+	public synchronized AggregationResult<RollupKey> query(final long from, final long to,
+			final RollupDimension... groupBy) {
+		final RollupDimension[] dimensions = groupBy.clone();
+		final int[] ordinals = new int[dimensions.length];
+		final int[] shifts = new int[dimensions.length];
+		int bits = 0;
+		for (int i = 0; i < dimensions.length; i++) {
+			ordinals[i] = dimensions[i].ordinal();
+			shifts[i] = bits;
+			if (size > 0) {
+				bits += 64 - Long.numberOfLeadingZeros((long) maxCodes[ordinals[i]] - minCodes[ordinals[i]]);
+			}
+		}
+		final Map<RollupKey, long[]> groups;
+		if (bits < Long.SIZE) {
+			final LongGroupTable table = new LongGroupTable(KINDS);
+			for (int cell = 0; cell < size; cell++) {
+				if (inRange(cell, from, to)) {
+					long packed = 0;
+					for (int i = 0; i < ordinals.length; i++) {
+						packed |= ((long) codes[cell * WIDTH + ordinals[i]] - minCodes[ordinals[i]]) << shifts[i];
+					}
+					table.accumulate(table.group(packed), 0, counts[cell]);
+				}
+			}
+			groups = table.toMap(packed -> {
+				final Object[] values = new Object[ordinals.length];
+				for (int i = 0; i < ordinals.length; i++) {
+					final long mask = i + 1 < ordinals.length ? (1L << shifts[i + 1] - shifts[i]) - 1 : -1L;
+					values[i] = value(ordinals[i], (int) ((packed >>> shifts[i] & mask) + minCodes[ordinals[i]]));
+				}
+				return new RollupKey(dimensions, values);
+			});
+		} else {
+			final ObjectGroupTable table = new ObjectGroupTable(KINDS);
+			for (int cell = 0; cell < size; cell++) {
+				if (inRange(cell, from, to)) {
+					final Object[] values = new Object[ordinals.length];
+					for (int i = 0; i < ordinals.length; i++) {
+						values[i] = value(ordinals[i], codes[cell * WIDTH + ordinals[i]]);
+					}
+					table.accumulate(table.group(new RollupKey(dimensions, values)), 0, counts[cell]);
+				}
+			}
+			groups = table.toMap();
+		}
+		return new AggregationResult<RollupKey>(MEASURES, groups);
+	}
+
+	/**
+	 * @return a new {@link RollupCell} of every cell
+	 */
+	public synchronized List<RollupCell> toCells() {
+		return toCells(Long.MIN_VALUE, Long.MAX_VALUE);
+	}
+
+	/**
+	 * Copies the cells of the hours that start in {@code [from, to)}, e.g. those
+	 * of the hours that have ended, to persist.
+	 * 
+	 * @param from
+	 *            the earliest hour start, inclusive, in milliseconds since EPOCH
+	 * @param to
+	 *            the latest hour start, exclusive
+	 * @return a new {@link RollupCell} of each cell in range
+	 */
+	public synchronized List<RollupCell> toCells(final long from, final long to) {
+		final List<RollupCell> cells = new ArrayList<RollupCell>();
+		for (int cell = 0; cell < size; cell++) {
+			if (inRange(cell, from, to)) {
+				final int offset = cell * WIDTH;
+				cells.add(new RollupCell(codes[offset + HOUR] * HOUR_MILLIS,
+						decode(RollupDimension.SERVICE_ID, offset), decode(RollupDimension.RESOURCE_ID, offset),
+						codes[offset + CATEGORY], decode(RollupDimension.SCHOOL, offset),
+						decode(RollupDimension.AFFILIATION, offset), decode(RollupDimension.ORGANISATION_NAME, offset),
+						counts[cell]));
+			}
+		}
+		return cells;
+	}
+
+	/**
+	 * Removes the cells of every hour that starts before {@code millis}, e.g.
+	 * once they are persisted. Dictionary entries are kept.
+	 * 
+	 * @param millis
+	 *            the earliest hour start to keep, in milliseconds since EPOCH
+	 * @return the number of cells removed
+	 */
+	public synchronized int evictBefore(final long millis) {
+		int kept = 0;
+		for (int cell = 0; cell < size; cell++) {
+			if (codes[cell * WIDTH + HOUR] * HOUR_MILLIS < millis) {
+				total -= counts[cell];
+				continue;
+			}
+			if (kept != cell) {
+				System.arraycopy(codes, cell * WIDTH, codes, kept * WIDTH, WIDTH);
+				counts[kept] = counts[cell];
+			}
+			kept++;
+		}
+		final int evicted = size - kept;
+		if (evicted > 0) {
+			size = kept;
+			rehash(slots.length);
+		}
+		return evicted;
+	}
+
+	/**
+	 * @return the number of cells
+	 */
+	public synchronized int size() {
+		return size;
+	}
+
+	/**
+	 * @return the number of events counted
+	 */
+	public synchronized long getTotal() {
+		return total;
+	}
+
+	/**
+	 * Finds the cell of {@code key}, creating it if it does not exist.
+	 * 
+	 * @param key
+	 *            the codes of the cell
+	 * @return the cell number
+	 */
+	private int cell(final int[] key) {
+		final int mask = slots.length - 1;
+		int slot = hash(key, 0) & mask;
+		int cell;
+		while ((cell = slots[slot]) != EMPTY) {
+			if (matches(cell, key)) {
+				return cell;
+			}
+			slot = (slot + 1) & mask;
+		}
+		cell = size++;
+		if (cell == counts.length) {
+			codes = Arrays.copyOf(codes, cell * 2 * WIDTH);
+			counts = Arrays.copyOf(counts, cell * 2);
+		}
+		System.arraycopy(key, 0, codes, cell * WIDTH, WIDTH);
+		for (int dimension = 0; dimension < WIDTH; dimension++) {
+			minCodes[dimension] = Math.min(minCodes[dimension], key[dimension]);
+			maxCodes[dimension] = Math.max(maxCodes[dimension], key[dimension]);
+		}
+		slots[slot] = cell;
+		if (size * 2 > slots.length) {
+			rehash(slots.length * 2);
+		}
+		return cell;
+	}
+
+	private boolean matches(final int cell, final int[] key) {
+		final int offset = cell * WIDTH;
+		for (int dimension = 0; dimension < WIDTH; dimension++) {
+			if (codes[offset + dimension] != key[dimension]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private void rehash(final int length) {
+		slots = new int[length];
+		Arrays.fill(slots, EMPTY);
+		final int mask = length - 1;
+		for (int cell = 0; cell < size; cell++) {
+			int slot = hash(codes, cell * WIDTH) & mask;
+			while (slots[slot] != EMPTY) {
+				slot = (slot + 1) & mask;
+			}
+			slots[slot] = cell;
+		}
+	}
+
+	private boolean inRange(final int cell, final long from, final long to) {
+		final long hourMillis = codes[cell * WIDTH + HOUR] * HOUR_MILLIS;
+		return hourMillis >= from && hourMillis < to;
+	}
+
+	private String decode(final RollupDimension dimension, final int offset) {
+		return dictionaries[dimension.ordinal()].decode(codes[offset + dimension.ordinal()]);
+	}
+
+	/**
+	 * @return the value of a code of a dimension, as {@link RollupKey} holds it
+	 */
+	private Object value(final int dimension, final int code) {
+		if (dimension == HOUR) {
+			return code * HOUR_MILLIS;
+		}
+		if (dimension == CATEGORY) {
+			return code;
+		}
+		return dictionaries[dimension].decode(code);
+	}
+
+	private static int hour(final long millis) {
+		return (int) Math.floorDiv(millis, HOUR_MILLIS);
+	}
+
+	private static int hash(final int[] codes, final int offset) {
+		long hash = 0;
+		for (int i = offset; i < offset + WIDTH; i++) {
+			hash = (hash + codes[i]) * 0x9E3779B97F4A7C15L;
+		}
+		return (int) (hash ^ hash >>> 32);
+	}
+
+}
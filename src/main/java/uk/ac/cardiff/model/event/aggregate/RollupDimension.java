@@ -0,0 +1,70 @@
+/**
+ * Copyright (C) 2010 Cardiff University, Wales <smartp@cf.ac.uk>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.ac.cardiff.model.event.aggregate;
+
+import uk.ac.cardiff.model.event.batch.StringColumn;
+
+/**
+ * The dimensions of a {@link RollupCube}: the hour of an event and the fields
+ * dashboards group by.
+ * 
+ * @author philsmart
+ */
+public enum RollupDimension {
+
+	/**
+	 * The hour of {@link uk.ac.cardiff.model.event.Event#getEventTimeMillis()},
+	 * keyed by the {@link Long} millis it starts at.
+	 */
+	HOUR(null),
+
+	/** {@link StringColumn#SERVICE_ID}. */
+	SERVICE_ID(StringColumn.SERVICE_ID),
+
+	/** {@link StringColumn#RESOURCE_ID}. */
+	RESOURCE_ID(StringColumn.RESOURCE_ID),
+
+	/**
+	 * {@link uk.ac.cardiff.model.event.Event#getResourceIdCategory()}, keyed by
+	 * its {@link Integer} value.
+	 */
+	RESOURCE_ID_CATEGORY(null),
+
+	/** {@link StringColumn#SCHOOL}. */
+	SCHOOL(StringColumn.SCHOOL),
+
+	/** {@link StringColumn#AFFILIATION}. */
+	AFFILIATION(StringColumn.AFFILIATION),
+
+	/** {@link StringColumn#ORGANISATION_NAME}. */
+	ORGANISATION_NAME(StringColumn.ORGANISATION_NAME);
+
+	/** The column of a string dimension, null for the others. */
+	private final StringColumn column;
+
+	RollupDimension(final StringColumn column) {
+		this.column = column;
+	}
+
+	/**
+	 * @return the column of a string dimension, which is dictionary encoded, or
+	 *         null for {@link #HOUR} and {@link #RESOURCE_ID_CATEGORY}
+	 */
+	public StringColumn getColumn() {
+		return column;
+	}
+
+}
@@ -0,0 +1,114 @@
+/**
+ * Copyright (C) 2010 Cardiff University, Wales <smartp@cf.ac.uk>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.ac.cardiff.model.event.aggregate;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The key of a group of a {@link RollupCube} query: a value of each dimension
+ * grouped by, in the order given to the query. Immutable.
+ * 
+ * @author philsmart
+ */
+public final class RollupKey {
+
+	private final RollupDimension[] dimensions;
+
+	/** The value of each dimension, which may be null for a string dimension. */
+	private final Object[] values;
+
+	RollupKey(final RollupDimension[] dimensions, final Object[] values) {
+		this.dimensions = dimensions;
+		this.values = values;
+	}
+
+	/**
+	 * Creates the key of a group, e.g. to look it up in the result of a query.
+	 * 
+	 * @param dimensions
+	 *            the dimensions of the query, in its order
+	 * @param values
+	 *            the value of each dimension: a {@link Long} hour start for
+	 *            {@link RollupDimension#HOUR}, an {@link Integer} for
+	 *            {@link RollupDimension#RESOURCE_ID_CATEGORY}, and a
+	 *            {@link String} or null otherwise
+	 * @return the key
+	 */
+	public static RollupKey of(final RollupDimension[] dimensions, final Object... values) {
+		if (dimensions.length != values.length) {
+			throw new IllegalArgumentException(
+					"Expected " + dimensions.length + " values, was given " + values.length);
+		}
+		return new RollupKey(dimensions.clone(), values.clone());
+	}
+
+	/**
+	 * @return the dimensions of the key
+	 */
+	public List<RollupDimension> getDimensions() {
+		return Collections.unmodifiableList(Arrays.asList(dimensions));
+	}
+
+	/**
+	 * Gets the value of one dimension.
+	 * 
+	 * @param dimension
+	 *            the dimension
+	 * @return the value, see {@link #of(RollupDimension[], Object...)}
+	 * @throws IllegalArgumentException
+	 *             if the key does not have the dimension
+	 */
+	public Object get(final RollupDimension dimension) {
+		for (int i = 0; i < dimensions.length; i++) {
+			if (dimensions[i] == dimension) {
+				return values[i];
+			}
+		}
+		throw new IllegalArgumentException("Key has no dimension " + dimension);
+	}
+
+	@Override
+	public boolean equals(final Object obj) {
+		if (this == obj) {
+			return true;
+		}
+		if (!(obj instanceof RollupKey)) {
+			return false;
+		}
+		final RollupKey other = (RollupKey) obj;
+		return Arrays.equals(dimensions, other.dimensions) && Arrays.equals(values, other.values);
+	}
+
+	@Override
+	public int hashCode() {
+		return 31 * Arrays.hashCode(dimensions) + Arrays.hashCode(values);
+	}
+
+	@Override
+	public String toString() {
+		final StringBuilder builder = new StringBuilder("RollupKey [");
+		for (int i = 0; i < dimensions.length; i++) {
+			if (i > 0) {
+				builder.append(", ");
+			}
+			builder.append(dimensions[i]).append('=').append(values[i]);
+		}
+		return builder.append(']').toString();
+	}
+
+}
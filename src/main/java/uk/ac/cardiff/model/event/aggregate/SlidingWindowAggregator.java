@@ -0,0 +1,390 @@
+/**
+ * Copyright (C) 2010 Cardiff University, Wales <smartp@cf.ac.uk>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.ac.cardiff.model.event.aggregate;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.locks.StampedLock;
+
+import uk.ac.cardiff.model.event.AuthenticationEvent;
+import uk.ac.cardiff.model.event.Event;
+
+/**
+ * <p>
+ * Counts a live feed of events by key over sliding windows of event time, e.g.
+ * the logins to each {@link uk.ac.cardiff.model.event.batch.StringColumn#SERVICE_ID
+ * service} in the last 5, 15 and 60 minutes, without querying stored events.
+ * </p>
+ * 
+ * <p>
+ * Time is cut into slices of {@code sliceMillis}, and each key holds a ring of
+ * slice counts and a running count per window. Every window ends with the slice
+ * of the latest event time seen, so a window covers the most recent
+ * {@code windowMillis / sliceMillis} slices, the newest of which is still
+ * filling. Adding an event increments its slice and the windows that contain
+ * it. When time moves into a new slice, each window subtracts the slice it no
+ * longer covers, and the oldest slice is cleared for reuse. Both only visit the
+ * keys with events in that slice, so each update and each expiry costs a
+ * constant amount of work.
+ * </p>
+ * 
+ * <p>
+ * Events are expected in event time order, but may arrive up to
+ * {@code allowedLatenessMillis} late. The watermark trails the latest event
+ * time by that much. An event before it is dropped and counted in
+ * {@link WindowSnapshot#getLateEvents()}, and the slices before it are final. An
+ * idle feed can move time on with {@link #advanceTo(long)}, so its windows
+ * keep sliding.
+ * </p>
+ * 
+ * <p>
+ * Thread safe. Writers are serialized by a {@link StampedLock}. Readers take a
+ * {@link WindowSnapshot} with an optimistic read, copying the running counts
+ * and checking no write intervened, so they do not block writers. Only after
+ * repeated failed attempts does a reader take the read lock. A snapshot is
+ * reused until the next write. Keys are retained once seen.
+ * </p>
+ * 
+ * @author philsmart
+ * @param <K>
+ *            the type of key
+ */
+public final class SlidingWindowAggregator<K> {
+
+	/** Optimistic snapshot attempts before a reader takes the read lock. */
+	private static final int OPTIMISTIC_ATTEMPTS = 8;
+
+	private static final long NO_SLICE = Long.MIN_VALUE;
+
+	private final GroupKey<K> key;
+
+	private final long sliceMillis;
+
+	private final long allowedLatenessMillis;
+
+	/** The length of each window in milliseconds. */
+	private final long[] windowMillis;
+
+	/** The length of each window in slices. */
+	private final int[] windowSlices;
+
+	/** The number of slices each key holds. */
+	private final int ringLength;
+
+	private final StampedLock lock = new StampedLock();
+
+	/** Key numbers, by key. Only read by writers. */
+	private final Map<K, Integer> index = new HashMap<K, Integer>();
+
+	/** Every key seen, by key number. */
+	private Object[] keys = new Object[16];
+
+	private int keyCount;
+
+	/** The count of each slice, {@link #ringLength} per key, by key number. */
+	private long[] sliceCounts;
+
+	/** The running count of each window, one per window per key. */
+	private long[] windowCounts;
+
+	/** The numbers of the keys with a non-zero count, per ring position. */
+	private final int[][] touched;
+
+	private final int[] touchedSize;
+
+	/** The slice of the latest event time, or {@link #NO_SLICE}. */
+	private long head = NO_SLICE;
+
+	private long watermark = Long.MIN_VALUE;
+
+	private long lateEvents;
+
+	/** The last snapshot and the stamp it was copied under. */
+	private volatile CachedSnapshot<K> cached;
+
+	/**
+	 * Creates an empty aggregator.
+	 * 
+	 * @param key
+	 *            what to count by
+	 * @param sliceMillis
+	 *            the length of each slice, the granularity with which windows
+	 *            slide, e.g. a minute
+	 * @param allowedLatenessMillis
+	 *            how far behind the latest event time an event may arrive and
+	 *            still be counted
+	 * @param windowMillis
+	 *            the length of each window, each a multiple of
+	 *            {@code sliceMillis}
+	 */
+	public SlidingWindowAggregator(final GroupKey<K> key, final long sliceMillis, final long allowedLatenessMillis,
+			final long... windowMillis) {
+		if (sliceMillis <= 0) {
+			throw new IllegalArgumentException("sliceMillis must be positive");
+		}
+		if (allowedLatenessMillis < 0) {
+			throw new IllegalArgumentException("allowedLatenessMillis must not be negative");
+		}
+		if (windowMillis.length == 0) {
+			throw new IllegalArgumentException("At least one window is required");
+		}
+		this.key = Objects.requireNonNull(key, "key");
+		this.sliceMillis = sliceMillis;
+		this.allowedLatenessMillis = allowedLatenessMillis;
+		this.windowMillis = windowMillis.clone();
+		windowSlices = new int[windowMillis.length];
+		int longest = 0;
+		for (int window = 0; window < windowMillis.length; window++) {
+			if (windowMillis[window] <= 0 || windowMillis[window] % sliceMillis != 0) {
+				throw new IllegalArgumentException(
+						"Window of " + windowMillis[window] + "ms is not a positive multiple of " + sliceMillis + "ms");
+			}
+			windowSlices[window] = Math.toIntExact(windowMillis[window] / sliceMillis);
+			longest = Math.max(longest, windowSlices[window]);
+		}
+		// a late event is at most this many slices behind the head
+		final long latenessSlices = (allowedLatenessMillis + sliceMillis - 1) / sliceMillis;
+		ringLength = Math.toIntExact(Math.max(longest, latenessSlices + 1));
+		sliceCounts = new long[keys.length * ringLength];
+		windowCounts = new long[keys.length * windowSlices.length];
+		touched = new int[ringLength][];
+		touchedSize = new int[ringLength];
+		for (int slot = 0; slot < ringLength; slot++) {
+			touched[slot] = new int[4];
+		}
+	}
+
+	/**
+	 * Counts an event.
+	 * 
+	 * @param event
+	 *            the event, ignored if it has no event time
+	 */
+	public void add(final AuthenticationEvent event) {
+		final long eventTime = event.getEventTimeMillis();
+		if (eventTime == Event.NO_EVENT_TIME) {
+			return;
+		}
+		final K value = key.of(event);
+		final long stamp = lock.writeLock();
+		try {
+			count(value, eventTime);
+		} finally {
+			lock.unlockWrite(stamp);
+		}
+	}
+
+	/**
+	 * Counts every event, in order.
+	 * 
+	 * @param events
+	 *            the events
+	 */
+	public void addAll(final Iterable<? extends AuthenticationEvent> events) {
+		for (final AuthenticationEvent event : events) {
+			add(event);
+		}
+	}
+
+	/**
+	 * Moves time on to {@code eventTimeMillis}, if it is later than any event
+	 * seen, as if an event had arrived then. Windows slide and the watermark
+	 * advances, but nothing is counted.
+	 * 
+	 * @param eventTimeMillis
+	 *            the time, in milliseconds since EPOCH, e.g. the current time
+	 */
+	public void advanceTo(final long eventTimeMillis) {
+		final long stamp = lock.writeLock();
+		try {
+			advanceTime(eventTimeMillis);
+		} finally {
+			lock.unlockWrite(stamp);
+		}
+	}
+
+	/**
+	 * Gets the current counts. Does not block writers, unless a reader fails
+	 * repeatedly to copy the counts between writes.
+	 * 
+	 * @return a consistent snapshot of every window
+	 */
+	public WindowSnapshot<K> snapshot() {
+		final CachedSnapshot<K> last = cached;
+		if (last != null && lock.validate(last.stamp)) {
+			return last.snapshot;
+		}
+		for (int attempt = 0; attempt < OPTIMISTIC_ATTEMPTS; attempt++) {
+			final long stamp = lock.tryOptimisticRead();
+			if (stamp == 0) {
+				Thread.yield();
+				continue;
+			}
+			final WindowSnapshot<K> snapshot = copy();
+			if (lock.validate(stamp)) {
+				cached = new CachedSnapshot<K>(stamp, snapshot);
+				return snapshot;
+			}
+		}
+		final long stamp = lock.readLock();
+		try {
+			final WindowSnapshot<K> snapshot = copy();
+			cached = new CachedSnapshot<K>(stamp, snapshot);
+			return snapshot;
+		} finally {
+			lock.unlockRead(stamp);
+		}
+	}
+
+	/**
+	 * Copies the running counts. Under an optimistic read the fields may change
+	 * part way through, so lengths are clamped to the arrays read and the result
+	 * is only used if the read validates.
+	 */
+	private WindowSnapshot<K> copy() {
+		final long head = this.head;
+		final long watermark = this.watermark;
+		final long lateEvents = this.lateEvents;
+		final Object[] keys = this.keys;
+		final long[] windowCounts = this.windowCounts;
+		final int count = Math.min(Math.min(keyCount, keys.length), windowCounts.length / windowSlices.length);
+		return new WindowSnapshot<K>(head == NO_SLICE ? Long.MIN_VALUE : (head + 1) * sliceMillis, watermark,
+				lateEvents, windowMillis, Arrays.copyOf(keys, count),
+				Arrays.copyOf(windowCounts, count * windowSlices.length));
+	}
+
+	private void count(final K value, final long eventTime) {
+		if (eventTime < watermark) {
+			lateEvents++;
+			return;
+		}
+		advanceTime(eventTime);
+		final long slice = Math.floorDiv(eventTime, sliceMillis);
+		final int number = number(value);
+		final int slot = slot(slice);
+		if (sliceCounts[number * ringLength + slot]++ == 0) {
+			touch(slot, number);
+		}
+		final long age = head - slice;
+		for (int window = 0; window < windowSlices.length; window++) {
+			if (age < windowSlices[window]) {
+				windowCounts[number * windowSlices.length + window]++;
+			}
+		}
+	}
+
+	private void advanceTime(final long eventTime) {
+		final long slice = Math.floorDiv(eventTime, sliceMillis);
+		if (head == NO_SLICE) {
+			head = slice;
+		} else if (slice > head) {
+			if (slice - head >= ringLength) {
+				clear();
+				head = slice;
+			} else {
+				while (head < slice) {
+					expire(++head);
+				}
+			}
+		}
+		if (eventTime - allowedLatenessMillis > watermark) {
+			watermark = eventTime - allowedLatenessMillis;
+		}
+	}
+
+	/**
+	 * Moves the head to {@code slice}: each window drops the slice that falls out
+	 * of it, then the oldest slice is cleared to hold the new one.
+	 */
+	private void expire(final long slice) {
+		for (int window = 0; window < windowSlices.length; window++) {
+			final int slot = slot(slice - windowSlices[window]);
+			final int[] numbers = touched[slot];
+			for (int i = 0; i < touchedSize[slot]; i++) {
+				windowCounts[numbers[i] * windowSlices.length + window] -= sliceCounts[numbers[i] * ringLength + slot];
+			}
+		}
+		final int slot = slot(slice);
+		final int[] numbers = touched[slot];
+		for (int i = 0; i < touchedSize[slot]; i++) {
+			sliceCounts[numbers[i] * ringLength + slot] = 0;
+		}
+		touchedSize[slot] = 0;
+	}
+
+	private void clear() {
+		for (int slot = 0; slot < ringLength; slot++) {
+			final int[] numbers = touched[slot];
+			for (int i = 0; i < touchedSize[slot]; i++) {
+				sliceCounts[numbers[i] * ringLength + slot] = 0;
+			}
+			touchedSize[slot] = 0;
+		}
+		Arrays.fill(windowCounts, 0, keyCount * windowSlices.length, 0);
+	}
+
+	private int number(final K value) {
+		final Integer number = index.get(value);
+		if (number != null) {
+			return number;
+		}
+		final int next = keyCount;
+		if (next == keys.length) {
+			// new arrays are filled before they are published, for readers
+			final int capacity = next * 2;
+			final long[] grownSlices = Arrays.copyOf(sliceCounts, capacity * ringLength);
+			final long[] grownWindows = Arrays.copyOf(windowCounts, capacity * windowSlices.length);
+			final Object[] grownKeys = Arrays.copyOf(keys, capacity);
+			sliceCounts = grownSlices;
+			windowCounts = grownWindows;
+			keys = grownKeys;
+		}
+		keys[next] = value;
+		index.put(value, next);
+		keyCount = next + 1;
+		return next;
+	}
+
+	private void touch(final int slot, final int number) {
+		if (touchedSize[slot] == touched[slot].length) {
+			touched[slot] = Arrays.copyOf(touched[slot], touchedSize[slot] * 2);
+		}
+		touched[slot][touchedSize[slot]++] = number;
+	}
+
+	private int slot(final long slice) {
+		return (int) Math.floorMod(slice, (long) ringLength);
+	}
+
+	/**
+	 * A snapshot and the stamp it is valid under.
+	 */
+	private static final class CachedSnapshot<K> {
+
+		private final long stamp;
+
+		private final WindowSnapshot<K> snapshot;
+
+		private CachedSnapshot(final long stamp, final WindowSnapshot<K> snapshot) {
+			this.stamp = stamp;
+			this.snapshot = snapshot;
+		}
+
+	}
+
+}
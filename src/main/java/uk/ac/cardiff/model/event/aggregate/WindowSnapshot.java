@@ -0,0 +1,178 @@
+/**
+ * Copyright (C) 2010 Cardiff University, Wales <smartp@cf.ac.uk>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.ac.cardiff.model.event.aggregate;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The counts of a {@link SlidingWindowAggregator} at one instant: the events of
+ * each key in each of its windows, which end together at {@link #getEnd()}.
+ * Immutable, so it can be read at leisure while the aggregator moves on.
+ * 
+ * @author philsmart
+ * @param <K>
+ *            the type of key
+ */
+public final class WindowSnapshot<K> {
+
+	private final long end;
+
+	private final long watermark;
+
+	private final long lateEvents;
+
+	private final long[] windowMillis;
+
+	/** Every key seen, by key number. */
+	private final Object[] keys;
+
+	/** The count of each key in each window, {@code windowMillis.length} per key. */
+	private final long[] counts;
+
+	/** Key numbers, by key, built on first lookup. */
+	private Map<Object, Integer> index;
+
+	WindowSnapshot(final long end, final long watermark, final long lateEvents, final long[] windowMillis,
+			final Object[] keys, final long[] counts) {
+		this.end = end;
+		this.watermark = watermark;
+		this.lateEvents = lateEvents;
+		this.windowMillis = windowMillis;
+		this.keys = keys;
+		this.counts = counts;
+	}
+
+	/**
+	 * @return the end, exclusive, of every window in milliseconds since EPOCH,
+	 *         the end of the slice of the latest event time seen, or
+	 *         {@link Long#MIN_VALUE} if there has been none
+	 */
+	public long getEnd() {
+		return end;
+	}
+
+	/**
+	 * @return the watermark: events before it were dropped as late, and the
+	 *         counts of the slices before it are final
+	 */
+	public long getWatermark() {
+		return watermark;
+	}
+
+	/**
+	 * @return the number of events dropped for arriving after the watermark had
+	 *         passed them
+	 */
+	public long getLateEvents() {
+		return lateEvents;
+	}
+
+	/**
+	 * @return the length of each window in milliseconds, in the order given to
+	 *         the aggregator
+	 */
+	public List<Long> getWindows() {
+		final List<Long> windows = new ArrayList<Long>(windowMillis.length);
+		for (final long millis : windowMillis) {
+			windows.add(millis);
+		}
+		return Collections.unmodifiableList(windows);
+	}
+
+	/**
+	 * Gets the events of a key in a window, e.g. the logins to a service in the
+	 * last 15 minutes.
+	 * 
+	 * @param key
+	 *            the key
+	 * @param windowMillis
+	 *            the length of one of the windows
+	 * @return the count, zero if the key has no events in the window
+	 */
+	public long get(final K key, final long windowMillis) {
+		final int window = window(windowMillis);
+		final Integer number = index().get(key);
+		return number == null ? 0 : counts[number * this.windowMillis.length + window];
+	}
+
+	/**
+	 * Gets the events of every key in a window.
+	 * 
+	 * @param windowMillis
+	 *            the length of one of the windows
+	 * @return a new map of the count of each key with events in the window
+	 */
+	@SuppressWarnings("unchecked")
+	public Map<K, Long> asMap(final long windowMillis) {
+		final int window = window(windowMillis);
+		final Map<K, Long> results = new HashMap<K, Long>();
+		for (int number = 0; number < keys.length; number++) {
+			final long count = counts[number * this.windowMillis.length + window];
+			if (count != 0) {
+				results.put((K) keys[number], count);
+			}
+		}
+		return results;
+	}
+
+	/**
+	 * Gets the events of all keys in a window.
+	 * 
+	 * @param windowMillis
+	 *            the length of one of the windows
+	 * @return the total count
+	 */
+	public long getTotal(final long windowMillis) {
+		final int window = window(windowMillis);
+		long total = 0;
+		for (int number = 0; number < keys.length; number++) {
+			total += counts[number * this.windowMillis.length + window];
+		}
+		return total;
+	}
+
+	private int window(final long millis) {
+		for (int window = 0; window < windowMillis.length; window++) {
+			if (windowMillis[window] == millis) {
+				return window;
+			}
+		}
+		throw new IllegalArgumentException(
+				"No window of " + millis + "ms, the windows are " + Arrays.toString(windowMillis));
+	}
+
+	private synchronized Map<Object, Integer> index() {
+		if (index == null) {
+			index = new HashMap<Object, Integer>(keys.length * 4 / 3 + 1);
+			for (int number = 0; number < keys.length; number++) {
+				index.put(keys[number], number);
+			}
+		}
+		return index;
+	}
+
+	@Override
+	public String toString() {
+		return "WindowSnapshot [end=" + end + ", watermark=" + watermark + ", windows="
+				+ Arrays.toString(windowMillis) + ", keys=" + keys.length + "]";
+	}
+
+}
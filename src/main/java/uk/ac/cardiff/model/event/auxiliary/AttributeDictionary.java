@@ -0,0 +1,141 @@
+/**
+ * Copyright (C) 2010 Cardiff University, Wales <smartp@cf.ac.uk>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.ac.cardiff.model.event.auxiliary;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * <p>
+ * The process wide, append only dictionary of released attribute names that
+ * gives each name the small integer code it is held under in an
+ * {@link AttributeSet}. Codes are assigned in the order names are first seen, so
+ * they are only meaningful within one JVM and are never persisted.
+ * </p>
+ * 
+ * <p>
+ * Lookups of known names are lock free, registering a new name takes a lock.
+ * Attribute names are few, so the dictionary is bounded. Once it is full, new
+ * names are left without a code rather than evicting, and an
+ * {@link AttributeSet} holds them uncoded.
+ * </p>
+ * 
+ * @author philsmart
+ */
+public final class AttributeDictionary {
+
+	/**
+	 * The dictionary used by {@link AttributeSet}. Its size can be set with the
+	 * {@code uk.ac.cardiff.model.event.auxiliary.AttributeDictionary.maxSize}
+	 * system property.
+	 */
+	public static final AttributeDictionary SHARED = new AttributeDictionary(
+			Integer.getInteger("uk.ac.cardiff.model.event.auxiliary.AttributeDictionary.maxSize", 65536));
+
+	/** Returned by {@link #lookup(String)} and {@link #encode(String)} for a name with no code. */
+	public static final int NOT_FOUND = -1;
+
+	private final ConcurrentMap<String, Integer> codes = new ConcurrentHashMap<String, Integer>();
+
+	/** Names by code, replaced when it grows. */
+	private volatile String[] names = new String[64];
+
+	private final int maxSize;
+
+	/**
+	 * Creates a dictionary.
+	 * 
+	 * @param maxSize
+	 *            the maximum number of names it can hold
+	 */
+	AttributeDictionary(final int maxSize) {
+		if (maxSize <= 0) {
+			throw new IllegalArgumentException("maxSize must be positive");
+		}
+		this.maxSize = maxSize;
+	}
+
+	/**
+	 * The code of {@code name}, registering it if it is new.
+	 * 
+	 * @param name
+	 *            the attribute name, not null
+	 * @return the code of the name, or {@link #NOT_FOUND} if the name is new and
+	 *         the dictionary is full
+	 */
+	public int encode(final String name) {
+		final Integer code = codes.get(name);
+		return code != null ? code : register(name);
+	}
+
+	/**
+	 * The code of {@code name}, without registering it.
+	 * 
+	 * @param name
+	 *            the attribute name
+	 * @return the code of the name, or {@link #NOT_FOUND}
+	 */
+	public int lookup(final String name) {
+		final Integer code = name == null ? null : codes.get(name);
+		return code != null ? code : NOT_FOUND;
+	}
+
+	/**
+	 * @param code
+	 *            a code returned by {@link #encode(String)}
+	 * @return the name with that code
+	 */
+	public String decode(final int code) {
+		return names[code];
+	}
+
+	/**
+	 * @return the number of names held
+	 */
+	public int size() {
+		return codes.size();
+	}
+
+	private synchronized int register(final String name) {
+		if (name == null) {
+			throw new NullPointerException("Attribute names can not be null");
+		}
+		final Integer existing = codes.get(name);
+		if (existing != null) {
+			return existing;
+		}
+		final int code = codes.size();
+		if (code == maxSize) {
+			return NOT_FOUND;
+		}
+		String[] names = this.names;
+		if (code == names.length) {
+			names = Arrays.copyOf(names, Math.min(maxSize, code << 1));
+		}
+		names[code] = name;
+		// the volatile write publishes the new entry before the code is visible
+		this.names = names;
+		codes.put(name, code);
+		return code;
+	}
+
+	@Override
+	public String toString() {
+		return "AttributeDictionary [size=" + size() + ", maxSize=" + maxSize + "]";
+	}
+
+}
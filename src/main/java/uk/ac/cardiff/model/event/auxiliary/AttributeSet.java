@@ -0,0 +1,397 @@
+/**
+ * Copyright (C) 2010 Cardiff University, Wales <smartp@cf.ac.uk>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.ac.cardiff.model.event.auxiliary;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.function.Function;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonValue;
+
+import uk.ac.cardiff.utility.FingerprintUtil;
+import uk.ac.cardiff.utility.Fingerprinted;
+import uk.ac.cardiff.utility.HashCodeUtil;
+import uk.ac.cardiff.utility.Hashed;
+import uk.ac.cardiff.utility.LruCache;
+
+/**
+ * <p>
+ * An immutable list of released attribute names, in the order they were given,
+ * indexed by the codes the names have in the {@link AttributeDictionary#SHARED
+ * shared dictionary}. Membership is a bit test rather than a walk over an array
+ * of strings.
+ * </p>
+ * 
+ * <p>
+ * The codes are kept as a bitset, or, when that would be mostly empty because
+ * the set only holds a few codes from a large dictionary, as a sorted array of
+ * codes. Which one is used depends only on the codes held. The order is kept as
+ * the codes in the order given, one {@code char} each. Null names, and names
+ * the dictionary has no room for, have no code, and a set holding one keeps
+ * its names instead and finds them by a scan.
+ * </p>
+ * 
+ * <p>
+ * Nothing depends on the codes beyond membership. Iteration is in the order the
+ * names were given, nulls and duplicates included, so the same names give the
+ * same order in every JVM. Equality is that of the {@code String[]} the names
+ * were given as, and {@link #hash(int)} and {@link #fingerprint(long)} add
+ * exactly what the array used to, so the hash codes and fingerprints of
+ * events, and the event ids derived from them, are unchanged. The hash is
+ * computed once, so adding it and rejecting an unequal set take constant time.
+ * In JSON a set is an array of its names.
+ * </p>
+ * 
+ * <p>
+ * There are few distinct sets, so {@link #of(String...)} returns a shared
+ * instance where it can and events holding the same names hold the same set.
+ * The number of sets shared is set by the
+ * {@code uk.ac.cardiff.model.event.auxiliary.AttributeSet.poolSize} system
+ * property.
+ * </p>
+ * 
+ * @author philsmart
+ */
+public final class AttributeSet implements Iterable<String>, Fingerprinted, Hashed {
+
+	/** The empty set. */
+	public static final AttributeSet EMPTY = new AttributeSet(new char[0], null, new long[0], null);
+
+	private static final AttributeDictionary DICTIONARY = AttributeDictionary.SHARED;
+
+	private static final LruCache<AttributeSet, AttributeSet> POOL = new LruCache<AttributeSet, AttributeSet>(
+			Integer.getInteger("uk.ac.cardiff.model.event.auxiliary.AttributeSet.poolSize", 4096));
+
+	/** The codes in the order given. Null if some name has no code. */
+	private final char[] order;
+
+	/** The names in the order given. Null unless some name has no code. */
+	private final String[] names;
+
+	/** The codes as a bitset, trimmed of trailing zero words. Null if sparse. */
+	private final long[] words;
+
+	/** The distinct codes in ascending order. Null if dense. */
+	private final int[] codes;
+
+	/** 37 to the power of the size, what {@link HashCodeUtil} scales the seed by. */
+	private final int hashScale;
+
+	/** The hash {@link HashCodeUtil} gives the names from a zero seed. */
+	private final int hashTerm;
+
+	private AttributeSet(final char[] order, final String[] names, final long[] words, final int[] codes) {
+		this.order = order;
+		this.names = names;
+		this.words = words;
+		this.codes = codes;
+		final int size = size();
+		int scale = 1;
+		for (int i = 0; i < size; i++) {
+			scale *= 37;
+		}
+		this.hashScale = scale;
+		this.hashTerm = names != null ? HashCodeUtil.hash(0, names) : hashOrder(order);
+	}
+
+	private static int hashOrder(final char[] order) {
+		int result = 0;
+		for (final char code : order) {
+			result = 37 * result + DICTIONARY.decode(code).hashCode();
+		}
+		return result;
+	}
+
+	/**
+	 * The set of the given names, kept in the order given.
+	 * 
+	 * @param names
+	 *            the attribute names, which may include nulls and duplicates
+	 * @return the set of those names
+	 */
+	@JsonCreator
+	public static AttributeSet of(final String... names) {
+		if (names.length == 0) {
+			return EMPTY;
+		}
+		final String[] held = new String[names.length];
+		final int[] codes = new int[names.length];
+		final char[] order = new char[names.length];
+		int coded = 0;
+		int maxCode = 0;
+		for (int i = 0; i < names.length; i++) {
+			final int code = names[i] == null ? AttributeDictionary.NOT_FOUND : DICTIONARY.encode(names[i]);
+			if (code == AttributeDictionary.NOT_FOUND) {
+				held[i] = names[i];
+			} else {
+				held[i] = DICTIONARY.decode(code);
+				codes[coded++] = code;
+				order[i] = (char) code;
+				maxCode = Math.max(maxCode, code);
+			}
+		}
+		final boolean ordered = coded == names.length && maxCode <= Character.MAX_VALUE;
+		final AttributeSet set = ofCodes(ordered ? order : null, ordered ? null : held, codes, coded);
+		return POOL.get(set, Function.identity());
+	}
+
+	/**
+	 * The set of the given names, kept in iteration order.
+	 * 
+	 * @param names
+	 *            the attribute names, which may include nulls and duplicates
+	 * @return the set of those names
+	 */
+	public static AttributeSet of(final Collection<String> names) {
+		return of(names.toArray(new String[names.size()]));
+	}
+
+	/**
+	 * Builds a set from its order or names and the first {@code count} of
+	 * {@code codes}, which may be in any order and repeat. The codes are sorted
+	 * in place.
+	 */
+	private static AttributeSet ofCodes(final char[] order, final String[] names, final int[] codes,
+			final int count) {
+		if (count == 0) {
+			return new AttributeSet(order, names, new long[0], null);
+		}
+		Arrays.sort(codes, 0, count);
+		int distinct = 0;
+		for (int i = 0; i < count; i++) {
+			if (i == 0 || codes[i] != codes[i - 1]) {
+				codes[distinct++] = codes[i];
+			}
+		}
+		final int wordCount = (codes[distinct - 1] >>> 6) + 1;
+		if (distinct * 2 < wordCount) {
+			// ints take half the space of longs
+			return new AttributeSet(order, names, null, Arrays.copyOf(codes, distinct));
+		}
+		final long[] words = new long[wordCount];
+		for (int i = 0; i < distinct; i++) {
+			words[codes[i] >>> 6] |= 1L << codes[i];
+		}
+		return new AttributeSet(order, names, words, null);
+	}
+
+	/**
+	 * @param name
+	 *            an attribute name, or null
+	 * @return true if the set holds {@code name}
+	 */
+	public boolean contains(final String name) {
+		final int code = DICTIONARY.lookup(name);
+		if (code != AttributeDictionary.NOT_FOUND && containsCode(code)) {
+			return true;
+		}
+		return names != null && scan(name);
+	}
+
+	private boolean containsCode(final int code) {
+		if (words != null) {
+			final int word = code >>> 6;
+			return word < words.length && (words[word] & 1L << code) != 0;
+		}
+		return Arrays.binarySearch(codes, code) >= 0;
+	}
+
+	/** Looks for a name without a code, which is never in the bitset. */
+	private boolean scan(final String name) {
+		for (final String held : names) {
+			if (name == null ? held == null : name.equals(held)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * @param other
+	 *            another set
+	 * @return true if this set holds every name in {@code other}
+	 */
+	public boolean containsAll(final AttributeSet other) {
+		if (other.names != null) {
+			for (final String name : other.names) {
+				if (!contains(name)) {
+					return false;
+				}
+			}
+			return true;
+		}
+		if (words != null && other.words != null) {
+			if (other.words.length > words.length) {
+				return false;
+			}
+			for (int i = 0; i < other.words.length; i++) {
+				if ((other.words[i] & ~words[i]) != 0) {
+					return false;
+				}
+			}
+			return true;
+		}
+		for (final int code : other.codeArray()) {
+			if (!containsCode(code)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * @return the number of names given, counting nulls and duplicates
+	 */
+	public int size() {
+		return names != null ? names.length : order.length;
+	}
+
+	/**
+	 * @return true if the set holds no names
+	 */
+	public boolean isEmpty() {
+		return size() == 0;
+	}
+
+	/**
+	 * @return the names in the order given, as a new array
+	 */
+	@JsonValue
+	public String[] toArray() {
+		if (names != null) {
+			return names.clone();
+		}
+		final String[] result = new String[order.length];
+		for (int i = 0; i < order.length; i++) {
+			result[i] = DICTIONARY.decode(order[i]);
+		}
+		return result;
+	}
+
+	private String get(final int index) {
+		return names != null ? names[index] : DICTIONARY.decode(order[index]);
+	}
+
+	@Override
+	public Iterator<String> iterator() {
+		return new Iterator<String>() {
+
+			private int index;
+
+			@Override
+			public boolean hasNext() {
+				return index < size();
+			}
+
+			@Override
+			public String next() {
+				if (index == size()) {
+					throw new NoSuchElementException();
+				}
+				return get(index++);
+			}
+		};
+	}
+
+	/**
+	 * The distinct codes in ascending order, materialised from the bitset if
+	 * dense. Only used off the hot paths, when the two sets being compared differ
+	 * in form.
+	 */
+	private int[] codeArray() {
+		if (codes != null) {
+			return codes;
+		}
+		int count = 0;
+		for (final long word : words) {
+			count += Long.bitCount(word);
+		}
+		final int[] result = new int[count];
+		count = 0;
+		for (int i = 0; i < words.length; i++) {
+			for (long word = words[i]; word != 0; word &= word - 1) {
+				result[count++] = (i << 6) + Long.numberOfTrailingZeros(word);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Adds the names in order, exactly as
+	 * {@link FingerprintUtil#fingerprint(long, String[])} adds the array they
+	 * were given as.
+	 */
+	@Override
+	public long fingerprint(final long aSeed) {
+		if (names != null) {
+			return FingerprintUtil.fingerprint(aSeed, names);
+		}
+		long result = FingerprintUtil.fingerprint(aSeed, order.length);
+		for (final char code : order) {
+			result = FingerprintUtil.fingerprint(result, DICTIONARY.decode(code));
+		}
+		return result;
+	}
+
+	/**
+	 * Adds the names in order, exactly as {@link HashCodeUtil#hash(int, String[])}
+	 * adds the array they were given as, in constant time.
+	 */
+	@Override
+	public int hash(final int aSeed) {
+		return aSeed * hashScale + hashTerm;
+	}
+
+	/**
+	 * @return the hash of the names from a zero seed, see {@link #hash(int)} for
+	 *         the hash the set adds to an event's
+	 */
+	@Override
+	public int hashCode() {
+		return hashTerm;
+	}
+
+	/**
+	 * Sets are equal if their names are, in the same order. Unequal sets almost
+	 * always differ in hash, so only equal sets are compared code by code.
+	 */
+	@Override
+	public boolean equals(final Object obj) {
+		if (this == obj) {
+			return true;
+		}
+		if (!(obj instanceof AttributeSet)) {
+			return false;
+		}
+		final AttributeSet other = (AttributeSet) obj;
+		if (hashTerm != other.hashTerm || hashScale != other.hashScale) {
+			return false;
+		}
+		if (order != null && other.order != null) {
+			return Arrays.equals(order, other.order);
+		}
+		return Arrays.equals(toArray(), other.toArray());
+	}
+
+	@Override
+	public String toString() {
+		return Arrays.toString(toArray());
+	}
+
+}
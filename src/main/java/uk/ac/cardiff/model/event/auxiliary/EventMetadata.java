@@ -18,9 +18,13 @@
  */
 package uk.ac.cardiff.model.event.auxiliary;
 
+import javax.persistence.Convert;
 import javax.persistence.Embeddable;
 
 import uk.ac.cardiff.model.event.Event;
+import uk.ac.cardiff.model.event.jpa.CanonicalStringConverter;
+import uk.ac.cardiff.utility.Resettable;
+import uk.ac.cardiff.utility.StringPool;
 
 /**
  * <p>
@@ -30,26 +34,58 @@ import uk.ac.cardiff.model.event.Event;
  *
  */
 @Embeddable
-public class EventMetadata {
+public class EventMetadata implements Resettable {
 
 	/**
 	 * The entityId of the Raptor service the associated
 	 * {@link uk.ac.cardiff.model.event.Event} applies to.
 	 */
+	@Convert(converter = CanonicalStringConverter.class)
 	private String raptorEntityId;
 
 	/**
 	 * The hostname of the service the {@link uk.ac.cardiff.model.event.Event}
 	 * belongs to.
 	 */
+	@Convert(converter = CanonicalStringConverter.class)
 	private String serviceName;
 
 	/**
 	 * The name of the organisation that generated the associated
 	 * {@link uk.ac.cardiff.model.event.Event}.
 	 */
+	@Convert(converter = CanonicalStringConverter.class)
 	private String organisationName;
 
+	/**
+	 * Default constructor.
+	 */
+	public EventMetadata() {
+
+	}
+
+	/**
+	 * Copy constructor.
+	 * 
+	 * @param eventMetadata
+	 *            the {@link EventMetadata} to copy
+	 */
+	public EventMetadata(final EventMetadata eventMetadata) {
+		this.raptorEntityId = eventMetadata.getRaptorEntityId();
+		this.serviceName = eventMetadata.getServiceName();
+		this.organisationName = eventMetadata.getOrganisationName();
+	}
+
+	/**
+	 * Clears every field.
+	 */
+	@Override
+	public void reset() {
+		raptorEntityId = null;
+		serviceName = null;
+		organisationName = null;
+	}
+
 	/**
 	 * 
 	 * 
@@ -59,7 +95,7 @@ public class EventMetadata {
 	 *            the serviceName to set
 	 */
 	public void setServiceName(final String serviceName) {
-		this.serviceName = serviceName;
+		this.serviceName = StringPool.SHARED.canonicalise(serviceName);
 	}
 
 	/**
@@ -74,7 +110,7 @@ public class EventMetadata {
 	 *            the organisationName to set
 	 */
 	public void setOrganisationName(final String organisationName) {
-		this.organisationName = organisationName;
+		this.organisationName = StringPool.SHARED.canonicalise(organisationName);
 	}
 
 	/**
@@ -102,7 +138,7 @@ public class EventMetadata {
 	 *            the raptorEntityId to set
 	 */
 	public void setRaptorEntityId(final String raptorEntityId) {
-		this.raptorEntityId = raptorEntityId;
+		this.raptorEntityId = StringPool.SHARED.canonicalise(raptorEntityId);
 	}
 
 }
@@ -15,10 +15,14 @@
  */
 package uk.ac.cardiff.model.event.auxiliary;
 
+import javax.persistence.Convert;
 import javax.persistence.Embeddable;
 
 import uk.ac.cardiff.model.event.AuthenticationEvent;
 import uk.ac.cardiff.model.event.Event;
+import uk.ac.cardiff.model.event.jpa.CanonicalStringConverter;
+import uk.ac.cardiff.utility.Resettable;
+import uk.ac.cardiff.utility.StringPool;
 import uk.ac.cardiff.utility.StringUtils;
 
 /**
@@ -35,14 +39,16 @@ import uk.ac.cardiff.utility.StringUtils;
  *
  */
 @Embeddable
-public class PrincipalInformation {
+public class PrincipalInformation implements Resettable {
 
 	/** The name of the school or department this principal is a member of */
+	@Convert(converter = CanonicalStringConverter.class)
 	private String school;
 
 	/**
 	 * The affiliation this principal has with their current school or department
 	 */
+	@Convert(converter = CanonicalStringConverter.class)
 	private String affiliation;
 
 	/**
@@ -63,12 +69,21 @@ public class PrincipalInformation {
 		this.affiliation = principalInformation.getAffiliation();
 	}
 
+	/**
+	 * Clears the school and affiliation.
+	 */
+	@Override
+	public void reset() {
+		school = null;
+		affiliation = null;
+	}
+
 	/**
 	 * @param school
 	 *            the school to set
 	 */
 	public void setSchool(final String school) {
-		this.school = school;
+		this.school = StringPool.SHARED.canonicalise(school);
 	}
 
 	/**
@@ -83,7 +98,7 @@ public class PrincipalInformation {
 	 *            the affiliation to set
 	 */
 	public void setAffiliation(final String affiliation) {
-		this.affiliation = affiliation;
+		this.affiliation = StringPool.SHARED.canonicalise(affiliation);
 	}
 
 	/**
@@ -0,0 +1,463 @@
+/**
+ * Copyright (C) 2010 Cardiff University, Wales <smartp@cf.ac.uk>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.ac.cardiff.model.event.batch;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+import uk.ac.cardiff.model.event.AuthenticationEvent;
+import uk.ac.cardiff.model.event.EzproxyAuthenticationEvent;
+import uk.ac.cardiff.model.event.ShibbolethIdpAuthenticationEvent;
+import uk.ac.cardiff.model.event.auxiliary.AttributeSet;
+import uk.ac.cardiff.model.event.auxiliary.EventMetadata;
+import uk.ac.cardiff.model.event.auxiliary.PrincipalInformation;
+import uk.ac.cardiff.utility.StringDictionary;
+
+/**
+ * <p>
+ * A columnar (struct of arrays) batch of {@link AuthenticationEvent}s. Each
+ * field is held in its own primitive array indexed by row: event times as a
+ * {@code long[]}, eventIds and resourceIdCategories as {@code int[]}s, and every
+ * {@link StringColumn} as an {@code int[]} of {@link StringDictionary} codes.
+ * The released attributes of each row are held as codes in a single
+ * {@code int[]}, delimited by an offset column.
+ * </p>
+ * 
+ * <p>
+ * Scans over a batch read a few dense arrays rather than chasing pointers
+ * through event objects, and the per-row accessors do not allocate. Rows are
+ * converted back to {@link ShibbolethIdpAuthenticationEvent}s or
+ * {@link EzproxyAuthenticationEvent}s with {@link #get(int)}.
+ * </p>
+ * 
+ * <p>
+ * Not thread safe for writing. A filled batch may be read concurrently.
+ * </p>
+ * 
+ * @author philsmart
+ */
+public final class EventBatch {
+
+	/** Row type of a {@link ShibbolethIdpAuthenticationEvent}. */
+	public static final byte SHIBBOLETH_IDP = 1;
+
+	/** Row type of an {@link EzproxyAuthenticationEvent}. */
+	public static final byte EZPROXY = 2;
+
+	/** Row flag, set if the attributes array is not null. */
+	static final byte HAS_ATTRIBUTES = 1;
+
+	/** Row flag, set if the principal information is not null. */
+	private static final byte HAS_PRINCIPAL_INFORMATION = 2;
+
+	/** Row flag, set if the event metadata is not null. */
+	private static final byte HAS_EVENT_METADATA = 4;
+
+	private static final StringColumn[] STRING_COLUMNS = StringColumn.values();
+
+	/** Encodes every string column and attribute name of this batch. */
+	private final StringDictionary dictionary;
+
+	private int size;
+
+	private byte[] types;
+
+	private byte[] flags;
+
+	private long[] eventTimes;
+
+	private int[] eventIds;
+
+	private int[] resourceIdCategories;
+
+	/** Code columns, indexed by {@link StringColumn#ordinal()} then row. */
+	private final int[][] codes;
+
+	/**
+	 * Start of the attributes of row {@code i} in {@link #attributeCodes}, the
+	 * attributes end at {@code attributeOffsets[i + 1]}.
+	 */
+	private int[] attributeOffsets;
+
+	private int[] attributeCodes;
+
+	/**
+	 * Creates an empty batch with its own dictionary.
+	 */
+	public EventBatch() {
+		this(new StringDictionary(), 1024);
+	}
+
+	/**
+	 * Creates an empty batch.
+	 * 
+	 * @param dictionary
+	 *            the dictionary to encode strings with, may be shared between
+	 *            batches filled by the same thread
+	 * @param initialCapacity
+	 *            the number of rows to allocate space for
+	 */
+	public EventBatch(final StringDictionary dictionary, final int initialCapacity) {
+		this.dictionary = dictionary;
+		final int capacity = Math.max(initialCapacity, 16);
+		types = new byte[capacity];
+		flags = new byte[capacity];
+		eventTimes = new long[capacity];
+		eventIds = new int[capacity];
+		resourceIdCategories = new int[capacity];
+		codes = new int[STRING_COLUMNS.length][capacity];
+		attributeOffsets = new int[capacity + 1];
+		attributeCodes = new int[capacity * 8];
+	}
+
+	/**
+	 * Wraps decoded columns as a batch, without copying them. Used by
+	 * {@link EventFileReader}. Every array must be exactly {@code size} long,
+	 * but for {@code attributeOffsets}, which is one longer, and
+	 * {@code attributeCodes}.
+	 */
+	EventBatch(final StringDictionary dictionary, final int size, final byte[] types, final byte[] flags,
+			final long[] eventTimes, final int[] eventIds, final int[] resourceIdCategories, final int[][] codes,
+			final int[] attributeOffsets, final int[] attributeCodes) {
+		this.dictionary = dictionary;
+		this.size = size;
+		this.types = types;
+		this.flags = flags;
+		this.eventTimes = eventTimes;
+		this.eventIds = eventIds;
+		this.resourceIdCategories = resourceIdCategories;
+		this.codes = codes;
+		this.attributeOffsets = attributeOffsets;
+		this.attributeCodes = attributeCodes;
+	}
+
+	/**
+	 * Creates a batch from {@code events}.
+	 * 
+	 * @param events
+	 *            the events to add
+	 * @return the batch
+	 */
+	public static EventBatch of(final Collection<? extends AuthenticationEvent> events) {
+		final EventBatch batch = new EventBatch(new StringDictionary(), events.size());
+		for (final AuthenticationEvent event : events) {
+			batch.add(event);
+		}
+		return batch;
+	}
+
+	/**
+	 * Appends {@code event} as a new row.
+	 * 
+	 * @param event
+	 *            a {@link ShibbolethIdpAuthenticationEvent} or
+	 *            {@link EzproxyAuthenticationEvent}
+	 * @throws IllegalArgumentException
+	 *             if the event is of any other type
+	 */
+	public void add(final AuthenticationEvent event) {
+		final byte type;
+		if (event instanceof ShibbolethIdpAuthenticationEvent) {
+			type = SHIBBOLETH_IDP;
+		} else if (event instanceof EzproxyAuthenticationEvent) {
+			type = EZPROXY;
+		} else {
+			throw new IllegalArgumentException("Unsupported event type " + event.getClass().getName());
+		}
+		if (size == types.length) {
+			grow();
+		}
+		final int row = size;
+		types[row] = type;
+		eventTimes[row] = event.getEventTimeMillis();
+		eventIds[row] = event.getEventId();
+		resourceIdCategories[row] = event.getResourceIdCategory();
+		setCode(StringColumn.SERVICE_ID, row, event.getServiceId());
+		setCode(StringColumn.EVENT_TYPE, row, event.getEventType());
+		setCode(StringColumn.SERVICE_HOST, row, event.getServiceHost());
+		setCode(StringColumn.RESOURCE_HOST, row, event.getResourceHost());
+		setCode(StringColumn.RESOURCE_ID, row, event.getResourceId());
+		setCode(StringColumn.AUTHENTICATION_TYPE, row, event.getAuthenticationType());
+		setCode(StringColumn.PRINCIPAL_NAME, row, event.getPrincipalName());
+
+		byte rowFlags = 0;
+		final PrincipalInformation principalInformation = event.getPrincipalInformation();
+		if (principalInformation != null) {
+			rowFlags |= HAS_PRINCIPAL_INFORMATION;
+		}
+		setCode(StringColumn.SCHOOL, row, principalInformation == null ? null : principalInformation.getSchool());
+		setCode(StringColumn.AFFILIATION, row,
+				principalInformation == null ? null : principalInformation.getAffiliation());
+
+		final EventMetadata eventMetadata = event.getEventMetadata();
+		if (eventMetadata != null) {
+			rowFlags |= HAS_EVENT_METADATA;
+		}
+		setCode(StringColumn.RAPTOR_ENTITY_ID, row, eventMetadata == null ? null : eventMetadata.getRaptorEntityId());
+		setCode(StringColumn.SERVICE_NAME, row, eventMetadata == null ? null : eventMetadata.getServiceName());
+		setCode(StringColumn.ORGANISATION_NAME, row,
+				eventMetadata == null ? null : eventMetadata.getOrganisationName());
+
+		int attributeEnd = attributeOffsets[row];
+		if (type == SHIBBOLETH_IDP) {
+			final ShibbolethIdpAuthenticationEvent shibboleth = (ShibbolethIdpAuthenticationEvent) event;
+			setCode(StringColumn.REQUEST_BINDING, row, shibboleth.getRequestBinding());
+			setCode(StringColumn.RESPONSE_BINDING, row, shibboleth.getResponseBinding());
+			setCode(StringColumn.REQUESTER_IP, row, null);
+			final AttributeSet attributes = shibboleth.getAttributeSet();
+			if (attributes != null) {
+				rowFlags |= HAS_ATTRIBUTES;
+				if (attributeEnd + attributes.size() > attributeCodes.length) {
+					attributeCodes = Arrays.copyOf(attributeCodes,
+							Math.max(attributeCodes.length * 2, attributeEnd + attributes.size()));
+				}
+				for (final String attribute : attributes) {
+					attributeCodes[attributeEnd++] = dictionary.encode(attribute);
+				}
+			}
+		} else {
+			setCode(StringColumn.REQUEST_BINDING, row, null);
+			setCode(StringColumn.RESPONSE_BINDING, row, null);
+			setCode(StringColumn.REQUESTER_IP, row, ((EzproxyAuthenticationEvent) event).getRequesterIp());
+		}
+		attributeOffsets[row + 1] = attributeEnd;
+		flags[row] = rowFlags;
+		size++;
+	}
+
+	private void setCode(final StringColumn column, final int row, final String value) {
+		codes[column.ordinal()][row] = dictionary.encode(value);
+	}
+
+	private void grow() {
+		final int capacity = types.length * 2;
+		types = Arrays.copyOf(types, capacity);
+		flags = Arrays.copyOf(flags, capacity);
+		eventTimes = Arrays.copyOf(eventTimes, capacity);
+		eventIds = Arrays.copyOf(eventIds, capacity);
+		resourceIdCategories = Arrays.copyOf(resourceIdCategories, capacity);
+		for (int i = 0; i < codes.length; i++) {
+			codes[i] = Arrays.copyOf(codes[i], capacity);
+		}
+		attributeOffsets = Arrays.copyOf(attributeOffsets, capacity + 1);
+	}
+
+	/**
+	 * @return the number of rows
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * @return the dictionary the string columns are encoded with
+	 */
+	public StringDictionary getDictionary() {
+		return dictionary;
+	}
+
+	/**
+	 * @param row
+	 *            the row
+	 * @return {@link #SHIBBOLETH_IDP} or {@link #EZPROXY}
+	 */
+	public byte getType(final int row) {
+		checkRow(row);
+		return types[row];
+	}
+
+	/**
+	 * @param row
+	 *            the row
+	 * @return the flags of the row, which record the objects that are not null
+	 */
+	byte getFlags(final int row) {
+		checkRow(row);
+		return flags[row];
+	}
+
+	/**
+	 * @param row
+	 *            the row
+	 * @return the event time in milliseconds since EPOCH
+	 */
+	public long getEventTimeMillis(final int row) {
+		checkRow(row);
+		return eventTimes[row];
+	}
+
+	/**
+	 * @param row
+	 *            the row
+	 * @return the event id
+	 */
+	public int getEventId(final int row) {
+		checkRow(row);
+		return eventIds[row];
+	}
+
+	/**
+	 * @param row
+	 *            the row
+	 * @return the resource id category
+	 */
+	public int getResourceIdCategory(final int row) {
+		checkRow(row);
+		return resourceIdCategories[row];
+	}
+
+	/**
+	 * Returns the dictionary code of a string column, which can be compared with
+	 * the result of {@link StringDictionary#lookup(String)} without decoding.
+	 * 
+	 * @param column
+	 *            the column
+	 * @param row
+	 *            the row
+	 * @return the code, or {@link StringDictionary#NULL_CODE}
+	 */
+	public int getCode(final StringColumn column, final int row) {
+		checkRow(row);
+		return codes[column.ordinal()][row];
+	}
+
+	/**
+	 * @param column
+	 *            the column
+	 * @param row
+	 *            the row
+	 * @return the decoded value of the string column
+	 */
+	public String getString(final StringColumn column, final int row) {
+		return dictionary.decode(getCode(column, row));
+	}
+
+	/**
+	 * @param row
+	 *            the row
+	 * @return the number of released attributes, 0 if the attributes are null
+	 */
+	public int getAttributeCount(final int row) {
+		checkRow(row);
+		return attributeOffsets[row + 1] - attributeOffsets[row];
+	}
+
+	/**
+	 * @param row
+	 *            the row
+	 * @param index
+	 *            the index of the attribute within the row
+	 * @return the dictionary code of the attribute name
+	 */
+	public int getAttributeCode(final int row, final int index) {
+		if (index < 0 || index >= getAttributeCount(row)) {
+			throw new IndexOutOfBoundsException("Attribute " + index + " of row " + row);
+		}
+		return attributeCodes[attributeOffsets[row] + index];
+	}
+
+	/**
+	 * @param row
+	 *            the row
+	 * @param code
+	 *            the dictionary code of an attribute name
+	 * @return true if the attribute was released in the event of this row
+	 */
+	public boolean hasAttribute(final int row, final int code) {
+		checkRow(row);
+		for (int i = attributeOffsets[row], end = attributeOffsets[row + 1]; i < end; i++) {
+			if (attributeCodes[i] == code) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Materialises the event of {@code row}.
+	 * 
+	 * @param row
+	 *            the row
+	 * @return a new event, equal to the one added
+	 */
+	public AuthenticationEvent get(final int row) {
+		checkRow(row);
+		final AuthenticationEvent event;
+		if (types[row] == SHIBBOLETH_IDP) {
+			final ShibbolethIdpAuthenticationEvent shibboleth = new ShibbolethIdpAuthenticationEvent();
+			shibboleth.setRequestBinding(getString(StringColumn.REQUEST_BINDING, row));
+			shibboleth.setResponseBinding(getString(StringColumn.RESPONSE_BINDING, row));
+			if ((flags[row] & HAS_ATTRIBUTES) != 0) {
+				final String[] attributes = new String[getAttributeCount(row)];
+				for (int i = 0; i < attributes.length; i++) {
+					attributes[i] = dictionary.decode(attributeCodes[attributeOffsets[row] + i]);
+				}
+				shibboleth.setAttributes(attributes);
+			}
+			event = shibboleth;
+		} else {
+			final EzproxyAuthenticationEvent ezproxy = new EzproxyAuthenticationEvent();
+			ezproxy.setRequesterIp(getString(StringColumn.REQUESTER_IP, row));
+			event = ezproxy;
+		}
+		event.setEventTimeMillis(eventTimes[row]);
+		event.setEventId(eventIds[row]);
+		event.setResourceIdCategory(resourceIdCategories[row]);
+		event.setServiceId(getString(StringColumn.SERVICE_ID, row));
+		event.setEventType(getString(StringColumn.EVENT_TYPE, row));
+		event.setServiceHost(getString(StringColumn.SERVICE_HOST, row));
+		event.setResourceHost(getString(StringColumn.RESOURCE_HOST, row));
+		event.setResourceId(getString(StringColumn.RESOURCE_ID, row));
+		event.setAuthenticationType(getString(StringColumn.AUTHENTICATION_TYPE, row));
+		event.setPrincipalName(getString(StringColumn.PRINCIPAL_NAME, row));
+		if ((flags[row] & HAS_PRINCIPAL_INFORMATION) != 0) {
+			final PrincipalInformation principalInformation = new PrincipalInformation();
+			principalInformation.setSchool(getString(StringColumn.SCHOOL, row));
+			principalInformation.setAffiliation(getString(StringColumn.AFFILIATION, row));
+			event.setPrincipalInformation(principalInformation);
+		}
+		if ((flags[row] & HAS_EVENT_METADATA) != 0) {
+			final EventMetadata eventMetadata = new EventMetadata();
+			eventMetadata.setRaptorEntityId(getString(StringColumn.RAPTOR_ENTITY_ID, row));
+			eventMetadata.setServiceName(getString(StringColumn.SERVICE_NAME, row));
+			eventMetadata.setOrganisationName(getString(StringColumn.ORGANISATION_NAME, row));
+			event.setEventMetadata(eventMetadata);
+		}
+		return event;
+	}
+
+	/**
+	 * Materialises every row.
+	 * 
+	 * @return a new list of events, in row order
+	 */
+	public List<AuthenticationEvent> toEvents() {
+		final List<AuthenticationEvent> events = new ArrayList<AuthenticationEvent>(size);
+		for (int row = 0; row < size; row++) {
+			events.add(get(row));
+		}
+		return events;
+	}
+
+	private void checkRow(final int row) {
+		if (row < 0 || row >= size) {
+			throw new IndexOutOfBoundsException("Row " + row + " of " + size);
+		}
+	}
+
+}
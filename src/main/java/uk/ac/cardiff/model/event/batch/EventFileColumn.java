@@ -0,0 +1,118 @@
+/**
+ * Copyright (C) 2010 Cardiff University, Wales <smartp@cf.ac.uk>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.ac.cardiff.model.event.batch;
+
+/**
+ * The columns of an event file that a reader can choose to read, see
+ * {@link EventFileReader}. The row type, and which of the principal
+ * information, event metadata and attributes are present, are always read.
+ * 
+ * @author philsmart
+ */
+public enum EventFileColumn {
+
+	/** {@link EventBatch#getEventTimeMillis(int)}. */
+	EVENT_TIME(null),
+
+	/** {@link EventBatch#getEventId(int)}. */
+	EVENT_ID(null),
+
+	/** {@link EventBatch#getResourceIdCategory(int)}. */
+	RESOURCE_ID_CATEGORY(null),
+
+	/** The released attributes. */
+	ATTRIBUTES(null),
+
+	/** {@link StringColumn#SERVICE_ID}. */
+	SERVICE_ID(StringColumn.SERVICE_ID),
+
+	/** {@link StringColumn#EVENT_TYPE}. */
+	EVENT_TYPE(StringColumn.EVENT_TYPE),
+
+	/** {@link StringColumn#SERVICE_HOST}. */
+	SERVICE_HOST(StringColumn.SERVICE_HOST),
+
+	/** {@link StringColumn#RESOURCE_HOST}. */
+	RESOURCE_HOST(StringColumn.RESOURCE_HOST),
+
+	/** {@link StringColumn#RESOURCE_ID}. */
+	RESOURCE_ID(StringColumn.RESOURCE_ID),
+
+	/** {@link StringColumn#AUTHENTICATION_TYPE}. */
+	AUTHENTICATION_TYPE(StringColumn.AUTHENTICATION_TYPE),
+
+	/** {@link StringColumn#PRINCIPAL_NAME}. */
+	PRINCIPAL_NAME(StringColumn.PRINCIPAL_NAME),
+
+	/** {@link StringColumn#SCHOOL}. */
+	SCHOOL(StringColumn.SCHOOL),
+
+	/** {@link StringColumn#AFFILIATION}. */
+	AFFILIATION(StringColumn.AFFILIATION),
+
+	/** {@link StringColumn#RAPTOR_ENTITY_ID}. */
+	RAPTOR_ENTITY_ID(StringColumn.RAPTOR_ENTITY_ID),
+
+	/** {@link StringColumn#SERVICE_NAME}. */
+	SERVICE_NAME(StringColumn.SERVICE_NAME),
+
+	/** {@link StringColumn#ORGANISATION_NAME}. */
+	ORGANISATION_NAME(StringColumn.ORGANISATION_NAME),
+
+	/** {@link StringColumn#REQUEST_BINDING}. */
+	REQUEST_BINDING(StringColumn.REQUEST_BINDING),
+
+	/** {@link StringColumn#RESPONSE_BINDING}. */
+	RESPONSE_BINDING(StringColumn.RESPONSE_BINDING),
+
+	/** {@link StringColumn#REQUESTER_IP}. */
+	REQUESTER_IP(StringColumn.REQUESTER_IP);
+
+	/** The column of each {@link StringColumn}, by its ordinal. */
+	private static final EventFileColumn[] BY_STRING_COLUMN = new EventFileColumn[StringColumn.values().length];
+
+	static {
+		for (final EventFileColumn column : values()) {
+			if (column.stringColumn != null) {
+				BY_STRING_COLUMN[column.stringColumn.ordinal()] = column;
+			}
+		}
+	}
+
+	private final StringColumn stringColumn;
+
+	EventFileColumn(final StringColumn stringColumn) {
+		this.stringColumn = stringColumn;
+	}
+
+	/**
+	 * @return the string column held in this column, or null if it is not a
+	 *         string column
+	 */
+	public StringColumn getStringColumn() {
+		return stringColumn;
+	}
+
+	/**
+	 * @param column
+	 *            a string column
+	 * @return the file column that holds it
+	 */
+	public static EventFileColumn of(final StringColumn column) {
+		return BY_STRING_COLUMN[column.ordinal()];
+	}
+
+}
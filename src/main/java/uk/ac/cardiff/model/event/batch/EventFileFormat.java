@@ -0,0 +1,226 @@
+/**
+ * Copyright (C) 2010 Cardiff University, Wales <smartp@cf.ac.uk>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.ac.cardiff.model.event.batch;
+
+import java.nio.ByteBuffer;
+
+import uk.ac.cardiff.model.event.codec.ByteBufferIO;
+
+/**
+ * <p>
+ * The layout constants of an event file, and the encodings of its column
+ * chunks, shared by {@link EventFileWriter} and {@link EventFileReader}.
+ * </p>
+ * 
+ * <pre>
+ * file      := MAGIC:i32 VERSION:u8 maxRows:i32 chunk* footer footerLength:i32 MAGIC:i32
+ * footer    := groupCount:varint group{groupCount}
+ * group     := offset:varlong rows:varint minTime:zigzag64 maxTime:zigzag64
+ *              minServiceId:string? maxServiceId:string? chunkCount:varint (id:u8 length:varint){chunkCount}
+ * string?   := 0:u8 | 1:u8 string
+ * chunk     := ints                                 types, flags, eventIds, resourceIdCategories
+ *            | longs                                eventTimes
+ *            | strings ints                         a string column, codes are index + 1, 0 for null
+ *            | ints strings ints                    attributes, count per row then codes
+ * strings   := count:varint (byteLength:varint utf8){count}
+ * ints      := RLE:u8 runs:varint (value:zigzag32 length:varint){runs}
+ *            | PACKED:u8 min:zigzag32 width:u8 bits                  value - min, little endian
+ * longs     := DELTA:u8 (delta:zigzag64){rows}                        from the previous value, or zero
+ * </pre>
+ * 
+ * <p>
+ * The chunks of a row group are written contiguously, in the order of the
+ * footer, so a reader maps the row group and reads the chunks it needs. Int
+ * streams are written in whichever of the run length or bit packed encodings
+ * is smaller. {@code maxRows} is the row group size of the writer, no row group
+ * has more rows, so a reader can reject a footer that claims more before
+ * allocating for them. Version 1 files have no {@code maxRows} and are read
+ * with {@link #MAX_ROW_GROUP_SIZE}.
+ * </p>
+ * 
+ * @author philsmart
+ */
+final class EventFileFormat {
+
+	/** 'RPTE', at the start and end of every event file. */
+	static final int MAGIC = 0x52505445;
+
+	/** The version written. */
+	static final byte VERSION = 2;
+
+	/** The most rows a row group may have. */
+	static final int MAX_ROW_GROUP_SIZE = 1 << 20;
+
+	/** Chunk id of the row types. */
+	static final int TYPES = 0;
+
+	/** Chunk id of the row flags. */
+	static final int FLAGS = 1;
+
+	/**
+	 * Chunk id of the first {@link EventFileColumn}, the rest follow in ordinal
+	 * order.
+	 */
+	static final int FIRST_COLUMN = 2;
+
+	static final byte RLE = 1;
+
+	static final byte PACKED = 2;
+
+	static final byte DELTA = 3;
+
+	private EventFileFormat() {
+	}
+
+	/**
+	 * Writes the first {@code count} values, in the smaller of the two int
+	 * encodings.
+	 */
+	static void writeInts(final ByteBuffer buffer, final int[] values, final int count) {
+		int min = 0;
+		int max = 0;
+		int runs = 0;
+		long rleBytes = 0;
+		for (int i = 0; i < count;) {
+			final int value = values[i];
+			int end = i + 1;
+			while (end < count && values[end] == value) {
+				end++;
+			}
+			runs++;
+			rleBytes += varIntLength(value << 1 ^ value >> 31) + varIntLength(end - i);
+			if (i == 0 || value < min) {
+				min = value;
+			}
+			if (i == 0 || value > max) {
+				max = value;
+			}
+			i = end;
+		}
+		final int width = 64 - Long.numberOfLeadingZeros((long) max - min);
+		final long packedBytes = 1 + ((long) count * width + 7) / 8;
+		if (rleBytes + varIntLength(runs) <= packedBytes) {
+			buffer.put(RLE);
+			ByteBufferIO.writeVarInt(buffer, runs);
+			for (int i = 0; i < count;) {
+				final int value = values[i];
+				int end = i + 1;
+				while (end < count && values[end] == value) {
+					end++;
+				}
+				ByteBufferIO.writeZigZagInt(buffer, value);
+				ByteBufferIO.writeVarInt(buffer, end - i);
+				i = end;
+			}
+		} else {
+			buffer.put(PACKED);
+			ByteBufferIO.writeZigZagInt(buffer, min);
+			buffer.put((byte) width);
+			long bits = 0;
+			int filled = 0;
+			for (int i = 0; i < count; i++) {
+				bits |= ((long) values[i] - min) << filled;
+				filled += width;
+				while (filled >= 8) {
+					buffer.put((byte) bits);
+					bits >>>= 8;
+					filled -= 8;
+				}
+			}
+			if (filled > 0) {
+				buffer.put((byte) bits);
+			}
+		}
+	}
+
+	/**
+	 * Reads {@code count} values written by
+	 * {@link #writeInts(ByteBuffer, int[], int)} into {@code values}.
+	 */
+	static void readInts(final ByteBuffer buffer, final int[] values, final int count) {
+		final byte encoding = buffer.get();
+		if (encoding == RLE) {
+			final int runs = ByteBufferIO.readVarInt(buffer);
+			int i = 0;
+			for (int run = 0; run < runs; run++) {
+				final int value = ByteBufferIO.readZigZagInt(buffer);
+				final int end = i + ByteBufferIO.readVarInt(buffer);
+				if (end > count) {
+					throw new IllegalArgumentException("Run past the end of a chunk of " + count + " values");
+				}
+				while (i < end) {
+					values[i++] = value;
+				}
+			}
+			if (i != count) {
+				throw new IllegalArgumentException("Chunk has " + i + " values, expected " + count);
+			}
+		} else if (encoding == PACKED) {
+			final int min = ByteBufferIO.readZigZagInt(buffer);
+			final int width = buffer.get();
+			if (width < 0 || width > 32) {
+				throw new IllegalArgumentException("Bit width " + width);
+			}
+			final long mask = (1L << width) - 1;
+			long bits = 0;
+			int filled = 0;
+			for (int i = 0; i < count; i++) {
+				while (filled < width) {
+					bits |= (buffer.get() & 0xFFL) << filled;
+					filled += 8;
+				}
+				values[i] = (int) ((bits & mask) + min);
+				bits >>>= width;
+				filled -= width;
+			}
+		} else {
+			throw new IllegalArgumentException("Unknown int encoding " + encoding);
+		}
+	}
+
+	/**
+	 * Writes the first {@code count} values as zigzag deltas.
+	 */
+	static void writeLongs(final ByteBuffer buffer, final long[] values, final int count) {
+		buffer.put(DELTA);
+		long previous = 0;
+		for (int i = 0; i < count; i++) {
+			ByteBufferIO.writeZigZagLong(buffer, values[i] - previous);
+			previous = values[i];
+		}
+	}
+
+	/**
+	 * Reads {@code count} values written by
+	 * {@link #writeLongs(ByteBuffer, long[], int)} into {@code values}.
+	 */
+	static void readLongs(final ByteBuffer buffer, final long[] values, final int count) {
+		final byte encoding = buffer.get();
+		if (encoding != DELTA) {
+			throw new IllegalArgumentException("Unknown long encoding " + encoding);
+		}
+		long previous = 0;
+		for (int i = 0; i < count; i++) {
+			previous += ByteBufferIO.readZigZagLong(buffer);
+			values[i] = previous;
+		}
+	}
+
+	private static int varIntLength(final int value) {
+		return (31 - Integer.numberOfLeadingZeros(value | 1)) / 7 + 1;
+	}
+
+}
@@ -0,0 +1,489 @@
+/**
+ * Copyright (C) 2010 Cardiff University, Wales <smartp@cf.ac.uk>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.ac.cardiff.model.event.batch;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+import uk.ac.cardiff.model.event.Event;
+import uk.ac.cardiff.model.event.codec.ByteBufferIO;
+import uk.ac.cardiff.utility.StringDictionary;
+
+/**
+ * <p>
+ * Reads an event file written by {@link EventFileWriter} as {@link EventBatch}es,
+ * one per row group. Only the footer is read on opening. A row group is
+ * memory mapped when it is read, and only the chunks of the columns asked for
+ * are decoded, so the pages of the other columns are never touched. Row groups
+ * whose {@link RowGroupStatistics} rule them out, e.g. by time range, are
+ * skipped without being mapped.
+ * </p>
+ * 
+ * <p>
+ * In the batches read, columns that were not asked for are null, or zero for
+ * {@link EventFileColumn#EVENT_ID} and {@link EventFileColumn#RESOURCE_ID_CATEGORY},
+ * and {@link Event#NO_EVENT_TIME} for {@link EventFileColumn#EVENT_TIME}. Each
+ * batch has its own dictionary.
+ * </p>
+ * 
+ * <p>
+ * Thread safe, row groups may be read concurrently, e.g. one per worker.
+ * </p>
+ * 
+ * @author philsmart
+ */
+public final class EventFileReader implements Closeable {
+
+	/**
+	 * The fewest footer bytes a row group takes: its offset, rows, two times, two
+	 * absent service ids and no chunks.
+	 */
+	private static final int MIN_ROW_GROUP_BYTES = 7;
+
+	private static final StringColumn[] STRING_COLUMNS = StringColumn.values();
+
+	private static final EventFileColumn[] COLUMNS = EventFileColumn.values();
+
+	private final FileChannel channel;
+
+	private final List<RowGroupStatistics> rowGroups;
+
+	/** The file offset of each row group. */
+	private final long[] offsets;
+
+	/** The chunk ids of each row group, in file order. */
+	private final int[][] chunkIds;
+
+	/** The length of each chunk of each row group, in file order. */
+	private final int[][] chunkLengths;
+
+	private EventFileReader(final FileChannel channel, final List<RowGroupStatistics> rowGroups,
+			final long[] offsets, final int[][] chunkIds, final int[][] chunkLengths) {
+		this.channel = channel;
+		this.rowGroups = rowGroups;
+		this.offsets = offsets;
+		this.chunkIds = chunkIds;
+		this.chunkLengths = chunkLengths;
+	}
+
+	/**
+	 * Opens an event file and reads its footer.
+	 * 
+	 * @param path
+	 *            the file
+	 * @return the reader, to be closed
+	 * @throws IOException
+	 *             if the file can not be read, or is not a complete event file of
+	 *             a known version
+	 */
+	public static EventFileReader open(final Path path) throws IOException {
+		final FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+		try {
+			final long size = channel.size();
+			if (size < 13) {
+				throw new IOException(path + " is not an event file");
+			}
+			final ByteBuffer header = channel.map(MapMode.READ_ONLY, 0, 5);
+			final ByteBuffer tail = channel.map(MapMode.READ_ONLY, size - 8, 8);
+			if (header.getInt() != EventFileFormat.MAGIC || tail.getInt(4) != EventFileFormat.MAGIC) {
+				throw new IOException(path + " is not an event file, or was not closed");
+			}
+			final byte version = header.get();
+			if (version < 1 || version > EventFileFormat.VERSION) {
+				throw new IOException("Unsupported event file version " + version);
+			}
+			final int headerLength = version == 1 ? 5 : 9;
+			final int maxRows = version == 1 ? EventFileFormat.MAX_ROW_GROUP_SIZE
+					: channel.map(MapMode.READ_ONLY, 5, 4).getInt();
+			if (maxRows <= 0 || maxRows > EventFileFormat.MAX_ROW_GROUP_SIZE) {
+				throw new IOException("Malformed event file of " + maxRows + " rows per row group");
+			}
+			final int footerLength = tail.getInt(0);
+			if (footerLength <= 0 || footerLength > size - 8 - headerLength) {
+				throw new IOException("Malformed event file footer of " + footerLength + " bytes");
+			}
+			return readFooter(channel, channel.map(MapMode.READ_ONLY, size - 8 - footerLength, footerLength),
+					maxRows);
+		} catch (final IOException | RuntimeException e) {
+			channel.close();
+			throw e instanceof IOException ? (IOException) e : new IOException("Malformed event file " + path, e);
+		}
+	}
+
+	private static EventFileReader readFooter(final FileChannel channel, final ByteBuffer footer,
+			final int maxRows) {
+		final int groups = ByteBufferIO.readCount(footer, MIN_ROW_GROUP_BYTES);
+		final List<RowGroupStatistics> rowGroups = new ArrayList<RowGroupStatistics>(groups);
+		final long[] offsets = new long[groups];
+		final int[][] chunkIds = new int[groups][];
+		final int[][] chunkLengths = new int[groups][];
+		for (int group = 0; group < groups; group++) {
+			offsets[group] = ByteBufferIO.readVarLong(footer);
+			final int rows = ByteBufferIO.readVarInt(footer);
+			if (offsets[group] < 0 || rows < 0 || rows > maxRows) {
+				throw new IllegalArgumentException("Row group " + group + " has offset " + offsets[group] + " and "
+						+ rows + " rows");
+			}
+			final long minTime = ByteBufferIO.readZigZagLong(footer);
+			final long maxTime = ByteBufferIO.readZigZagLong(footer);
+			final String minServiceId = readOptionalString(footer);
+			final String maxServiceId = readOptionalString(footer);
+			rowGroups.add(new RowGroupStatistics(group, rows, minTime, maxTime, minServiceId, maxServiceId));
+			// a chunk id byte and a length
+			final int chunks = ByteBufferIO.readCount(footer, 2);
+			chunkIds[group] = new int[chunks];
+			chunkLengths[group] = new int[chunks];
+			for (int chunk = 0; chunk < chunks; chunk++) {
+				chunkIds[group][chunk] = footer.get() & 0xFF;
+				chunkLengths[group][chunk] = ByteBufferIO.readVarInt(footer);
+				if (chunkLengths[group][chunk] < 0) {
+					throw new IllegalArgumentException("Chunk of " + chunkLengths[group][chunk] + " bytes");
+				}
+			}
+		}
+		return new EventFileReader(channel, Collections.unmodifiableList(rowGroups), offsets, chunkIds,
+				chunkLengths);
+	}
+
+	private static String readOptionalString(final ByteBuffer buffer) {
+		if (buffer.get() == 0) {
+			return null;
+		}
+		final int bytes = ByteBufferIO.readCount(buffer, 1);
+		final char[] chars = new char[bytes];
+		return new String(chars, 0, ByteBufferIO.readUtf8(buffer, bytes, chars));
+	}
+
+	/**
+	 * @return the statistics of every row group, in file order
+	 */
+	public List<RowGroupStatistics> getRowGroups() {
+		return rowGroups;
+	}
+
+	/**
+	 * @return the number of rows in the file
+	 */
+	public long getRows() {
+		long rows = 0;
+		for (final RowGroupStatistics rowGroup : rowGroups) {
+			rows += rowGroup.getRows();
+		}
+		return rows;
+	}
+
+	/**
+	 * Reads some columns of one row group.
+	 * 
+	 * @param rowGroup
+	 *            the index of the row group
+	 * @param columns
+	 *            the columns to read
+	 * @return the rows of the group
+	 * @throws IOException
+	 *             if the row group can not be mapped, or is malformed
+	 */
+	public EventBatch read(final int rowGroup, final Set<EventFileColumn> columns) throws IOException {
+		return read(rowGroup, columns, Long.MIN_VALUE, Long.MAX_VALUE);
+	}
+
+	/**
+	 * Reads some columns of the rows with an event time in {@code [from, to)}.
+	 * Row groups outside the range are skipped. Rows outside the range are
+	 * removed from the row groups that straddle it, for which
+	 * {@link EventFileColumn#EVENT_TIME} is read whether asked for or not.
+	 * 
+	 * @param from
+	 *            the earliest event time, inclusive, in milliseconds since EPOCH
+	 * @param to
+	 *            the latest event time, exclusive
+	 * @param columns
+	 *            the columns to read
+	 * @param consumer
+	 *            given the rows of each row group read that has rows in range,
+	 *            in file order
+	 * @return the number of row groups read
+	 * @throws IOException
+	 *             if a row group can not be mapped, or is malformed
+	 */
+	public int scan(final long from, final long to, final Set<EventFileColumn> columns,
+			final Consumer<? super EventBatch> consumer) throws IOException {
+		int read = 0;
+		for (final RowGroupStatistics rowGroup : rowGroups) {
+			if (!rowGroup.mayContainEventTime(from, to)) {
+				continue;
+			}
+			final boolean whole = rowGroup.getMinEventTime() >= from && rowGroup.getMaxEventTime() < to;
+			final EventBatch batch = whole ? read(rowGroup.getIndex(), columns)
+					: read(rowGroup.getIndex(), columns, from, to);
+			read++;
+			if (batch.size() > 0) {
+				consumer.accept(batch);
+			}
+		}
+		return read;
+	}
+
+	/**
+	 * Reads some columns of the row groups that {@code filter} accepts, e.g.
+	 * those that may contain a service id.
+	 * 
+	 * @param filter
+	 *            decides from its statistics whether to read each row group
+	 * @param columns
+	 *            the columns to read
+	 * @param consumer
+	 *            given the rows of each row group read, in file order
+	 * @return the number of row groups read
+	 * @throws IOException
+	 *             if a row group can not be mapped, or is malformed
+	 */
+	public int scan(final Predicate<? super RowGroupStatistics> filter, final Set<EventFileColumn> columns,
+			final Consumer<? super EventBatch> consumer) throws IOException {
+		int read = 0;
+		for (final RowGroupStatistics rowGroup : rowGroups) {
+			if (filter.test(rowGroup)) {
+				consumer.accept(read(rowGroup.getIndex(), columns));
+				read++;
+			}
+		}
+		return read;
+	}
+
+	/**
+	 * Closes the file. Batches already read remain usable.
+	 */
+	@Override
+	public void close() throws IOException {
+		channel.close();
+	}
+
+	private EventBatch read(final int rowGroup, final Set<EventFileColumn> requested, final long from,
+			final long to) throws IOException {
+		final boolean trim = from != Long.MIN_VALUE || to != Long.MAX_VALUE;
+		final Set<EventFileColumn> columns = requested.isEmpty() ? EnumSet.noneOf(EventFileColumn.class)
+				: EnumSet.copyOf(requested);
+		if (trim) {
+			columns.add(EventFileColumn.EVENT_TIME);
+		}
+		final int rows = rowGroups.get(rowGroup).getRows();
+		final ByteBuffer[] chunks = mapChunks(rowGroup);
+		try {
+			final StringDictionary dictionary = new StringDictionary();
+			final int[] values = new int[rows];
+			final byte[] types = new byte[rows];
+			final byte[] flags = new byte[rows];
+			EventFileFormat.readInts(chunk(chunks, EventFileFormat.TYPES), values, rows);
+			for (int row = 0; row < rows; row++) {
+				types[row] = (byte) values[row];
+			}
+			EventFileFormat.readInts(chunk(chunks, EventFileFormat.FLAGS), values, rows);
+			final boolean attributes = columns.contains(EventFileColumn.ATTRIBUTES);
+			for (int row = 0; row < rows; row++) {
+				flags[row] = (byte) (attributes ? values[row] : values[row] & ~EventBatch.HAS_ATTRIBUTES);
+			}
+			final long[] eventTimes = new long[rows];
+			if (columns.contains(EventFileColumn.EVENT_TIME)) {
+				EventFileFormat.readLongs(chunk(chunks, EventFileColumn.EVENT_TIME), eventTimes, rows);
+			} else {
+				Arrays.fill(eventTimes, Event.NO_EVENT_TIME);
+			}
+			final int[] eventIds = new int[rows];
+			if (columns.contains(EventFileColumn.EVENT_ID)) {
+				EventFileFormat.readInts(chunk(chunks, EventFileColumn.EVENT_ID), eventIds, rows);
+			}
+			final int[] resourceIdCategories = new int[rows];
+			if (columns.contains(EventFileColumn.RESOURCE_ID_CATEGORY)) {
+				EventFileFormat.readInts(chunk(chunks, EventFileColumn.RESOURCE_ID_CATEGORY), resourceIdCategories,
+						rows);
+			}
+			final int[][] codes = new int[STRING_COLUMNS.length][];
+			int[] nulls = null;
+			for (final StringColumn column : STRING_COLUMNS) {
+				if (columns.contains(EventFileColumn.of(column))) {
+					codes[column.ordinal()] = readStrings(chunk(chunks, EventFileColumn.of(column)), rows, dictionary);
+				} else {
+					if (nulls == null) {
+						nulls = new int[rows];
+						Arrays.fill(nulls, StringDictionary.NULL_CODE);
+					}
+					codes[column.ordinal()] = nulls;
+				}
+			}
+			final int[] attributeOffsets = new int[rows + 1];
+			int[] attributeCodes = new int[0];
+			if (attributes) {
+				final ByteBuffer chunk = chunk(chunks, EventFileColumn.ATTRIBUTES);
+				EventFileFormat.readInts(chunk, values, rows);
+				for (int row = 0; row < rows; row++) {
+					attributeOffsets[row + 1] = attributeOffsets[row] + values[row];
+				}
+				final int[] translation = readDictionary(chunk, dictionary, false);
+				attributeCodes = new int[attributeOffsets[rows]];
+				EventFileFormat.readInts(chunk, attributeCodes, attributeCodes.length);
+				translate(attributeCodes, attributeCodes.length, translation);
+			}
+			final EventBatch batch = new EventBatch(dictionary, rows, types, flags, eventTimes, eventIds,
+					resourceIdCategories, codes, attributeOffsets, attributeCodes);
+			return trim ? select(batch, from, to) : batch;
+		} catch (final RuntimeException e) {
+			throw new IOException("Malformed row group " + rowGroup, e);
+		}
+	}
+
+	/**
+	 * Maps a row group, and slices it into its chunks.
+	 * 
+	 * @return the chunks of the row group, by chunk id, null for any not in the
+	 *         file
+	 */
+	private ByteBuffer[] mapChunks(final int rowGroup) throws IOException {
+		long length = 0;
+		for (final int chunkLength : chunkLengths[rowGroup]) {
+			length += chunkLength;
+		}
+		final MappedByteBuffer region = channel.map(MapMode.READ_ONLY, offsets[rowGroup], length);
+		final ByteBuffer[] chunks = new ByteBuffer[EventFileFormat.FIRST_COLUMN + COLUMNS.length];
+		int position = 0;
+		for (int chunk = 0; chunk < chunkIds[rowGroup].length; chunk++) {
+			final int id = chunkIds[rowGroup][chunk];
+			if (id < chunks.length) {
+				final ByteBuffer slice = region.duplicate();
+				slice.position(position).limit(position + chunkLengths[rowGroup][chunk]);
+				chunks[id] = slice;
+			}
+			position += chunkLengths[rowGroup][chunk];
+		}
+		return chunks;
+	}
+
+	private static ByteBuffer chunk(final ByteBuffer[] chunks, final EventFileColumn column) {
+		return chunk(chunks, EventFileFormat.FIRST_COLUMN + column.ordinal());
+	}
+
+	private static ByteBuffer chunk(final ByteBuffer[] chunks, final int id) {
+		if (chunks[id] == null) {
+			throw new IllegalArgumentException("Row group has no chunk " + id);
+		}
+		return chunks[id];
+	}
+
+	private static int[] readStrings(final ByteBuffer chunk, final int rows, final StringDictionary dictionary) {
+		final int[] translation = readDictionary(chunk, dictionary, true);
+		final int[] codes = new int[rows];
+		EventFileFormat.readInts(chunk, codes, rows);
+		translate(codes, rows, translation);
+		return codes;
+	}
+
+	/**
+	 * Reads the values of a chunk into {@code dictionary}.
+	 * 
+	 * @param withNull
+	 *            if chunk codes start at one, zero being null
+	 * @return the batch code of each chunk code
+	 */
+	private static int[] readDictionary(final ByteBuffer chunk, final StringDictionary dictionary,
+			final boolean withNull) {
+		// each value takes at least its length
+		final int count = ByteBufferIO.readCount(chunk, 1);
+		final int first = withNull ? 1 : 0;
+		final int[] translation = new int[count + first];
+		if (withNull) {
+			translation[0] = StringDictionary.NULL_CODE;
+		}
+		char[] chars = new char[64];
+		for (int i = 0; i < count; i++) {
+			final int bytes = ByteBufferIO.readCount(chunk, 1);
+			if (chars.length < bytes) {
+				chars = new char[Math.max(bytes, chars.length * 2)];
+			}
+			translation[first + i] = dictionary
+					.encode(new String(chars, 0, ByteBufferIO.readUtf8(chunk, bytes, chars)));
+		}
+		return translation;
+	}
+
+	private static void translate(final int[] codes, final int count, final int[] translation) {
+		for (int i = 0; i < count; i++) {
+			if (codes[i] < 0 || codes[i] >= translation.length) {
+				throw new IllegalArgumentException("Code " + codes[i] + " outside dictionary of " + translation.length);
+			}
+			codes[i] = translation[codes[i]];
+		}
+	}
+
+	/**
+	 * @return a batch of the rows of {@code batch} with an event time in
+	 *         {@code [from, to)}
+	 */
+	private static EventBatch select(final EventBatch batch, final long from, final long to) {
+		final int rows = batch.size();
+		final int[] selected = new int[rows];
+		int count = 0;
+		for (int row = 0; row < rows; row++) {
+			final long eventTime = batch.getEventTimeMillis(row);
+			if (eventTime >= from && eventTime < to) {
+				selected[count++] = row;
+			}
+		}
+		if (count == rows) {
+			return batch;
+		}
+		final byte[] types = new byte[count];
+		final byte[] flags = new byte[count];
+		final long[] eventTimes = new long[count];
+		final int[] eventIds = new int[count];
+		final int[] resourceIdCategories = new int[count];
+		final int[][] codes = new int[STRING_COLUMNS.length][count];
+		final int[] attributeOffsets = new int[count + 1];
+		for (int i = 0; i < count; i++) {
+			final int row = selected[i];
+			types[i] = batch.getType(row);
+			flags[i] = batch.getFlags(row);
+			eventTimes[i] = batch.getEventTimeMillis(row);
+			eventIds[i] = batch.getEventId(row);
+			resourceIdCategories[i] = batch.getResourceIdCategory(row);
+			for (final StringColumn column : STRING_COLUMNS) {
+				codes[column.ordinal()][i] = batch.getCode(column, row);
+			}
+			attributeOffsets[i + 1] = attributeOffsets[i] + batch.getAttributeCount(row);
+		}
+		final int[] attributeCodes = new int[attributeOffsets[count]];
+		for (int i = 0; i < count; i++) {
+			for (int index = 0; index < batch.getAttributeCount(selected[i]); index++) {
+				attributeCodes[attributeOffsets[i] + index] = batch.getAttributeCode(selected[i], index);
+			}
+		}
+		return new EventBatch(batch.getDictionary(), count, types, flags, eventTimes, eventIds,
+				resourceIdCategories, codes, attributeOffsets, attributeCodes);
+	}
+
+}
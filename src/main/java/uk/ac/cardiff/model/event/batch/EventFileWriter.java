@@ -0,0 +1,386 @@
+/**
+ * Copyright (C) 2010 Cardiff University, Wales <smartp@cf.ac.uk>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.ac.cardiff.model.event.batch;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import uk.ac.cardiff.model.event.AuthenticationEvent;
+import uk.ac.cardiff.model.event.codec.ByteBufferIO;
+import uk.ac.cardiff.utility.StringDictionary;
+
+/**
+ * <p>
+ * Writes {@link AuthenticationEvent}s to a columnar event file, for long term
+ * archives that are scanned by reports. Events are buffered in an
+ * {@link EventBatch} and written a row group at a time, each column of the
+ * group as a separate chunk:
+ * </p>
+ * <ul>
+ * <li>event times are delta encoded, so events added in time order cost a byte
+ * or two each;</li>
+ * <li>string columns are dictionary encoded per chunk, and the codes, like the
+ * other int columns, are run length encoded or bit packed, whichever is
+ * smaller;</li>
+ * <li>the footer records the minimum and maximum event time and serviceId of
+ * each row group, so {@link EventFileReader} can skip those a query does not
+ * need.</li>
+ * </ul>
+ * 
+ * <p>
+ * Add events in time order, or close to it, so row groups cover narrow time
+ * ranges and skip well. The layout is described in {@link EventFileFormat}.
+ * The file is not readable until the writer is closed.
+ * </p>
+ * 
+ * <p>
+ * Not thread safe.
+ * </p>
+ * 
+ * @author philsmart
+ */
+public final class EventFileWriter implements Closeable {
+
+	/** The default number of rows of each row group. */
+	public static final int DEFAULT_ROW_GROUP_SIZE = 64 * 1024;
+
+	private static final StringColumn[] STRING_COLUMNS = StringColumn.values();
+
+	private final FileChannel channel;
+
+	private final int rowGroupSize;
+
+	/** The footer entry of each row group written, encoded. */
+	private final List<byte[]> groups = new ArrayList<byte[]>();
+
+	private EventBatch batch;
+
+	/** Scratch space for encoding a chunk. */
+	private ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+
+	private int[] ints = new int[1024];
+
+	private long[] longs = new long[1024];
+
+	private boolean closed;
+
+	/**
+	 * Creates a file of row groups of {@link #DEFAULT_ROW_GROUP_SIZE} rows,
+	 * replacing any existing file.
+	 * 
+	 * @param path
+	 *            the file
+	 * @throws IOException
+	 *             if the file can not be created
+	 */
+	public EventFileWriter(final Path path) throws IOException {
+		this(path, DEFAULT_ROW_GROUP_SIZE);
+	}
+
+	/**
+	 * Creates a file, replacing any existing file.
+	 * 
+	 * @param path
+	 *            the file
+	 * @param rowGroupSize
+	 *            the number of rows of each row group, the granularity at which
+	 *            readers skip, at most {@value EventFileFormat#MAX_ROW_GROUP_SIZE}
+	 * @throws IOException
+	 *             if the file can not be created
+	 */
+	public EventFileWriter(final Path path, final int rowGroupSize) throws IOException {
+		if (rowGroupSize <= 0 || rowGroupSize > EventFileFormat.MAX_ROW_GROUP_SIZE) {
+			throw new IllegalArgumentException("rowGroupSize must be positive and at most "
+					+ EventFileFormat.MAX_ROW_GROUP_SIZE);
+		}
+		this.rowGroupSize = rowGroupSize;
+		channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+				StandardOpenOption.WRITE);
+		final ByteBuffer header = ByteBuffer.allocate(9);
+		header.putInt(EventFileFormat.MAGIC).put(EventFileFormat.VERSION).putInt(rowGroupSize).flip();
+		write(header);
+		newBatch();
+	}
+
+	/**
+	 * Appends an event, writing a row group when one is full.
+	 * 
+	 * @param event
+	 *            a {@link uk.ac.cardiff.model.event.ShibbolethIdpAuthenticationEvent}
+	 *            or {@link uk.ac.cardiff.model.event.EzproxyAuthenticationEvent}
+	 * @throws IOException
+	 *             if a row group can not be written
+	 * @throws IllegalArgumentException
+	 *             if the event is of any other type
+	 */
+	public void add(final AuthenticationEvent event) throws IOException {
+		checkOpen();
+		batch.add(event);
+		if (batch.size() == rowGroupSize) {
+			writeRowGroup();
+		}
+	}
+
+	/**
+	 * Appends every event, in order.
+	 * 
+	 * @param events
+	 *            the events
+	 * @throws IOException
+	 *             if a row group can not be written
+	 */
+	public void addAll(final Iterable<? extends AuthenticationEvent> events) throws IOException {
+		for (final AuthenticationEvent event : events) {
+			add(event);
+		}
+	}
+
+	/**
+	 * Writes any buffered rows as a last row group, then the footer, and closes
+	 * the file.
+	 * 
+	 * @throws IOException
+	 *             if the file can not be written
+	 */
+	@Override
+	public void close() throws IOException {
+		if (closed) {
+			return;
+		}
+		closed = true;
+		try {
+			if (batch.size() > 0) {
+				writeRowGroup();
+			}
+			int length = 0;
+			for (final byte[] group : groups) {
+				length += group.length;
+			}
+			final ByteBuffer footer = ByteBuffer.allocate(5 + length + 8);
+			ByteBufferIO.writeVarInt(footer, groups.size());
+			for (final byte[] group : groups) {
+				footer.put(group);
+			}
+			footer.putInt(footer.position()).putInt(EventFileFormat.MAGIC).flip();
+			write(footer);
+		} finally {
+			channel.close();
+		}
+	}
+
+	private void writeRowGroup() throws IOException {
+		final int rows = batch.size();
+		long minTime = Long.MAX_VALUE;
+		long maxTime = Long.MIN_VALUE;
+		int minCode = StringDictionary.NULL_CODE;
+		int maxCode = StringDictionary.NULL_CODE;
+		final StringDictionary dictionary = batch.getDictionary();
+		for (int row = 0; row < rows; row++) {
+			minTime = Math.min(minTime, batch.getEventTimeMillis(row));
+			maxTime = Math.max(maxTime, batch.getEventTimeMillis(row));
+			final int code = batch.getCode(StringColumn.SERVICE_ID, row);
+			if (code == StringDictionary.NULL_CODE || code == minCode || code == maxCode) {
+				continue;
+			}
+			final String serviceId = dictionary.decode(code);
+			if (minCode == StringDictionary.NULL_CODE || serviceId.compareTo(dictionary.decode(minCode)) < 0) {
+				minCode = code;
+			}
+			if (maxCode == StringDictionary.NULL_CODE || serviceId.compareTo(dictionary.decode(maxCode)) > 0) {
+				maxCode = code;
+			}
+		}
+		final String minServiceId = dictionary.decode(minCode);
+		final String maxServiceId = dictionary.decode(maxCode);
+		final int chunks = EventFileFormat.FIRST_COLUMN + EventFileColumn.values().length;
+		final int serviceIdChars = (minServiceId == null ? 0 : minServiceId.length())
+				+ (maxServiceId == null ? 0 : maxServiceId.length());
+		// a UTF-8 char is at most three bytes
+		final ByteBuffer entry = ByteBuffer.allocate(64 + chunks * 6 + serviceIdChars * 3);
+		ByteBufferIO.writeVarLong(entry, channel.position());
+		ByteBufferIO.writeVarInt(entry, rows);
+		ByteBufferIO.writeZigZagLong(entry, minTime);
+		ByteBufferIO.writeZigZagLong(entry, maxTime);
+		writeOptionalString(entry, minServiceId);
+		writeOptionalString(entry, maxServiceId);
+		ByteBufferIO.writeVarInt(entry, chunks);
+		for (int chunk = 0; chunk < chunks; chunk++) {
+			final int length = writeChunk(chunk);
+			entry.put((byte) chunk);
+			ByteBufferIO.writeVarInt(entry, length);
+		}
+		entry.flip();
+		groups.add(Arrays.copyOf(entry.array(), entry.limit()));
+		newBatch();
+	}
+
+	private static void writeOptionalString(final ByteBuffer entry, final String value) {
+		if (value == null) {
+			entry.put((byte) 0);
+		} else {
+			entry.put((byte) 1);
+			ByteBufferIO.writeString(entry, value);
+		}
+	}
+
+	/**
+	 * Encodes and writes one chunk of the current row group.
+	 * 
+	 * @return the length of the chunk in bytes
+	 */
+	private int writeChunk(final int chunk) throws IOException {
+		while (true) {
+			buffer.clear();
+			try {
+				encodeChunk(chunk);
+				break;
+			} catch (final BufferOverflowException e) {
+				buffer = ByteBuffer.allocate(buffer.capacity() * 2);
+			}
+		}
+		buffer.flip();
+		final int length = buffer.remaining();
+		write(buffer);
+		return length;
+	}
+
+	private void encodeChunk(final int chunk) {
+		final int rows = batch.size();
+		if (ints.length < rows) {
+			ints = new int[rows];
+			longs = new long[rows];
+		}
+		if (chunk == EventFileFormat.TYPES || chunk == EventFileFormat.FLAGS) {
+			for (int row = 0; row < rows; row++) {
+				ints[row] = chunk == EventFileFormat.TYPES ? batch.getType(row) : batch.getFlags(row);
+			}
+			EventFileFormat.writeInts(buffer, ints, rows);
+			return;
+		}
+		final EventFileColumn column = EventFileColumn.values()[chunk - EventFileFormat.FIRST_COLUMN];
+		switch (column) {
+		case EVENT_TIME:
+			for (int row = 0; row < rows; row++) {
+				longs[row] = batch.getEventTimeMillis(row);
+			}
+			EventFileFormat.writeLongs(buffer, longs, rows);
+			break;
+		case EVENT_ID:
+			for (int row = 0; row < rows; row++) {
+				ints[row] = batch.getEventId(row);
+			}
+			EventFileFormat.writeInts(buffer, ints, rows);
+			break;
+		case RESOURCE_ID_CATEGORY:
+			for (int row = 0; row < rows; row++) {
+				ints[row] = batch.getResourceIdCategory(row);
+			}
+			EventFileFormat.writeInts(buffer, ints, rows);
+			break;
+		case ATTRIBUTES:
+			encodeAttributes(rows);
+			break;
+		default:
+			encodeStrings(column.getStringColumn(), rows);
+		}
+	}
+
+	/**
+	 * Writes the values of a string column in order of first appearance, then
+	 * the index of each row's value plus one, or zero for null.
+	 */
+	private void encodeStrings(final StringColumn column, final int rows) {
+		final StringDictionary dictionary = batch.getDictionary();
+		final int[] local = newLocalCodes();
+		final List<String> values = new ArrayList<String>();
+		for (int row = 0; row < rows; row++) {
+			final int code = batch.getCode(column, row);
+			ints[row] = code == StringDictionary.NULL_CODE ? 0 : localCode(local, values, code, dictionary);
+		}
+		writeStrings(values);
+		EventFileFormat.writeInts(buffer, ints, rows);
+	}
+
+	private void encodeAttributes(final int rows) {
+		final StringDictionary dictionary = batch.getDictionary();
+		int total = 0;
+		for (int row = 0; row < rows; row++) {
+			ints[row] = batch.getAttributeCount(row);
+			total += ints[row];
+		}
+		EventFileFormat.writeInts(buffer, ints, rows);
+		final int[] local = newLocalCodes();
+		final List<String> values = new ArrayList<String>();
+		final int[] codes = new int[total];
+		int next = 0;
+		for (int row = 0; row < rows; row++) {
+			for (int i = 0; i < batch.getAttributeCount(row); i++) {
+				codes[next++] = localCode(local, values, batch.getAttributeCode(row, i), dictionary) - 1;
+			}
+		}
+		writeStrings(values);
+		EventFileFormat.writeInts(buffer, codes, total);
+	}
+
+	private int[] newLocalCodes() {
+		return new int[batch.getDictionary().size()];
+	}
+
+	/**
+	 * @return the chunk code of a batch code, plus one, adding it to the chunk
+	 *         dictionary if it is new
+	 */
+	private static int localCode(final int[] local, final List<String> values, final int code,
+			final StringDictionary dictionary) {
+		if (local[code] == 0) {
+			values.add(dictionary.decode(code));
+			local[code] = values.size();
+		}
+		return local[code];
+	}
+
+	private void writeStrings(final List<String> values) {
+		ByteBufferIO.writeVarInt(buffer, values.size());
+		for (final String value : values) {
+			ByteBufferIO.writeString(buffer, value);
+		}
+	}
+
+	private void newBatch() {
+		batch = new EventBatch(new StringDictionary(), Math.min(rowGroupSize, 64 * 1024));
+	}
+
+	private void write(final ByteBuffer source) throws IOException {
+		while (source.hasRemaining()) {
+			channel.write(source);
+		}
+	}
+
+	private void checkOpen() {
+		if (closed) {
+			throw new IllegalStateException("Event file is closed");
+		}
+	}
+
+}
@@ -0,0 +1,120 @@
+/**
+ * Copyright (C) 2010 Cardiff University, Wales <smartp@cf.ac.uk>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.ac.cardiff.model.event.batch;
+
+/**
+ * The statistics of one row group of an event file, kept in its footer so
+ * readers can skip row groups without reading them. Immutable.
+ * 
+ * @author philsmart
+ */
+public final class RowGroupStatistics {
+
+	private final int index;
+
+	private final int rows;
+
+	private final long minEventTime;
+
+	private final long maxEventTime;
+
+	private final String minServiceId;
+
+	private final String maxServiceId;
+
+	RowGroupStatistics(final int index, final int rows, final long minEventTime, final long maxEventTime,
+			final String minServiceId, final String maxServiceId) {
+		this.index = index;
+		this.rows = rows;
+		this.minEventTime = minEventTime;
+		this.maxEventTime = maxEventTime;
+		this.minServiceId = minServiceId;
+		this.maxServiceId = maxServiceId;
+	}
+
+	/**
+	 * @return the position of the row group in the file, from zero
+	 */
+	public int getIndex() {
+		return index;
+	}
+
+	/**
+	 * @return the number of rows
+	 */
+	public int getRows() {
+		return rows;
+	}
+
+	/**
+	 * @return the earliest event time of any row, in milliseconds since EPOCH
+	 */
+	public long getMinEventTime() {
+		return minEventTime;
+	}
+
+	/**
+	 * @return the latest event time of any row
+	 */
+	public long getMaxEventTime() {
+		return maxEventTime;
+	}
+
+	/**
+	 * @return the least serviceId of any row, by {@link String#compareTo}, or
+	 *         null if every serviceId is null
+	 */
+	public String getMinServiceId() {
+		return minServiceId;
+	}
+
+	/**
+	 * @return the greatest serviceId of any row, or null if every serviceId is
+	 *         null
+	 */
+	public String getMaxServiceId() {
+		return maxServiceId;
+	}
+
+	/**
+	 * @param from
+	 *            the earliest event time, inclusive
+	 * @param to
+	 *            the latest event time, exclusive
+	 * @return false if no row has an event time in {@code [from, to)}
+	 */
+	public boolean mayContainEventTime(final long from, final long to) {
+		return maxEventTime >= from && minEventTime < to;
+	}
+
+	/**
+	 * @param serviceId
+	 *            a non-null service id
+	 * @return false if no row has the service id
+	 */
+	public boolean mayContainServiceId(final String serviceId) {
+		return minServiceId != null && serviceId != null && minServiceId.compareTo(serviceId) <= 0
+				&& maxServiceId.compareTo(serviceId) >= 0;
+	}
+
+	@Override
+	public String toString() {
+		return "RowGroupStatistics [index=" + index + ", rows=" + rows + ", minEventTime=" + minEventTime
+				+ ", maxEventTime=" + maxEventTime + ", minServiceId=" + minServiceId + ", maxServiceId="
+				+ maxServiceId + "]";
+	}
+
+}
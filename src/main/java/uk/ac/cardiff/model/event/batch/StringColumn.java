@@ -0,0 +1,129 @@
+/**
+ * Copyright (C) 2010 Cardiff University, Wales <smartp@cf.ac.uk>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.ac.cardiff.model.event.batch;
+
+import uk.ac.cardiff.model.event.AuthenticationEvent;
+import uk.ac.cardiff.model.event.EzproxyAuthenticationEvent;
+import uk.ac.cardiff.model.event.ShibbolethIdpAuthenticationEvent;
+import uk.ac.cardiff.model.event.auxiliary.EventMetadata;
+import uk.ac.cardiff.model.event.auxiliary.PrincipalInformation;
+
+/**
+ * The dictionary encoded string columns of an {@link EventBatch}, one per
+ * {@link String} field of the {@link AuthenticationEvent} hierarchy and its
+ * {@link PrincipalInformation} and {@link EventMetadata}.
+ * 
+ * @author philsmart
+ */
+public enum StringColumn {
+
+	/** {@link AuthenticationEvent#getServiceId()}. */
+	SERVICE_ID,
+
+	/** {@link AuthenticationEvent#getEventType()}. */
+	EVENT_TYPE,
+
+	/** {@link AuthenticationEvent#getServiceHost()}. */
+	SERVICE_HOST,
+
+	/** {@link AuthenticationEvent#getResourceHost()}. */
+	RESOURCE_HOST,
+
+	/** {@link AuthenticationEvent#getResourceId()}. */
+	RESOURCE_ID,
+
+	/** {@link AuthenticationEvent#getAuthenticationType()}. */
+	AUTHENTICATION_TYPE,
+
+	/** {@link AuthenticationEvent#getPrincipalName()}. */
+	PRINCIPAL_NAME,
+
+	/** {@link PrincipalInformation#getSchool()}. */
+	SCHOOL,
+
+	/** {@link PrincipalInformation#getAffiliation()}. */
+	AFFILIATION,
+
+	/** {@link EventMetadata#getRaptorEntityId()}. */
+	RAPTOR_ENTITY_ID,
+
+	/** {@link EventMetadata#getServiceName()}. */
+	SERVICE_NAME,
+
+	/** {@link EventMetadata#getOrganisationName()}. */
+	ORGANISATION_NAME,
+
+	/** {@link ShibbolethIdpAuthenticationEvent#getRequestBinding()}. */
+	REQUEST_BINDING,
+
+	/** {@link ShibbolethIdpAuthenticationEvent#getResponseBinding()}. */
+	RESPONSE_BINDING,
+
+	/** {@link EzproxyAuthenticationEvent#getRequesterIp()}. */
+	REQUESTER_IP;
+
+	/**
+	 * Reads the value of this column from an event, as {@link EventBatch#add}
+	 * stores it.
+	 * 
+	 * @param event
+	 *            the event
+	 * @return the value, null if the field, or the object holding it, is null or
+	 *         the event is not of the type that has it
+	 */
+	public String get(final AuthenticationEvent event) {
+		switch (this) {
+		case SERVICE_ID:
+			return event.getServiceId();
+		case EVENT_TYPE:
+			return event.getEventType();
+		case SERVICE_HOST:
+			return event.getServiceHost();
+		case RESOURCE_HOST:
+			return event.getResourceHost();
+		case RESOURCE_ID:
+			return event.getResourceId();
+		case AUTHENTICATION_TYPE:
+			return event.getAuthenticationType();
+		case PRINCIPAL_NAME:
+			return event.getPrincipalName();
+		case SCHOOL:
+			return event.getPrincipalInformation() == null ? null : event.getPrincipalInformation().getSchool();
+		case AFFILIATION:
+			return event.getPrincipalInformation() == null ? null : event.getPrincipalInformation().getAffiliation();
+		case RAPTOR_ENTITY_ID:
+			return event.getEventMetadata() == null ? null : event.getEventMetadata().getRaptorEntityId();
+		case SERVICE_NAME:
+			return event.getEventMetadata() == null ? null : event.getEventMetadata().getServiceName();
+		case ORGANISATION_NAME:
+			return event.getEventMetadata() == null ? null : event.getEventMetadata().getOrganisationName();
+		case REQUEST_BINDING:
+			return event instanceof ShibbolethIdpAuthenticationEvent
+					? ((ShibbolethIdpAuthenticationEvent) event).getRequestBinding()
+					: null;
+		case RESPONSE_BINDING:
+			return event instanceof ShibbolethIdpAuthenticationEvent
+					? ((ShibbolethIdpAuthenticationEvent) event).getResponseBinding()
+					: null;
+		case REQUESTER_IP:
+			return event instanceof EzproxyAuthenticationEvent ? ((EzproxyAuthenticationEvent) event).getRequesterIp()
+					: null;
+		default:
+			throw new AssertionError(this);
+		}
+	}
+
+}
@@ -0,0 +1,238 @@
+/**
+ * Copyright (C) 2010 Cardiff University, Wales <smartp@cf.ac.uk>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.ac.cardiff.model.event.codec;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+
+/**
+ * Variable length integer and UTF-8 string primitives over a
+ * {@link ByteBuffer}, used by {@link EventCodec} and
+ * {@link uk.ac.cardiff.model.event.batch.EventFileWriter event files}. Integers
+ * are written as little endian base 128 varints, signed values are zigzag
+ * encoded first so that small negative numbers stay small.
+ * 
+ * @author philsmart
+ */
+public final class ByteBufferIO {
+
+	private ByteBufferIO() {
+	}
+
+	/**
+	 * Writes {@code value} as an unsigned varint of one to five bytes.
+	 */
+	public static void writeVarInt(final ByteBuffer buffer, final int value) {
+		int remaining = value;
+		while ((remaining & ~0x7F) != 0) {
+			buffer.put((byte) (remaining & 0x7F | 0x80));
+			remaining >>>= 7;
+		}
+		buffer.put((byte) remaining);
+	}
+
+	/**
+	 * Writes {@code value} as an unsigned varint of one to ten bytes.
+	 */
+	public static void writeVarLong(final ByteBuffer buffer, final long value) {
+		long remaining = value;
+		while ((remaining & ~0x7FL) != 0) {
+			buffer.put((byte) (remaining & 0x7F | 0x80));
+			remaining >>>= 7;
+		}
+		buffer.put((byte) remaining);
+	}
+
+	/**
+	 * Writes {@code value} zigzag encoded, so small negative numbers stay small.
+	 */
+	public static void writeZigZagInt(final ByteBuffer buffer, final int value) {
+		writeVarInt(buffer, value << 1 ^ value >> 31);
+	}
+
+	/**
+	 * Writes {@code value} zigzag encoded, so small negative numbers stay small.
+	 */
+	public static void writeZigZagLong(final ByteBuffer buffer, final long value) {
+		writeVarLong(buffer, value << 1 ^ value >> 63);
+	}
+
+	/**
+	 * Reads a varint written by {@link #writeVarInt(ByteBuffer, int)}.
+	 */
+	public static int readVarInt(final ByteBuffer buffer) {
+		int result = 0;
+		for (int shift = 0; shift < 35; shift += 7) {
+			final byte b = buffer.get();
+			result |= (b & 0x7F) << shift;
+			if (b >= 0) {
+				return result;
+			}
+		}
+		throw new IllegalArgumentException("Malformed varint");
+	}
+
+	/**
+	 * Reads a count written by {@link #writeVarInt(ByteBuffer, int)}, of items
+	 * that take at least {@code minBytes} bytes each of the rest of the buffer,
+	 * so a corrupt count fails here rather than allocating for it.
+	 * 
+	 * @throws IllegalArgumentException
+	 *             if the count is negative, or its items can not fit in what
+	 *             remains of the buffer
+	 */
+	public static int readCount(final ByteBuffer buffer, final int minBytes) {
+		final int count = readVarInt(buffer);
+		if (count < 0 || (long) count * minBytes > buffer.remaining()) {
+			throw new IllegalArgumentException(
+					"Count " + count + " does not fit in the " + buffer.remaining() + " bytes remaining");
+		}
+		return count;
+	}
+
+	/**
+	 * Reads a varint written by {@link #writeVarLong(ByteBuffer, long)}.
+	 */
+	public static long readVarLong(final ByteBuffer buffer) {
+		long result = 0;
+		for (int shift = 0; shift < 70; shift += 7) {
+			final byte b = buffer.get();
+			result |= (long) (b & 0x7F) << shift;
+			if (b >= 0) {
+				return result;
+			}
+		}
+		throw new IllegalArgumentException("Malformed varlong");
+	}
+
+	/**
+	 * Reads a value written by {@link #writeZigZagInt(ByteBuffer, int)}.
+	 */
+	public static int readZigZagInt(final ByteBuffer buffer) {
+		final int value = readVarInt(buffer);
+		return value >>> 1 ^ -(value & 1);
+	}
+
+	/**
+	 * Reads a value written by {@link #writeZigZagLong(ByteBuffer, long)}.
+	 */
+	public static long readZigZagLong(final ByteBuffer buffer) {
+		final long value = readVarLong(buffer);
+		return value >>> 1 ^ -(value & 1);
+	}
+
+	/**
+	 * Writes the UTF-8 length in bytes of {@code value} as a varint, followed by
+	 * its UTF-8 bytes, encoding straight from the chars of the string.
+	 */
+	public static void writeString(final ByteBuffer buffer, final String value) {
+		final int length = value.length();
+		writeVarInt(buffer, utf8Length(value));
+		for (int i = 0; i < length; i++) {
+			final char c = value.charAt(i);
+			if (c < 0x80) {
+				buffer.put((byte) c);
+			} else if (c < 0x800) {
+				buffer.put((byte) (0xC0 | c >> 6));
+				buffer.put((byte) (0x80 | c & 0x3F));
+			} else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(value.charAt(i + 1))) {
+				final int codePoint = Character.toCodePoint(c, value.charAt(++i));
+				buffer.put((byte) (0xF0 | codePoint >> 18));
+				buffer.put((byte) (0x80 | codePoint >> 12 & 0x3F));
+				buffer.put((byte) (0x80 | codePoint >> 6 & 0x3F));
+				buffer.put((byte) (0x80 | codePoint & 0x3F));
+			} else {
+				// lone surrogates are written as is, as CESU-8 would
+				buffer.put((byte) (0xE0 | c >> 12));
+				buffer.put((byte) (0x80 | c >> 6 & 0x3F));
+				buffer.put((byte) (0x80 | c & 0x3F));
+			}
+		}
+	}
+
+	private static int utf8Length(final String value) {
+		final int length = value.length();
+		int bytes = length;
+		for (int i = 0; i < length; i++) {
+			final char c = value.charAt(i);
+			if (c >= 0x800) {
+				if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(value.charAt(i + 1))) {
+					// four bytes for the pair of chars
+					bytes += 2;
+					i++;
+				} else {
+					bytes += 2;
+				}
+			} else if (c >= 0x80) {
+				bytes++;
+			}
+		}
+		return bytes;
+	}
+
+	/**
+	 * Decodes {@code bytes} bytes of UTF-8, as written by
+	 * {@link #writeString(ByteBuffer, String)} after its length, into
+	 * {@code chars}. A sequence is never read past those bytes.
+	 * 
+	 * @param chars
+	 *            the destination, at least {@code bytes} long
+	 * @return the number of chars decoded
+	 * @throws IllegalArgumentException
+	 *             if the bytes are not UTF-8, e.g. a sequence is cut short, or do
+	 *             not fit in {@code chars}
+	 */
+	public static int readUtf8(final ByteBuffer buffer, final int bytes, final char[] chars) {
+		if (bytes > buffer.remaining()) {
+			throw new BufferUnderflowException();
+		}
+		final int end = buffer.position() + bytes;
+		int count = 0;
+		while (buffer.position() < end) {
+			final int b = buffer.get() & 0xFF;
+			if (b < 0x80) {
+				if (count == chars.length) {
+					throw new IllegalArgumentException("Malformed UTF-8");
+				}
+				chars[count++] = (char) b;
+				continue;
+			}
+			final int continuations = b < 0xC0 ? -1 : b < 0xE0 ? 1 : b < 0xF0 ? 2 : b < 0xF8 ? 3 : -1;
+			if (continuations < 0 || buffer.position() + continuations > end
+					|| count + (continuations == 3 ? 2 : 1) > chars.length) {
+				throw new IllegalArgumentException("Malformed UTF-8");
+			}
+			int codePoint = b & 0x3F >> continuations;
+			for (int i = 0; i < continuations; i++) {
+				final int next = buffer.get() & 0xFF;
+				if ((next & 0xC0) != 0x80) {
+					throw new IllegalArgumentException("Malformed UTF-8");
+				}
+				codePoint = codePoint << 6 | next & 0x3F;
+			}
+			if (continuations < 3) {
+				chars[count++] = (char) codePoint;
+			} else if (codePoint > Character.MAX_CODE_POINT) {
+				throw new IllegalArgumentException("Malformed UTF-8");
+			} else {
+				chars[count++] = Character.highSurrogate(codePoint);
+				chars[count++] = Character.lowSurrogate(codePoint);
+			}
+		}
+		return count;
+	}
+
+}
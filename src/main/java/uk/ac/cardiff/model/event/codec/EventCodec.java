@@ -0,0 +1,361 @@
+/**
+ * Copyright (C) 2010 Cardiff University, Wales <smartp@cf.ac.uk>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.ac.cardiff.model.event.codec;
+
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import uk.ac.cardiff.model.event.AuthenticationEvent;
+import uk.ac.cardiff.model.event.Event;
+import uk.ac.cardiff.model.event.EzproxyAuthenticationEvent;
+import uk.ac.cardiff.model.event.ShibbolethIdpAuthenticationEvent;
+import uk.ac.cardiff.model.event.auxiliary.AttributeSet;
+import uk.ac.cardiff.model.event.auxiliary.EventMetadata;
+import uk.ac.cardiff.model.event.auxiliary.PrincipalInformation;
+import uk.ac.cardiff.utility.StringDictionary;
+
+/**
+ * <p>
+ * A compact, versioned binary encoding of a batch of {@link Event}s, for
+ * shipping events between Raptor collectors and aggregators. Every string in
+ * the batch is written once, in a per-batch dictionary, and referenced by index.
+ * Event times are delta encoded against the previous event of the batch, and
+ * all numbers are zigzag varints, so a batch sorted by time costs one or two
+ * bytes per timestamp.
+ * </p>
+ * 
+ * <pre>
+ * batch      := version:u8 count:varint dictSize:varint string{dictSize} event{count}
+ * string     := byteLength:varint utf8
+ * event      := tag:u8 flags:u8 timeDelta:zigzag64 eventId:zigzag32 resourceIdCategory:zigzag32
+ *               serviceId eventType serviceHost resourceHost resourceId
+ *               authenticationType principalName                              (ref each)
+ *               [school affiliation]                                          if flags &amp; 2
+ *               [raptorEntityId serviceName organisationName]                 if flags &amp; 4
+ *               tag 1: requestBinding responseBinding [attributeCount:varint ref{attributeCount}] if flags &amp; 1
+ *               tag 2: requesterIp
+ * ref        := varint, 0 for null otherwise dictionary index + 1
+ * </pre>
+ * 
+ * <p>
+ * Tags are 1 for {@link ShibbolethIdpAuthenticationEvent} and 2 for
+ * {@link EzproxyAuthenticationEvent}, other event types can not be encoded. A
+ * decoder rejects a batch with a newer {@link #VERSION} than it knows.
+ * </p>
+ * 
+ * <p>
+ * Encoding and decoding work directly on the {@link ByteBuffer}, with no
+ * intermediate byte arrays or streams. Instances hold reusable scratch state
+ * and are not thread safe, use one codec per thread.
+ * </p>
+ * 
+ * @author philsmart
+ */
+public final class EventCodec {
+
+	/** The schema version written by this codec. */
+	public static final byte VERSION = 1;
+
+	/** Tag of a {@link ShibbolethIdpAuthenticationEvent}. */
+	static final byte TAG_SHIBBOLETH_IDP = 1;
+
+	/** Tag of an {@link EzproxyAuthenticationEvent}. */
+	static final byte TAG_EZPROXY = 2;
+
+	private static final int HAS_ATTRIBUTES = 1;
+
+	private static final int HAS_PRINCIPAL_INFORMATION = 2;
+
+	private static final int HAS_EVENT_METADATA = 4;
+
+	/**
+	 * The fewest bytes an encoded event takes, its tag, flags, three numbers and
+	 * seven refs.
+	 */
+	private static final int MIN_EVENT_BYTES = 12;
+
+	/** Dictionary built while encoding a batch. */
+	private StringDictionary dictionary;
+
+	/** Strings of the dictionary being decoded, indexed by ref - 1. */
+	private String[] strings = new String[64];
+
+	/** Scratch space for decoding UTF-8. */
+	private char[] chars = new char[256];
+
+	/**
+	 * Encodes {@code events} as one batch into {@code buffer}, starting at its
+	 * position.
+	 * 
+	 * @param events
+	 *            the events, ideally in time order
+	 * @param buffer
+	 *            the destination
+	 * @throws BufferOverflowException
+	 *             if {@code buffer} does not have enough space remaining, its
+	 *             position is then undefined
+	 * @throws IllegalArgumentException
+	 *             if an event is not of a supported type
+	 */
+	public void encode(final List<? extends Event> events, final ByteBuffer buffer) {
+		dictionary = new StringDictionary();
+		for (final Event event : events) {
+			collectStrings(event);
+		}
+		buffer.put(VERSION);
+		ByteBufferIO.writeVarInt(buffer, events.size());
+		ByteBufferIO.writeVarInt(buffer, dictionary.size());
+		for (int i = 0; i < dictionary.size(); i++) {
+			ByteBufferIO.writeString(buffer, dictionary.decode(i));
+		}
+		long previousTime = 0;
+		for (final Event event : events) {
+			writeEvent(buffer, event, previousTime);
+			previousTime = event.getEventTimeMillis();
+		}
+		dictionary = null;
+	}
+
+	/**
+	 * Encodes {@code events} into a new heap buffer, sized to fit.
+	 * 
+	 * @param events
+	 *            the events, ideally in time order
+	 * @return a buffer flipped ready for reading
+	 */
+	public ByteBuffer encode(final List<? extends Event> events) {
+		int capacity = 1024 + events.size() * 64;
+		while (true) {
+			final ByteBuffer buffer = ByteBuffer.allocate(capacity);
+			try {
+				encode(events, buffer);
+				buffer.flip();
+				return buffer;
+			} catch (final BufferOverflowException e) {
+				capacity *= 2;
+			}
+		}
+	}
+
+	/**
+	 * Decodes one batch from {@code buffer}, starting at its position. On return
+	 * the position is just past the batch.
+	 * 
+	 * @param buffer
+	 *            the source
+	 * @return the events of the batch, in encoded order
+	 * @throws IllegalArgumentException
+	 *             if the batch is of an unknown version or is malformed
+	 */
+	public List<Event> decode(final ByteBuffer buffer) {
+		final byte version = buffer.get();
+		if (version < 1 || version > VERSION) {
+			throw new IllegalArgumentException("Unsupported event batch version " + version);
+		}
+		final int count = ByteBufferIO.readVarInt(buffer);
+		final int dictionarySize = ByteBufferIO.readCount(buffer, 1);
+		if (count < 0 || (long) count * MIN_EVENT_BYTES > buffer.remaining() - dictionarySize) {
+			throw new IllegalArgumentException("Event count " + count + " does not fit in the batch");
+		}
+		if (strings.length < dictionarySize) {
+			strings = new String[dictionarySize];
+		}
+		for (int i = 0; i < dictionarySize; i++) {
+			final int bytes = ByteBufferIO.readCount(buffer, 1);
+			if (chars.length < bytes) {
+				chars = new char[Math.max(bytes, chars.length * 2)];
+			}
+			strings[i] = new String(chars, 0, ByteBufferIO.readUtf8(buffer, bytes, chars));
+		}
+		final List<Event> events = new ArrayList<Event>(count);
+		long previousTime = 0;
+		for (int i = 0; i < count; i++) {
+			final Event event = readEvent(buffer, previousTime, dictionarySize);
+			previousTime = event.getEventTimeMillis();
+			events.add(event);
+		}
+		// do not keep the strings of this batch reachable
+		Arrays.fill(strings, 0, dictionarySize, null);
+		return events;
+	}
+
+	private void collectStrings(final Event event) {
+		dictionary.encode(event.getServiceId());
+		dictionary.encode(event.getEventType());
+		dictionary.encode(event.getServiceHost());
+		dictionary.encode(event.getResourceHost());
+		dictionary.encode(event.getResourceId());
+		final AuthenticationEvent authenticationEvent = (AuthenticationEvent) checkType(event);
+		dictionary.encode(authenticationEvent.getAuthenticationType());
+		dictionary.encode(authenticationEvent.getPrincipalName());
+		final PrincipalInformation principalInformation = authenticationEvent.getPrincipalInformation();
+		if (principalInformation != null) {
+			dictionary.encode(principalInformation.getSchool());
+			dictionary.encode(principalInformation.getAffiliation());
+		}
+		final EventMetadata eventMetadata = event.getEventMetadata();
+		if (eventMetadata != null) {
+			dictionary.encode(eventMetadata.getRaptorEntityId());
+			dictionary.encode(eventMetadata.getServiceName());
+			dictionary.encode(eventMetadata.getOrganisationName());
+		}
+		if (event instanceof ShibbolethIdpAuthenticationEvent) {
+			final ShibbolethIdpAuthenticationEvent shibboleth = (ShibbolethIdpAuthenticationEvent) event;
+			dictionary.encode(shibboleth.getRequestBinding());
+			dictionary.encode(shibboleth.getResponseBinding());
+			final AttributeSet attributes = shibboleth.getAttributeSet();
+			if (attributes != null) {
+				for (final String attribute : attributes) {
+					dictionary.encode(attribute);
+				}
+			}
+		} else {
+			dictionary.encode(((EzproxyAuthenticationEvent) event).getRequesterIp());
+		}
+	}
+
+	private static Event checkType(final Event event) {
+		if (event.getClass() != ShibbolethIdpAuthenticationEvent.class
+				&& event.getClass() != EzproxyAuthenticationEvent.class) {
+			throw new IllegalArgumentException("Can not encode event of type " + event.getClass().getName());
+		}
+		return event;
+	}
+
+	private void writeEvent(final ByteBuffer buffer, final Event event, final long previousTime) {
+		final AuthenticationEvent authenticationEvent = (AuthenticationEvent) event;
+		final PrincipalInformation principalInformation = authenticationEvent.getPrincipalInformation();
+		final EventMetadata eventMetadata = event.getEventMetadata();
+		final boolean shibboleth = event instanceof ShibbolethIdpAuthenticationEvent;
+		final AttributeSet attributes = shibboleth ? ((ShibbolethIdpAuthenticationEvent) event).getAttributeSet()
+				: null;
+
+		int flags = 0;
+		if (attributes != null) {
+			flags |= HAS_ATTRIBUTES;
+		}
+		if (principalInformation != null) {
+			flags |= HAS_PRINCIPAL_INFORMATION;
+		}
+		if (eventMetadata != null) {
+			flags |= HAS_EVENT_METADATA;
+		}
+		buffer.put(shibboleth ? TAG_SHIBBOLETH_IDP : TAG_EZPROXY);
+		buffer.put((byte) flags);
+		ByteBufferIO.writeZigZagLong(buffer, event.getEventTimeMillis() - previousTime);
+		ByteBufferIO.writeZigZagInt(buffer, event.getEventId());
+		ByteBufferIO.writeZigZagInt(buffer, event.getResourceIdCategory());
+		writeRef(buffer, event.getServiceId());
+		writeRef(buffer, event.getEventType());
+		writeRef(buffer, event.getServiceHost());
+		writeRef(buffer, event.getResourceHost());
+		writeRef(buffer, event.getResourceId());
+		writeRef(buffer, authenticationEvent.getAuthenticationType());
+		writeRef(buffer, authenticationEvent.getPrincipalName());
+		if (principalInformation != null) {
+			writeRef(buffer, principalInformation.getSchool());
+			writeRef(buffer, principalInformation.getAffiliation());
+		}
+		if (eventMetadata != null) {
+			writeRef(buffer, eventMetadata.getRaptorEntityId());
+			writeRef(buffer, eventMetadata.getServiceName());
+			writeRef(buffer, eventMetadata.getOrganisationName());
+		}
+		if (shibboleth) {
+			final ShibbolethIdpAuthenticationEvent shibbolethEvent = (ShibbolethIdpAuthenticationEvent) event;
+			writeRef(buffer, shibbolethEvent.getRequestBinding());
+			writeRef(buffer, shibbolethEvent.getResponseBinding());
+			if (attributes != null) {
+				ByteBufferIO.writeVarInt(buffer, attributes.size());
+				for (final String attribute : attributes) {
+					writeRef(buffer, attribute);
+				}
+			}
+		} else {
+			writeRef(buffer, ((EzproxyAuthenticationEvent) event).getRequesterIp());
+		}
+	}
+
+	private void writeRef(final ByteBuffer buffer, final String value) {
+		ByteBufferIO.writeVarInt(buffer, dictionary.lookup(value) + 1);
+	}
+
+	private Event readEvent(final ByteBuffer buffer, final long previousTime, final int dictionarySize) {
+		final byte tag = buffer.get();
+		final int flags = buffer.get();
+		final AuthenticationEvent event;
+		if (tag == TAG_SHIBBOLETH_IDP) {
+			event = new ShibbolethIdpAuthenticationEvent();
+		} else if (tag == TAG_EZPROXY) {
+			event = new EzproxyAuthenticationEvent();
+		} else {
+			throw new IllegalArgumentException("Unknown event tag " + tag);
+		}
+		event.setEventTimeMillis(previousTime + ByteBufferIO.readZigZagLong(buffer));
+		event.setEventId(ByteBufferIO.readZigZagInt(buffer));
+		event.setResourceIdCategory(ByteBufferIO.readZigZagInt(buffer));
+		event.setServiceId(readRef(buffer, dictionarySize));
+		event.setEventType(readRef(buffer, dictionarySize));
+		event.setServiceHost(readRef(buffer, dictionarySize));
+		event.setResourceHost(readRef(buffer, dictionarySize));
+		event.setResourceId(readRef(buffer, dictionarySize));
+		event.setAuthenticationType(readRef(buffer, dictionarySize));
+		event.setPrincipalName(readRef(buffer, dictionarySize));
+		if ((flags & HAS_PRINCIPAL_INFORMATION) != 0) {
+			final PrincipalInformation principalInformation = new PrincipalInformation();
+			principalInformation.setSchool(readRef(buffer, dictionarySize));
+			principalInformation.setAffiliation(readRef(buffer, dictionarySize));
+			event.setPrincipalInformation(principalInformation);
+		}
+		if ((flags & HAS_EVENT_METADATA) != 0) {
+			final EventMetadata eventMetadata = new EventMetadata();
+			eventMetadata.setRaptorEntityId(readRef(buffer, dictionarySize));
+			eventMetadata.setServiceName(readRef(buffer, dictionarySize));
+			eventMetadata.setOrganisationName(readRef(buffer, dictionarySize));
+			event.setEventMetadata(eventMetadata);
+		}
+		if (tag == TAG_SHIBBOLETH_IDP) {
+			final ShibbolethIdpAuthenticationEvent shibboleth = (ShibbolethIdpAuthenticationEvent) event;
+			shibboleth.setRequestBinding(readRef(buffer, dictionarySize));
+			shibboleth.setResponseBinding(readRef(buffer, dictionarySize));
+			if ((flags & HAS_ATTRIBUTES) != 0) {
+				final String[] attributes = new String[ByteBufferIO.readCount(buffer, 1)];
+				for (int i = 0; i < attributes.length; i++) {
+					attributes[i] = readRef(buffer, dictionarySize);
+				}
+				shibboleth.setAttributes(attributes);
+			}
+		} else {
+			((EzproxyAuthenticationEvent) event).setRequesterIp(readRef(buffer, dictionarySize));
+		}
+		return event;
+	}
+
+	private String readRef(final ByteBuffer buffer, final int dictionarySize) {
+		final int ref = ByteBufferIO.readVarInt(buffer);
+		if (ref == 0) {
+			return null;
+		}
+		if (ref > dictionarySize) {
+			throw new IllegalArgumentException("String reference " + ref + " outside dictionary of " + dictionarySize);
+		}
+		return strings[ref - 1];
+	}
+
+}
@@ -0,0 +1,482 @@
+/**
+ * Copyright (C) 2010 Cardiff University, Wales <smartp@cf.ac.uk>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.ac.cardiff.model.event.dedup;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import uk.ac.cardiff.model.event.Event;
+import uk.ac.cardiff.utility.BloomFilter;
+import uk.ac.cardiff.utility.LongHashSet;
+
+/**
+ * <p>
+ * Removes duplicate {@link Event}s from a stream, e.g. when a collector re-reads
+ * an overlapping range of a log, using memory bounded by time rather than by
+ * the total number of events seen.
+ * </p>
+ * 
+ * <p>
+ * Events are identified by their {@link Event#getEventFingerprint() fingerprint}
+ * and placed by {@link Event#getEventTimeMillis() event time} into one of
+ * {@code bucketCount} buckets that together span {@code windowMillis} behind the
+ * newest event seen. Membership within that window is exact, up to a 64-bit
+ * fingerprint collision. As newer events arrive, whole buckets fall out of the
+ * window and are dropped without reading their fingerprints: the set of each is
+ * cleared and reused by the bucket that replaces it.
+ * </p>
+ * 
+ * <p>
+ * Optionally, fingerprints are also put, as they are added, into a ring of
+ * {@code filterCount} {@link BloomFilter}s, one per window length of event
+ * time, so duplicates older than the exact window are still caught, with a
+ * small false positive rate, at a fixed memory cost. A false positive drops a
+ * genuinely new event and is counted as a probable duplicate. Events older
+ * than the last filter, or older than the exact window when there are no
+ * filters, can not be checked and are passed through and counted as late.
+ * Events without an event time are passed through and counted as untimed.
+ * </p>
+ * 
+ * <p>
+ * {@code maxEntries} caps the number of fingerprints held exactly. Once reached,
+ * the oldest buckets leave the exact window early, their fingerprints being in
+ * the filters already. With no filters nothing is forgotten early: new events
+ * are passed through without being recorded, and counted as overflows, until
+ * buckets expire.
+ * </p>
+ * 
+ * <p>
+ * Methods are synchronized, so one instance can be shared by several reader
+ * threads.
+ * </p>
+ * 
+ * @author philsmart
+ * @param <T> the type of event deduplicated
+ */
+public class EventDeduplicator<T extends Event> {
+
+	/** Value of {@link #newestBucket} before the first timed event, and of an expired slot. */
+	private static final long NO_BUCKET = Long.MIN_VALUE;
+
+	private final long windowMillis;
+
+	/** Width of each bucket in milliseconds of event time. */
+	private final long bucketMillis;
+
+	/** Fingerprints per bucket, indexed by {@link #slotOf(long)}, reused. */
+	private final LongHashSet[] buckets;
+
+	/** The absolute bucket number held in each slot, NO_BUCKET once expired. */
+	private final long[] bucketNumbers;
+
+	/** The bucket of the newest event seen, the window ends here. */
+	private long newestBucket = NO_BUCKET;
+
+	/** Every bucket before this one has expired, eviction starts here. */
+	private long oldestBucket = NO_BUCKET;
+
+	private final int maxEntries;
+
+	/** Number of fingerprints held across all buckets. */
+	private int size;
+
+	/** Filters for older windows, null when exact only. */
+	private final BloomFilter[] filters;
+
+	/** The absolute window (generation) number held by each filter. */
+	private final long[] filterGenerations;
+
+	private long offered;
+
+	private long unique;
+
+	private long exactDuplicates;
+
+	private long probableDuplicates;
+
+	private long late;
+
+	private long untimed;
+
+	/** Buckets moved out of the exact window early to respect maxEntries. */
+	private long evictions;
+
+	/** Events passed through unrecorded as maxEntries was reached, without filters. */
+	private long overflows;
+
+	/** System.nanoTime() when statistics were last reset. */
+	private long statisticsStart = System.nanoTime();
+
+	/**
+	 * Creates an exact only deduplicator.
+	 * 
+	 * @param windowMillis
+	 *            how far behind the newest event duplicates are detected
+	 * @param bucketCount
+	 *            the number of buckets the window is split into, the window
+	 *            slides one bucket at a time
+	 */
+	public EventDeduplicator(final long windowMillis, final int bucketCount) {
+		this(windowMillis, bucketCount, Integer.MAX_VALUE, 0, 1, 0.5);
+	}
+
+	/**
+	 * Creates a deduplicator that keeps older windows in Bloom filters.
+	 * 
+	 * @param windowMillis
+	 *            how far behind the newest event duplicates are detected exactly
+	 * @param bucketCount
+	 *            the number of buckets the window is split into
+	 * @param maxEntries
+	 *            the maximum number of fingerprints held exactly
+	 * @param filterCount
+	 *            the number of window lengths, counting the current one, covered
+	 *            by filters, zero for none
+	 * @param filterExpectedInsertions
+	 *            the number of events each filter is sized for, i.e. the expected
+	 *            number of events per window
+	 * @param falsePositiveRate
+	 *            the wanted false positive rate of a filter at that size
+	 */
+	public EventDeduplicator(final long windowMillis, final int bucketCount, final int maxEntries,
+			final int filterCount, final long filterExpectedInsertions, final double falsePositiveRate) {
+		if (bucketCount <= 0) {
+			throw new IllegalArgumentException("bucketCount must be positive");
+		}
+		if (windowMillis < bucketCount) {
+			throw new IllegalArgumentException("windowMillis must be at least one millisecond per bucket");
+		}
+		if (maxEntries <= 0) {
+			throw new IllegalArgumentException("maxEntries must be positive");
+		}
+		if (filterCount < 0) {
+			throw new IllegalArgumentException("filterCount must not be negative");
+		}
+		this.windowMillis = windowMillis;
+		this.bucketMillis = (windowMillis + bucketCount - 1) / bucketCount;
+		this.buckets = new LongHashSet[bucketCount];
+		this.bucketNumbers = new long[bucketCount];
+		Arrays.fill(bucketNumbers, NO_BUCKET);
+		this.maxEntries = maxEntries;
+		if (filterCount == 0) {
+			this.filters = null;
+			this.filterGenerations = null;
+		} else {
+			this.filters = new BloomFilter[filterCount];
+			for (int i = 0; i < filterCount; i++) {
+				filters[i] = new BloomFilter(filterExpectedInsertions, falsePositiveRate);
+			}
+			this.filterGenerations = new long[filterCount];
+			Arrays.fill(filterGenerations, NO_BUCKET);
+		}
+	}
+
+	/**
+	 * Records the event, in the manner of {@link java.util.Set#add(Object)}.
+	 * 
+	 * @param event
+	 *            the event to record
+	 * @return true if the event has not been seen before, or could not be
+	 *         checked, false if it is a duplicate
+	 */
+	public synchronized boolean add(final T event) {
+		offered++;
+		final long time = event.getEventTimeMillis();
+		if (time == Event.NO_EVENT_TIME) {
+			untimed++;
+			return true;
+		}
+		final long fingerprint = event.getEventFingerprint();
+		final long bucket = Math.floorDiv(time, bucketMillis);
+		if (bucket > newestBucket) {
+			advanceTo(bucket);
+		}
+		final int slot = slotOf(bucket);
+		if (bucketNumbers[slot] == bucket) {
+			if (buckets[slot].contains(fingerprint)) {
+				exactDuplicates++;
+				return false;
+			}
+			if (size >= maxEntries) {
+				if (filters == null) {
+					overflows++;
+					return true;
+				}
+				evictOldest();
+			}
+			// eviction may have taken this bucket too
+			if (bucketNumbers[slot] == bucket) {
+				buckets[slot].add(fingerprint);
+				size++;
+				final BloomFilter filter = filters == null ? null : filterFor(bucket);
+				if (filter != null) {
+					filter.put(fingerprint);
+				}
+				unique++;
+				return true;
+			}
+		}
+		return addToFilter(bucket, fingerprint);
+	}
+
+	/**
+	 * Records every event, returning those not seen before.
+	 * 
+	 * @param events
+	 *            the events to record, in any order
+	 * @return the events that are not duplicates, in their original order
+	 */
+	public synchronized List<T> filter(final Iterable<? extends T> events) {
+		final List<T> accepted = new ArrayList<T>();
+		for (final T event : events) {
+			if (add(event)) {
+				accepted.add(event);
+			}
+		}
+		return accepted;
+	}
+
+	/**
+	 * Forgets every event, and resets the statistics.
+	 */
+	public synchronized void clear() {
+		for (int slot = 0; slot < buckets.length; slot++) {
+			expire(slot);
+		}
+		newestBucket = NO_BUCKET;
+		oldestBucket = NO_BUCKET;
+		if (filters != null) {
+			for (final BloomFilter filter : filters) {
+				filter.clear();
+			}
+			Arrays.fill(filterGenerations, NO_BUCKET);
+		}
+		resetStatistics();
+	}
+
+	/**
+	 * Slide the window forward so it ends at {@code bucket}, expiring the buckets
+	 * that fall out of it. At most {@code bucketCount} slots are touched however
+	 * far the window moves.
+	 */
+	private void advanceTo(final long bucket) {
+		final long first = Math.max(newestBucket + 1, bucket - buckets.length + 1);
+		for (long number = first; number <= bucket; number++) {
+			final int slot = slotOf(number);
+			expire(slot);
+			if (buckets[slot] == null) {
+				buckets[slot] = new LongHashSet();
+			}
+			bucketNumbers[slot] = number;
+		}
+		newestBucket = bucket;
+		oldestBucket = Math.max(oldestBucket, bucket - buckets.length + 1);
+	}
+
+	/**
+	 * Drop the bucket in {@code slot}, clearing its set for reuse. Its
+	 * fingerprints are in the filters already if there are any.
+	 */
+	private void expire(final int slot) {
+		if (bucketNumbers[slot] == NO_BUCKET) {
+			return;
+		}
+		size -= buckets[slot].size();
+		buckets[slot].clear();
+		bucketNumbers[slot] = NO_BUCKET;
+	}
+
+	/**
+	 * Expires buckets from the oldest until below {@code maxEntries}. Each bucket
+	 * is passed once, so the cost is spread over the buckets of the window.
+	 */
+	private void evictOldest() {
+		while (size >= maxEntries) {
+			final int slot = slotOf(oldestBucket);
+			if (bucketNumbers[slot] == oldestBucket) {
+				if (!buckets[slot].isEmpty()) {
+					evictions++;
+				}
+				expire(slot);
+			}
+			oldestBucket++;
+		}
+	}
+
+	private boolean addToFilter(final long bucket, final long fingerprint) {
+		final BloomFilter filter = filters == null ? null : filterFor(bucket);
+		if (filter == null) {
+			late++;
+			return true;
+		}
+		if (filter.mightContain(fingerprint)) {
+			probableDuplicates++;
+			return false;
+		}
+		filter.put(fingerprint);
+		unique++;
+		return true;
+	}
+
+	/**
+	 * The filter for the window holding {@code bucket}, recycling the filter of the
+	 * oldest window if needed, or null if that window is older than all filters.
+	 */
+	private BloomFilter filterFor(final long bucket) {
+		final long generation = Math.floorDiv(bucket, buckets.length);
+		if (generation <= Math.floorDiv(newestBucket, buckets.length) - filters.length) {
+			return null;
+		}
+		final int slot = (int) Math.floorMod(generation, (long) filters.length);
+		if (filterGenerations[slot] != generation) {
+			filters[slot].clear();
+			filterGenerations[slot] = generation;
+		}
+		return filters[slot];
+	}
+
+	private int slotOf(final long bucket) {
+		return (int) Math.floorMod(bucket, (long) buckets.length);
+	}
+
+	/**
+	 * Resets the counters and the start of the throughput measurement, keeping
+	 * the events seen.
+	 */
+	public synchronized void resetStatistics() {
+		offered = 0;
+		unique = 0;
+		exactDuplicates = 0;
+		probableDuplicates = 0;
+		late = 0;
+		untimed = 0;
+		evictions = 0;
+		overflows = 0;
+		statisticsStart = System.nanoTime();
+	}
+
+	/**
+	 * @return the length of the exact window in milliseconds
+	 */
+	public long getWindowMillis() {
+		return windowMillis;
+	}
+
+	/**
+	 * @return the number of fingerprints held exactly
+	 */
+	public synchronized int getSize() {
+		return size;
+	}
+
+	/**
+	 * @return the number of events offered
+	 */
+	public synchronized long getOffered() {
+		return offered;
+	}
+
+	/**
+	 * @return the number of events checked and found to be new
+	 */
+	public synchronized long getUnique() {
+		return unique;
+	}
+
+	/**
+	 * @return the number of duplicates found in the exact window
+	 */
+	public synchronized long getExactDuplicates() {
+		return exactDuplicates;
+	}
+
+	/**
+	 * @return the number of events rejected by a filter, which includes false
+	 *         positives
+	 */
+	public synchronized long getProbableDuplicates() {
+		return probableDuplicates;
+	}
+
+	/**
+	 * @return the number of events too old to be checked
+	 */
+	public synchronized long getLate() {
+		return late;
+	}
+
+	/**
+	 * @return the number of events without an event time
+	 */
+	public synchronized long getUntimed() {
+		return untimed;
+	}
+
+	/**
+	 * @return the number of buckets moved out of the exact window early because
+	 *         {@code maxEntries} was reached
+	 */
+	public synchronized long getEvictions() {
+		return evictions;
+	}
+
+	/**
+	 * @return the number of events passed through without being recorded because
+	 *         {@code maxEntries} was reached and there are no filters
+	 */
+	public synchronized long getOverflows() {
+		return overflows;
+	}
+
+	/**
+	 * @return events offered per second since creation or the last
+	 *         {@link #resetStatistics()}
+	 */
+	public synchronized double getThroughput() {
+		final long elapsed = System.nanoTime() - statisticsStart;
+		return elapsed <= 0 ? 0 : offered * 1e9 / elapsed;
+	}
+
+	/**
+	 * The estimated false positive rate of the fullest live filter, i.e. an upper
+	 * bound on the chance that a new event older than the exact window is taken
+	 * for a duplicate.
+	 * 
+	 * @return the false positive rate, zero when there are no filters
+	 */
+	public synchronized double getFalsePositiveRate() {
+		double rate = 0;
+		if (filters != null) {
+			for (int i = 0; i < filters.length; i++) {
+				if (filterGenerations[i] != NO_BUCKET) {
+					rate = Math.max(rate, filters[i].getFalsePositiveRate());
+				}
+			}
+		}
+		return rate;
+	}
+
+	@Override
+	public synchronized String toString() {
+		return "EventDeduplicator [windowMillis=" + windowMillis + ", size=" + size + ", offered=" + offered
+				+ ", unique=" + unique + ", exactDuplicates=" + exactDuplicates + ", probableDuplicates="
+				+ probableDuplicates + ", late=" + late + ", untimed=" + untimed + ", evictions=" + evictions
+				+ ", overflows=" + overflows + ", throughput=" + getThroughput() + ", falsePositiveRate="
+				+ getFalsePositiveRate() + "]";
+	}
+
+}
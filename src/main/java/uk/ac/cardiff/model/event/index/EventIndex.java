@@ -0,0 +1,421 @@
+/**
+ * Copyright (C) 2010 Cardiff University, Wales <smartp@cf.ac.uk>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.ac.cardiff.model.event.index;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import uk.ac.cardiff.model.event.Event;
+
+/**
+ * <p>
+ * An in-memory index of {@link Event}s by event time, for queries of the form
+ * "events for service X between t1 and t2" without scanning every event.
+ * </p>
+ * 
+ * <p>
+ * Events are partitioned by {@link Event#getEventTimeMillis() event time} into
+ * fixed width partitions, an hour by default. Each partition keeps its events
+ * sorted by time, and for every {@link EventIndexKey} a sorted run per distinct
+ * key value, so a range query for one service only visits that service's events
+ * in the partitions the range overlaps, each located by binary search.
+ * </p>
+ * 
+ * <p>
+ * Appends lock only the partition they fall into, so concurrent writers of
+ * different time ranges do not contend. Queries take no locks, and return
+ * iterators that walk the index in place rather than copying results. Each
+ * partition is read as it was when the iterator reached it, later appends to a
+ * partition already passed are not seen. Appends in time order are cheapest, an
+ * append earlier than the latest event of its partition copies that
+ * partition's runs, O(n) in the events of the partition, so a source whose
+ * events arrive out of order should be sorted, or given narrower partitions,
+ * before it is indexed.
+ * </p>
+ * 
+ * <p>
+ * Events must not be modified once indexed, in particular their event time and
+ * indexed fields. Old partitions are dropped with {@link #evictBefore(long)},
+ * after which events older than the partitions kept are not added.
+ * </p>
+ * 
+ * @author philsmart
+ * @param <T> the type of event indexed
+ */
+public class EventIndex<T extends Event> {
+
+	/** The default partition width, one hour. */
+	public static final long DEFAULT_PARTITION_MILLIS = 60 * 60 * 1000L;
+
+	private static final EventIndexKey[] KEYS = EventIndexKey.values();
+
+	private final long partitionMillis;
+
+	/** Partitions by partition number, i.e. start time / partitionMillis. */
+	private final ConcurrentSkipListMap<Long, Partition> partitions = new ConcurrentSkipListMap<Long, Partition>();
+
+	private final LongAdder size = new LongAdder();
+
+	/**
+	 * The number of the oldest partition not evicted, events in earlier
+	 * partitions are not added.
+	 */
+	private final AtomicLong horizon = new AtomicLong(Long.MIN_VALUE);
+
+	public EventIndex() {
+		this(DEFAULT_PARTITION_MILLIS);
+	}
+
+	/**
+	 * @param partitionMillis
+	 *            the width of each time partition in milliseconds
+	 */
+	public EventIndex(final long partitionMillis) {
+		if (partitionMillis <= 0) {
+			throw new IllegalArgumentException("partitionMillis must be positive");
+		}
+		this.partitionMillis = partitionMillis;
+	}
+
+	/**
+	 * Adds an event, unless it falls in a partition already evicted, so late
+	 * events do not repopulate a time range that has been dropped. Safe to call
+	 * from several threads, and with {@link #evictBefore(long)}. Adding an event
+	 * earlier than the latest event of its partition copies the partition's
+	 * runs.
+	 * 
+	 * @param event
+	 *            the event to add
+	 * @return true if the event was added, false if it is older than the
+	 *         partitions kept by {@link #evictBefore(long)}
+	 * @throws IllegalArgumentException
+	 *             if the event has no event time
+	 */
+	public boolean add(final T event) {
+		final long time = event.getEventTimeMillis();
+		if (time == Event.NO_EVENT_TIME) {
+			throw new IllegalArgumentException("Can not index an event without an event time");
+		}
+		final Long number = Math.floorDiv(time, partitionMillis);
+		for (;;) {
+			if (number < horizon.get()) {
+				return false;
+			}
+			Partition partition = partitions.get(number);
+			if (partition == null) {
+				partition = partitions.computeIfAbsent(number, n -> new Partition());
+			}
+			if (partition.add(time, event)) {
+				size.increment();
+				if (number < horizon.get()) {
+					// created after evictBefore passed it, drop it as that would have
+					size.add(-partition.evict());
+					partitions.remove(number, partition);
+					return false;
+				}
+				return true;
+			}
+			// evicted meanwhile, unmap it if evictBefore has not yet, the horizon
+			// has moved past it
+			partitions.remove(number, partition);
+		}
+	}
+
+	/**
+	 * Adds every event, skipping those older than the partitions kept.
+	 * 
+	 * @param events
+	 *            the events to add
+	 * @return the number of events added
+	 */
+	public long addAll(final Iterable<? extends T> events) {
+		long added = 0;
+		for (final T event : events) {
+			if (add(event)) {
+				added++;
+			}
+		}
+		return added;
+	}
+
+	/**
+	 * The events with {@code from <= eventTime < to}, in event time order.
+	 * 
+	 * @param from
+	 *            the start of the range in milliseconds, inclusive
+	 * @param to
+	 *            the end of the range in milliseconds, exclusive
+	 * @return an iterator over the events in the range
+	 */
+	public Iterator<T> range(final long from, final long to) {
+		return new RangeIterator(partitionsOverlapping(from, to), null, null, from, to);
+	}
+
+	/**
+	 * The events whose {@code key} is {@code value} and with
+	 * {@code from <= eventTime < to}, in event time order.
+	 * 
+	 * @param key
+	 *            the indexed field to match
+	 * @param value
+	 *            the value to match
+	 * @param from
+	 *            the start of the range in milliseconds, inclusive
+	 * @param to
+	 *            the end of the range in milliseconds, exclusive
+	 * @return an iterator over the matching events
+	 */
+	public Iterator<T> range(final EventIndexKey key, final String value, final long from, final long to) {
+		if (value == null) {
+			return Collections.emptyIterator();
+		}
+		return new RangeIterator(partitionsOverlapping(from, to), key, value, from, to);
+	}
+
+	/**
+	 * The number of events {@link #range(long, long)} would return, found by
+	 * binary search alone.
+	 * 
+	 * @param from
+	 *            the start of the range in milliseconds, inclusive
+	 * @param to
+	 *            the end of the range in milliseconds, exclusive
+	 * @return the number of events in the range
+	 */
+	public long count(final long from, final long to) {
+		return count(null, null, from, to);
+	}
+
+	/**
+	 * The number of events {@link #range(EventIndexKey, String, long, long)} would
+	 * return, found by binary search alone.
+	 * 
+	 * @param key
+	 *            the indexed field to match
+	 * @param value
+	 *            the value to match
+	 * @param from
+	 *            the start of the range in milliseconds, inclusive
+	 * @param to
+	 *            the end of the range in milliseconds, exclusive
+	 * @return the number of matching events
+	 */
+	public long count(final EventIndexKey key, final String value, final long from, final long to) {
+		long count = 0;
+		for (final Partition partition : partitionsOverlapping(from, to).values()) {
+			final TimeRun run = partition.run(key, value);
+			if (run != null) {
+				final TimeRun.Snapshot snapshot = run.snapshot();
+				final int size = snapshot.size;
+				count += snapshot.lowerBound(to, size) - snapshot.lowerBound(from, size);
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Drops every partition that ends at or before {@code time}. Events in the
+	 * partition holding {@code time} are kept. Events added later that fall in a
+	 * dropped partition are not added.
+	 * 
+	 * @param time
+	 *            the oldest event time to keep, in milliseconds
+	 * @return the number of events dropped
+	 */
+	public long evictBefore(final long time) {
+		final long number = Math.floorDiv(time, partitionMillis);
+		// before evicting, so a writer that finds its partition evicted sees it
+		horizon.accumulateAndGet(number, Math::max);
+		final NavigableMap<Long, Partition> expired = partitions.headMap(number, false);
+		long dropped = 0;
+		for (final Map.Entry<Long, Partition> entry : expired.entrySet()) {
+			final Partition partition = entry.getValue();
+			dropped += partition.evict();
+			// by value, a writer may already have replaced the evicted partition
+			partitions.remove(entry.getKey(), partition);
+		}
+		size.add(-dropped);
+		return dropped;
+	}
+
+	/**
+	 * @return the number of events indexed
+	 */
+	public long size() {
+		return size.sum();
+	}
+
+	/**
+	 * @return the number of time partitions
+	 */
+	public int getPartitionCount() {
+		return partitions.size();
+	}
+
+	/**
+	 * @return the width of each time partition in milliseconds
+	 */
+	public long getPartitionMillis() {
+		return partitionMillis;
+	}
+
+	private NavigableMap<Long, Partition> partitionsOverlapping(final long from, final long to) {
+		if (from >= to) {
+			return Collections.emptyNavigableMap();
+		}
+		return partitions.subMap(Math.floorDiv(from, partitionMillis), true, Math.floorDiv(to - 1, partitionMillis),
+				true);
+	}
+
+	/**
+	 * The events of one time partition, with a run per secondary key value.
+	 */
+	private static final class Partition {
+
+		final TimeRun all = new TimeRun();
+
+		/** Runs by key value, indexed by {@link EventIndexKey#ordinal()}. */
+		final ConcurrentMap<String, TimeRun>[] secondary;
+
+		@SuppressWarnings("unchecked")
+		Partition() {
+			secondary = (ConcurrentMap<String, TimeRun>[]) new ConcurrentMap<?, ?>[KEYS.length];
+			for (int i = 0; i < KEYS.length; i++) {
+				secondary[i] = new ConcurrentHashMap<String, TimeRun>();
+			}
+		}
+
+		/** Set once the partition is dropped, after which nothing is added. */
+		private boolean evicted;
+
+		/**
+		 * Writers of one partition are serialised here, readers never lock.
+		 * 
+		 * @return false if the partition has been evicted and the event was not
+		 *         added
+		 */
+		synchronized boolean add(final long time, final Event event) {
+			if (evicted) {
+				return false;
+			}
+			all.add(time, event);
+			for (final EventIndexKey key : KEYS) {
+				final String value = key.of(event);
+				if (value != null) {
+					final Map<String, TimeRun> runs = secondary[key.ordinal()];
+					TimeRun run = runs.get(value);
+					if (run == null) {
+						run = new TimeRun();
+						runs.put(value, run);
+					}
+					run.add(time, event);
+				}
+			}
+			return true;
+		}
+
+		/**
+		 * Stops further adds to this partition.
+		 * 
+		 * @return the number of events the partition held, or zero if it was
+		 *         already evicted, so concurrent evictions count it once
+		 */
+		synchronized int evict() {
+			if (evicted) {
+				return 0;
+			}
+			evicted = true;
+			return all.snapshot().size;
+		}
+
+		/**
+		 * @return the run for {@code value} of {@code key}, all events for a null
+		 *         key, or null if the value does not occur
+		 */
+		TimeRun run(final EventIndexKey key, final String value) {
+			return key == null ? all : secondary[key.ordinal()].get(value);
+		}
+
+	}
+
+	/**
+	 * Walks the matching part of each overlapping partition in turn.
+	 */
+	private final class RangeIterator implements Iterator<T> {
+
+		private final Iterator<Partition> partitions;
+
+		private final EventIndexKey key;
+
+		private final String value;
+
+		private final long from;
+
+		private final long to;
+
+		private Object[] events;
+
+		private int index;
+
+		private int end;
+
+		RangeIterator(final NavigableMap<Long, Partition> partitions, final EventIndexKey key, final String value,
+				final long from, final long to) {
+			this.partitions = partitions.values().iterator();
+			this.key = key;
+			this.value = value;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		public boolean hasNext() {
+			while (index == end) {
+				if (!partitions.hasNext()) {
+					return false;
+				}
+				final TimeRun run = partitions.next().run(key, value);
+				if (run != null) {
+					final TimeRun.Snapshot snapshot = run.snapshot();
+					final int size = snapshot.size;
+					events = snapshot.events;
+					index = snapshot.lowerBound(from, size);
+					end = snapshot.lowerBound(to, size);
+				}
+			}
+			return true;
+		}
+
+		@Override
+		@SuppressWarnings("unchecked")
+		public T next() {
+			if (!hasNext()) {
+				throw new NoSuchElementException();
+			}
+			return (T) events[index++];
+		}
+
+	}
+
+}
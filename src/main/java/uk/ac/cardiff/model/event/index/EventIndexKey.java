@@ -0,0 +1,61 @@
+/**
+ * Copyright (C) 2010 Cardiff University, Wales <smartp@cf.ac.uk>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.ac.cardiff.model.event.index;
+
+import uk.ac.cardiff.model.event.AuthenticationEvent;
+import uk.ac.cardiff.model.event.Event;
+
+/**
+ * The fields an {@link EventIndex} keeps a secondary index on.
+ * 
+ * @author philsmart
+ */
+public enum EventIndexKey {
+
+	/** {@link Event#getServiceId()}. */
+	SERVICE_ID {
+		@Override
+		public String of(final Event event) {
+			return event.getServiceId();
+		}
+	},
+
+	/** {@link Event#getResourceId()}. */
+	RESOURCE_ID {
+		@Override
+		public String of(final Event event) {
+			return event.getResourceId();
+		}
+	},
+
+	/**
+	 * {@link AuthenticationEvent#getPrincipalName()}, null for other event types.
+	 */
+	PRINCIPAL_NAME {
+		@Override
+		public String of(final Event event) {
+			return event instanceof AuthenticationEvent ? ((AuthenticationEvent) event).getPrincipalName() : null;
+		}
+	};
+
+	/**
+	 * @param event
+	 *            the event to read
+	 * @return the value of this key for {@code event}, null if it has none
+	 */
+	public abstract String of(Event event);
+
+}
@@ -0,0 +1,146 @@
+/**
+ * Copyright (C) 2010 Cardiff University, Wales <smartp@cf.ac.uk>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.ac.cardiff.model.event.index;
+
+import java.util.Arrays;
+
+/**
+ * <p>
+ * A run of events sorted by event time, built for many readers and appends that
+ * are mostly in time order. Readers take a {@link Snapshot} without locking and
+ * see a consistent, sorted prefix of the run however writers proceed.
+ * </p>
+ * 
+ * <p>
+ * An append at or after the last event time is written in place beyond the
+ * published size, which is then advanced, so it is never seen by a snapshot
+ * taken earlier. An append out of time order, or one that needs more capacity,
+ * copies the run and publishes the copy. Writers must be serialised by the
+ * caller.
+ * </p>
+ * 
+ * @author philsmart
+ */
+final class TimeRun {
+
+	private static final int INITIAL_CAPACITY = 16;
+
+	/** The current arrays, replaced on growth or an out of order insert. */
+	private volatile Snapshot current = new Snapshot(new long[INITIAL_CAPACITY], new Object[INITIAL_CAPACITY], 0);
+
+	/**
+	 * Adds an event. Must not be called concurrently with itself. An event earlier
+	 * than the last is inserted into a copy of the run, so costs O(size), every
+	 * other append is amortised O(1).
+	 * 
+	 * @param time
+	 *            the event time in milliseconds
+	 * @param event
+	 *            the event
+	 */
+	void add(final long time, final Object event) {
+		final Snapshot snapshot = current;
+		final int size = snapshot.size;
+		final long[] times = snapshot.times;
+		if (size > 0 && time < times[size - 1]) {
+			final int position = snapshot.upperBound(time);
+			final int capacity = size == times.length ? size << 1 : times.length;
+			final long[] newTimes = new long[capacity];
+			final Object[] newEvents = new Object[capacity];
+			System.arraycopy(times, 0, newTimes, 0, position);
+			System.arraycopy(snapshot.events, 0, newEvents, 0, position);
+			newTimes[position] = time;
+			newEvents[position] = event;
+			System.arraycopy(times, position, newTimes, position + 1, size - position);
+			System.arraycopy(snapshot.events, position, newEvents, position + 1, size - position);
+			current = new Snapshot(newTimes, newEvents, size + 1);
+		} else if (size == times.length) {
+			final long[] newTimes = Arrays.copyOf(times, size << 1);
+			final Object[] newEvents = Arrays.copyOf(snapshot.events, size << 1);
+			newTimes[size] = time;
+			newEvents[size] = event;
+			current = new Snapshot(newTimes, newEvents, size + 1);
+		} else {
+			times[size] = time;
+			snapshot.events[size] = event;
+			// publishes the element written above
+			snapshot.size = size + 1;
+		}
+	}
+
+	/**
+	 * @return a consistent view of the run as it is now
+	 */
+	Snapshot snapshot() {
+		return current;
+	}
+
+	/**
+	 * The arrays of a run, and how much of them is in use.
+	 */
+	static final class Snapshot {
+
+		final long[] times;
+
+		final Object[] events;
+
+		/** Elements below this index are written and sorted. */
+		volatile int size;
+
+		Snapshot(final long[] times, final Object[] events, final int size) {
+			this.times = times;
+			this.events = events;
+			this.size = size;
+		}
+
+		/**
+		 * @return the index of the first event at or after {@code time}, within the
+		 *         first {@code size} events
+		 */
+		int lowerBound(final long time, final int size) {
+			int low = 0;
+			int high = size;
+			while (low < high) {
+				final int middle = low + high >>> 1;
+				if (times[middle] < time) {
+					low = middle + 1;
+				} else {
+					high = middle;
+				}
+			}
+			return low;
+		}
+
+		/**
+		 * @return the index of the first event after {@code time}
+		 */
+		int upperBound(final long time) {
+			int low = 0;
+			int high = size;
+			while (low < high) {
+				final int middle = low + high >>> 1;
+				if (times[middle] <= time) {
+					low = middle + 1;
+				} else {
+					high = middle;
+				}
+			}
+			return low;
+		}
+
+	}
+
+}
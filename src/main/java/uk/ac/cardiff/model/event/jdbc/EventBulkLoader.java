@@ -0,0 +1,340 @@
+/**
+ * Copyright (C) 2010 Cardiff University, Wales <smartp@cf.ac.uk>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.ac.cardiff.model.event.jdbc;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+import uk.ac.cardiff.model.event.Event;
+
+/**
+ * <p>
+ * Inserts {@link Event}s into their entity tables with plain JDBC, for bulk
+ * loads where one JPA persist and flush per row is too slow. Columns are those
+ * of each class's {@link EventTableMapping}, so the rows read back as entities.
+ * </p>
+ * 
+ * <p>
+ * Events are buffered per table, and each {@code batchSize} of a table are
+ * written in one JDBC batch of multi-row {@code INSERT ... VALUES (...), (...)}
+ * statements, each of as many rows as fit in {@value #MAX_PARAMETERS}
+ * parameters, and one statement for the rows left over. The transaction is
+ * committed every {@code commitSize} rows and on {@link #flush()}. Multi-row
+ * inserts are not supported by Oracle.
+ * </p>
+ * 
+ * <p>
+ * The loader turns auto commit off until it is closed. If a write or commit
+ * fails, the loader rolls back the rows since the last commit and fails: later
+ * calls throw, and {@link #close()} releases the statements and restores auto
+ * commit without writing or committing anything. Not thread safe, use one
+ * loader per connection.
+ * </p>
+ * 
+ * @author philsmart
+ */
+public final class EventBulkLoader implements AutoCloseable {
+
+	/** The default number of rows of a table written per JDBC batch. */
+	public static final int DEFAULT_BATCH_SIZE = 1000;
+
+	/** The default number of rows written per transaction. */
+	public static final int DEFAULT_COMMIT_SIZE = 50000;
+
+	/** The most parameters in a statement, within the limit of SQL Server. */
+	public static final int MAX_PARAMETERS = 2000;
+
+	private final Connection connection;
+
+	private final int batchSize;
+
+	private final int commitSize;
+
+	private final boolean autoCommit;
+
+	private final Map<Class<?>, TableWriter> writers = new IdentityHashMap<Class<?>, TableWriter>();
+
+	private int uncommitted;
+
+	private long rowCount;
+
+	private boolean closed;
+
+	/** Set if a write or commit failed, after which nothing more is written. */
+	private Exception failure;
+
+	/**
+	 * Creates a loader with the default batch and commit sizes.
+	 * 
+	 * @param connection
+	 *            the connection to write through
+	 * @throws SQLException
+	 *             if auto commit can not be turned off
+	 */
+	public EventBulkLoader(final Connection connection) throws SQLException {
+		this(connection, DEFAULT_BATCH_SIZE, DEFAULT_COMMIT_SIZE);
+	}
+
+	/**
+	 * Creates a loader.
+	 * 
+	 * @param connection
+	 *            the connection to write through
+	 * @param batchSize
+	 *            the number of rows of a table buffered, then written per JDBC
+	 *            batch
+	 * @param commitSize
+	 *            the number of rows written after which the transaction is
+	 *            committed
+	 * @throws SQLException
+	 *             if auto commit can not be turned off
+	 */
+	public EventBulkLoader(final Connection connection, final int batchSize, final int commitSize)
+			throws SQLException {
+		if (batchSize <= 0) {
+			throw new IllegalArgumentException("Batch size of " + batchSize);
+		}
+		if (commitSize <= 0) {
+			throw new IllegalArgumentException("Commit size of " + commitSize);
+		}
+		this.connection = connection;
+		this.batchSize = batchSize;
+		this.commitSize = commitSize;
+		autoCommit = connection.getAutoCommit();
+		connection.setAutoCommit(false);
+	}
+
+	/**
+	 * Adds an event, writing its table's buffered rows if it is full.
+	 * 
+	 * @param event
+	 *            an event of a concrete entity class
+	 * @throws SQLException
+	 *             if rows can not be written
+	 */
+	public void add(final Event event) throws SQLException {
+		checkOpen();
+		TableWriter writer = writers.get(event.getClass());
+		if (writer == null) {
+			writer = new TableWriter(EventTableMapping.of(event.getClass()));
+			writers.put(event.getClass(), writer);
+		}
+		try {
+			writer.add(event);
+		} catch (final SQLException | RuntimeException e) {
+			fail(e);
+			throw e;
+		}
+	}
+
+	/**
+	 * Adds events.
+	 * 
+	 * @param events
+	 *            events of concrete entity classes
+	 * @throws SQLException
+	 *             if rows can not be written
+	 * @see #add(Event)
+	 */
+	public void addAll(final Iterable<? extends Event> events) throws SQLException {
+		for (final Event event : events) {
+			add(event);
+		}
+	}
+
+	/**
+	 * Writes every buffered row and commits.
+	 * 
+	 * @throws SQLException
+	 *             if rows can not be written or committed
+	 */
+	public void flush() throws SQLException {
+		checkOpen();
+		try {
+			for (final TableWriter writer : writers.values()) {
+				writer.write();
+			}
+			if (uncommitted > 0) {
+				connection.commit();
+				uncommitted = 0;
+			}
+		} catch (final SQLException | RuntimeException e) {
+			fail(e);
+			throw e;
+		}
+	}
+
+	/**
+	 * Rolls back the rows since the last commit, and refuses any more.
+	 */
+	private void fail(final Exception e) {
+		failure = e;
+		uncommitted = 0;
+		try {
+			connection.rollback();
+		} catch (final SQLException rollback) {
+			e.addSuppressed(rollback);
+		}
+	}
+
+	/**
+	 * @return the number of rows written, committed or not
+	 */
+	public long getRowCount() {
+		return rowCount;
+	}
+
+	/**
+	 * Flushes, unless the loader has failed, closes the statements and restores
+	 * the connection's auto commit. The connection is left open.
+	 */
+	@Override
+	public void close() throws SQLException {
+		if (closed) {
+			return;
+		}
+		try {
+			if (failure == null) {
+				flush();
+			}
+		} finally {
+			closed = true;
+			SQLException statementFailure = null;
+			for (final TableWriter writer : writers.values()) {
+				try {
+					writer.close();
+				} catch (final SQLException e) {
+					statementFailure = e;
+				}
+			}
+			if (statementFailure != null) {
+				throw statementFailure;
+			}
+			if (failure != null) {
+				// restoring auto commit would commit anything left
+				connection.rollback();
+			}
+			connection.setAutoCommit(autoCommit);
+		}
+	}
+
+	private void checkOpen() throws SQLException {
+		if (closed) {
+			throw new IllegalStateException("Loader is closed");
+		}
+		if (failure != null) {
+			throw new SQLException("Loader failed, the rows since the last commit were rolled back", failure);
+		}
+	}
+
+	/** Buffers and writes the rows of one table. */
+	private final class TableWriter {
+
+		private final EventTableMapping mapping;
+
+		private final int rowsPerStatement;
+
+		private final Event[] pending = new Event[batchSize];
+
+		private int count;
+
+		/** Inserts {@link #rowsPerStatement} rows. */
+		private PreparedStatement multiRow;
+
+		/** Inserts the rows left after the multi-row statements of a batch. */
+		private PreparedStatement tail;
+
+		private int tailRows;
+
+		private TableWriter(final EventTableMapping mapping) {
+			this.mapping = mapping;
+			rowsPerStatement = Math.max(1, Math.min(batchSize, MAX_PARAMETERS / mapping.getColumns().size()));
+		}
+
+		private void add(final Event event) throws SQLException {
+			pending[count++] = event;
+			if (count == batchSize) {
+				write();
+			}
+		}
+
+		private void write() throws SQLException {
+			if (count == 0) {
+				return;
+			}
+			final int rows = count;
+			try {
+				int row = 0;
+				if (rows >= rowsPerStatement) {
+					if (multiRow == null) {
+						multiRow = connection.prepareStatement(mapping.insertSql(rowsPerStatement));
+					}
+					for (; row + rowsPerStatement <= rows; row += rowsPerStatement) {
+						int parameter = 1;
+						for (int i = row; i < row + rowsPerStatement; i++) {
+							parameter = mapping.bind(multiRow, parameter, pending[i]);
+						}
+						multiRow.addBatch();
+					}
+					multiRow.executeBatch();
+				}
+				if (row < rows) {
+					if (tail == null || tailRows != rows - row) {
+						if (tail != null) {
+							tail.close();
+						}
+						tailRows = rows - row;
+						tail = connection.prepareStatement(mapping.insertSql(tailRows));
+					}
+					int parameter = 1;
+					for (; row < rows; row++) {
+						parameter = mapping.bind(tail, parameter, pending[row]);
+					}
+					tail.executeUpdate();
+				}
+			} finally {
+				// written or failed, either way not to be written again
+				for (int i = 0; i < rows; i++) {
+					pending[i] = null;
+				}
+				count = 0;
+			}
+			rowCount += rows;
+			uncommitted += rows;
+			if (uncommitted >= commitSize) {
+				connection.commit();
+				uncommitted = 0;
+			}
+		}
+
+		private void close() throws SQLException {
+			try {
+				if (multiRow != null) {
+					multiRow.close();
+				}
+			} finally {
+				if (tail != null) {
+					tail.close();
+				}
+			}
+		}
+
+	}
+
+}
@@ -0,0 +1,394 @@
+/**
+ * Copyright (C) 2010 Cardiff University, Wales <smartp@cf.ac.uk>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.ac.cardiff.model.event.jdbc;
+
+import java.lang.reflect.AccessibleObject;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.persistence.Access;
+import javax.persistence.AccessType;
+import javax.persistence.AttributeConverter;
+import javax.persistence.Column;
+import javax.persistence.Convert;
+import javax.persistence.Embedded;
+import javax.persistence.Entity;
+import javax.persistence.MappedSuperclass;
+import javax.persistence.Table;
+import javax.persistence.Transient;
+
+import org.joda.time.DateTime;
+
+import uk.ac.cardiff.model.event.Event;
+
+/**
+ * <p>
+ * The table and columns an {@link Event} entity class is persisted to, derived
+ * from its JPA annotations the way Hibernate derives them, so rows inserted
+ * through it can be read back as entities. Every table of the
+ * {@code TABLE_PER_CLASS} hierarchy holds all the columns of its class:
+ * </p>
+ * 
+ * <ul>
+ * <li>the persistent fields of the class and its {@link Entity} or
+ * {@link MappedSuperclass} superclasses, those not static, transient or
+ * {@link Transient}, named by {@link Column} or else by the field;</li>
+ * <li>the getters marked {@code @Access(PROPERTY)}, named by the property;</li>
+ * <li>the fields of {@link Embedded} values, null if the value is null.</li>
+ * </ul>
+ * 
+ * <p>
+ * Values are passed through the {@link AttributeConverter} of their
+ * {@link Convert} annotation. Of Hibernate {@code @Type}s, only Jadira's
+ * {@code PersistentDateTime} is supported, written as a {@link Timestamp} in
+ * the JVM zone as Jadira does by default.
+ * </p>
+ * 
+ * <p>
+ * Immutable and thread safe, mappings are shared per class.
+ * </p>
+ * 
+ * @author philsmart
+ */
+public final class EventTableMapping {
+
+	private static final String PERSISTENT_DATE_TIME = "org.jadira.usertype.dateandtime.joda.PersistentDateTime";
+
+	private static final ConcurrentMap<Class<?>, EventTableMapping> MAPPINGS = new ConcurrentHashMap<Class<?>, EventTableMapping>();
+
+	private static final ConcurrentMap<Class<?>, AttributeConverter<Object, Object>> CONVERTERS = new ConcurrentHashMap<Class<?>, AttributeConverter<Object, Object>>();
+
+	private final Class<? extends Event> type;
+
+	private final String table;
+
+	private final List<String> columnNames;
+
+	private final MappedColumn[] columns;
+
+	private EventTableMapping(final Class<? extends Event> type, final String table, final List<MappedColumn> columns) {
+		this.type = type;
+		this.table = table;
+		this.columns = columns.toArray(new MappedColumn[columns.size()]);
+		final List<String> names = new ArrayList<String>(columns.size());
+		for (final MappedColumn column : columns) {
+			names.add(column.name);
+		}
+		columnNames = Collections.unmodifiableList(names);
+	}
+
+	/**
+	 * Gets the mapping of an entity class.
+	 * 
+	 * @param type
+	 *            a concrete {@link Entity} class
+	 * @return its mapping
+	 * @throws IllegalArgumentException
+	 *             if {@code type} is not a concrete entity, or has a column of a
+	 *             type that can not be mapped
+	 */
+	public static EventTableMapping of(final Class<? extends Event> type) {
+		final EventTableMapping mapping = MAPPINGS.get(type);
+		return mapping != null ? mapping : MAPPINGS.computeIfAbsent(type, EventTableMapping::derive);
+	}
+
+	private static EventTableMapping derive(final Class<?> type) {
+		if (Modifier.isAbstract(type.getModifiers()) || !type.isAnnotationPresent(Entity.class)) {
+			throw new IllegalArgumentException(type.getName() + " is not a concrete entity");
+		}
+		final Table table = type.getAnnotation(Table.class);
+		final Entity entity = type.getAnnotation(Entity.class);
+		final String name = table != null && !table.name().isEmpty() ? table.name()
+				: !entity.name().isEmpty() ? entity.name() : type.getSimpleName();
+		final Deque<Class<?>> hierarchy = new ArrayDeque<Class<?>>();
+		for (Class<?> c = type; c != null; c = c.getSuperclass()) {
+			if (c.isAnnotationPresent(Entity.class) || c.isAnnotationPresent(MappedSuperclass.class)) {
+				hierarchy.push(c);
+			}
+		}
+		final List<MappedColumn> columns = new ArrayList<MappedColumn>();
+		for (final Class<?> c : hierarchy) {
+			addColumns(c, new AccessibleObject[0], columns);
+		}
+		@SuppressWarnings("unchecked")
+		final Class<? extends Event> eventType = (Class<? extends Event>) type;
+		return new EventTableMapping(eventType, name, columns);
+	}
+
+	private static void addColumns(final Class<?> type, final AccessibleObject[] path, final List<MappedColumn> columns) {
+		for (final Field field : type.getDeclaredFields()) {
+			if (Modifier.isStatic(field.getModifiers()) || Modifier.isTransient(field.getModifiers())
+					|| field.isAnnotationPresent(Transient.class) || field.isSynthetic()) {
+				continue;
+			}
+			field.setAccessible(true);
+			final AccessibleObject[] fieldPath = append(path, field);
+			if (field.isAnnotationPresent(Embedded.class)) {
+				addColumns(field.getType(), fieldPath, columns);
+			} else {
+				columns.add(column(field, field.getName(), field.getType(), fieldPath));
+			}
+		}
+		final Method[] methods = type.getDeclaredMethods();
+		Arrays.sort(methods, Comparator.comparing(Method::getName));
+		for (final Method method : methods) {
+			final Access access = method.getAnnotation(Access.class);
+			if (access == null || access.value() != AccessType.PROPERTY || method.isAnnotationPresent(Transient.class)) {
+				continue;
+			}
+			final String getter = method.getName();
+			final int prefix = getter.startsWith("get") ? 3 : getter.startsWith("is") ? 2 : 0;
+			if (prefix == 0 || getter.length() == prefix || method.getParameterCount() != 0) {
+				throw new IllegalArgumentException(method + " is not a property getter");
+			}
+			method.setAccessible(true);
+			final String property = Character.toLowerCase(getter.charAt(prefix)) + getter.substring(prefix + 1);
+			columns.add(column(method, property, method.getReturnType(), append(path, method)));
+		}
+	}
+
+	private static MappedColumn column(final AccessibleObject member, final String property, final Class<?> javaType,
+			final AccessibleObject[] path) {
+		final Column column = member.getAnnotation(Column.class);
+		final String name = column != null && !column.name().isEmpty() ? column.name() : property;
+		final Convert convert = member.getAnnotation(Convert.class);
+		if (convert != null && !convert.disableConversion() && convert.converter() != void.class) {
+			final AttributeConverter<Object, Object> converter = CONVERTERS.computeIfAbsent(convert.converter(),
+					EventTableMapping::newConverter);
+			return new MappedColumn(name, sqlType(databaseType(convert.converter()), name), path, converter, false);
+		}
+		final org.hibernate.annotations.Type hibernateType = member
+				.getAnnotation(org.hibernate.annotations.Type.class);
+		if (hibernateType != null) {
+			if (!PERSISTENT_DATE_TIME.equals(hibernateType.type()) || javaType != DateTime.class) {
+				throw new IllegalArgumentException("Unsupported type " + hibernateType.type() + " of column " + name);
+			}
+			return new MappedColumn(name, Types.TIMESTAMP, path, null, true);
+		}
+		return new MappedColumn(name, sqlType(javaType, name), path, null, false);
+	}
+
+	@SuppressWarnings("unchecked")
+	private static AttributeConverter<Object, Object> newConverter(final Class<?> converter) {
+		try {
+			return (AttributeConverter<Object, Object>) converter.getDeclaredConstructor().newInstance();
+		} catch (final ReflectiveOperationException e) {
+			throw new IllegalArgumentException("Can not create converter " + converter.getName(), e);
+		}
+	}
+
+	/**
+	 * @return the database column type {@code Y} of an
+	 *         {@code AttributeConverter<X, Y>} class
+	 */
+	private static Class<?> databaseType(final Class<?> converter) {
+		for (Class<?> c = converter; c != null; c = c.getSuperclass()) {
+			for (final Type implemented : c.getGenericInterfaces()) {
+				if (implemented instanceof ParameterizedType
+						&& ((ParameterizedType) implemented).getRawType() == AttributeConverter.class) {
+					final Type databaseType = ((ParameterizedType) implemented).getActualTypeArguments()[1];
+					if (databaseType instanceof Class) {
+						return (Class<?>) databaseType;
+					}
+				}
+			}
+		}
+		throw new IllegalArgumentException("Can not find the column type of converter " + converter.getName());
+	}
+
+	private static int sqlType(final Class<?> javaType, final String column) {
+		if (javaType == String.class) {
+			return Types.VARCHAR;
+		} else if (javaType == int.class || javaType == Integer.class) {
+			return Types.INTEGER;
+		} else if (javaType == long.class || javaType == Long.class) {
+			return Types.BIGINT;
+		} else if (javaType == boolean.class || javaType == Boolean.class) {
+			return Types.BOOLEAN;
+		} else if (javaType == Timestamp.class) {
+			return Types.TIMESTAMP;
+		}
+		throw new IllegalArgumentException("Unsupported type " + javaType.getName() + " of column " + column);
+	}
+
+	private static AccessibleObject[] append(final AccessibleObject[] path, final AccessibleObject member) {
+		final AccessibleObject[] appended = Arrays.copyOf(path, path.length + 1);
+		appended[path.length] = member;
+		return appended;
+	}
+
+	/**
+	 * @return the entity class mapped
+	 */
+	public Class<? extends Event> getType() {
+		return type;
+	}
+
+	/**
+	 * @return the table name
+	 */
+	public String getTable() {
+		return table;
+	}
+
+	/**
+	 * @return the column names, in the order values are bound
+	 */
+	public List<String> getColumns() {
+		return columnNames;
+	}
+
+	/**
+	 * Builds an insert of several rows in one statement, as supported by e.g.
+	 * H2, MySQL, PostgreSQL and SQL Server.
+	 * 
+	 * @param rows
+	 *            the number of rows
+	 * @return {@code INSERT INTO table (columns) VALUES (?, ...), ...}
+	 */
+	public String insertSql(final int rows) {
+		if (rows <= 0) {
+			throw new IllegalArgumentException("Insert of " + rows + " rows");
+		}
+		final StringBuilder sql = new StringBuilder(64 + columns.length * (16 + rows * 3));
+		sql.append("INSERT INTO ").append(table).append(" (");
+		for (int i = 0; i < columns.length; i++) {
+			sql.append(i == 0 ? "" : ", ").append(columns[i].name);
+		}
+		sql.append(") VALUES ");
+		for (int row = 0; row < rows; row++) {
+			sql.append(row == 0 ? "(" : ", (");
+			for (int i = 0; i < columns.length; i++) {
+				sql.append(i == 0 ? "?" : ", ?");
+			}
+			sql.append(')');
+		}
+		return sql.toString();
+	}
+
+	/**
+	 * Binds the column values of an event, in {@link #getColumns()} order.
+	 * 
+	 * @param statement
+	 *            the statement
+	 * @param parameter
+	 *            the index of the first parameter to bind
+	 * @param event
+	 *            an instance of {@link #getType()}
+	 * @return the index of the parameter after the last bound
+	 * @throws SQLException
+	 *             if a value can not be bound
+	 */
+	public int bind(final PreparedStatement statement, final int parameter, final Event event) throws SQLException {
+		if (event.getClass() != type) {
+			throw new IllegalArgumentException(event.getClass().getName() + " is not mapped by " + type.getName());
+		}
+		int index = parameter;
+		for (final MappedColumn column : columns) {
+			final Object value = column.value(event);
+			if (value == null) {
+				statement.setNull(index++, column.sqlType);
+				continue;
+			}
+			switch (column.sqlType) {
+			case Types.VARCHAR:
+				statement.setString(index++, (String) value);
+				break;
+			case Types.INTEGER:
+				statement.setInt(index++, (Integer) value);
+				break;
+			case Types.BIGINT:
+				statement.setLong(index++, (Long) value);
+				break;
+			case Types.TIMESTAMP:
+				statement.setTimestamp(index++, (Timestamp) value);
+				break;
+			default:
+				statement.setObject(index++, value, column.sqlType);
+			}
+		}
+		return index;
+	}
+
+	@Override
+	public String toString() {
+		return "EventTableMapping [type=" + type.getName() + ", table=" + table + ", columns=" + columnNames + "]";
+	}
+
+	/** A column, and how to get its value from an event. */
+	private static final class MappedColumn {
+
+		private final String name;
+
+		private final int sqlType;
+
+		/** The fields or getters from the event to the value. */
+		private final AccessibleObject[] path;
+
+		private final AttributeConverter<Object, Object> converter;
+
+		private final boolean dateTime;
+
+		private MappedColumn(final String name, final int sqlType, final AccessibleObject[] path,
+				final AttributeConverter<Object, Object> converter, final boolean dateTime) {
+			this.name = name;
+			this.sqlType = sqlType;
+			this.path = path;
+			this.converter = converter;
+			this.dateTime = dateTime;
+		}
+
+		private Object value(final Event event) {
+			Object value = event;
+			try {
+				for (final AccessibleObject member : path) {
+					value = member instanceof Field ? ((Field) member).get(value) : ((Method) member).invoke(value);
+					if (value == null) {
+						break;
+					}
+				}
+			} catch (final IllegalAccessException | InvocationTargetException e) {
+				throw new IllegalStateException("Can not read column " + name, e);
+			}
+			if (converter != null) {
+				return converter.convertToDatabaseColumn(value);
+			}
+			if (dateTime && value != null) {
+				return new Timestamp(((DateTime) value).getMillis());
+			}
+			return value;
+		}
+
+	}
+
+}
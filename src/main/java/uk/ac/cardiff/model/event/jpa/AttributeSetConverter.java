@@ -0,0 +1,129 @@
+package uk.ac.cardiff.model.event.jpa;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.persistence.AttributeConverter;
+import javax.persistence.Converter;
+
+import uk.ac.cardiff.model.event.auxiliary.AttributeSet;
+import uk.ac.cardiff.utility.LruCache;
+
+/**
+ * Convert an {@link AttributeSet} to a single pipe ('|') delimited string of its
+ * names, in their order, as {@link StringArrayToStringConverter} stored the
+ * array, so a set read back is equal to the one written and the event hash is
+ * unchanged. A value written here starts with the control character U+0001,
+ * which can not occur in an attribute name as it is not allowed in XML, and a
+ * '|' or '\' within a name is escaped with '\'. A null name is written as
+ * "null" as it always was. Values without the prefix were written by
+ * {@link StringArrayToStringConverter} and are split on '|' exactly as it split
+ * them, so existing rows are read back unchanged. An empty set is stored as
+ * null, and null is read back as null.
+ * 
+ * <p>
+ * Both directions are cached in shared {@link LruCache}s, as there are few
+ * distinct sets and both the set and its column value are immutable. Their
+ * size is set by the
+ * {@code uk.ac.cardiff.model.event.jpa.AttributeSetConverter.cacheSize} system
+ * property.
+ * </p>
+ * 
+ * @author philsmart
+ *
+ */
+@Converter
+public class AttributeSetConverter implements AttributeConverter<AttributeSet, String> {
+
+	/** Starts every value written by this converter. */
+	private static final char PREFIX = '\u0001';
+
+	private static final char SEPARATOR = '|';
+
+	private static final char ESCAPE = '\\';
+
+	private static final int CACHE_SIZE = Integer
+			.getInteger("uk.ac.cardiff.model.event.jpa.AttributeSetConverter.cacheSize", 4096);
+
+	private static final LruCache<AttributeSet, String> COLUMNS = new LruCache<AttributeSet, String>(CACHE_SIZE);
+
+	private static final LruCache<String, AttributeSet> SETS = new LruCache<String, AttributeSet>(CACHE_SIZE);
+
+	public String convertToDatabaseColumn(final AttributeSet attribute) {
+		if (attribute == null || attribute.isEmpty()) {
+			return null;
+		}
+		return COLUMNS.get(attribute, AttributeSetConverter::join);
+	}
+
+	public AttributeSet convertToEntityAttribute(final String dbData) {
+		if (dbData == null) {
+			return null;
+		}
+		return SETS.get(dbData, AttributeSetConverter::split);
+	}
+
+	private static String join(final AttributeSet attribute) {
+		int length = attribute.size();
+		for (final String name : attribute) {
+			length += name == null ? 4 : name.length();
+		}
+		final StringBuilder builder = new StringBuilder(length + 8);
+		builder.append(PREFIX);
+		boolean first = true;
+		for (final String name : attribute) {
+			if (!first) {
+				builder.append(SEPARATOR);
+			}
+			first = false;
+			if (name == null) {
+				builder.append("null");
+			} else {
+				for (int c = 0; c < name.length(); c++) {
+					final char ch = name.charAt(c);
+					if (ch == SEPARATOR || ch == ESCAPE) {
+						builder.append(ESCAPE);
+					}
+					builder.append(ch);
+				}
+			}
+		}
+		return builder.toString();
+	}
+
+	private static AttributeSet split(final String dbData) {
+		if (dbData.isEmpty() || dbData.charAt(0) != PREFIX) {
+			return AttributeSet.of(dbData.split("\\|"));
+		}
+		final List<String> names = new ArrayList<String>();
+		final StringBuilder name = new StringBuilder();
+		for (int c = 1; c < dbData.length(); c++) {
+			final char ch = dbData.charAt(c);
+			if (ch == ESCAPE && c + 1 < dbData.length()) {
+				name.append(dbData.charAt(++c));
+			} else if (ch == SEPARATOR) {
+				names.add(name.toString());
+				name.setLength(0);
+			} else {
+				name.append(ch);
+			}
+		}
+		names.add(name.toString());
+		return AttributeSet.of(names);
+	}
+
+	/**
+	 * @return the cache of column values by set, for its statistics
+	 */
+	public static LruCache<?, ?> getColumnCache() {
+		return COLUMNS;
+	}
+
+	/**
+	 * @return the cache of sets by column value, for its statistics
+	 */
+	public static LruCache<?, ?> getSetCache() {
+		return SETS;
+	}
+
+}
@@ -0,0 +1,28 @@
+package uk.ac.cardiff.model.event.jpa;
+
+import javax.persistence.AttributeConverter;
+import javax.persistence.Converter;
+
+import uk.ac.cardiff.utility.StringPool;
+
+/**
+ * Canonicalises low cardinality {@link String} columns through the
+ * {@link StringPool#SHARED} pool as they are loaded, so that entities read from
+ * the database share one instance per distinct value. Applied explicitly with
+ * {@code @Convert}, the column value is unchanged.
+ * 
+ * @author philsmart
+ *
+ */
+@Converter
+public class CanonicalStringConverter implements AttributeConverter<String, String> {
+
+	public String convertToDatabaseColumn(final String attribute) {
+		return attribute;
+	}
+
+	public String convertToEntityAttribute(final String dbData) {
+		return StringPool.SHARED.canonicalise(dbData);
+	}
+
+}
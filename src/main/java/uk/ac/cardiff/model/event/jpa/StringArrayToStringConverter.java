@@ -1,35 +1,67 @@
 package uk.ac.cardiff.model.event.jpa;
 
-import java.util.Arrays;
 import java.util.List;
-import java.util.stream.Collectors;
 
 import javax.persistence.AttributeConverter;
 import javax.persistence.Converter;
 
+import uk.ac.cardiff.utility.LruCache;
+import uk.ac.cardiff.utility.StringPool;
+
 /**
  * Convert any and all {@link List} of {@link String}s for any registered entity
  * to a single pipe ('|') Delimited string.
  * 
+ * <p>
+ * Columns hold few distinct values, so each is split once and the result kept
+ * in a shared {@link LruCache}, sized by the
+ * {@code uk.ac.cardiff.model.event.jpa.StringArrayToStringConverter.cacheSize}
+ * system property. Every entity gets its own copy of the cached array.
+ * </p>
+ * 
  * @author philsmart
  *
  */
 @Converter(autoApply = true)
 public class StringArrayToStringConverter implements AttributeConverter<String[], String> {
 
+	private static final LruCache<String, String[]> CACHE = new LruCache<String, String[]>(
+			Integer.getInteger("uk.ac.cardiff.model.event.jpa.StringArrayToStringConverter.cacheSize", 4096));
+
 	public String convertToDatabaseColumn(final String[] attribute) {
 		if (attribute == null || attribute.length == 0) {
 			return null;
 		}
-		return Arrays.asList(attribute).stream().collect(Collectors.joining("|"));
+		int length = attribute.length - 1;
+		for (final String value : attribute) {
+			length += value == null ? 4 : value.length();
+		}
+		final StringBuilder builder = new StringBuilder(length);
+		for (int i = 0; i < attribute.length; i++) {
+			if (i > 0) {
+				builder.append('|');
+			}
+			builder.append(attribute[i]);
+		}
+		return builder.toString();
 	}
 
 	public String[] convertToEntityAttribute(final String dbData) {
 		if (dbData == null) {
 			return null;
 		}
-		final String[] split = dbData.split("\\|");
-		return split;
+		return CACHE.get(dbData, StringArrayToStringConverter::split).clone();
+	}
+
+	private static String[] split(final String dbData) {
+		return StringPool.SHARED.canonicaliseAll(dbData.split("\\|"));
+	}
+
+	/**
+	 * @return the cache of split column values, for its statistics
+	 */
+	public static LruCache<?, ?> getCache() {
+		return CACHE;
 	}
 
 }
@@ -1,35 +1,71 @@
 package uk.ac.cardiff.model.event.jpa;
 
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
-import java.util.stream.Collectors;
 
 import javax.persistence.AttributeConverter;
 import javax.persistence.Converter;
 
+import uk.ac.cardiff.utility.LruCache;
+import uk.ac.cardiff.utility.StringPool;
+
 /**
  * Convert any and all {@link List} of {@link String}s of any registered entity
  * to a single pipe ('|') Delimited string.
  * 
+ * <p>
+ * Columns hold few distinct values, so each is split once and the resulting
+ * unmodifiable list shared through an {@link LruCache}, sized by the
+ * {@code uk.ac.cardiff.model.event.jpa.StringListToStringConverter.cacheSize}
+ * system property. Entities that need to change a loaded list must replace it.
+ * </p>
+ * 
  * @author philsmart
  *
  */
 @Converter(autoApply = true)
 public class StringListToStringConverter implements AttributeConverter<List<String>, String> {
 
+	private static final LruCache<String, List<String>> CACHE = new LruCache<String, List<String>>(
+			Integer.getInteger("uk.ac.cardiff.model.event.jpa.StringListToStringConverter.cacheSize", 4096));
+
 	public String convertToDatabaseColumn(final List<String> attribute) {
 		if (attribute == null || attribute.isEmpty()) {
 			return null;
 		}
-		return attribute.stream().collect(Collectors.joining("|"));
+		int length = attribute.size() - 1;
+		for (final String value : attribute) {
+			length += value == null ? 4 : value.length();
+		}
+		final StringBuilder builder = new StringBuilder(length);
+		boolean first = true;
+		for (final String value : attribute) {
+			if (!first) {
+				builder.append('|');
+			}
+			builder.append(value);
+			first = false;
+		}
+		return builder.toString();
 	}
 
 	public List<String> convertToEntityAttribute(final String dbData) {
 		if (dbData == null) {
 			return null;
 		}
-		final String[] split = dbData.split("\\|");
-		return Arrays.asList(split);
+		return CACHE.get(dbData, StringListToStringConverter::split);
+	}
+
+	private static List<String> split(final String dbData) {
+		return Collections.unmodifiableList(Arrays.asList(StringPool.SHARED.canonicaliseAll(dbData.split("\\|"))));
+	}
+
+	/**
+	 * @return the cache of split column values, for its statistics
+	 */
+	public static LruCache<?, ?> getCache() {
+		return CACHE;
 	}
 
 }
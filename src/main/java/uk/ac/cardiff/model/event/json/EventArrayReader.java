@@ -0,0 +1,124 @@
+/**
+ * Copyright (C) 2010 Cardiff University, Wales <smartp@cf.ac.uk>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.ac.cardiff.model.event.json;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonMappingException;
+
+import uk.ac.cardiff.model.event.AuthenticationEvent;
+
+/**
+ * <p>
+ * Reads a JSON array of events of one type back from an {@link InputStream}
+ * an element at a time. Only the event being returned and the parser's fixed
+ * size buffers are held, so memory use is bounded by the largest single event
+ * rather than by the size of the array.
+ * </p>
+ * 
+ * <p>
+ * As an {@link Iterator} cannot throw checked exceptions, I/O and parse
+ * failures while iterating surface as {@link UncheckedIOException}. Not thread
+ * safe.
+ * </p>
+ * 
+ * @author philsmart
+ * @param <T>
+ *            the type of event in the array
+ */
+public class EventArrayReader<T extends AuthenticationEvent> implements Iterator<T>, Closeable {
+
+	private static final JsonFactory FACTORY = new JsonFactory();
+
+	private final JsonParser parser;
+
+	private final Class<T> type;
+
+	/** True if the parser is on the start of the next element. */
+	private boolean advanced;
+
+	/** True once the end of the array has been read. */
+	private boolean finished;
+
+	public EventArrayReader(final InputStream in, final Class<T> type) throws IOException {
+		this(FACTORY.createParser(in), type);
+	}
+
+	/**
+	 * Read from an already configured parser, which is closed with this reader.
+	 * 
+	 * @param parser
+	 *            a parser positioned before the start of the array
+	 * @param type
+	 *            the type of event to read
+	 * @throws IOException
+	 *             if the input does not start with an array
+	 */
+	public EventArrayReader(final JsonParser parser, final Class<T> type) throws IOException {
+		this.parser = parser;
+		this.type = type;
+		final JsonToken token = parser.nextToken();
+		if (token != JsonToken.START_ARRAY) {
+			throw JsonMappingException.from(parser, "Expected start of an event array but found " + token);
+		}
+	}
+
+	@Override
+	public boolean hasNext() {
+		if (finished) {
+			return false;
+		}
+		if (!advanced) {
+			try {
+				if (parser.nextToken() == JsonToken.END_ARRAY || parser.getCurrentToken() == null) {
+					finished = true;
+					return false;
+				}
+			} catch (final IOException e) {
+				throw new UncheckedIOException(e);
+			}
+			advanced = true;
+		}
+		return true;
+	}
+
+	@Override
+	public T next() {
+		if (!hasNext()) {
+			throw new NoSuchElementException();
+		}
+		advanced = false;
+		try {
+			return EventJson.read(parser, type);
+		} catch (final IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		parser.close();
+	}
+
+}
@@ -0,0 +1,121 @@
+/**
+ * Copyright (C) 2010 Cardiff University, Wales <smartp@cf.ac.uk>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.ac.cardiff.model.event.json;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+
+import uk.ac.cardiff.model.event.AuthenticationEvent;
+
+/**
+ * <p>
+ * Writes events as one JSON array to an {@link OutputStream}, an element at a
+ * time, so an export of any size never has to exist in memory as a list or a
+ * string. The opening bracket is written on construction and the closing one
+ * on {@link #close()}, which also closes the stream.
+ * </p>
+ * 
+ * <p>
+ * Not thread safe.
+ * </p>
+ * 
+ * @author philsmart
+ */
+public class EventArrayWriter implements Closeable, Flushable {
+
+	private static final JsonFactory FACTORY = new JsonFactory();
+
+	private final JsonGenerator gen;
+
+	/** The number of events written so far. */
+	private long count;
+
+	public EventArrayWriter(final OutputStream out) throws IOException {
+		this(FACTORY.createGenerator(out, JsonEncoding.UTF8));
+	}
+
+	/**
+	 * Write to an already configured generator, for example one with a pretty
+	 * printer. The generator is closed with this writer.
+	 * 
+	 * @param gen
+	 *            the generator to write to
+	 * @throws IOException
+	 *             if the start of the array can not be written
+	 */
+	public EventArrayWriter(final JsonGenerator gen) throws IOException {
+		this.gen = gen;
+		gen.writeStartArray();
+	}
+
+	/**
+	 * Append one event to the array.
+	 * 
+	 * @param event
+	 *            the event to write
+	 * @throws IOException
+	 *             if the underlying stream fails
+	 */
+	public void write(final AuthenticationEvent event) throws IOException {
+		if (event == null) {
+			gen.writeNull();
+		} else {
+			EventJson.write(event, gen);
+		}
+		count++;
+	}
+
+	/**
+	 * Append all the events to the array.
+	 * 
+	 * @param events
+	 *            the events to write
+	 * @throws IOException
+	 *             if the underlying stream fails
+	 */
+	public void writeAll(final Iterable<? extends AuthenticationEvent> events) throws IOException {
+		for (final AuthenticationEvent event : events) {
+			write(event);
+		}
+	}
+
+	/**
+	 * @return the number of events written so far
+	 */
+	public long getCount() {
+		return count;
+	}
+
+	@Override
+	public void flush() throws IOException {
+		gen.flush();
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (!gen.isClosed()) {
+			gen.writeEndArray();
+			gen.close();
+		}
+	}
+
+}
@@ -0,0 +1,382 @@
+/**
+ * Copyright (C) 2010 Cardiff University, Wales <smartp@cf.ac.uk>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.ac.cardiff.model.event.json;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.joda.time.DateTime;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.fasterxml.jackson.databind.JsonMappingException;
+
+import uk.ac.cardiff.model.event.AuthenticationEvent;
+import uk.ac.cardiff.model.event.Event;
+import uk.ac.cardiff.model.event.EzproxyAuthenticationEvent;
+import uk.ac.cardiff.model.event.ShibbolethIdpAuthenticationEvent;
+import uk.ac.cardiff.model.event.auxiliary.AttributeSet;
+import uk.ac.cardiff.model.event.auxiliary.EventMetadata;
+import uk.ac.cardiff.model.event.auxiliary.PrincipalInformation;
+
+/**
+ * <p>
+ * Hand written JSON reading and writing of
+ * {@link ShibbolethIdpAuthenticationEvent}s and
+ * {@link EzproxyAuthenticationEvent}s straight against the Jackson streaming
+ * API, with no bean introspection or annotations involved.
+ * </p>
+ * 
+ * <p>
+ * The output has the same field names, in the same order, as the bean
+ * serialisation of an {@code ObjectMapper} with the Joda module registered, so
+ * either side of an exchange can be switched independently. The event time is
+ * written as epoch milliseconds and read from either epoch milliseconds or an
+ * ISO-8601 string. The derived {@code hashCode} field is written for
+ * compatibility and ignored on read, as are any other unknown fields.
+ * </p>
+ * 
+ * @author philsmart
+ */
+public final class EventJson {
+
+	/* Field names, pre-encoded once rather than on every write. */
+	private static final SerializedString EVENT_ID = new SerializedString("eventId");
+	private static final SerializedString SERVICE_ID = new SerializedString("serviceId");
+	private static final SerializedString EVENT_TYPE = new SerializedString("eventType");
+	private static final SerializedString SERVICE_HOST = new SerializedString("serviceHost");
+	private static final SerializedString RESOURCE_HOST = new SerializedString("resourceHost");
+	private static final SerializedString RESOURCE_ID = new SerializedString("resourceId");
+	private static final SerializedString RESOURCE_ID_CATEGORY = new SerializedString("resourceIdCategory");
+	private static final SerializedString EVENT_METADATA = new SerializedString("eventMetadata");
+	private static final SerializedString AUTHENTICATION_TYPE = new SerializedString("authenticationType");
+	private static final SerializedString PRINCIPAL_NAME = new SerializedString("principalName");
+	private static final SerializedString PRINCIPAL_INFORMATION = new SerializedString("principalInformation");
+	private static final SerializedString RESPONSE_BINDING = new SerializedString("responseBinding");
+	private static final SerializedString REQUEST_BINDING = new SerializedString("requestBinding");
+	private static final SerializedString ATTRIBUTES = new SerializedString("attributes");
+	private static final SerializedString HASH_CODE = new SerializedString("hashCode");
+	private static final SerializedString REQUESTER_IP = new SerializedString("requesterIp");
+	private static final SerializedString EVENT_TIME = new SerializedString("eventTime");
+	private static final SerializedString RAPTOR_ENTITY_ID = new SerializedString("raptorEntityId");
+	private static final SerializedString SERVICE_NAME = new SerializedString("serviceName");
+	private static final SerializedString ORGANISATION_NAME = new SerializedString("organisationName");
+	private static final SerializedString SCHOOL = new SerializedString("school");
+	private static final SerializedString AFFILIATION = new SerializedString("affiliation");
+
+	private EventJson() {
+	}
+
+	/**
+	 * Write the event as a single JSON object.
+	 * 
+	 * @param event
+	 *            the event to write, not null
+	 * @param gen
+	 *            the generator to write to
+	 * @throws IOException
+	 *             if the generator fails
+	 * @throws IllegalArgumentException
+	 *             if the event type has no JSON form
+	 */
+	public static void write(final AuthenticationEvent event, final JsonGenerator gen) throws IOException {
+		final ShibbolethIdpAuthenticationEvent shibboleth;
+		final EzproxyAuthenticationEvent ezproxy;
+		if (event.getClass() == ShibbolethIdpAuthenticationEvent.class) {
+			shibboleth = (ShibbolethIdpAuthenticationEvent) event;
+			ezproxy = null;
+		} else if (event.getClass() == EzproxyAuthenticationEvent.class) {
+			shibboleth = null;
+			ezproxy = (EzproxyAuthenticationEvent) event;
+		} else {
+			throw new IllegalArgumentException("Can not write event of type " + event.getClass().getName());
+		}
+
+		gen.writeStartObject();
+		gen.writeFieldName(EVENT_ID);
+		gen.writeNumber(event.getEventId());
+		gen.writeFieldName(SERVICE_ID);
+		gen.writeString(event.getServiceId());
+		gen.writeFieldName(EVENT_TYPE);
+		gen.writeString(event.getEventType());
+		gen.writeFieldName(SERVICE_HOST);
+		gen.writeString(event.getServiceHost());
+		gen.writeFieldName(RESOURCE_HOST);
+		gen.writeString(event.getResourceHost());
+		gen.writeFieldName(RESOURCE_ID);
+		gen.writeString(event.getResourceId());
+		gen.writeFieldName(RESOURCE_ID_CATEGORY);
+		gen.writeNumber(event.getResourceIdCategory());
+		gen.writeFieldName(EVENT_METADATA);
+		writeEventMetadata(event.getEventMetadata(), gen);
+		gen.writeFieldName(AUTHENTICATION_TYPE);
+		gen.writeString(event.getAuthenticationType());
+		gen.writeFieldName(PRINCIPAL_NAME);
+		gen.writeString(event.getPrincipalName());
+		gen.writeFieldName(PRINCIPAL_INFORMATION);
+		writePrincipalInformation(event.getPrincipalInformation(), gen);
+		if (shibboleth != null) {
+			gen.writeFieldName(RESPONSE_BINDING);
+			gen.writeString(shibboleth.getResponseBinding());
+			gen.writeFieldName(REQUEST_BINDING);
+			gen.writeString(shibboleth.getRequestBinding());
+			gen.writeFieldName(ATTRIBUTES);
+			writeAttributes(shibboleth.getAttributeSet(), gen);
+			gen.writeFieldName(HASH_CODE);
+			gen.writeNumber(shibboleth.getHashCode());
+		} else {
+			gen.writeFieldName(REQUESTER_IP);
+			gen.writeString(ezproxy.getRequesterIp());
+			gen.writeFieldName(HASH_CODE);
+			gen.writeNumber(ezproxy.getHashCode());
+		}
+		gen.writeFieldName(EVENT_TIME);
+		if (event.getEventTimeMillis() == Event.NO_EVENT_TIME) {
+			gen.writeNull();
+		} else {
+			gen.writeNumber(event.getEventTimeMillis());
+		}
+		gen.writeEndObject();
+	}
+
+	/**
+	 * Read a single event object of the given type. The parser is either
+	 * positioned on the {@link JsonToken#START_OBJECT} of the event, or just
+	 * before it, and is left on the matching {@link JsonToken#END_OBJECT}.
+	 * 
+	 * @param parser
+	 *            the parser to read from
+	 * @param type
+	 *            {@link ShibbolethIdpAuthenticationEvent} or
+	 *            {@link EzproxyAuthenticationEvent}
+	 * @return the event read, or null if the value was a JSON null
+	 * @throws IOException
+	 *             if the parser fails or the input is not an event object
+	 */
+	public static <T extends AuthenticationEvent> T read(final JsonParser parser, final Class<T> type)
+			throws IOException {
+		JsonToken token = parser.getCurrentToken();
+		if (token == null || token == JsonToken.FIELD_NAME) {
+			token = parser.nextToken();
+		}
+		if (token == JsonToken.VALUE_NULL) {
+			return null;
+		}
+		if (token != JsonToken.START_OBJECT) {
+			throw JsonMappingException.from(parser,
+					"Expected start of " + type.getSimpleName() + " object but found " + token);
+		}
+
+		final AuthenticationEvent event;
+		final ShibbolethIdpAuthenticationEvent shibboleth;
+		final EzproxyAuthenticationEvent ezproxy;
+		if (type == ShibbolethIdpAuthenticationEvent.class) {
+			shibboleth = new ShibbolethIdpAuthenticationEvent();
+			ezproxy = null;
+			event = shibboleth;
+		} else if (type == EzproxyAuthenticationEvent.class) {
+			shibboleth = null;
+			ezproxy = new EzproxyAuthenticationEvent();
+			event = ezproxy;
+		} else {
+			throw new IllegalArgumentException("Can not read event of type " + type.getName());
+		}
+
+		while (parser.nextToken() == JsonToken.FIELD_NAME) {
+			final String field = parser.getCurrentName();
+			token = parser.nextToken();
+			switch (field) {
+			case "eventId":
+				event.setEventId(token == JsonToken.VALUE_NULL ? 0 : parser.getIntValue());
+				break;
+			case "serviceId":
+				event.setServiceId(parser.getValueAsString());
+				break;
+			case "eventType":
+				event.setEventType(parser.getValueAsString());
+				break;
+			case "serviceHost":
+				event.setServiceHost(parser.getValueAsString());
+				break;
+			case "resourceHost":
+				event.setResourceHost(parser.getValueAsString());
+				break;
+			case "resourceId":
+				event.setResourceId(parser.getValueAsString());
+				break;
+			case "resourceIdCategory":
+				event.setResourceIdCategory(token == JsonToken.VALUE_NULL ? 0 : parser.getIntValue());
+				break;
+			case "eventMetadata":
+				event.setEventMetadata(readEventMetadata(parser));
+				break;
+			case "authenticationType":
+				event.setAuthenticationType(parser.getValueAsString());
+				break;
+			case "principalName":
+				event.setPrincipalName(parser.getValueAsString());
+				break;
+			case "principalInformation":
+				event.setPrincipalInformation(readPrincipalInformation(parser));
+				break;
+			case "eventTime":
+				readEventTime(parser, event);
+				break;
+			default:
+				if (shibboleth != null && "responseBinding".equals(field)) {
+					shibboleth.setResponseBinding(parser.getValueAsString());
+				} else if (shibboleth != null && "requestBinding".equals(field)) {
+					shibboleth.setRequestBinding(parser.getValueAsString());
+				} else if (shibboleth != null && "attributes".equals(field)) {
+					shibboleth.setAttributes(readStrings(parser));
+				} else if (ezproxy != null && "requesterIp".equals(field)) {
+					ezproxy.setRequesterIp(parser.getValueAsString());
+				} else {
+					parser.skipChildren();
+				}
+				break;
+			}
+		}
+		return type.cast(event);
+	}
+
+	private static void readEventTime(final JsonParser parser, final Event event) throws IOException {
+		final JsonToken token = parser.getCurrentToken();
+		if (token == JsonToken.VALUE_NULL) {
+			event.setEventTimeMillis(Event.NO_EVENT_TIME);
+		} else if (token == JsonToken.VALUE_NUMBER_INT) {
+			event.setEventTimeMillis(parser.getLongValue());
+		} else if (token == JsonToken.VALUE_STRING) {
+			try {
+				event.setEventTimeMillis(DateTime.parse(parser.getText()).getMillis());
+			} catch (final IllegalArgumentException e) {
+				throw JsonMappingException.from(parser, "Unparseable eventTime " + parser.getText(), e);
+			}
+		} else {
+			throw JsonMappingException.from(parser, "Unexpected " + token + " for eventTime");
+		}
+	}
+
+	private static void writeEventMetadata(final EventMetadata metadata, final JsonGenerator gen) throws IOException {
+		if (metadata == null) {
+			gen.writeNull();
+			return;
+		}
+		gen.writeStartObject();
+		gen.writeFieldName(RAPTOR_ENTITY_ID);
+		gen.writeString(metadata.getRaptorEntityId());
+		gen.writeFieldName(SERVICE_NAME);
+		gen.writeString(metadata.getServiceName());
+		gen.writeFieldName(ORGANISATION_NAME);
+		gen.writeString(metadata.getOrganisationName());
+		gen.writeEndObject();
+	}
+
+	private static EventMetadata readEventMetadata(final JsonParser parser) throws IOException {
+		if (parser.getCurrentToken() == JsonToken.VALUE_NULL) {
+			return null;
+		}
+		expect(parser, JsonToken.START_OBJECT, "eventMetadata");
+		final EventMetadata metadata = new EventMetadata();
+		while (parser.nextToken() == JsonToken.FIELD_NAME) {
+			final String field = parser.getCurrentName();
+			parser.nextToken();
+			if ("raptorEntityId".equals(field)) {
+				metadata.setRaptorEntityId(parser.getValueAsString());
+			} else if ("serviceName".equals(field)) {
+				metadata.setServiceName(parser.getValueAsString());
+			} else if ("organisationName".equals(field)) {
+				metadata.setOrganisationName(parser.getValueAsString());
+			} else {
+				parser.skipChildren();
+			}
+		}
+		return metadata;
+	}
+
+	private static void writePrincipalInformation(final PrincipalInformation information, final JsonGenerator gen)
+			throws IOException {
+		if (information == null) {
+			gen.writeNull();
+			return;
+		}
+		gen.writeStartObject();
+		gen.writeFieldName(SCHOOL);
+		gen.writeString(information.getSchool());
+		gen.writeFieldName(AFFILIATION);
+		gen.writeString(information.getAffiliation());
+		gen.writeEndObject();
+	}
+
+	private static PrincipalInformation readPrincipalInformation(final JsonParser parser) throws IOException {
+		if (parser.getCurrentToken() == JsonToken.VALUE_NULL) {
+			return null;
+		}
+		expect(parser, JsonToken.START_OBJECT, "principalInformation");
+		final PrincipalInformation information = new PrincipalInformation();
+		while (parser.nextToken() == JsonToken.FIELD_NAME) {
+			final String field = parser.getCurrentName();
+			parser.nextToken();
+			if ("school".equals(field)) {
+				information.setSchool(parser.getValueAsString());
+			} else if ("affiliation".equals(field)) {
+				information.setAffiliation(parser.getValueAsString());
+			} else {
+				parser.skipChildren();
+			}
+		}
+		return information;
+	}
+
+	private static void writeAttributes(final AttributeSet attributes, final JsonGenerator gen) throws IOException {
+		if (attributes == null) {
+			gen.writeNull();
+			return;
+		}
+		gen.writeStartArray(attributes.size());
+		for (final String attribute : attributes) {
+			gen.writeString(attribute);
+		}
+		gen.writeEndArray();
+	}
+
+	private static String[] readStrings(final JsonParser parser) throws IOException {
+		if (parser.getCurrentToken() == JsonToken.VALUE_NULL) {
+			return null;
+		}
+		expect(parser, JsonToken.START_ARRAY, "attributes");
+		String[] values = new String[16];
+		int size = 0;
+		while (parser.nextToken() != JsonToken.END_ARRAY) {
+			if (size == values.length) {
+				values = Arrays.copyOf(values, size << 1);
+			}
+			values[size++] = parser.getValueAsString();
+		}
+		return size == values.length ? values : Arrays.copyOf(values, size);
+	}
+
+	private static void expect(final JsonParser parser, final JsonToken expected, final String field)
+			throws IOException {
+		if (parser.getCurrentToken() != expected) {
+			throw JsonMappingException.from(parser,
+					"Expected " + expected + " for " + field + " but found " + parser.getCurrentToken());
+		}
+	}
+
+}
@@ -0,0 +1,91 @@
+/**
+ * Copyright (C) 2010 Cardiff University, Wales <smartp@cf.ac.uk>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.ac.cardiff.model.event.json;
+
+import java.io.IOException;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.Version;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.deser.std.StdDeserializer;
+import com.fasterxml.jackson.databind.module.SimpleModule;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+
+import uk.ac.cardiff.model.event.AuthenticationEvent;
+import uk.ac.cardiff.model.event.EzproxyAuthenticationEvent;
+import uk.ac.cardiff.model.event.ShibbolethIdpAuthenticationEvent;
+
+/**
+ * <p>
+ * Jackson module that binds {@link ShibbolethIdpAuthenticationEvent} and
+ * {@link EzproxyAuthenticationEvent} to the streaming {@link EventJson}
+ * reader and writer, in place of reflective bean (de)serialisation. Register
+ * with {@code mapper.registerModule(new EventJsonModule())}; the Joda module
+ * is no longer needed for these types.
+ * </p>
+ * 
+ * @author philsmart
+ */
+public class EventJsonModule extends SimpleModule {
+
+	/** Generated SerialVersionUID. */
+	private static final long serialVersionUID = -3385519457617011254L;
+
+	public EventJsonModule() {
+		super("EventJsonModule", Version.unknownVersion());
+		register(ShibbolethIdpAuthenticationEvent.class);
+		register(EzproxyAuthenticationEvent.class);
+	}
+
+	private <T extends AuthenticationEvent> void register(final Class<T> type) {
+		addSerializer(type, new EventSerializer<T>(type));
+		addDeserializer(type, new EventDeserializer<T>(type));
+	}
+
+	private static final class EventSerializer<T extends AuthenticationEvent> extends StdSerializer<T> {
+
+		private static final long serialVersionUID = 2950154683040452807L;
+
+		EventSerializer(final Class<T> type) {
+			super(type);
+		}
+
+		@Override
+		public void serialize(final T value, final JsonGenerator gen, final SerializerProvider provider) throws IOException {
+			EventJson.write(value, gen);
+		}
+	}
+
+	private static final class EventDeserializer<T extends AuthenticationEvent> extends StdDeserializer<T> {
+
+		private static final long serialVersionUID = -6059021584611806129L;
+
+		private final Class<T> type;
+
+		EventDeserializer(final Class<T> type) {
+			super(type);
+			this.type = type;
+		}
+
+		@Override
+		public T deserialize(final JsonParser parser, final DeserializationContext context) throws IOException {
+			return EventJson.read(parser, type);
+		}
+	}
+
+}
@@ -0,0 +1,510 @@
+/**
+ * Copyright (C) 2010 Cardiff University, Wales <smartp@cf.ac.uk>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.ac.cardiff.model.event.log;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.CRC32;
+
+import uk.ac.cardiff.model.event.Event;
+import uk.ac.cardiff.model.event.codec.EventCodec;
+
+/**
+ * <p>
+ * A durable, append only log of {@link Event}s in a directory of segment files,
+ * see {@link EventLogFormat}. Each append writes one record, the
+ * {@link EventCodec} encoding of its events with a CRC, and returns its offset,
+ * which counts records from zero across segments. A new segment is started
+ * when the current one would exceed the segment size, or has been written to
+ * for longer than the segment time.
+ * </p>
+ * 
+ * <p>
+ * An append returns once its record is on disk. Concurrent appends share
+ * fsyncs by group commit: one appender forces the file for every record
+ * written so far while the others wait, so under load the cost of an fsync is
+ * spread over many records. A single threaded collector gets the same effect
+ * by appending events in batches.
+ * </p>
+ * 
+ * <p>
+ * Opening a log recovers it after a crash, by truncating the newest segment
+ * after its last complete record with a matching CRC. A segment is forced
+ * before the next one is created, so only the newest segment can have lost
+ * records, and the offsets on disk never have a gap. Records are read with an
+ * {@link EventLogReader}, from this or another process.
+ * </p>
+ * 
+ * <p>
+ * Thread safe. Only one {@link EventLog} may be open on a directory at a time.
+ * </p>
+ * 
+ * @author philsmart
+ */
+public final class EventLog implements Closeable {
+
+	/** The default maximum size of a segment in bytes, 64 MiB. */
+	public static final long DEFAULT_SEGMENT_BYTES = 64L * 1024 * 1024;
+
+	/** The default maximum time a segment is written to, one hour. */
+	public static final long DEFAULT_SEGMENT_MILLIS = 60L * 60 * 1000;
+
+	private final Path directory;
+
+	private final long segmentBytes;
+
+	private final long segmentMillis;
+
+	private final EventCodec codec = new EventCodec();
+
+	private final CRC32 crc = new CRC32();
+
+	/** Holds the record being written. */
+	private ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+
+	/** The segment being written. */
+	private FileChannel channel;
+
+	/**
+	 * Segments rolled, forced already but closed by the next sync, which may
+	 * still be forcing one.
+	 */
+	private List<FileChannel> rolled = new ArrayList<FileChannel>();
+
+	private long segmentBase;
+
+	private long segmentPosition;
+
+	private long segmentStarted;
+
+	private long nextOffset;
+
+	private boolean closed;
+
+	/**
+	 * Set if a write or fsync failed, after which the log refuses appends and
+	 * close does not force it.
+	 */
+	private volatile IOException failure;
+
+	/** Guards {@link #durableOffset} and {@link #syncing}. */
+	private final Object commitLock = new Object();
+
+	/** Records before this offset are on disk. */
+	private long durableOffset;
+
+	/** True while an appender is forcing the segments for the group. */
+	private boolean syncing;
+
+	/** True once the segment files are closed, so can no longer be forced. */
+	private boolean released;
+
+	/**
+	 * Opens or creates a log with the default segment size and time.
+	 * 
+	 * @param directory
+	 *            the directory of the log, created if need be
+	 * @throws IOException
+	 *             if the log can not be opened or recovered
+	 */
+	public EventLog(final Path directory) throws IOException {
+		this(directory, DEFAULT_SEGMENT_BYTES, DEFAULT_SEGMENT_MILLIS);
+	}
+
+	/**
+	 * Opens or creates a log.
+	 * 
+	 * @param directory
+	 *            the directory of the log, created if need be
+	 * @param segmentBytes
+	 *            the size in bytes beyond which a new segment is started, at most
+	 *            {@link Integer#MAX_VALUE} so segments can be memory mapped. A
+	 *            record larger than this has a segment of its own
+	 * @param segmentMillis
+	 *            the time after which a new segment is started on the next
+	 *            append
+	 * @throws IOException
+	 *             if the log can not be opened or recovered
+	 */
+	public EventLog(final Path directory, final long segmentBytes, final long segmentMillis) throws IOException {
+		if (segmentBytes <= EventLogFormat.HEADER_BYTES || segmentBytes > Integer.MAX_VALUE) {
+			throw new IllegalArgumentException("Segment size of " + segmentBytes + " bytes");
+		}
+		if (segmentMillis <= 0) {
+			throw new IllegalArgumentException("Segment time of " + segmentMillis + " milliseconds");
+		}
+		this.directory = directory;
+		this.segmentBytes = segmentBytes;
+		this.segmentMillis = segmentMillis;
+		Files.createDirectories(directory);
+		final long[] segments = EventLogFormat.segments(directory);
+		if (segments.length == 0) {
+			startSegment(0);
+		} else {
+			recover(segments[segments.length - 1]);
+		}
+		durableOffset = nextOffset;
+	}
+
+	/**
+	 * Opens the newest segment for writing, after its last valid record.
+	 */
+	private void recover(final long base) throws IOException {
+		final Path path = EventLogFormat.segment(directory, base);
+		channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+		try {
+			final long size = channel.size();
+			long offset = base;
+			int position = EventLogFormat.HEADER_BYTES;
+			if (size < EventLogFormat.HEADER_BYTES) {
+				// torn while creating the segment
+				channel.truncate(0);
+				writeHeader(base);
+			} else {
+				final ByteBuffer segment = channel.map(MapMode.READ_ONLY, 0, Math.min(size, Integer.MAX_VALUE));
+				EventLogFormat.checkHeader(segment, base, path);
+				int length;
+				while ((length = EventLogFormat.recordLength(segment, position, crc)) >= 0) {
+					position += EventLogFormat.RECORD_HEADER_BYTES + length;
+					offset++;
+				}
+				if (position < size) {
+					channel.truncate(position);
+				}
+			}
+			channel.force(true);
+			channel.position(position);
+			segmentBase = base;
+			segmentPosition = position;
+			segmentStarted = System.currentTimeMillis();
+			nextOffset = offset;
+		} catch (final IOException | RuntimeException e) {
+			channel.close();
+			throw e;
+		}
+	}
+
+	private void startSegment(final long base) throws IOException {
+		channel = FileChannel.open(EventLogFormat.segment(directory, base), StandardOpenOption.CREATE_NEW,
+				StandardOpenOption.READ, StandardOpenOption.WRITE);
+		syncDirectory();
+		writeHeader(base);
+		segmentBase = base;
+		segmentPosition = EventLogFormat.HEADER_BYTES;
+		segmentStarted = System.currentTimeMillis();
+		nextOffset = base;
+	}
+
+	/**
+	 * Forces the directory to disk, so a new segment is not lost with it after its
+	 * records were forced. Skipped where a directory can not be opened, as on
+	 * Windows, which has no such need.
+	 */
+	private void syncDirectory() throws IOException {
+		final FileChannel entries;
+		try {
+			entries = FileChannel.open(directory, StandardOpenOption.READ);
+		} catch (final IOException e) {
+			return;
+		}
+		try {
+			entries.force(true);
+		} finally {
+			entries.close();
+		}
+	}
+
+	private void writeHeader(final long base) throws IOException {
+		final ByteBuffer header = ByteBuffer.allocate(EventLogFormat.HEADER_BYTES);
+		header.putInt(EventLogFormat.MAGIC).put(EventLogFormat.VERSION).putLong(base).flip();
+		write(header);
+	}
+
+	/**
+	 * Appends one event as a record.
+	 * 
+	 * @param event
+	 *            the event
+	 * @return the offset of the record
+	 * @throws IOException
+	 *             if the record can not be written and forced to disk
+	 * @see #append(List)
+	 */
+	public long append(final Event event) throws IOException {
+		return append(Collections.singletonList(event));
+	}
+
+	/**
+	 * Appends events as one record, and waits until it is on disk.
+	 * 
+	 * @param events
+	 *            the events, ideally in time order
+	 * @return the offset of the record
+	 * @throws IOException
+	 *             if the record can not be written and forced to disk. If it was
+	 *             written, the record may still be found on reopening the log
+	 * @throws IllegalArgumentException
+	 *             if {@code events} is empty, or an event is not of a type
+	 *             {@link EventCodec} supports
+	 */
+	public long append(final List<? extends Event> events) throws IOException {
+		if (events.isEmpty()) {
+			throw new IllegalArgumentException("No events to append");
+		}
+		final long offset;
+		synchronized (this) {
+			checkOpen();
+			offset = writeRecord(events);
+		}
+		commit(offset + 1);
+		return offset;
+	}
+
+	private long writeRecord(final List<? extends Event> events) throws IOException {
+		while (true) {
+			buffer.clear().position(EventLogFormat.RECORD_HEADER_BYTES);
+			try {
+				codec.encode(events, buffer);
+				break;
+			} catch (final BufferOverflowException e) {
+				buffer = ByteBuffer.allocate(buffer.capacity() * 2);
+			}
+		}
+		buffer.flip();
+		final int length = buffer.limit() - EventLogFormat.RECORD_HEADER_BYTES;
+		final ByteBuffer payload = buffer.duplicate();
+		payload.position(EventLogFormat.RECORD_HEADER_BYTES);
+		crc.reset();
+		crc.update(payload);
+		buffer.putInt(0, length).putInt(4, (int) crc.getValue());
+		try {
+			if (segmentPosition > EventLogFormat.HEADER_BYTES && (segmentPosition + buffer.limit() > segmentBytes
+					|| System.currentTimeMillis() - segmentStarted >= segmentMillis)) {
+				// the tail of this segment must be on disk before the next exists
+				channel.force(false);
+				rolled.add(channel);
+				startSegment(nextOffset);
+			}
+			write(buffer);
+		} catch (final IOException e) {
+			failure = e;
+			throw e;
+		}
+		segmentPosition += buffer.limit();
+		return nextOffset++;
+	}
+
+	private void write(final ByteBuffer source) throws IOException {
+		while (source.hasRemaining()) {
+			channel.write(source);
+		}
+	}
+
+	/**
+	 * Waits until the records before {@code offset} are on disk, forcing the
+	 * segments if no other appender is.
+	 */
+	private void commit(final long offset) throws IOException {
+		while (true) {
+			synchronized (commitLock) {
+				while (durableOffset < offset && syncing && !released) {
+					try {
+						commitLock.wait();
+					} catch (final InterruptedException e) {
+						Thread.currentThread().interrupt();
+						throw new InterruptedIOException("Interrupted waiting for offset " + offset);
+					}
+				}
+				if (durableOffset >= offset) {
+					return;
+				}
+				if (released) {
+					throw new IOException("Event log closed before offset " + offset + " was on disk");
+				}
+				if (failure != null) {
+					throw new IOException("Event log failed before offset " + offset + " was on disk", failure);
+				}
+				syncing = true;
+			}
+			long synced = -1;
+			try {
+				synced = sync();
+			} finally {
+				synchronized (commitLock) {
+					syncing = false;
+					if (synced > durableOffset) {
+						durableOffset = synced;
+					}
+					commitLock.notifyAll();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Forces every record written so far to disk, and closes the rolled segments
+	 * once each is forced. If an fsync fails the log fails, and the segments not
+	 * yet forced are kept for {@link #close()} to close.
+	 * 
+	 * @return the offset before which records are on disk
+	 */
+	private long sync() throws IOException {
+		final List<FileChannel> sealed;
+		final FileChannel current;
+		final long offset;
+		synchronized (this) {
+			sealed = rolled;
+			rolled = new ArrayList<FileChannel>();
+			current = channel;
+			offset = nextOffset;
+		}
+		try {
+			while (!sealed.isEmpty()) {
+				sealed.get(0).force(false);
+				sealed.remove(0).close();
+			}
+			current.force(false);
+		} catch (final IOException e) {
+			synchronized (this) {
+				sealed.addAll(rolled);
+				rolled = sealed;
+				if (failure == null) {
+					failure = e;
+				}
+			}
+			throw e;
+		}
+		return offset;
+	}
+
+	/**
+	 * @return the offset the next record appended will have
+	 */
+	public synchronized long getNextOffset() {
+		return nextOffset;
+	}
+
+	/**
+	 * @return the offset before which every record is on disk
+	 */
+	public long getDurableOffset() {
+		synchronized (commitLock) {
+			return durableOffset;
+		}
+	}
+
+	/**
+	 * Deletes the segments all of whose records are before {@code offset}, e.g.
+	 * once every reader has read and persisted them. The segment being written
+	 * is never deleted.
+	 * 
+	 * @param offset
+	 *            the offset of the earliest record to keep
+	 * @return the number of segments deleted
+	 * @throws IOException
+	 *             if a segment can not be deleted
+	 */
+	public int deleteBefore(final long offset) throws IOException {
+		final long limit = Math.min(offset, getDurableOffset());
+		final long[] segments;
+		synchronized (this) {
+			checkOpen();
+			segments = EventLogFormat.segments(directory);
+		}
+		int deleted = 0;
+		for (int i = 0; i + 1 < segments.length && segments[i + 1] <= limit; i++) {
+			Files.delete(EventLogFormat.segment(directory, segments[i]));
+			deleted++;
+		}
+		return deleted;
+	}
+
+	/**
+	 * Opens a reader of this log, which only reads records that are on disk, so
+	 * survive a crash.
+	 * 
+	 * @param offset
+	 *            the offset of the first record to read, at most the
+	 *            {@link #getDurableOffset() durable offset}
+	 * @return the reader, to be closed
+	 * @throws IOException
+	 *             if the log can not be read, or does not have {@code offset}
+	 *             on disk
+	 */
+	public EventLogReader reader(final long offset) throws IOException {
+		return EventLogReader.open(directory, offset, this::getDurableOffset);
+	}
+
+	/**
+	 * Waits for appended records to be on disk, and closes the segment files.
+	 */
+	@Override
+	public void close() throws IOException {
+		final long offset;
+		synchronized (this) {
+			if (closed) {
+				return;
+			}
+			closed = true;
+			offset = nextOffset;
+		}
+		try {
+			if (failure == null) {
+				commit(offset);
+			}
+		} finally {
+			synchronized (commitLock) {
+				while (syncing) {
+					try {
+						commitLock.wait();
+					} catch (final InterruptedException e) {
+						Thread.currentThread().interrupt();
+						break;
+					}
+				}
+				released = true;
+				commitLock.notifyAll();
+			}
+			synchronized (this) {
+				for (final FileChannel segment : rolled) {
+					segment.close();
+				}
+				channel.close();
+			}
+		}
+	}
+
+	private void checkOpen() throws IOException {
+		if (closed) {
+			throw new IllegalStateException("Event log is closed");
+		}
+		if (failure != null) {
+			throw new IOException("Event log failed, reopen to recover", failure);
+		}
+	}
+
+}
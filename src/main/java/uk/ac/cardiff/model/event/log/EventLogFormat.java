@@ -0,0 +1,133 @@
+/**
+ * Copyright (C) 2010 Cardiff University, Wales <smartp@cf.ac.uk>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.ac.cardiff.model.event.log;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+
+/**
+ * <p>
+ * Layout of the segment files of an {@link EventLog}. Each segment is named by
+ * the offset of its first record, zero padded so that names sort by offset,
+ * and records are numbered consecutively across segments.
+ * </p>
+ * 
+ * <pre>
+ * segment := magic:i32 version:u8 baseOffset:i64 record*
+ * record  := length:i32 crc:i32 payload{length}          crc is the CRC32 of the payload
+ * payload := an {@link uk.ac.cardiff.model.event.codec.EventCodec} batch
+ * </pre>
+ * 
+ * <p>
+ * Integers are big endian. A record that is incomplete, or whose CRC does not
+ * match, at the end of the newest segment is a write in progress or torn by a
+ * crash, anywhere else it is corruption.
+ * </p>
+ * 
+ * @author philsmart
+ */
+final class EventLogFormat {
+
+	/** 'RPTL', the first bytes of a segment. */
+	static final int MAGIC = 0x5250544C;
+
+	static final byte VERSION = 1;
+
+	static final int HEADER_BYTES = 13;
+
+	static final int RECORD_HEADER_BYTES = 8;
+
+	private static final String SUFFIX = ".log";
+
+	private EventLogFormat() {
+	}
+
+	/**
+	 * @return the path of the segment starting at {@code baseOffset}
+	 */
+	static Path segment(final Path directory, final long baseOffset) {
+		return directory.resolve(String.format("%020d%s", baseOffset, SUFFIX));
+	}
+
+	/**
+	 * @return the base offsets of the segments in {@code directory}, ascending
+	 */
+	static long[] segments(final Path directory) throws IOException {
+		long[] bases = new long[16];
+		int count = 0;
+		try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*" + SUFFIX)) {
+			for (final Path path : stream) {
+				final String name = path.getFileName().toString();
+				final String digits = name.substring(0, name.length() - SUFFIX.length());
+				if (digits.length() == 20 && digits.chars().allMatch(Character::isDigit)) {
+					if (count == bases.length) {
+						bases = Arrays.copyOf(bases, count * 2);
+					}
+					bases[count++] = Long.parseLong(digits);
+				}
+			}
+		}
+		bases = Arrays.copyOf(bases, count);
+		Arrays.sort(bases);
+		return bases;
+	}
+
+	/**
+	 * Checks the header of a segment, at the start of {@code buffer}.
+	 * 
+	 * @throws IOException
+	 *             if the header is not that of the segment at {@code baseOffset}
+	 */
+	static void checkHeader(final ByteBuffer buffer, final long baseOffset, final Path path) throws IOException {
+		if (buffer.limit() < HEADER_BYTES || buffer.getInt(0) != MAGIC) {
+			throw new IOException(path + " is not an event log segment");
+		}
+		final byte version = buffer.get(4);
+		if (version < 1 || version > VERSION) {
+			throw new IOException("Unsupported event log version " + version + " in " + path);
+		}
+		if (buffer.getLong(5) != baseOffset) {
+			throw new IOException(path + " has base offset " + buffer.getLong(5));
+		}
+	}
+
+	/**
+	 * Measures the valid record at {@code position} in {@code buffer}.
+	 * 
+	 * @return the length of the record payload, or -1 if there is not a complete
+	 *         record with a matching CRC at {@code position}
+	 */
+	static int recordLength(final ByteBuffer buffer, final int position, final CRC32 crc) {
+		if (buffer.limit() - position < RECORD_HEADER_BYTES) {
+			return -1;
+		}
+		final int length = buffer.getInt(position);
+		if (length <= 0 || length > buffer.limit() - position - RECORD_HEADER_BYTES) {
+			return -1;
+		}
+		final ByteBuffer payload = buffer.duplicate();
+		payload.position(position + RECORD_HEADER_BYTES).limit(position + RECORD_HEADER_BYTES + length);
+		crc.reset();
+		crc.update(payload);
+		return (int) crc.getValue() == buffer.getInt(position + 4) ? length : -1;
+	}
+
+}
@@ -0,0 +1,245 @@
+/**
+ * Copyright (C) 2010 Cardiff University, Wales <smartp@cf.ac.uk>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.ac.cardiff.model.event.log;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.function.LongSupplier;
+import java.util.zip.CRC32;
+
+import uk.ac.cardiff.model.event.Event;
+import uk.ac.cardiff.model.event.codec.EventCodec;
+
+/**
+ * <p>
+ * Reads the records of an {@link EventLog} in order, through a memory mapping
+ * of one segment at a time. A reader follows the log as it grows: when it has
+ * read every record available so far {@link #poll()} returns null, and a later
+ * call picks up records appended since.
+ * </p>
+ * 
+ * <p>
+ * A reader from {@link EventLog#reader(long)} only reads records before the
+ * durable offset of the log, which survive a crash. A reader opened on the
+ * directory, e.g. from another process, can not know that offset, so reads
+ * every complete record, including some that a crash of the writer may lose.
+ * Opening the log again truncates those, and later appends reuse their offsets.
+ * </p>
+ * 
+ * <p>
+ * To resume after a restart, persist {@link #getNextOffset()} along with the
+ * effects of the records read, and open a reader at that offset. A consumer
+ * that reads through the directory should only persist the offset of records
+ * it knows to be durable. Opening a reader past the end of the log fails, which
+ * is what a consumer that read records lost in a crash sees before the log
+ * grows back past its offset.
+ * </p>
+ * 
+ * <p>
+ * Not thread safe, use one reader per consumer.
+ * </p>
+ * 
+ * @author philsmart
+ */
+public final class EventLogReader implements Closeable {
+
+	private final Path directory;
+
+	private final EventCodec codec = new EventCodec();
+
+	private final CRC32 crc = new CRC32();
+
+	/** The offset before which records may be read. */
+	private final LongSupplier limit;
+
+	private FileChannel channel;
+
+	private Path segment;
+
+	private long base;
+
+	/** The mapping of the segment, as far as it had been written. */
+	private ByteBuffer buffer;
+
+	/** The position in the segment of the next record. */
+	private int position;
+
+	private long nextOffset;
+
+	private EventLogReader(final Path directory, final LongSupplier limit) {
+		this.directory = directory;
+		this.limit = limit;
+	}
+
+	/**
+	 * Opens a reader of a log.
+	 * 
+	 * @param directory
+	 *            the directory of the log
+	 * @param offset
+	 *            the offset of the first record to read, at most the offset the
+	 *            next record appended will have
+	 * @return the reader, to be closed
+	 * @throws IOException
+	 *             if the log can not be read, or does not have {@code offset},
+	 *             e.g. as its segment has been deleted
+	 */
+	public static EventLogReader open(final Path directory, final long offset) throws IOException {
+		return open(directory, offset, () -> Long.MAX_VALUE);
+	}
+
+	/**
+	 * Opens a reader of a log that reads no further than {@code limit}.
+	 */
+	static EventLogReader open(final Path directory, final long offset, final LongSupplier limit)
+			throws IOException {
+		if (offset > limit.getAsLong()) {
+			throw new IOException("Offset " + offset + " is beyond the durable end of the event log " + directory);
+		}
+		final long[] segments = EventLogFormat.segments(directory);
+		int index = segments.length - 1;
+		while (index >= 0 && segments[index] > offset) {
+			index--;
+		}
+		if (index < 0) {
+			throw new IOException("Offset " + offset + " is not in the event log " + directory);
+		}
+		final EventLogReader reader = new EventLogReader(directory, limit);
+		try {
+			reader.openSegment(segments[index]);
+			while (reader.nextOffset < offset) {
+				final int length = reader.nextRecord();
+				if (length < 0) {
+					throw new IOException("Offset " + offset + " is beyond the end of the event log " + directory);
+				}
+				reader.position += EventLogFormat.RECORD_HEADER_BYTES + length;
+				reader.nextOffset++;
+			}
+			return reader;
+		} catch (final IOException | RuntimeException e) {
+			reader.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Reads the next record.
+	 * 
+	 * @return the record, or null if every record available so far has been
+	 *         read
+	 * @throws IOException
+	 *             if a segment can not be read, or a record is corrupt
+	 */
+	public EventLogRecord poll() throws IOException {
+		if (nextOffset >= limit.getAsLong()) {
+			return null;
+		}
+		final int length = nextRecord();
+		if (length < 0) {
+			return null;
+		}
+		final ByteBuffer payload = buffer.duplicate();
+		payload.position(position + EventLogFormat.RECORD_HEADER_BYTES)
+				.limit(position + EventLogFormat.RECORD_HEADER_BYTES + length);
+		final List<Event> events;
+		try {
+			events = codec.decode(payload);
+		} catch (final RuntimeException e) {
+			throw new IOException("Malformed record " + nextOffset + " in " + segment, e);
+		}
+		final EventLogRecord record = new EventLogRecord(nextOffset, events);
+		position += EventLogFormat.RECORD_HEADER_BYTES + length;
+		nextOffset++;
+		return record;
+	}
+
+	/**
+	 * @return the offset of the next record to be read
+	 */
+	public long getNextOffset() {
+		return nextOffset;
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (channel != null) {
+			channel.close();
+		}
+	}
+
+	/**
+	 * Finds the next valid record, remapping the segment if it has grown, or
+	 * moving to the next segment once this one is read.
+	 * 
+	 * @return the length of the payload of the record at {@link #position}, or
+	 *         -1 if there is none yet
+	 */
+	private int nextRecord() throws IOException {
+		while (true) {
+			final int length = EventLogFormat.recordLength(buffer, position, crc);
+			if (length >= 0) {
+				return length;
+			}
+			if (map()) {
+				continue;
+			}
+			final Path next = EventLogFormat.segment(directory, nextOffset);
+			if (!Files.exists(next)) {
+				return -1;
+			}
+			// the segment was rolled, so nothing more will be written to it
+			if (position != buffer.limit()) {
+				throw new IOException("Corrupt record " + nextOffset + " in " + segment);
+			}
+			channel.close();
+			openSegment(nextOffset);
+		}
+	}
+
+	private void openSegment(final long base) throws IOException {
+		this.base = base;
+		segment = EventLogFormat.segment(directory, base);
+		channel = FileChannel.open(segment, StandardOpenOption.READ);
+		buffer = ByteBuffer.allocate(0);
+		position = EventLogFormat.HEADER_BYTES;
+		nextOffset = base;
+		map();
+	}
+
+	/**
+	 * Maps the segment again if it has grown.
+	 * 
+	 * @return true if the mapping grew
+	 */
+	private boolean map() throws IOException {
+		final long size = Math.min(channel.size(), Integer.MAX_VALUE);
+		// the header may still be being written
+		if (size < EventLogFormat.HEADER_BYTES || size <= buffer.limit()) {
+			return false;
+		}
+		buffer = channel.map(MapMode.READ_ONLY, 0, size);
+		EventLogFormat.checkHeader(buffer, base, segment);
+		return true;
+	}
+
+}
@@ -0,0 +1,60 @@
+/**
+ * Copyright (C) 2010 Cardiff University, Wales <smartp@cf.ac.uk>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.ac.cardiff.model.event.log;
+
+import java.util.Collections;
+import java.util.List;
+
+import uk.ac.cardiff.model.event.Event;
+
+/**
+ * <p>
+ * A record read from an {@link EventLog}, the events of one append.
+ * </p>
+ * 
+ * @author philsmart
+ */
+public final class EventLogRecord {
+
+	private final long offset;
+
+	private final List<Event> events;
+
+	EventLogRecord(final long offset, final List<Event> events) {
+		this.offset = offset;
+		this.events = Collections.unmodifiableList(events);
+	}
+
+	/**
+	 * @return the offset of the record in the log
+	 */
+	public long getOffset() {
+		return offset;
+	}
+
+	/**
+	 * @return the events of the record, in the order appended
+	 */
+	public List<Event> getEvents() {
+		return events;
+	}
+
+	@Override
+	public String toString() {
+		return "EventLogRecord [offset=" + offset + ", events=" + events.size() + "]";
+	}
+
+}
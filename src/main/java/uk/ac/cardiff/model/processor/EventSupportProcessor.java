@@ -0,0 +1,397 @@
+/**
+ * Copyright (C) 2010 Cardiff University, Wales <smartp@cf.ac.uk>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.ac.cardiff.model.processor;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.AnnotationValue;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+import javax.tools.JavaFileObject;
+
+/**
+ * <p>
+ * Generates the {@code <ClassName>Support} class for every type annotated with
+ * {@link uk.ac.cardiff.model.event.GenerateEventSupport}. See that annotation
+ * for the contract of the generated methods.
+ * </p>
+ * 
+ * <p>
+ * The processor is only used while building this module, it is compiled ahead
+ * of the model classes and is not packaged in the released artifact.
+ * </p>
+ * 
+ * @author philsmart
+ */
+@SupportedAnnotationTypes(EventSupportProcessor.ANNOTATION)
+public class EventSupportProcessor extends AbstractProcessor {
+
+	/** Fully qualified name of the trigger annotation. */
+	static final String ANNOTATION = "uk.ac.cardiff.model.event.GenerateEventSupport";
+
+	/** Suffix appended to the simple name of the annotated class. */
+	private static final String SUFFIX = "Support";
+
+	@Override
+	public SourceVersion getSupportedSourceVersion() {
+		return SourceVersion.latestSupported();
+	}
+
+	@Override
+	public boolean process(final Set<? extends TypeElement> annotations, final RoundEnvironment roundEnv) {
+		for (final TypeElement annotation : annotations) {
+			for (final Element element : roundEnv.getElementsAnnotatedWith(annotation)) {
+				if (element.getKind() != ElementKind.CLASS) {
+					error(element, "@GenerateEventSupport can only be used on a class");
+					continue;
+				}
+				final TypeElement type = (TypeElement) element;
+				try {
+					generate(type, annotationStrings(type, "value"), annotationStrings(type, "idFields"));
+				} catch (final IllegalArgumentException e) {
+					error(type, e.getMessage());
+				} catch (final IOException e) {
+					error(type, "Could not write " + type.getSimpleName() + SUFFIX + ": " + e.getMessage());
+				}
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Reads the string array {@code element} of the annotation on {@code type},
+	 * falling back to its default.
+	 */
+	private List<String> annotationStrings(final TypeElement type, final String element) {
+		final List<String> names = new ArrayList<String>();
+		for (final AnnotationMirror mirror : type.getAnnotationMirrors()) {
+			if (!((TypeElement) mirror.getAnnotationType().asElement()).getQualifiedName().contentEquals(ANNOTATION)) {
+				continue;
+			}
+			for (final Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> entry : processingEnv
+					.getElementUtils().getElementValuesWithDefaults(mirror).entrySet()) {
+				if (entry.getKey().getSimpleName().contentEquals(element)) {
+					@SuppressWarnings("unchecked")
+					final List<? extends AnnotationValue> values = (List<? extends AnnotationValue>) entry.getValue()
+							.getValue();
+					for (final AnnotationValue value : values) {
+						names.add((String) value.getValue());
+					}
+				}
+			}
+		}
+		return names;
+	}
+
+	/**
+	 * Collects the instance fields of {@code type} and its superclasses, superclass
+	 * fields first.
+	 */
+	private static Map<String, VariableElement> fields(final TypeElement type) {
+		final List<TypeElement> hierarchy = new ArrayList<TypeElement>();
+		TypeElement current = type;
+		while (current != null && !current.getQualifiedName().contentEquals("java.lang.Object")) {
+			hierarchy.add(current);
+			current = superclassOf(current);
+		}
+		Collections.reverse(hierarchy);
+		final Map<String, VariableElement> fields = new LinkedHashMap<String, VariableElement>();
+		for (final TypeElement declaring : hierarchy) {
+			for (final VariableElement field : ElementFilter.fieldsIn(declaring.getEnclosedElements())) {
+				if (!field.getModifiers().contains(Modifier.STATIC)) {
+					fields.put(field.getSimpleName().toString(), field);
+				}
+			}
+		}
+		return fields;
+	}
+
+	private void generate(final TypeElement type, final List<String> keyNames, final List<String> idNames)
+			throws IOException {
+		final String packageName = processingEnv.getElementUtils().getPackageOf(type).getQualifiedName().toString();
+		final String typeName = type.getSimpleName().toString();
+		final String supportName = typeName + SUFFIX;
+		final Map<String, VariableElement> fields = fields(type);
+
+		final List<FieldAccess> keys = new ArrayList<FieldAccess>();
+		for (final String name : keyNames) {
+			final VariableElement field = fields.get(name);
+			if (field == null) {
+				throw new IllegalArgumentException("No field '" + name + "' in " + typeName + " or its superclasses");
+			}
+			keys.add(new FieldAccess(type, field, packageName));
+		}
+
+		final JavaFileObject file = processingEnv.getFiler()
+				.createSourceFile(packageName.isEmpty() ? supportName : packageName + "." + supportName, type);
+		try (PrintWriter out = new PrintWriter(file.openWriter())) {
+			if (!packageName.isEmpty()) {
+				out.println("package " + packageName + ";");
+				out.println();
+			}
+			out.println("import uk.ac.cardiff.utility.FingerprintUtil;");
+			out.println("import uk.ac.cardiff.utility.HashCodeUtil;");
+			out.println();
+			out.println("/**");
+			out.println(" * Hashing, fingerprint, equality and copy methods for {@link " + typeName + "}. Generated by");
+			out.println(" * {@code " + getClass().getName() + "}, do not edit.");
+			out.println(" */");
+			out.println("final class " + supportName + " {");
+			out.println();
+			out.println("\tprivate " + supportName + "() {");
+			out.println("\t}");
+			out.println();
+
+			out.println("\tstatic int hash(final " + typeName + " event) {");
+			out.println("\t\tint hash = HashCodeUtil.SEED;");
+			for (final FieldAccess key : keys) {
+				out.println("\t\thash = HashCodeUtil.hash(hash, " + key.read("event") + ");");
+			}
+			out.println("\t\treturn hash;");
+			out.println("\t}");
+			out.println();
+
+			out.println("\tstatic long fingerprint(final " + typeName + " event) {");
+			out.println("\t\tlong fingerprint = FingerprintUtil.SEED;");
+			for (final FieldAccess key : keys) {
+				if (!idNames.contains(key.name)) {
+					out.println("\t\tfingerprint = FingerprintUtil.fingerprint(fingerprint, " + key.read("event") + ");");
+				}
+			}
+			out.println("\t\treturn FingerprintUtil.finish(fingerprint);");
+			out.println("\t}");
+			out.println();
+
+			final List<FieldAccess> ordered = new ArrayList<FieldAccess>(keys);
+			Collections.sort(ordered, (a, b) -> Integer.compare(a.cost(), b.cost()));
+			out.println("\tstatic boolean areEqual(final " + typeName + " a, final " + typeName + " b) {");
+			String separator = "\t\treturn ";
+			for (final FieldAccess key : ordered) {
+				out.print(separator + key.equality("a", "b"));
+				separator = "\n\t\t\t\t&& ";
+			}
+			out.println(keys.isEmpty() ? "\t\treturn true;" : ";");
+			out.println("\t}");
+			out.println();
+
+			out.println("\tstatic void copy(final " + typeName + " source, final " + typeName + " target) {");
+			for (final VariableElement field : fields.values()) {
+				if (!field.getModifiers().contains(Modifier.TRANSIENT)) {
+					final FieldAccess access = new FieldAccess(type, field, packageName);
+					out.println("\t\t" + access.write("target", access.copyOf("source")) + ";");
+				}
+			}
+			if (hasInvalidateHashCode(type, packageName)) {
+				// fields were written directly, so any hash cached on target is stale
+				out.println("\t\ttarget.invalidateHashCode();");
+			}
+			out.println("\t}");
+			out.println();
+			out.println("}");
+		}
+	}
+
+	/**
+	 * True if {@code type} inherits {@code Event#invalidateHashCode()} and it can
+	 * be called from {@code packageName}.
+	 */
+	private static boolean hasInvalidateHashCode(final TypeElement type, final String packageName) {
+		TypeElement current = type;
+		while (current != null) {
+			for (final ExecutableElement method : ElementFilter.methodsIn(current.getEnclosedElements())) {
+				if (method.getSimpleName().contentEquals("invalidateHashCode") && method.getParameters().isEmpty()) {
+					return method.getModifiers().contains(Modifier.PUBLIC)
+							|| !method.getModifiers().contains(Modifier.PRIVATE)
+									&& FieldAccess.packageOf(method).getQualifiedName().contentEquals(packageName);
+				}
+			}
+			current = superclassOf(current);
+		}
+		return false;
+	}
+
+	private static TypeElement superclassOf(final TypeElement type) {
+		final TypeMirror superclass = type.getSuperclass();
+		return superclass.getKind() == TypeKind.DECLARED ? (TypeElement) ((DeclaredType) superclass).asElement()
+				: null;
+	}
+
+	private void error(final Element element, final String message) {
+		processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, message, element);
+	}
+
+	/**
+	 * How generated code reads, writes, compares and copies one field.
+	 */
+	private static final class FieldAccess {
+
+		private final String name;
+
+		private final TypeMirror fieldType;
+
+		/** True if the generated class can use the field directly. */
+		private final boolean direct;
+
+		/** Accessor names, used when the field is not directly accessible. */
+		private final String getter;
+
+		private final String setter;
+
+		FieldAccess(final TypeElement owner, final VariableElement field, final String packageName) {
+			this.name = field.getSimpleName().toString();
+			this.fieldType = field.asType();
+			final PackageElement declaringPackage = packageOf(field);
+			this.direct = !field.getModifiers().contains(Modifier.PRIVATE)
+					&& declaringPackage.getQualifiedName().contentEquals(packageName);
+			final String capitalised = Character.toUpperCase(name.charAt(0)) + name.substring(1);
+			if (direct) {
+				getter = null;
+				setter = null;
+			} else {
+				final String prefix = fieldType.getKind() == TypeKind.BOOLEAN ? "is" : "get";
+				getter = findMethod(owner, prefix + capitalised, 0);
+				setter = findMethod(owner, "set" + capitalised, 1);
+			}
+		}
+
+		static PackageElement packageOf(final Element element) {
+			Element current = element;
+			while (current.getKind() != ElementKind.PACKAGE) {
+				current = current.getEnclosingElement();
+			}
+			return (PackageElement) current;
+		}
+
+		private static String findMethod(final TypeElement owner, final String methodName, final int parameters) {
+			TypeElement current = owner;
+			while (current != null) {
+				for (final ExecutableElement method : ElementFilter.methodsIn(current.getEnclosedElements())) {
+					if (method.getSimpleName().contentEquals(methodName) && method.getParameters().size() == parameters
+							&& method.getModifiers().contains(Modifier.PUBLIC)) {
+						return methodName;
+					}
+				}
+				current = superclassOf(current);
+			}
+			return null;
+		}
+
+		String read(final String instance) {
+			if (direct) {
+				return instance + "." + name;
+			}
+			if (getter == null) {
+				throw new IllegalArgumentException("Field '" + name + "' is neither accessible nor has a public getter");
+			}
+			return instance + "." + getter + "()";
+		}
+
+		String write(final String instance, final String value) {
+			if (direct) {
+				return instance + "." + name + " = " + value;
+			}
+			if (setter == null) {
+				throw new IllegalArgumentException("Field '" + name + "' is neither accessible nor has a public setter");
+			}
+			return instance + "." + setter + "(" + value + ")";
+		}
+
+		/**
+		 * Relative cost of comparing this field, primitives are cheapest, arrays the
+		 * most expensive.
+		 */
+		int cost() {
+			if (fieldType.getKind().isPrimitive()) {
+				return 0;
+			}
+			return fieldType.getKind() == TypeKind.ARRAY ? 2 : 1;
+		}
+
+		String equality(final String a, final String b) {
+			final String left = read(a);
+			final String right = read(b);
+			switch (fieldType.getKind()) {
+			case FLOAT:
+				return "Float.floatToIntBits(" + left + ") == Float.floatToIntBits(" + right + ")";
+			case DOUBLE:
+				return "Double.doubleToLongBits(" + left + ") == Double.doubleToLongBits(" + right + ")";
+			case ARRAY:
+				return "java.util.Arrays.equals(" + left + ", " + right + ")";
+			default:
+				if (fieldType.getKind().isPrimitive()) {
+					return left + " == " + right;
+				}
+				return "java.util.Objects.equals(" + left + ", " + right + ")";
+			}
+		}
+
+		String copyOf(final String source) {
+			final String value = read(source);
+			if (fieldType.getKind() == TypeKind.ARRAY) {
+				return value + " == null ? null : " + value + ".clone()";
+			}
+			if (fieldType.getKind() == TypeKind.DECLARED && hasCopyConstructor((DeclaredType) fieldType)) {
+				final String typeName = ((TypeElement) ((DeclaredType) fieldType).asElement()).getQualifiedName()
+						.toString();
+				return value + " == null ? null : new " + typeName + "(" + value + ")";
+			}
+			return value;
+		}
+
+		/**
+		 * True for mutable model types with a public copy constructor. JDK types,
+		 * e.g. {@link String}, are treated as immutable and shared.
+		 */
+		private boolean hasCopyConstructor(final DeclaredType type) {
+			final TypeElement element = (TypeElement) type.asElement();
+			if (element.getQualifiedName().toString().startsWith("java.")) {
+				return false;
+			}
+			for (final ExecutableElement constructor : ElementFilter.constructorsIn(element.getEnclosedElements())) {
+				if (constructor.getModifiers().contains(Modifier.PUBLIC) && constructor.getParameters().size() == 1
+						&& constructor.getParameters().get(0).asType().toString().equals(element.getQualifiedName()
+								.toString())) {
+					return true;
+				}
+			}
+			return false;
+		}
+
+	}
+
+}
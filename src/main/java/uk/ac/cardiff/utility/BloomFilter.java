@@ -0,0 +1,178 @@
+/**
+ * Copyright (C) 2010 Cardiff University, Wales <smartp@cf.ac.uk>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.ac.cardiff.utility;
+
+import java.util.Arrays;
+
+/**
+ * <p>
+ * A Bloom filter over 64-bit hashes, such as event fingerprints from
+ * {@link FingerprintUtil}. The input is assumed to be well mixed already, the
+ * {@code k} bit positions are derived from it by double hashing (Kirsch and
+ * Mitzenmacher) rather than by hashing again.
+ * </p>
+ * 
+ * <p>
+ * {@link #mightContain(long)} never returns false for a value that was put, and
+ * returns true for a value that was not with about the
+ * {@link #getFalsePositiveRate() false positive rate}, which grows as the
+ * filter fills.
+ * </p>
+ * 
+ * <p>
+ * Not thread safe.
+ * </p>
+ * 
+ * @author philsmart
+ */
+public final class BloomFilter {
+
+	private final long[] words;
+
+	/** Number of bits, {@code words.length * 64}, a power of two. */
+	private final long bitSize;
+
+	/** Number of bits set per value. */
+	private final int hashCount;
+
+	/** Number of bits currently set. */
+	private long bitCount;
+
+	/**
+	 * Creates a filter sized to give {@code falsePositiveRate} once
+	 * {@code expectedInsertions} distinct values have been put. The number of
+	 * bits is rounded up to a power of two, so the rate is at most that.
+	 * 
+	 * @param expectedInsertions
+	 *            the number of values the filter is sized for
+	 * @param falsePositiveRate
+	 *            the wanted false positive rate at that size, between 0 and 1
+	 */
+	public BloomFilter(final long expectedInsertions, final double falsePositiveRate) {
+		if (expectedInsertions <= 0) {
+			throw new IllegalArgumentException("expectedInsertions must be positive");
+		}
+		if (!(falsePositiveRate > 0 && falsePositiveRate < 1)) {
+			throw new IllegalArgumentException("falsePositiveRate must be between 0 and 1");
+		}
+		final double ln2 = Math.log(2);
+		final long bits = (long) Math.ceil(-expectedInsertions * Math.log(falsePositiveRate) / (ln2 * ln2));
+		final long wordCount = Math.max(1, Long.highestOneBit((bits + 63 >>> 6) - 1) << 1);
+		if (wordCount > 1 << 30) {
+			throw new IllegalArgumentException("Filter of " + bits + " bits is too large");
+		}
+		this.words = new long[(int) wordCount];
+		this.bitSize = wordCount << 6;
+		this.hashCount = Math.max(1, (int) Math.round((double) bitSize / expectedInsertions * ln2));
+	}
+
+	/**
+	 * Adds the value.
+	 * 
+	 * @param hash
+	 *            a well mixed 64-bit hash of the value
+	 * @return true if any bit changed, i.e. the value was definitely not present
+	 */
+	public boolean put(final long hash) {
+		final long h2 = secondHash(hash);
+		long combined = hash;
+		boolean changed = false;
+		for (int i = 0; i < hashCount; i++) {
+			final long bit = combined & bitSize - 1;
+			final int word = (int) (bit >>> 6);
+			final long mask = 1L << bit;
+			if ((words[word] & mask) == 0) {
+				words[word] |= mask;
+				bitCount++;
+				changed = true;
+			}
+			combined += h2;
+		}
+		return changed;
+	}
+
+	/**
+	 * @param hash
+	 *            a well mixed 64-bit hash of the value
+	 * @return false if the value was definitely never put, true if it probably was
+	 */
+	public boolean mightContain(final long hash) {
+		final long h2 = secondHash(hash);
+		long combined = hash;
+		for (int i = 0; i < hashCount; i++) {
+			final long bit = combined & bitSize - 1;
+			if ((words[(int) (bit >>> 6)] & 1L << bit) == 0) {
+				return false;
+			}
+			combined += h2;
+		}
+		return true;
+	}
+
+	/**
+	 * Removes every value.
+	 */
+	public void clear() {
+		Arrays.fill(words, 0L);
+		bitCount = 0;
+	}
+
+	/**
+	 * @return the number of bits in the filter
+	 */
+	public long getBitSize() {
+		return bitSize;
+	}
+
+	/**
+	 * @return the number of bits set per value
+	 */
+	public int getHashCount() {
+		return hashCount;
+	}
+
+	/**
+	 * @return the number of bits currently set
+	 */
+	public long getBitCount() {
+		return bitCount;
+	}
+
+	/**
+	 * The probability that {@link #mightContain(long)} returns true for a value
+	 * never put, estimated from the fraction of bits currently set.
+	 * 
+	 * @return the current false positive rate
+	 */
+	public double getFalsePositiveRate() {
+		return Math.pow((double) bitCount / bitSize, hashCount);
+	}
+
+	/**
+	 * An odd second hash. As the bit size is a power of two, the probe sequence
+	 * then visits distinct bits, until it has visited them all.
+	 */
+	private static long secondHash(final long hash) {
+		return Long.rotateLeft(hash * 0xC2B2AE3D27D4EB4FL, 31) | 1L;
+	}
+
+	@Override
+	public String toString() {
+		return "BloomFilter [bitSize=" + bitSize + ", hashCount=" + hashCount + ", bitCount=" + bitCount
+				+ ", falsePositiveRate=" + getFalsePositiveRate() + "]";
+	}
+
+}
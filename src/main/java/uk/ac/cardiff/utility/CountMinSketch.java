@@ -0,0 +1,184 @@
+/**
+ * Copyright (C) 2010 Cardiff University, Wales <smartp@cf.ac.uk>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.ac.cardiff.utility;
+
+import java.util.Arrays;
+
+/**
+ * <p>
+ * A Count-Min sketch of Cormode and Muthukrishnan (2005) over 64-bit hashes,
+ * such as those of {@link FingerprintUtil}, which estimates how often any value
+ * has been added in a fixed {@code depth x width} table of counters. The
+ * counter of each row is chosen by double hashing of the input, as in
+ * {@link BloomFilter}.
+ * </p>
+ * 
+ * <p>
+ * An estimate never falls below the true count. With a width of
+ * {@code ceil(e / epsilon)} and depth of {@code ceil(ln(1 / delta))}, it exceeds
+ * the true count by more than {@code epsilon * total} with probability at most
+ * {@code delta}. Additions use conservative update, only raising the counters
+ * that are at the current minimum, which tightens estimates further.
+ * </p>
+ * 
+ * <p>
+ * Not thread safe.
+ * </p>
+ * 
+ * @author philsmart
+ */
+public final class CountMinSketch {
+
+	private final int depth;
+
+	private final int width;
+
+	/** The counters, row by row. */
+	private final long[] counters;
+
+	/** The sum of the counts added. */
+	private long total;
+
+	/**
+	 * Creates a sketch sized for an error of at most {@code epsilon * total}
+	 * with probability at least {@code 1 - delta}.
+	 * 
+	 * @param epsilon
+	 *            the relative error, between 0 and 1
+	 * @param delta
+	 *            the probability of exceeding it, between 0 and 1
+	 * @return the sketch
+	 */
+	public static CountMinSketch withError(final double epsilon, final double delta) {
+		if (!(epsilon > 0 && epsilon < 1) || !(delta > 0 && delta < 1)) {
+			throw new IllegalArgumentException("epsilon and delta must be between 0 and 1");
+		}
+		return new CountMinSketch((int) Math.ceil(Math.log(1 / delta)), (int) Math.ceil(Math.E / epsilon));
+	}
+
+	/**
+	 * Creates an empty sketch.
+	 * 
+	 * @param depth
+	 *            the number of rows
+	 * @param width
+	 *            the number of counters in each row
+	 */
+	public CountMinSketch(final int depth, final int width) {
+		if (depth <= 0 || width <= 0) {
+			throw new IllegalArgumentException("depth and width must be positive");
+		}
+		if ((long) depth * width > Integer.MAX_VALUE - 8) {
+			throw new IllegalArgumentException("Sketch of " + depth + "x" + width + " is too large");
+		}
+		this.depth = depth;
+		this.width = width;
+		this.counters = new long[depth * width];
+	}
+
+	/**
+	 * Adds {@code count} occurrences of a value.
+	 * 
+	 * @param hash
+	 *            the well mixed hash of the value
+	 * @param count
+	 *            the number of occurrences, not negative
+	 */
+	public void add(final long hash, final long count) {
+		if (count < 0) {
+			throw new IllegalArgumentException("count must not be negative");
+		}
+		total += count;
+		final long target = estimate(hash) + count;
+		final int first = (int) hash;
+		final int second = (int) (hash >>> 32);
+		for (int row = 0; row < depth; row++) {
+			final int index = row * width + Math.floorMod(first + row * second, width);
+			if (counters[index] < target) {
+				counters[index] = target;
+			}
+		}
+	}
+
+	/**
+	 * Estimates how often a value has been added.
+	 * 
+	 * @param hash
+	 *            the hash of the value
+	 * @return the estimate, never less than the true count
+	 */
+	public long estimate(final long hash) {
+		final int first = (int) hash;
+		final int second = (int) (hash >>> 32);
+		long estimate = Long.MAX_VALUE;
+		for (int row = 0; row < depth; row++) {
+			estimate = Math.min(estimate, counters[row * width + Math.floorMod(first + row * second, width)]);
+		}
+		return estimate;
+	}
+
+	/**
+	 * Adds the counters of {@code other} to this sketch, which then estimates
+	 * the counts of both. Estimates of the sum remain upper bounds.
+	 * 
+	 * @param other
+	 *            a sketch of the same dimensions, unchanged
+	 */
+	public void merge(final CountMinSketch other) {
+		if (other.depth != depth || other.width != width) {
+			throw new IllegalArgumentException("Can not merge sketches of different dimensions");
+		}
+		for (int i = 0; i < counters.length; i++) {
+			counters[i] += other.counters[i];
+		}
+		total += other.total;
+	}
+
+	/**
+	 * Resets every counter to zero.
+	 */
+	public void clear() {
+		Arrays.fill(counters, 0);
+		total = 0;
+	}
+
+	/**
+	 * @return the sum of the counts added
+	 */
+	public long getTotal() {
+		return total;
+	}
+
+	/**
+	 * @return the number of rows
+	 */
+	public int getDepth() {
+		return depth;
+	}
+
+	/**
+	 * @return the number of counters in each row
+	 */
+	public int getWidth() {
+		return width;
+	}
+
+	@Override
+	public String toString() {
+		return "CountMinSketch [depth=" + depth + ", width=" + width + ", total=" + total + "]";
+	}
+
+}
@@ -0,0 +1,205 @@
+/**
+ * Copyright (C) 2010 Cardiff University, Wales <smartp@cf.ac.uk>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.ac.cardiff.utility;
+
+/**
+ * <p>
+ * Collected methods for computing a strong, stable 64-bit fingerprint of a set
+ * of fields, in the same style as {@link HashCodeUtil}. Each value is mixed in
+ * with the round and merge steps of xxHash64 and the result is finished with
+ * its avalanche step, so every input bit affects every output bit.
+ * </p>
+ * 
+ * <p>
+ * Unlike {@link Object#hashCode()} the result does not depend on the JVM, or on
+ * the hash code of any field type: strings are fingerprinted from their
+ * characters and arrays from their elements. Nothing is allocated. With 64 bits
+ * the chance of any collision among 300 million events is around 1 in 400, in
+ * place of near certainty for an {@code int}.
+ * </p>
+ * 
+ * Example use case:
+ * 
+ * <pre>
+ * public long fingerprint() {
+ * 	long result = FingerprintUtil.SEED;
+ * 	result = FingerprintUtil.fingerprint(result, fPrimitive);
+ * 	result = FingerprintUtil.fingerprint(result, fString);
+ * 	result = FingerprintUtil.fingerprint(result, fArray);
+ * 	return FingerprintUtil.finish(result);
+ * }
+ * </pre>
+ * 
+ * <p>
+ * The values produced are persisted, changing any constant or step here changes
+ * the fingerprint of every stored event.
+ * </p>
+ * 
+ * @author philsmart
+ */
+public final class FingerprintUtil {
+
+	/** The initial value of a fingerprint. */
+	public static final long SEED = 0x27D4EB2F165667C5L;
+
+	private static final long PRIME_1 = 0x9E3779B185EBCA87L;
+
+	private static final long PRIME_2 = 0xC2B2AE3D27D4EB4FL;
+
+	private static final long PRIME_3 = 0x165667B19E3779F9L;
+
+	private static final long PRIME_4 = 0x85EBCA77C2B2AE63L;
+
+	/** Mixed in for a null reference, distinct from an empty string or array. */
+	private static final long NULL = 0x5BD1E9955BD1E995L;
+
+	private FingerprintUtil() {
+	}
+
+	public static long fingerprint(final long aSeed, final boolean aBoolean) {
+		return mix(aSeed, aBoolean ? 1 : 0);
+	}
+
+	public static long fingerprint(final long aSeed, final int aInt) {
+		return mix(aSeed, aInt);
+	}
+
+	public static long fingerprint(final long aSeed, final long aLong) {
+		return mix(aSeed, aLong);
+	}
+
+	public static long fingerprint(final long aSeed, final double aDouble) {
+		return mix(aSeed, Double.doubleToLongBits(aDouble));
+	}
+
+	/**
+	 * <code>aString</code> is a possibly-null {@link String} field. The length is
+	 * mixed in first, then the characters four to a word.
+	 * 
+	 * @param aSeed
+	 *            the fingerprint so far
+	 * @param aString
+	 *            the string to add
+	 * @return the fingerprint including {@code aString}
+	 */
+	public static long fingerprint(final long aSeed, final String aString) {
+		if (aString == null) {
+			return mix(aSeed, NULL);
+		}
+		final int length = aString.length();
+		long result = mix(aSeed, length);
+		int i = 0;
+		for (; i + 4 <= length; i += 4) {
+			result = mix(result, aString.charAt(i) | (long) aString.charAt(i + 1) << 16
+					| (long) aString.charAt(i + 2) << 32 | (long) aString.charAt(i + 3) << 48);
+		}
+		if (i < length) {
+			long word = 0;
+			for (int shift = 0; i < length; i++, shift += 16) {
+				word |= (long) aString.charAt(i) << shift;
+			}
+			result = mix(result, word);
+		}
+		return result;
+	}
+
+	/**
+	 * <code>aArray</code> is a possibly-null array of possibly-null strings.
+	 * 
+	 * @param aSeed
+	 *            the fingerprint so far
+	 * @param aArray
+	 *            the array to add
+	 * @return the fingerprint including {@code aArray}
+	 */
+	public static long fingerprint(final long aSeed, final String[] aArray) {
+		if (aArray == null) {
+			return mix(aSeed, NULL);
+		}
+		long result = mix(aSeed, aArray.length);
+		for (final String element : aArray) {
+			result = fingerprint(result, element);
+		}
+		return result;
+	}
+
+	/**
+	 * <code>aValue</code> is a possibly-null field that adds itself.
+	 * 
+	 * @param aSeed
+	 *            the fingerprint so far
+	 * @param aValue
+	 *            the value to add
+	 * @return the fingerprint including {@code aValue}
+	 */
+	public static long fingerprint(final long aSeed, final Fingerprinted aValue) {
+		return aValue == null ? mix(aSeed, NULL) : aValue.fingerprint(aSeed);
+	}
+
+	/**
+	 * <code>aObject</code> is a possibly-null object field. Strings, string arrays
+	 * and {@link Fingerprinted} values are fingerprinted from their contents,
+	 * other types fall back to their {@link Object#hashCode()}, and are only as
+	 * stable as it is.
+	 * 
+	 * @param aSeed
+	 *            the fingerprint so far
+	 * @param aObject
+	 *            the object to add
+	 * @return the fingerprint including {@code aObject}
+	 */
+	public static long fingerprint(final long aSeed, final Object aObject) {
+		if (aObject == null) {
+			return mix(aSeed, NULL);
+		}
+		if (aObject instanceof String) {
+			return fingerprint(aSeed, (String) aObject);
+		}
+		if (aObject instanceof String[]) {
+			return fingerprint(aSeed, (String[]) aObject);
+		}
+		if (aObject instanceof Fingerprinted) {
+			return fingerprint(aSeed, (Fingerprinted) aObject);
+		}
+		if (aObject instanceof Long) {
+			return fingerprint(aSeed, ((Long) aObject).longValue());
+		}
+		return mix(aSeed, aObject.hashCode());
+	}
+
+	/**
+	 * Completes a fingerprint, spreading the mixed in values over all 64 bits.
+	 * 
+	 * @param aFingerprint
+	 *            the fingerprint of all fields
+	 * @return the final fingerprint
+	 */
+	public static long finish(final long aFingerprint) {
+		long result = aFingerprint;
+		result ^= result >>> 33;
+		result *= PRIME_2;
+		result ^= result >>> 29;
+		result *= PRIME_3;
+		result ^= result >>> 32;
+		return result;
+	}
+
+	private static long mix(final long aSeed, final long aValue) {
+		final long round = Long.rotateLeft(aValue * PRIME_2, 31) * PRIME_1;
+		return Long.rotateLeft(aSeed ^ round, 27) * PRIME_1 + PRIME_4;
+	}
+
+}
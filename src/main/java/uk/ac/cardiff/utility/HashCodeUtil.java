@@ -15,8 +15,6 @@
  */
 package uk.ac.cardiff.utility;
 
-import java.lang.reflect.Array;
-
 /**
  * Collected methods which allow easy implementation of {@code hashCode}. as
  * taken from http://www.javapractices.com/
@@ -71,11 +69,26 @@ public final class HashCodeUtil {
 		return hash(aSeed, Double.doubleToLongBits(aDouble));
 	}
 
+	/**
+	 * <code>aString</code> is a possibly-null {@link String} field.
+	 * 
+	 * @param aSeed
+	 *            a seed used while generating the hash
+	 * @param aString
+	 *            the string to compute the hash off
+	 * @return the hash, identical to that of {@link #hash(int, Object)}
+	 */
+	public static int hash(final int aSeed, final String aString) {
+		return firstTerm(aSeed) + (aString == null ? 0 : aString.hashCode());
+	}
+
 	/**
 	 * <code>aObject</code> is a possibly-null object field, and possibly an array.
 	 * 
 	 * If <code>aObject</code> is an array, then each element may be a primitive or
-	 * a possibly-null object.
+	 * a possibly-null object. Arrays are dispatched to the typed overloads below
+	 * without reflection, primitive elements contribute the hash of their boxed
+	 * form. A {@link Hashed} object adds itself.
 	 * 
 	 * @param aSeed
 	 *            a seed used while generating the hash
@@ -86,16 +99,158 @@ public final class HashCodeUtil {
 	 *         key
 	 */
 	public static int hash(final int aSeed, final Object aObject) {
-		int result = aSeed;
 		if (aObject == null) {
-			result = hash(result, 0);
+			return hash(aSeed, 0);
+		} else if (aObject instanceof Hashed) {
+			return ((Hashed) aObject).hash(aSeed);
 		} else if (!isArray(aObject)) {
-			result = hash(result, aObject.hashCode());
-		} else {
-			final int length = Array.getLength(aObject);
-			for (int idx = 0; idx < length; ++idx) {
-				final Object item = Array.get(aObject, idx);
-				// recursive call!
+			return hash(aSeed, aObject.hashCode());
+		} else if (aObject instanceof Object[]) {
+			return hash(aSeed, (Object[]) aObject);
+		} else if (aObject instanceof int[]) {
+			return hash(aSeed, (int[]) aObject);
+		} else if (aObject instanceof long[]) {
+			return hash(aSeed, (long[]) aObject);
+		} else if (aObject instanceof byte[]) {
+			return hash(aSeed, (byte[]) aObject);
+		}
+		return hashPrimitiveArray(aSeed, aObject);
+	}
+
+	/**
+	 * <code>aArray</code> is a possibly-null array of possibly-null {@link String}s.
+	 * 
+	 * @param aSeed
+	 *            a seed used while generating the hash
+	 * @param aArray
+	 *            the array to compute the hash off
+	 * @return the hash, identical to that of {@link #hash(int, Object)}
+	 */
+	public static int hash(final int aSeed, final String[] aArray) {
+		if (aArray == null) {
+			return hash(aSeed, 0);
+		}
+		int result = aSeed;
+		for (final String item : aArray) {
+			result = firstTerm(result) + (item == null ? 0 : item.hashCode());
+		}
+		return result;
+	}
+
+	/**
+	 * <code>aValue</code> is a possibly-null field that adds itself.
+	 * 
+	 * @param aSeed
+	 *            a seed used while generating the hash
+	 * @param aValue
+	 *            the value to compute the hash off
+	 * @return the hash, identical to that of {@link #hash(int, Object)}
+	 */
+	public static int hash(final int aSeed, final Hashed aValue) {
+		return aValue == null ? hash(aSeed, 0) : aValue.hash(aSeed);
+	}
+
+	/**
+	 * <code>aArray</code> is a possibly-null array of possibly-null objects, which
+	 * may themselves be arrays.
+	 * 
+	 * @param aSeed
+	 *            a seed used while generating the hash
+	 * @param aArray
+	 *            the array to compute the hash off
+	 * @return the hash, identical to that of {@link #hash(int, Object)}
+	 */
+	public static int hash(final int aSeed, final Object[] aArray) {
+		if (aArray == null) {
+			return hash(aSeed, 0);
+		}
+		int result = aSeed;
+		for (final Object item : aArray) {
+			// recursive call!
+			result = hash(result, item);
+		}
+		return result;
+	}
+
+	/**
+	 * @param aSeed
+	 *            a seed used while generating the hash
+	 * @param aArray
+	 *            the possibly-null array to compute the hash off
+	 * @return the hash, identical to that of {@link #hash(int, Object)}
+	 */
+	public static int hash(final int aSeed, final int[] aArray) {
+		if (aArray == null) {
+			return hash(aSeed, 0);
+		}
+		int result = aSeed;
+		for (final int item : aArray) {
+			result = hash(result, item);
+		}
+		return result;
+	}
+
+	/**
+	 * @param aSeed
+	 *            a seed used while generating the hash
+	 * @param aArray
+	 *            the possibly-null array to compute the hash off
+	 * @return the hash, identical to that of {@link #hash(int, Object)}
+	 */
+	public static int hash(final int aSeed, final long[] aArray) {
+		if (aArray == null) {
+			return hash(aSeed, 0);
+		}
+		int result = aSeed;
+		for (final long item : aArray) {
+			result = hash(result, item);
+		}
+		return result;
+	}
+
+	/**
+	 * @param aSeed
+	 *            a seed used while generating the hash
+	 * @param aArray
+	 *            the possibly-null array to compute the hash off
+	 * @return the hash, identical to that of {@link #hash(int, Object)}
+	 */
+	public static int hash(final int aSeed, final byte[] aArray) {
+		if (aArray == null) {
+			return hash(aSeed, 0);
+		}
+		int result = aSeed;
+		for (final byte item : aArray) {
+			result = hash(result, item);
+		}
+		return result;
+	}
+
+	/**
+	 * Hashes the remaining primitive array types, using the hash of the boxed
+	 * element (e.g. 1231 or 1237 for a boolean) as the reflective implementation
+	 * this replaces did.
+	 */
+	private static int hashPrimitiveArray(final int aSeed, final Object aArray) {
+		int result = aSeed;
+		if (aArray instanceof short[]) {
+			for (final short item : (short[]) aArray) {
+				result = hash(result, item);
+			}
+		} else if (aArray instanceof char[]) {
+			for (final char item : (char[]) aArray) {
+				result = hash(result, item);
+			}
+		} else if (aArray instanceof boolean[]) {
+			for (final boolean item : (boolean[]) aArray) {
+				result = hash(result, Boolean.hashCode(item));
+			}
+		} else if (aArray instanceof float[]) {
+			for (final float item : (float[]) aArray) {
+				result = hash(result, item);
+			}
+		} else if (aArray instanceof double[]) {
+			for (final double item : (double[]) aArray) {
 				result = hash(result, item);
 			}
 		}
@@ -0,0 +1,33 @@
+/**
+ * Copyright (C) 2010 Cardiff University, Wales <smartp@cf.ac.uk>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.ac.cardiff.utility;
+
+/**
+ * A value that adds itself to a hash built with {@link HashCodeUtil}, e.g. in
+ * constant time from terms it computed once. Equal values must add the same.
+ * 
+ * @author philsmart
+ */
+public interface Hashed {
+
+	/**
+	 * @param aSeed
+	 *            the hash so far
+	 * @return the hash including this value
+	 */
+	int hash(int aSeed);
+
+}
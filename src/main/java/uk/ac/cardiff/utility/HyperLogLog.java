@@ -0,0 +1,420 @@
+/**
+ * Copyright (C) 2010 Cardiff University, Wales <smartp@cf.ac.uk>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.ac.cardiff.utility;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonValue;
+
+/**
+ * <p>
+ * A HyperLogLog sketch, which estimates the number of distinct values added to
+ * it in a few kilobytes, whatever that number is. Values are added as 64-bit
+ * hashes, such as those of {@link FingerprintUtil}; {@link #addString(String)}
+ * hashes a string from its characters, without copying it. Sketches built with
+ * the same precision, on any node, can be merged, and the estimate of the
+ * merged sketch is that of the union of their values.
+ * </p>
+ * 
+ * <p>
+ * A sketch of precision {@code p} has {@code 2^p} registers and a relative
+ * standard error of about {@code 1.04 / sqrt(2^p)}: 1.6% at 12, 0.8% at 14.
+ * Registers are held sparsely, as sorted {@code int} entries, until a quarter
+ * of them are set, and then as one {@code byte} each; so a sketch of few values
+ * is far smaller than {@code 2^p} bytes. The estimate uses the improved raw
+ * estimator of Ertl (2017), which is unbiased over the whole range without
+ * empirical correction tables.
+ * </p>
+ * 
+ * <p>
+ * Not thread safe.
+ * </p>
+ * 
+ * @author philsmart
+ */
+public final class HyperLogLog {
+
+	/** The least precision. */
+	public static final int MIN_PRECISION = 4;
+
+	/** The greatest precision. */
+	public static final int MAX_PRECISION = 18;
+
+	/** The precision used when none is given. */
+	public static final int DEFAULT_PRECISION = 14;
+
+	/** Version of the serialised form. */
+	private static final byte VERSION = 1;
+
+	private static final byte DENSE = 0;
+
+	private static final byte SPARSE = 1;
+
+	private final int precision;
+
+	/** The number of registers, {@code 2^precision}. */
+	private final int registerCount;
+
+	/** One byte per register once dense, otherwise null. */
+	private byte[] registers;
+
+	/** While sparse, {@code index << 8 | value} of each set register, by index. */
+	private int[] entries;
+
+	private int entryCount;
+
+	/**
+	 * Creates an empty sketch of {@link #DEFAULT_PRECISION}.
+	 */
+	public HyperLogLog() {
+		this(DEFAULT_PRECISION);
+	}
+
+	/**
+	 * Creates an empty sketch.
+	 * 
+	 * @param precision
+	 *            the base 2 logarithm of the number of registers, from
+	 *            {@value #MIN_PRECISION} to {@value #MAX_PRECISION}
+	 */
+	public HyperLogLog(final int precision) {
+		if (precision < MIN_PRECISION || precision > MAX_PRECISION) {
+			throw new IllegalArgumentException(
+					"precision must be between " + MIN_PRECISION + " and " + MAX_PRECISION + ", was " + precision);
+		}
+		this.precision = precision;
+		this.registerCount = 1 << precision;
+		this.entries = new int[8];
+	}
+
+	/**
+	 * Copy constructor.
+	 * 
+	 * @param sketch
+	 *            the sketch to copy
+	 */
+	public HyperLogLog(final HyperLogLog sketch) {
+		this.precision = sketch.precision;
+		this.registerCount = sketch.registerCount;
+		if (sketch.registers != null) {
+			registers = sketch.registers.clone();
+		} else {
+			entries = sketch.entries.clone();
+			entryCount = sketch.entryCount;
+		}
+	}
+
+	/**
+	 * Adds a value by its hash. The hash must be well mixed, e.g. finished by
+	 * {@link FingerprintUtil#finish(long)}; the same value must always give the
+	 * same hash.
+	 * 
+	 * @param hash
+	 *            the hash of the value
+	 */
+	public void add(final long hash) {
+		final int index = (int) (hash >>> (64 - precision));
+		final long remainder = hash << precision;
+		final int rank = remainder == 0 ? 65 - precision : Long.numberOfLeadingZeros(remainder) + 1;
+		update(index, rank);
+	}
+
+	/**
+	 * Adds a string, hashed with {@link FingerprintUtil} from its characters.
+	 * Null is ignored.
+	 * 
+	 * @param value
+	 *            the string
+	 */
+	public void addString(final String value) {
+		if (value != null) {
+			add(hash(value));
+		}
+	}
+
+	/**
+	 * Hashes a string as {@link #addString(String)} does, so the hash can be
+	 * computed once and added to many sketches.
+	 * 
+	 * @param value
+	 *            the string, not null
+	 * @return the hash
+	 */
+	public static long hash(final String value) {
+		return FingerprintUtil.finish(FingerprintUtil.fingerprint(FingerprintUtil.SEED, value));
+	}
+
+	/**
+	 * Merges {@code other} into this sketch, which then estimates the union of
+	 * the values of both.
+	 * 
+	 * @param other
+	 *            a sketch of the same precision, unchanged
+	 * @throws IllegalArgumentException
+	 *             if the precisions differ
+	 */
+	public void merge(final HyperLogLog other) {
+		if (other.precision != precision) {
+			throw new IllegalArgumentException(
+					"Can not merge a sketch of precision " + other.precision + " into one of " + precision);
+		}
+		if (other.registers != null) {
+			if (registers == null) {
+				toDense();
+			}
+			for (int i = 0; i < registerCount; i++) {
+				if (other.registers[i] > registers[i]) {
+					registers[i] = other.registers[i];
+				}
+			}
+		} else {
+			for (int i = 0; i < other.entryCount; i++) {
+				update(other.entries[i] >>> 8, other.entries[i] & 0xFF);
+			}
+		}
+	}
+
+	/**
+	 * @return the estimated number of distinct values added
+	 */
+	public long estimate() {
+		// histogram of register values, from 0 to 65 - precision
+		final int q = 64 - precision;
+		final int[] counts = new int[q + 2];
+		if (registers != null) {
+			for (final byte register : registers) {
+				counts[register]++;
+			}
+		} else {
+			counts[0] = registerCount - entryCount;
+			for (int i = 0; i < entryCount; i++) {
+				counts[entries[i] & 0xFF]++;
+			}
+		}
+		final double m = registerCount;
+		double z = m * tau(1 - counts[q + 1] / m);
+		for (int k = q; k >= 1; k--) {
+			z = 0.5 * (z + counts[k]);
+		}
+		z += m * sigma(counts[0] / m);
+		return Math.round(m * m / (2 * Math.log(2)) / z);
+	}
+
+	/**
+	 * @return true if no value has been added
+	 */
+	public boolean isEmpty() {
+		if (registers == null) {
+			return entryCount == 0;
+		}
+		for (final byte register : registers) {
+			if (register != 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * @return the precision, the base 2 logarithm of the number of registers
+	 */
+	public int getPrecision() {
+		return precision;
+	}
+
+	/**
+	 * @return the approximate number of bytes held by the registers
+	 */
+	public int getSizeInBytes() {
+		return registers != null ? registers.length : entries.length * 4;
+	}
+
+	/**
+	 * @return the relative standard error of the estimate at this precision
+	 */
+	public double getStandardError() {
+		return 1.04 / Math.sqrt(registerCount);
+	}
+
+	/**
+	 * Serialises this sketch: a version, the precision and the registers, either
+	 * sparse or dense, whichever is smaller.
+	 * 
+	 * @return a new array holding this sketch
+	 */
+	@JsonValue
+	public byte[] toByteArray() {
+		final boolean sparse = registers == null;
+		final ByteBuffer buffer = ByteBuffer.allocate(3 + (sparse ? 4 + entryCount * 4 : registerCount));
+		buffer.put(VERSION).put((byte) precision).put(sparse ? SPARSE : DENSE);
+		if (sparse) {
+			buffer.putInt(entryCount);
+			for (int i = 0; i < entryCount; i++) {
+				buffer.putInt(entries[i]);
+			}
+		} else {
+			buffer.put(registers);
+		}
+		return buffer.array();
+	}
+
+	/**
+	 * Reads a sketch written by {@link #toByteArray()}.
+	 * 
+	 * @param bytes
+	 *            the serialised sketch
+	 * @return the sketch
+	 * @throws IllegalArgumentException
+	 *             if the bytes are not a sketch of this version
+	 */
+	@JsonCreator
+	public static HyperLogLog fromByteArray(final byte[] bytes) {
+		final ByteBuffer buffer = ByteBuffer.wrap(bytes);
+		try {
+			final byte version = buffer.get();
+			if (version != VERSION) {
+				throw new IllegalArgumentException("Unsupported sketch version " + version);
+			}
+			final HyperLogLog sketch = new HyperLogLog(buffer.get());
+			final byte encoding = buffer.get();
+			if (encoding == SPARSE) {
+				final int count = buffer.getInt();
+				if (count < 0 || count > sketch.registerCount) {
+					throw new IllegalArgumentException("Invalid sparse sketch of " + count + " registers");
+				}
+				for (int i = 0; i < count; i++) {
+					final int entry = buffer.getInt();
+					sketch.update(entry >>> 8, entry & 0xFF);
+				}
+			} else if (encoding == DENSE) {
+				sketch.toDense();
+				buffer.get(sketch.registers);
+				for (final byte register : sketch.registers) {
+					if (register < 0 || register > 65 - sketch.precision) {
+						throw new IllegalArgumentException("Invalid register value " + register);
+					}
+				}
+			} else {
+				throw new IllegalArgumentException("Unknown sketch encoding " + encoding);
+			}
+			if (buffer.hasRemaining()) {
+				throw new IllegalArgumentException(buffer.remaining() + " bytes after the sketch");
+			}
+			return sketch;
+		} catch (final BufferUnderflowException e) {
+			throw new IllegalArgumentException("Truncated sketch", e);
+		}
+	}
+
+	/**
+	 * Raises the register at {@code index} to {@code rank}, if it is lower.
+	 */
+	private void update(final int index, final int rank) {
+		if (index < 0 || index >= registerCount || rank < 0 || rank > 65 - precision) {
+			throw new IllegalArgumentException("Invalid register " + index + "=" + rank);
+		}
+		if (registers != null) {
+			if (rank > registers[index]) {
+				registers[index] = (byte) rank;
+			}
+			return;
+		}
+		if (rank == 0) {
+			return;
+		}
+		final int position = Arrays.binarySearch(entries, 0, entryCount, index << 8 | 0xFF);
+		// no entry has value 0xFF, so the search always gives an insertion point
+		final int insertion = -position - 1;
+		if (insertion > 0 && entries[insertion - 1] >>> 8 == index) {
+			if (rank > (entries[insertion - 1] & 0xFF)) {
+				entries[insertion - 1] = index << 8 | rank;
+			}
+			return;
+		}
+		if (entryCount == registerCount / 4) {
+			toDense();
+			registers[index] = (byte) rank;
+			return;
+		}
+		if (entryCount == entries.length) {
+			entries = Arrays.copyOf(entries, Math.min(entries.length * 2, registerCount / 4));
+		}
+		System.arraycopy(entries, insertion, entries, insertion + 1, entryCount - insertion);
+		entries[insertion] = index << 8 | rank;
+		entryCount++;
+	}
+
+	private void toDense() {
+		registers = new byte[registerCount];
+		for (int i = 0; i < entryCount; i++) {
+			registers[entries[i] >>> 8] = (byte) (entries[i] & 0xFF);
+		}
+		entries = null;
+		entryCount = 0;
+	}
+
+	/**
+	 * The sigma function of Ertl's estimator, for the fraction of registers that
+	 * are zero.
+	 */
+	private static double sigma(final double x) {
+		if (x == 1) {
+			return Double.POSITIVE_INFINITY;
+		}
+		double power = x;
+		double y = 1;
+		double z = x;
+		double previous;
+		do {
+			power *= power;
+			previous = z;
+			z += power * y;
+			y += y;
+		} while (z != previous);
+		return z;
+	}
+
+	/**
+	 * The tau function of Ertl's estimator, for the fraction of registers that
+	 * are not at their greatest value.
+	 */
+	private static double tau(final double x) {
+		if (x == 0 || x == 1) {
+			return 0;
+		}
+		double root = x;
+		double y = 1;
+		double z = 1 - x;
+		double previous;
+		do {
+			root = Math.sqrt(root);
+			previous = z;
+			y *= 0.5;
+			z -= (1 - root) * (1 - root) * y;
+		} while (z != previous);
+		return z / 3;
+	}
+
+	@Override
+	public String toString() {
+		return "HyperLogLog [precision=" + precision + ", estimate=" + estimate() + ", sparse=" + (registers == null)
+				+ "]";
+	}
+
+}
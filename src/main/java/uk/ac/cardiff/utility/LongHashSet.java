@@ -0,0 +1,202 @@
+/**
+ * Copyright (C) 2010 Cardiff University, Wales <smartp@cf.ac.uk>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.ac.cardiff.utility;
+
+import java.util.Arrays;
+import java.util.function.LongConsumer;
+
+/**
+ * <p>
+ * A set of primitive {@code long}s, held in a single open addressed array with
+ * linear probing. Used for sets of event fingerprints, where a
+ * {@code HashSet<Long>} would cost a boxed {@link Long} and a map entry, around
+ * 50 bytes, per element rather than 8 to 16.
+ * </p>
+ * 
+ * <p>
+ * Not thread safe.
+ * </p>
+ * 
+ * @author philsmart
+ */
+public final class LongHashSet {
+
+	/** Marks an empty slot. Zero itself is tracked by {@link #containsZero}. */
+	private static final long EMPTY = 0L;
+
+	private static final int MIN_CAPACITY = 16;
+
+	private long[] slots;
+
+	/** slots.length - 1, the capacity is always a power of two. */
+	private int mask;
+
+	/** Number of non-zero values held in {@link #slots}. */
+	private int assigned;
+
+	/** Grow when {@link #assigned} reaches this. */
+	private int resizeAt;
+
+	private boolean containsZero;
+
+	public LongHashSet() {
+		this(MIN_CAPACITY);
+	}
+
+	/**
+	 * Creates a set able to hold {@code expectedSize} values before it resizes.
+	 * 
+	 * @param expectedSize
+	 *            the expected number of values
+	 */
+	public LongHashSet(final int expectedSize) {
+		if (expectedSize < 0) {
+			throw new IllegalArgumentException("expectedSize must not be negative");
+		}
+		allocate(capacityFor(expectedSize));
+	}
+
+	/**
+	 * Adds the value.
+	 * 
+	 * @param value
+	 *            the value to add
+	 * @return true if the value was not already in the set
+	 */
+	public boolean add(final long value) {
+		if (value == EMPTY) {
+			if (containsZero) {
+				return false;
+			}
+			containsZero = true;
+			return true;
+		}
+		final long[] slots = this.slots;
+		int slot = slotOf(value);
+		long existing;
+		while ((existing = slots[slot]) != EMPTY) {
+			if (existing == value) {
+				return false;
+			}
+			slot = slot + 1 & mask;
+		}
+		slots[slot] = value;
+		if (++assigned >= resizeAt) {
+			rehash(slots.length << 1);
+		}
+		return true;
+	}
+
+	/**
+	 * @param value
+	 *            the value to look for
+	 * @return true if the set holds {@code value}
+	 */
+	public boolean contains(final long value) {
+		if (value == EMPTY) {
+			return containsZero;
+		}
+		final long[] slots = this.slots;
+		int slot = slotOf(value);
+		long existing;
+		while ((existing = slots[slot]) != EMPTY) {
+			if (existing == value) {
+				return true;
+			}
+			slot = slot + 1 & mask;
+		}
+		return false;
+	}
+
+	/**
+	 * @return the number of values held
+	 */
+	public int size() {
+		return assigned + (containsZero ? 1 : 0);
+	}
+
+	/**
+	 * @return true if the set holds no values
+	 */
+	public boolean isEmpty() {
+		return size() == 0;
+	}
+
+	/**
+	 * Removes every value, keeping the current capacity.
+	 */
+	public void clear() {
+		Arrays.fill(slots, EMPTY);
+		assigned = 0;
+		containsZero = false;
+	}
+
+	/**
+	 * Passes every value to {@code action}, in no particular order.
+	 * 
+	 * @param action
+	 *            the action to apply
+	 */
+	public void forEach(final LongConsumer action) {
+		if (containsZero) {
+			action.accept(EMPTY);
+		}
+		for (final long value : slots) {
+			if (value != EMPTY) {
+				action.accept(value);
+			}
+		}
+	}
+
+	private int slotOf(final long value) {
+		// Fibonacci hashing, the high bits of the product are the best mixed
+		return (int) (value * 0x9E3779B97F4A7C15L >>> 32) & mask;
+	}
+
+	private void rehash(final int capacity) {
+		final long[] old = slots;
+		allocate(capacity);
+		for (final long value : old) {
+			if (value != EMPTY) {
+				int slot = slotOf(value);
+				while (slots[slot] != EMPTY) {
+					slot = slot + 1 & mask;
+				}
+				slots[slot] = value;
+			}
+		}
+	}
+
+	private void allocate(final int capacity) {
+		slots = new long[capacity];
+		mask = capacity - 1;
+		resizeAt = capacity - (capacity >>> 2);
+	}
+
+	private static int capacityFor(final int expectedSize) {
+		final long needed = (long) Math.ceil(expectedSize / 0.75d) + 1;
+		if (needed > 1 << 30) {
+			throw new IllegalArgumentException("expectedSize is too large: " + expectedSize);
+		}
+		return Math.max(MIN_CAPACITY, Integer.highestOneBit((int) needed - 1) << 1);
+	}
+
+	@Override
+	public String toString() {
+		return "LongHashSet [size=" + size() + ", capacity=" + slots.length + "]";
+	}
+
+}
@@ -0,0 +1,216 @@
+/**
+ * Copyright (C) 2010 Cardiff University, Wales <smartp@cf.ac.uk>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.ac.cardiff.utility;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * <p>
+ * A bounded, thread safe, least recently used cache. Entries are spread over a
+ * fixed number of segments by key hash, each a {@link LinkedHashMap} in access
+ * order guarded by its own lock, so threads only contend when they hit the same
+ * segment. When a segment is full its least recently used entry is evicted, so
+ * the cache as a whole holds at most {@code maxSize} entries.
+ * </p>
+ * 
+ * <p>
+ * Values are computed outside the segment lock, so two threads missing on the
+ * same key at once may both compute it; the first value stored wins and is
+ * returned to both. Cached values are shared between callers and so should be
+ * immutable.
+ * </p>
+ * 
+ * @author philsmart
+ * @param <K> the key type
+ * @param <V> the value type
+ */
+public final class LruCache<K, V> {
+
+	private static final int SEGMENTS = 16;
+
+	private final Segment<K, V>[] segments;
+
+	private final int maxSize;
+
+	/** Lookups answered from the cache. */
+	private final LongAdder hits = new LongAdder();
+
+	/** Lookups that computed a value. */
+	private final LongAdder misses = new LongAdder();
+
+	/** Entries removed to make room. */
+	private final LongAdder evictions = new LongAdder();
+
+	/**
+	 * Creates a cache.
+	 * 
+	 * @param maxSize
+	 *            the maximum number of entries held, zero to disable caching
+	 */
+	@SuppressWarnings("unchecked")
+	public LruCache(final int maxSize) {
+		if (maxSize < 0) {
+			throw new IllegalArgumentException("maxSize must not be negative");
+		}
+		this.maxSize = maxSize;
+		final int segmentCount = Math.max(1, Math.min(SEGMENTS, maxSize / 16));
+		segments = (Segment<K, V>[]) new Segment<?, ?>[segmentCount];
+		for (int i = 0; i < segmentCount; i++) {
+			// spread the remainder so the segment sizes add up to maxSize
+			segments[i] = new Segment<K, V>(maxSize / segmentCount + (i < maxSize % segmentCount ? 1 : 0));
+		}
+	}
+
+	/**
+	 * Returns the value cached for {@code key}, computing and caching it with
+	 * {@code loader} if there is none.
+	 * 
+	 * @param key
+	 *            the key, not null
+	 * @param loader
+	 *            computes the value of a key, must not return null
+	 * @return the cached value
+	 */
+	public V get(final K key, final Function<? super K, ? extends V> loader) {
+		final Segment<K, V> segment = segmentFor(key);
+		V value;
+		synchronized (segment) {
+			value = segment.get(key);
+		}
+		if (value != null) {
+			hits.increment();
+			return value;
+		}
+		misses.increment();
+		final V loaded = loader.apply(key);
+		if (segment.capacity == 0) {
+			return loaded;
+		}
+		synchronized (segment) {
+			value = segment.putIfAbsent(key, loaded);
+			if (segment.evicted) {
+				segment.evicted = false;
+				evictions.increment();
+			}
+		}
+		return value != null ? value : loaded;
+	}
+
+	/**
+	 * Removes every entry, keeping the statistics.
+	 */
+	public void clear() {
+		for (final Segment<K, V> segment : segments) {
+			synchronized (segment) {
+				segment.clear();
+			}
+		}
+	}
+
+	/**
+	 * @return the number of entries held
+	 */
+	public int getSize() {
+		int size = 0;
+		for (final Segment<K, V> segment : segments) {
+			synchronized (segment) {
+				size += segment.size();
+			}
+		}
+		return size;
+	}
+
+	/**
+	 * @return the maximum number of entries held
+	 */
+	public int getMaxSize() {
+		return maxSize;
+	}
+
+	/**
+	 * @return the number of lookups answered from the cache
+	 */
+	public long getHits() {
+		return hits.sum();
+	}
+
+	/**
+	 * @return the number of lookups that had to compute their value
+	 */
+	public long getMisses() {
+		return misses.sum();
+	}
+
+	/**
+	 * @return the number of entries evicted to make room for others
+	 */
+	public long getEvictions() {
+		return evictions.sum();
+	}
+
+	/**
+	 * @return the fraction of lookups answered from the cache, zero if there have
+	 *         been none
+	 */
+	public double getHitRatio() {
+		final long hitCount = getHits();
+		final long total = hitCount + getMisses();
+		return total == 0 ? 0 : (double) hitCount / total;
+	}
+
+	private Segment<K, V> segmentFor(final K key) {
+		final int hash = key.hashCode();
+		return segments[((hash ^ hash >>> 16) & Integer.MAX_VALUE) % segments.length];
+	}
+
+	@Override
+	public String toString() {
+		return "LruCache [size=" + getSize() + ", maxSize=" + maxSize + ", hits=" + getHits() + ", misses="
+				+ getMisses() + ", evictions=" + getEvictions() + "]";
+	}
+
+	/**
+	 * One access ordered map and its share of the capacity.
+	 */
+	private static final class Segment<K, V> extends LinkedHashMap<K, V> {
+
+		private static final long serialVersionUID = 1L;
+
+		final int capacity;
+
+		/** Set by {@link #removeEldestEntry(Map.Entry)} when it evicts. */
+		boolean evicted;
+
+		Segment(final int capacity) {
+			super(16, 0.75f, true);
+			this.capacity = capacity;
+		}
+
+		@Override
+		protected boolean removeEldestEntry(final Map.Entry<K, V> eldest) {
+			if (size() > capacity) {
+				evicted = true;
+				return true;
+			}
+			return false;
+		}
+
+	}
+
+}
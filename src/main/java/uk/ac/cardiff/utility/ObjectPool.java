@@ -0,0 +1,381 @@
+/**
+ * Copyright (C) 2010 Cardiff University, Wales <smartp@cf.ac.uk>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.ac.cardiff.utility;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * <p>
+ * A bounded pool of reusable {@link Resettable} instances, so a high rate
+ * producer, e.g. a log parser, can fill the same few objects over and over
+ * rather than allocate one per record. {@link #borrow()} takes an idle
+ * instance, or creates one if there are none, and {@link #release(Resettable)}
+ * resets it and makes it idle again. An instance must not be used once it has
+ * been released.
+ * </p>
+ * 
+ * <p>
+ * Idle instances are held in a fixed number of stripes, each a small stack
+ * guarded by its own lock, chosen by thread id. A thread borrows from and
+ * releases to its own stripe, so threads rarely contend, and takes from, or
+ * gives to, the other stripes only when its own is empty or full. Objects
+ * borrowed on one thread and released on another, as in a parse then encode
+ * pipeline, so still circulate. Instances released to a full pool are left to
+ * the garbage collector.
+ * </p>
+ * 
+ * <p>
+ * In debug mode, enabled with the {@value #DEBUG_PROPERTY} system property or
+ * the constructor, each borrow records where it was made. Releasing an
+ * instance that is not on loan, e.g. releasing it twice, throws an
+ * {@link IllegalStateException}; and an instance that is garbage collected
+ * while still on loan is reported as a leak, with the stack of the borrow, to
+ * the leak handler. Leaks are detected on later borrows, or by
+ * {@link #checkLeaks()}. Debug mode allocates on every borrow, so is for
+ * testing only.
+ * </p>
+ * 
+ * @author philsmart
+ * @param <T>
+ *            the type of pooled object
+ */
+public final class ObjectPool<T extends Resettable> {
+
+	/** System property that enables debug mode for pools created without it. */
+	public static final String DEBUG_PROPERTY = "uk.ac.cardiff.utility.ObjectPool.debug";
+
+	private static final Logger log = Logger.getLogger(ObjectPool.class.getName());
+
+	/** Logs each leak as a warning. */
+	private static final Consumer<Throwable> LOG_LEAK = site -> log.log(Level.WARNING,
+			"Pooled object was garbage collected without being released", site);
+
+	private final Supplier<? extends T> factory;
+
+	private final Stripe[] stripes;
+
+	private final int mask;
+
+	private final boolean debug;
+
+	/** Loans in debug mode, keyed by the identity of the object lent. */
+	private final ConcurrentHashMap<Loan, Loan> loans;
+
+	/** Loans whose object has been collected, in debug mode. */
+	private final ReferenceQueue<Object> collected;
+
+	private volatile Consumer<? super Throwable> leakHandler = LOG_LEAK;
+
+	/** Calls to {@link #borrow()}. */
+	private final LongAdder borrowed = new LongAdder();
+
+	/** Instances created because none were idle. */
+	private final LongAdder created = new LongAdder();
+
+	/** Instances released but not kept, as the pool was full. */
+	private final LongAdder dropped = new LongAdder();
+
+	/** Instances collected while on loan, in debug mode. */
+	private final LongAdder leaks = new LongAdder();
+
+	/**
+	 * Creates a pool, in debug mode if the {@value #DEBUG_PROPERTY} system
+	 * property is {@code true}.
+	 * 
+	 * @param factory
+	 *            creates new instances
+	 * @param maxIdlePerStripe
+	 *            the number of idle instances each stripe holds
+	 */
+	public ObjectPool(final Supplier<? extends T> factory, final int maxIdlePerStripe) {
+		this(factory, maxIdlePerStripe, Boolean.getBoolean(DEBUG_PROPERTY));
+	}
+
+	/**
+	 * Creates a pool.
+	 * 
+	 * @param factory
+	 *            creates new instances
+	 * @param maxIdlePerStripe
+	 *            the number of idle instances each stripe holds
+	 * @param debug
+	 *            true to track loans and report leaks
+	 */
+	public ObjectPool(final Supplier<? extends T> factory, final int maxIdlePerStripe, final boolean debug) {
+		if (maxIdlePerStripe < 0) {
+			throw new IllegalArgumentException("maxIdlePerStripe must not be negative");
+		}
+		this.factory = factory;
+		this.debug = debug;
+		int stripeCount = 1;
+		while (stripeCount < Runtime.getRuntime().availableProcessors() * 2) {
+			stripeCount <<= 1;
+		}
+		stripes = new Stripe[stripeCount];
+		for (int i = 0; i < stripeCount; i++) {
+			stripes[i] = new Stripe(maxIdlePerStripe);
+		}
+		mask = stripeCount - 1;
+		loans = debug ? new ConcurrentHashMap<Loan, Loan>() : null;
+		collected = debug ? new ReferenceQueue<Object>() : null;
+	}
+
+	/**
+	 * Takes an idle instance from the pool, or creates a new one if there are
+	 * none. The instance is in its reset state.
+	 * 
+	 * @return the instance, which should be given back with
+	 *         {@link #release(Resettable)}
+	 */
+	@SuppressWarnings("unchecked")
+	public T borrow() {
+		borrowed.increment();
+		final int home = stripeIndex();
+		Object instance = stripes[home].pop();
+		for (int i = 1; instance == null && i < stripes.length; i++) {
+			instance = stripes[(home + i) & mask].pop();
+		}
+		if (instance == null) {
+			created.increment();
+			instance = factory.get();
+		}
+		if (debug) {
+			checkLeaks();
+			final Loan loan = new Loan(instance, collected, new Throwable("Borrowed here"));
+			loans.put(loan, loan);
+		}
+		return (T) instance;
+	}
+
+	/**
+	 * Resets {@code instance} and returns it to the pool. The caller must not
+	 * use it afterwards.
+	 * 
+	 * @param instance
+	 *            an instance borrowed from this pool, null is ignored
+	 * @throws IllegalStateException
+	 *             in debug mode, if the instance is not on loan from this pool
+	 */
+	public void release(final T instance) {
+		if (instance == null) {
+			return;
+		}
+		if (debug) {
+			final Loan loan = loans.remove(new Loan(instance, null, null));
+			if (loan == null) {
+				throw new IllegalStateException("Released an object that is not on loan from this pool: "
+						+ instance.getClass().getName() + "@" + Integer.toHexString(System.identityHashCode(instance)));
+			}
+			loan.clear();
+		}
+		instance.reset();
+		final int home = stripeIndex();
+		if (stripes[home].push(instance)) {
+			return;
+		}
+		for (int i = 1; i < stripes.length; i++) {
+			if (stripes[(home + i) & mask].push(instance)) {
+				return;
+			}
+		}
+		dropped.increment();
+	}
+
+	/**
+	 * Reports, to the leak handler, each instance that has been garbage
+	 * collected while on loan since the last check. Does nothing unless in
+	 * debug mode. Leaks are only found once the collector has run.
+	 * 
+	 * @return the number of leaks found
+	 */
+	public int checkLeaks() {
+		if (!debug) {
+			return 0;
+		}
+		int found = 0;
+		Loan loan;
+		while ((loan = (Loan) collected.poll()) != null) {
+			if (loans.remove(loan) != null) {
+				found++;
+				leaks.increment();
+				leakHandler.accept(loan.site);
+			}
+		}
+		return found;
+	}
+
+	/**
+	 * Sets what is told of each leak, in place of logging a warning.
+	 * 
+	 * @param leakHandler
+	 *            accepts the stack of the borrow that leaked
+	 */
+	public void setLeakHandler(final Consumer<? super Throwable> leakHandler) {
+		this.leakHandler = leakHandler == null ? LOG_LEAK : leakHandler;
+	}
+
+	/**
+	 * @return true if loans are tracked and leaks reported
+	 */
+	public boolean isDebug() {
+		return debug;
+	}
+
+	/**
+	 * @return the number of instances idle in the pool
+	 */
+	public int getIdle() {
+		int idle = 0;
+		for (final Stripe stripe : stripes) {
+			synchronized (stripe) {
+				idle += stripe.size;
+			}
+		}
+		return idle;
+	}
+
+	/**
+	 * @return the number of instances on loan, or -1 if not in debug mode
+	 */
+	public int getOutstanding() {
+		return debug ? loans.size() : -1;
+	}
+
+	/**
+	 * @return the number of calls to {@link #borrow()}
+	 */
+	public long getBorrowed() {
+		return borrowed.sum();
+	}
+
+	/**
+	 * @return the number of instances created because none were idle
+	 */
+	public long getCreated() {
+		return created.sum();
+	}
+
+	/**
+	 * @return the number of released instances not kept as the pool was full
+	 */
+	public long getDropped() {
+		return dropped.sum();
+	}
+
+	/**
+	 * @return the number of leaks found, always zero if not in debug mode
+	 */
+	public long getLeaks() {
+		return leaks.sum();
+	}
+
+	/**
+	 * @return the fraction of borrows answered by an idle instance, zero if there
+	 *         have been none
+	 */
+	public double getReuseRatio() {
+		final long borrowCount = getBorrowed();
+		return borrowCount == 0 ? 0 : (double) (borrowCount - getCreated()) / borrowCount;
+	}
+
+	private int stripeIndex() {
+		final long id = Thread.currentThread().getId();
+		return (int) (id ^ id >>> 32) & mask;
+	}
+
+	@Override
+	public String toString() {
+		return "ObjectPool [idle=" + getIdle() + ", borrowed=" + getBorrowed() + ", created=" + getCreated()
+				+ ", dropped=" + getDropped() + ", leaks=" + getLeaks() + ", debug=" + debug + "]";
+	}
+
+	/**
+	 * A stack of idle instances.
+	 */
+	private static final class Stripe {
+
+		private final Object[] idle;
+
+		private int size;
+
+		Stripe(final int capacity) {
+			idle = new Object[capacity];
+		}
+
+		synchronized Object pop() {
+			if (size == 0) {
+				return null;
+			}
+			final Object instance = idle[--size];
+			idle[size] = null;
+			return instance;
+		}
+
+		synchronized boolean push(final Object instance) {
+			if (size == idle.length) {
+				return false;
+			}
+			idle[size++] = instance;
+			return true;
+		}
+
+	}
+
+	/**
+	 * A debug mode record of one borrow, equal to any other loan of the same
+	 * object. Only weakly references the object, so a leaked object can still be
+	 * collected, and so found.
+	 */
+	private static final class Loan extends WeakReference<Object> {
+
+		private final int identityHash;
+
+		/** Where the object was borrowed, null for a lookup key. */
+		final Throwable site;
+
+		Loan(final Object instance, final ReferenceQueue<Object> queue, final Throwable site) {
+			super(instance, queue);
+			this.identityHash = System.identityHashCode(instance);
+			this.site = site;
+		}
+
+		@Override
+		public int hashCode() {
+			return identityHash;
+		}
+
+		@Override
+		public boolean equals(final Object obj) {
+			if (this == obj) {
+				return true;
+			}
+			if (!(obj instanceof Loan)) {
+				return false;
+			}
+			final Object instance = get();
+			return instance != null && instance == ((Loan) obj).get();
+		}
+
+	}
+
+}
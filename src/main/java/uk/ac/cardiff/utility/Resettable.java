@@ -0,0 +1,32 @@
+/**
+ * Copyright (C) 2010 Cardiff University, Wales <smartp@cf.ac.uk>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.ac.cardiff.utility;
+
+/**
+ * A mutable value that can be returned to its newly constructed state, so one
+ * instance can be reused in place of many short lived ones, e.g. through an
+ * {@link ObjectPool}.
+ * 
+ * @author philsmart
+ */
+public interface Resettable {
+
+	/**
+	 * Clears every field back to the value it has after construction.
+	 */
+	void reset();
+
+}
@@ -0,0 +1,279 @@
+/**
+ * Copyright (C) 2010 Cardiff University, Wales <smartp@cf.ac.uk>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.ac.cardiff.utility;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * <p>
+ * The Space-Saving summary of Metwally, Agrawal and El Abbadi (2005), which
+ * finds the most frequent items of a stream in bounded memory. At most
+ * {@code capacity} items are monitored; an unmonitored item replaces the one
+ * with the least count and inherits that count as its error.
+ * </p>
+ * 
+ * <p>
+ * After {@code N} offers, the count of each monitored item exceeds its true
+ * count by at most its error, which is at most {@code N / capacity}; and every
+ * item whose true count exceeds {@code N / capacity} is monitored. Monitored
+ * items are held in a min-heap by count, indexed by a hash map, so each offer
+ * costs {@code O(log capacity)}.
+ * </p>
+ * 
+ * <p>
+ * Not thread safe.
+ * </p>
+ * 
+ * @author philsmart
+ * @param <T>
+ *            the type of item, which must implement equals and hashCode
+ */
+public final class SpaceSaving<T> {
+
+	private final int capacity;
+
+	/** The monitored items, a min-heap by count. */
+	private final Counter<T>[] heap;
+
+	private final Map<T, Counter<T>> index;
+
+	private int size;
+
+	/** The sum of the weights offered. */
+	private long total;
+
+	/**
+	 * Creates an empty summary.
+	 * 
+	 * @param capacity
+	 *            the number of items monitored
+	 */
+	@SuppressWarnings("unchecked")
+	public SpaceSaving(final int capacity) {
+		if (capacity <= 0) {
+			throw new IllegalArgumentException("capacity must be positive");
+		}
+		this.capacity = capacity;
+		heap = (Counter<T>[]) new Counter<?>[capacity];
+		index = new HashMap<T, Counter<T>>(capacity * 4 / 3 + 1);
+	}
+
+	/**
+	 * Counts one occurrence of an item.
+	 * 
+	 * @param item
+	 *            the item, not null
+	 */
+	public void offer(final T item) {
+		offer(item, 1);
+	}
+
+	/**
+	 * Counts {@code weight} occurrences of an item.
+	 * 
+	 * @param item
+	 *            the item, not null
+	 * @param weight
+	 *            the number of occurrences, not negative
+	 */
+	public void offer(final T item, final long weight) {
+		Objects.requireNonNull(item, "item");
+		if (weight < 0) {
+			throw new IllegalArgumentException("weight must not be negative");
+		}
+		total += weight;
+		Counter<T> counter = index.get(item);
+		if (counter == null) {
+			if (size < capacity) {
+				counter = new Counter<T>(item, size);
+				heap[size++] = counter;
+				index.put(item, counter);
+				siftUp(counter.position);
+			} else {
+				// replace the least counted item, which is at the root
+				counter = heap[0];
+				index.remove(counter.item);
+				counter.item = item;
+				counter.error = counter.count;
+				index.put(item, counter);
+			}
+		}
+		counter.count += weight;
+		siftDown(counter.position);
+	}
+
+	/**
+	 * Gets the count of an item.
+	 * 
+	 * @param item
+	 *            the item
+	 * @return the count, an upper bound of its true count, or 0 if it is not
+	 *         monitored
+	 */
+	public long getCount(final T item) {
+		final Counter<T> counter = index.get(item);
+		return counter == null ? 0 : counter.count;
+	}
+
+	/**
+	 * Gets the error of an item.
+	 * 
+	 * @param item
+	 *            the item
+	 * @return the most its count can exceed its true count, or 0 if it is not
+	 *         monitored
+	 */
+	public long getError(final T item) {
+		final Counter<T> counter = index.get(item);
+		return counter == null ? 0 : counter.error;
+	}
+
+	/**
+	 * @return the least count of a monitored item if every counter is in use,
+	 *         otherwise 0; an upper bound of the true count of any item that is
+	 *         not monitored
+	 */
+	public long getMinCount() {
+		return size < capacity ? 0 : heap[0].count;
+	}
+
+	/**
+	 * @return the monitored items, most counted first
+	 */
+	public List<T> top() {
+		final List<Counter<T>> counters = new ArrayList<Counter<T>>(size);
+		for (int i = 0; i < size; i++) {
+			counters.add(heap[i]);
+		}
+		counters.sort((left, right) -> Long.compare(right.count, left.count));
+		final List<T> items = new ArrayList<T>(size);
+		for (final Counter<T> counter : counters) {
+			items.add(counter.item);
+		}
+		return Collections.unmodifiableList(items);
+	}
+
+	/**
+	 * @return the number of items monitored
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * @return the number of items that can be monitored
+	 */
+	public int getCapacity() {
+		return capacity;
+	}
+
+	/**
+	 * @return the sum of the weights offered
+	 */
+	public long getTotal() {
+		return total;
+	}
+
+	/**
+	 * @return the most the count of any item can exceed its true count,
+	 *         {@code total / capacity}
+	 */
+	public long getErrorBound() {
+		return total / capacity;
+	}
+
+	/**
+	 * Removes every item.
+	 */
+	public void clear() {
+		for (int i = 0; i < size; i++) {
+			heap[i] = null;
+		}
+		index.clear();
+		size = 0;
+		total = 0;
+	}
+
+	private void siftUp(final int position) {
+		final Counter<T> counter = heap[position];
+		int child = position;
+		while (child > 0) {
+			final int parent = (child - 1) >>> 1;
+			if (heap[parent].count <= counter.count) {
+				break;
+			}
+			place(heap[parent], child);
+			child = parent;
+		}
+		place(counter, child);
+	}
+
+	private void siftDown(final int position) {
+		final Counter<T> counter = heap[position];
+		int parent = position;
+		while (true) {
+			int child = 2 * parent + 1;
+			if (child >= size) {
+				break;
+			}
+			if (child + 1 < size && heap[child + 1].count < heap[child].count) {
+				child++;
+			}
+			if (heap[child].count >= counter.count) {
+				break;
+			}
+			place(heap[child], parent);
+			parent = child;
+		}
+		place(counter, parent);
+	}
+
+	private void place(final Counter<T> counter, final int position) {
+		heap[position] = counter;
+		counter.position = position;
+	}
+
+	@Override
+	public String toString() {
+		return "SpaceSaving [capacity=" + capacity + ", size=" + size + ", total=" + total + "]";
+	}
+
+	/**
+	 * The count of one monitored item.
+	 */
+	private static final class Counter<T> {
+
+		T item;
+
+		long count;
+
+		long error;
+
+		int position;
+
+		Counter(final T item, final int position) {
+			this.item = item;
+			this.position = position;
+		}
+
+	}
+
+}
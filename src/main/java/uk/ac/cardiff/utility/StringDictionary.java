@@ -0,0 +1,115 @@
+/**
+ * Copyright (C) 2010 Cardiff University, Wales <smartp@cf.ac.uk>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.ac.cardiff.utility;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * <p>
+ * Assigns a dense {@code int} code, starting at zero, to each distinct
+ * {@link String} it is given, so that string columns can be held as
+ * {@code int[]}s. A null value always has the code {@link #NULL_CODE}.
+ * </p>
+ * 
+ * <p>
+ * Not thread safe, a dictionary is expected to be written by one thread, e.g.
+ * the thread filling a batch, and may be read by many once filled.
+ * </p>
+ * 
+ * @author philsmart
+ */
+public final class StringDictionary {
+
+	/** The code of a null value. */
+	public static final int NULL_CODE = -1;
+
+	/** Returned by {@link #lookup(String)} for a value not in the dictionary. */
+	public static final int NOT_FOUND = -2;
+
+	/** Code of each value. */
+	private final Map<String, Integer> codes;
+
+	/** Value of each code, indexed by code. */
+	private final List<String> values;
+
+	/**
+	 * Creates an empty dictionary.
+	 */
+	public StringDictionary() {
+		codes = new HashMap<String, Integer>();
+		values = new ArrayList<String>();
+	}
+
+	/**
+	 * Returns the code of {@code value}, adding it to the dictionary if it has not
+	 * been seen before.
+	 * 
+	 * @param value
+	 *            the possibly-null value
+	 * @return the code of the value, or {@link #NULL_CODE}
+	 */
+	public int encode(final String value) {
+		if (value == null) {
+			return NULL_CODE;
+		}
+		final Integer code = codes.get(value);
+		if (code != null) {
+			return code;
+		}
+		final int next = values.size();
+		values.add(value);
+		codes.put(value, next);
+		return next;
+	}
+
+	/**
+	 * Returns the code of {@code value} without adding it.
+	 * 
+	 * @param value
+	 *            the possibly-null value
+	 * @return the code of the value, {@link #NULL_CODE} for null, or
+	 *         {@link #NOT_FOUND} if the value is not in the dictionary
+	 */
+	public int lookup(final String value) {
+		if (value == null) {
+			return NULL_CODE;
+		}
+		final Integer code = codes.get(value);
+		return code == null ? NOT_FOUND : code;
+	}
+
+	/**
+	 * Returns the value of {@code code}.
+	 * 
+	 * @param code
+	 *            a code returned by {@link #encode(String)}
+	 * @return the value, or null for {@link #NULL_CODE}
+	 */
+	public String decode(final int code) {
+		return code == NULL_CODE ? null : values.get(code);
+	}
+
+	/**
+	 * @return the number of distinct non-null values
+	 */
+	public int size() {
+		return values.size();
+	}
+
+}
@@ -0,0 +1,187 @@
+/**
+ * Copyright (C) 2010 Cardiff University, Wales <smartp@cf.ac.uk>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.ac.cardiff.utility;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * <p>
+ * A bounded, thread safe canonicalisation pool for {@link String}s. Returns one
+ * shared instance for every equal value, so that low cardinality event fields
+ * (e.g. service hosts, bindings and attribute names) seen across millions of
+ * events are held in memory once.
+ * </p>
+ * 
+ * <p>
+ * The pool admits new values until it holds {@code maxSize} entries, after which
+ * unseen values are returned as given and counted as rejected. Values are never
+ * evicted, so only fields with a small number of distinct values should be
+ * pooled.
+ * </p>
+ * 
+ * @author philsmart
+ */
+public final class StringPool {
+
+	/**
+	 * The pool used by the event model setters and JPA converters. Its size can be
+	 * set with the {@code uk.ac.cardiff.utility.StringPool.maxSize} system
+	 * property.
+	 */
+	public static final StringPool SHARED = new StringPool(
+			Integer.getInteger("uk.ac.cardiff.utility.StringPool.maxSize", 65536));
+
+	/** Each value maps to its canonical instance, i.e. itself. */
+	private final ConcurrentMap<String, String> pool;
+
+	/** Maximum number of values held. */
+	private final int maxSize;
+
+	/** Number of values held, tracked separately as it is read on every miss. */
+	private final AtomicInteger size = new AtomicInteger();
+
+	/** Lookups answered from the pool. */
+	private final LongAdder hits = new LongAdder();
+
+	/** Lookups that added a new value to the pool. */
+	private final LongAdder misses = new LongAdder();
+
+	/** Lookups for a new value that could not be added as the pool was full. */
+	private final LongAdder rejected = new LongAdder();
+
+	/**
+	 * Creates a pool.
+	 * 
+	 * @param maxSize
+	 *            the maximum number of distinct values to hold
+	 */
+	public StringPool(final int maxSize) {
+		if (maxSize < 0) {
+			throw new IllegalArgumentException("maxSize must not be negative");
+		}
+		this.maxSize = maxSize;
+		this.pool = new ConcurrentHashMap<String, String>(Math.min(maxSize, 1024));
+	}
+
+	/**
+	 * Returns the canonical instance of {@code value}.
+	 * 
+	 * @param value
+	 *            the possibly-null value
+	 * @return an instance equal to {@code value}, or null if it was null
+	 */
+	public String canonicalise(final String value) {
+		if (value == null) {
+			return null;
+		}
+		final String existing = pool.get(value);
+		if (existing != null) {
+			hits.increment();
+			return existing;
+		}
+		if (size.get() >= maxSize) {
+			rejected.increment();
+			return value;
+		}
+		final String raced = pool.putIfAbsent(value, value);
+		if (raced != null) {
+			hits.increment();
+			return raced;
+		}
+		size.incrementAndGet();
+		misses.increment();
+		return value;
+	}
+
+	/**
+	 * Replaces each element of {@code values}, in place, with its canonical
+	 * instance. As the replacements are equal, the array is unchanged in value.
+	 * 
+	 * @param values
+	 *            the possibly-null array
+	 * @return {@code values}
+	 */
+	public String[] canonicaliseAll(final String[] values) {
+		if (values != null) {
+			for (int i = 0; i < values.length; i++) {
+				values[i] = canonicalise(values[i]);
+			}
+		}
+		return values;
+	}
+
+	/**
+	 * Removes every value from the pool. Metrics are not reset.
+	 */
+	public void clear() {
+		pool.clear();
+		size.set(0);
+	}
+
+	/**
+	 * @return the number of distinct values held
+	 */
+	public int getSize() {
+		return size.get();
+	}
+
+	/**
+	 * @return the maximum number of distinct values held
+	 */
+	public int getMaxSize() {
+		return maxSize;
+	}
+
+	/**
+	 * @return the number of lookups answered from the pool
+	 */
+	public long getHits() {
+		return hits.sum();
+	}
+
+	/**
+	 * @return the number of lookups that added a new value
+	 */
+	public long getMisses() {
+		return misses.sum();
+	}
+
+	/**
+	 * @return the number of lookups for a new value made while the pool was full
+	 */
+	public long getRejected() {
+		return rejected.sum();
+	}
+
+	/**
+	 * @return hits as a fraction of all non-null lookups, or 0 if there were none
+	 */
+	public double getHitRatio() {
+		final long hitCount = hits.sum();
+		final long total = hitCount + misses.sum() + rejected.sum();
+		return total == 0 ? 0 : (double) hitCount / total;
+	}
+
+	@Override
+	public String toString() {
+		return "StringPool [size=" + getSize() + ", maxSize=" + maxSize + ", hits=" + getHits() + ", misses="
+				+ getMisses() + ", rejected=" + getRejected() + "]";
+	}
+
+}
@@ -15,16 +15,16 @@
  */
 package uk.ac.cardiff.utility;
 
-import java.lang.reflect.Method;
-import java.util.Arrays;
-import java.util.Collection;
+import java.io.IOException;
+import java.io.UncheckedIOException;
 
 public class StringUtils {
 
 	/**
 	 * Used to construct a string representation of all field value pairs in the
-	 * object <code>obj</code> passed in as a parameter to the method. It does
-	 * this using reflection.
+	 * object <code>obj</code> passed in as a parameter to the method. Values are
+	 * read through the public getters of the object, in name order, using a
+	 * rendering plan built once per class.
 	 * 
 	 * @param obj
 	 *            the object from which to construct a string representation
@@ -32,29 +32,44 @@ public class StringUtils {
 	 * @return a <code>String</code> representation of this object.
 	 */
 	public static String buildToString(final Object obj) {
-		final Method[] methods = obj.getClass().getMethods();
-		final StringBuilder builder = new StringBuilder();
-		builder.append(obj.getClass() + "@[");
-		for (final Method method : methods) {
-			try {
-				if (method.getName().startsWith("get") && !method.getName().equals("getClass")) {
-					obj.getClass().getMethod(method.getName(), (Class[]) null);
-					final Object object = method.invoke(obj, (Object[]) null);
-					if (object instanceof Collection) {
-						builder.append(method.getName() + " [" + Arrays.asList(object) + "],");
-					} else if (object.getClass().isArray()) {
-						final Object[] array = (Object[]) object;
-						builder.append(method.getName() + " [" + Arrays.asList(array) + "],");
-					} else {
-						builder.append(method.getName() + " [" + object + "],");
-					}
-				}
-			} catch (final Exception e) {
-				// do nothing
-			}
+		return appendTo(new StringBuilder(256), obj).toString();
+	}
+
+	/**
+	 * As {@link #buildToString(Object)}, but writes the representation of
+	 * <code>obj</code> straight into <code>builder</code>.
+	 * 
+	 * @param builder
+	 *            the builder to append to
+	 * @param obj
+	 *            the object from which to construct a string representation
+	 *            from.
+	 * @return <code>builder</code>
+	 */
+	public static StringBuilder appendTo(final StringBuilder builder, final Object obj) {
+		try {
+			ToStringPlan.forClass(obj.getClass()).render(builder, obj);
+		} catch (final IOException e) {
+			// a StringBuilder never throws
+			throw new UncheckedIOException(e);
 		}
-		builder.append("]");
-		return builder.toString();
+		return builder;
+	}
+
+	/**
+	 * As {@link #buildToString(Object)}, but writes the representation of
+	 * <code>obj</code> straight into <code>out</code>, e.g. a log writer.
+	 * 
+	 * @param out
+	 *            the {@link Appendable} to write to
+	 * @param obj
+	 *            the object from which to construct a string representation
+	 *            from.
+	 * @throws IOException
+	 *             if <code>out</code> throws
+	 */
+	public static void appendTo(final Appendable out, final Object obj) throws IOException {
+		ToStringPlan.forClass(obj.getClass()).render(out, obj);
 	}
 
 }
@@ -0,0 +1,152 @@
+/**
+ * Copyright (C) 2010 Cardiff University, Wales <smartp@cf.ac.uk>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package uk.ac.cardiff.utility;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * <p>
+ * A per-class rendering plan used by {@link StringUtils#buildToString(Object)}.
+ * The public getters of a class are discovered once, sorted by name, and bound
+ * to {@link MethodHandle}s, so rendering an instance does no reflective lookup
+ * and writes each value straight into the target {@link Appendable}.
+ * </p>
+ * 
+ * @author philsmart
+ */
+final class ToStringPlan {
+
+	/** Plans are built once per class, on first use. */
+	private static final ClassValue<ToStringPlan> PLANS = new ClassValue<ToStringPlan>() {
+		@Override
+		protected ToStringPlan computeValue(final Class<?> type) {
+			return new ToStringPlan(type);
+		}
+	};
+
+	/** Accepts any getter, adapted to take and return an {@link Object}. */
+	private static final MethodType GETTER_TYPE = MethodType.methodType(Object.class, Object.class);
+
+	/** Written before the properties, e.g. {@code class a.b.C@[}. */
+	private final String prefix;
+
+	/** Written before the value of each property, e.g. {@code getName [}. */
+	private final String[] labels;
+
+	/** Getter of each property, of type {@link #GETTER_TYPE}. */
+	private final MethodHandle[] getters;
+
+	/**
+	 * Returns the plan for {@code type}.
+	 * 
+	 * @param type
+	 *            the class to render
+	 * @return the cached plan
+	 */
+	static ToStringPlan forClass(final Class<?> type) {
+		return PLANS.get(type);
+	}
+
+	private ToStringPlan(final Class<?> type) {
+		prefix = type + "@[";
+		final Method[] methods = type.getMethods();
+		Arrays.sort(methods, Comparator.comparing(Method::getName));
+		final MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+		final List<String> labelList = new ArrayList<String>();
+		final List<MethodHandle> getterList = new ArrayList<MethodHandle>();
+		String previous = null;
+		for (final Method method : methods) {
+			final String name = method.getName();
+			if (!name.startsWith("get") || name.equals("getClass") || name.equals(previous)
+					|| method.getParameterCount() != 0 || method.getReturnType() == void.class
+					|| Modifier.isStatic(method.getModifiers())) {
+				continue;
+			}
+			try {
+				getterList.add(lookup.unreflect(method).asType(GETTER_TYPE));
+				labelList.add(name + " [");
+				previous = name;
+			} catch (final IllegalAccessException e) {
+				// not publicly accessible, e.g. declared by a package private class
+			}
+		}
+		labels = labelList.toArray(new String[labelList.size()]);
+		getters = getterList.toArray(new MethodHandle[getterList.size()]);
+	}
+
+	/**
+	 * Renders {@code obj}, which must be an instance of the class this plan was
+	 * built for, into {@code out}.
+	 * 
+	 * @param out
+	 *            where to write the rendering
+	 * @param obj
+	 *            the object to render
+	 * @throws IOException
+	 *             if {@code out} throws
+	 */
+	void render(final Appendable out, final Object obj) throws IOException {
+		out.append(prefix);
+		for (int i = 0; i < getters.length; i++) {
+			out.append(labels[i]);
+			final Object value;
+			try {
+				value = getters[i].invokeExact(obj);
+			} catch (final Throwable e) {
+				if (e instanceof Error) {
+					throw (Error) e;
+				}
+				out.append("threw ").append(e.getClass().getName()).append("],");
+				continue;
+			}
+			if (value instanceof Collection) {
+				out.append('[').append(String.valueOf(value)).append(']');
+			} else if (value instanceof Object[]) {
+				appendArray(out, (Object[]) value);
+			} else {
+				out.append(String.valueOf(value));
+			}
+			out.append("],");
+		}
+		out.append(']');
+	}
+
+	/**
+	 * Writes the elements of {@code array} in the form of
+	 * {@link java.util.AbstractCollection#toString()}.
+	 */
+	private static void appendArray(final Appendable out, final Object[] array) throws IOException {
+		out.append('[');
+		for (int i = 0; i < array.length; i++) {
+			if (i > 0) {
+				out.append(", ");
+			}
+			out.append(String.valueOf(array[i]));
+		}
+		out.append(']');
+	}
+
+}